@@ -0,0 +1,86 @@
+package com.jdocker.benchmarks;
+
+import com.jdocker.server.ContainerInfo;
+import com.jdocker.server.DockerJavaEngine;
+import com.jdocker.server.EngineConfig;
+import com.jdocker.server.Metrics;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Round trip to the engine through the real docker-java transport, over a Unix domain socket or
+ * loopback TCP, against {@link FakeDockerApiServer}: small requests (ping) and a container list.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EngineTransportBenchmark {
+
+    @Param({"unix", "tcp"})
+    String transport;
+
+    @Param({"100"})
+    int containers;
+
+    private Path socketDir;
+    private FakeDockerEngine fake;
+    private FakeDockerApiServer api;
+    private DockerJavaEngine engine;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        fake = new FakeDockerEngine(containers, 10, 0);
+        socketDir = Files.createTempDirectory("jdocker-bench");
+        api = new FakeDockerApiServer(fake, transport.equals("unix")
+                ? "unix://" + socketDir.resolve("docker.sock") : "tcp://127.0.0.1:0").start();
+        EngineConfig config = new EngineConfig();
+        config.setDockerHost(api.getUri());
+        engine = new DockerJavaEngine("local", config, new Metrics());
+        engine.ping();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        engine.close();
+        api.close();
+        fake.close();
+        Files.deleteIfExists(socketDir);
+    }
+
+    @Benchmark
+    public void ping() {
+        engine.ping();
+    }
+
+    @Benchmark
+    public List<ContainerInfo> listContainers() {
+        return engine.listContainers();
+    }
+
+    // connexions concurrentes : le pool garde une connexion persistante par thread
+    @Benchmark
+    @Threads(8)
+    public void pingConcurrent() {
+        engine.ping();
+    }
+}
@@ -0,0 +1,525 @@
+package com.jdocker.benchmarks;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.jdocker.server.ContainerInfo;
+import com.jdocker.server.DockerEngine;
+import com.jdocker.server.EngineEvent;
+import com.jdocker.server.ImageInfo;
+import com.jdocker.server.LogListener;
+import com.jdocker.server.LogOptions;
+import com.jdocker.server.ServerLog;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Minimal Docker Engine HTTP API in front of a {@link DockerEngine} (usually the {@link FakeDockerEngine}),
+ * listening on a Unix domain socket or on TCP, so the real docker-java transport can be measured
+ * without a Docker host:
+ * <pre>
+ *   java -cp ... com.jdocker.benchmarks.FakeDockerApiServer unix:///tmp/fake-docker.sock "fake://?containers=100"
+ *   java -Djdocker.engine.host=unix:///tmp/fake-docker.sock -cp ... com.jdocker.server.DockerServer
+ * </pre>
+ * Covers the calls made by {@link DockerJavaEngine} except stats: ping, container and image lists,
+ * create/start/stop/rename/pause/remove, pull, events and logs. One thread per connection, keep-alive;
+ * streamed responses (pull, events, logs) are chunked and close the connection when they end.
+ */
+public class FakeDockerApiServer implements Closeable {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final DockerEngine engine;
+    private final ServerSocketChannel server;
+    private final String uri;
+    private final Path socketFile;
+    private final AtomicInteger connections = new AtomicInteger();
+    private volatile boolean closed;
+
+    /** {@code listen}: {@code unix:///path/to.sock} or {@code tcp://host:port} (port 0 = any free port). */
+    public FakeDockerApiServer(DockerEngine engine, String listen) throws IOException {
+        this.engine = engine;
+        URI address = URI.create(listen);
+        if ("unix".equals(address.getScheme())) {
+            socketFile = Path.of(address.getPath());
+            Files.deleteIfExists(socketFile);
+            server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+            server.bind(UnixDomainSocketAddress.of(socketFile));
+            uri = "unix://" + socketFile;
+        } else if ("tcp".equals(address.getScheme())) {
+            socketFile = null;
+            server = ServerSocketChannel.open();
+            server.bind(new InetSocketAddress(address.getHost(), Math.max(0, address.getPort())));
+            uri = "tcp://" + address.getHost() + ":" + ((InetSocketAddress) server.getLocalAddress()).getPort();
+        } else {
+            throw new IllegalArgumentException("Unsupported listen address (unix:// or tcp://): " + listen);
+        }
+    }
+
+    /** Address to give to {@code jdocker.engine.host}. */
+    public String getUri() {
+        return uri;
+    }
+
+    public FakeDockerApiServer start() {
+        Thread acceptor = new Thread(this::acceptLoop, "fake-docker-api");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        return this;
+    }
+
+    private void acceptLoop() {
+        while (!closed) {
+            SocketChannel channel;
+            try {
+                channel = server.accept();
+            } catch (IOException e) {
+                if (!closed) {
+                    ServerLog.warn("FAKE", "Accept failed: " + e.getMessage());
+                }
+                return;
+            }
+            if (socketFile == null) {
+                try {
+                    // comme le démon Docker (Go) : pas d'algorithme de Nagle
+                    channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                } catch (IOException ignored) {
+                }
+            }
+            Thread t = new Thread(() -> serve(channel), "fake-docker-api-" + connections.incrementAndGet());
+            t.setDaemon(true);
+            t.start();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        server.close();
+        if (socketFile != null) {
+            Files.deleteIfExists(socketFile);
+        }
+    }
+
+    // ---- HTTP ----
+
+    private void serve(SocketChannel channel) {
+        try (channel) {
+            InputStream in = new BufferedInputStream(inputStream(channel));
+            OutputStream out = new BufferedOutputStream(outputStream(channel));
+            String line;
+            while ((line = readLine(in)) != null) {
+                if (line.isEmpty()) {
+                    continue;
+                }
+                String[] requestLine = line.split(" ");
+                Map<String, String> headers = new HashMap<>();
+                String header;
+                while ((header = readLine(in)) != null && !header.isEmpty()) {
+                    int colon = header.indexOf(':');
+                    if (colon > 0) {
+                        headers.put(header.substring(0, colon).trim().toLowerCase(), header.substring(colon + 1).trim());
+                    }
+                }
+                byte[] body = readBody(in, headers);
+                if (!handle(requestLine[0], requestLine[1], body, in, out)) {
+                    return; // flux terminé : connexion fermée
+                }
+            }
+        } catch (IOException ignored) {
+        }
+    }
+
+    // true = keep-alive, false = the connection must be closed
+    private boolean handle(String method, String target, byte[] body, InputStream in, OutputStream out)
+            throws IOException {
+        int q = target.indexOf('?');
+        String path = q < 0 ? target : target.substring(0, q);
+        Map<String, String> query = q < 0 ? Map.of() : query(target.substring(q + 1));
+        if (path.matches("/v1\\.\\d+/.*")) {
+            path = path.substring(path.indexOf('/', 1));
+        }
+        String[] parts = path.substring(1).split("/");
+        try {
+            if (method.equals("GET") && path.equals("/_ping")) {
+                engine.ping();
+                respond(out, 200, "text/plain", "OK".getBytes(StandardCharsets.UTF_8));
+            } else if (method.equals("GET") && path.equals("/version")) {
+                respondJson(out, 200, MAPPER.createObjectNode().put("Version", "fake").put("ApiVersion", "1.41"));
+            } else if (method.equals("GET") && path.equals("/containers/json")) {
+                respondJson(out, 200, containers(query.get("filters")));
+            } else if (method.equals("GET") && path.equals("/images/json")) {
+                ArrayNode images = MAPPER.createArrayNode();
+                for (ImageInfo image : engine.listImages()) {
+                    ObjectNode node = images.addObject().put("Id", image.getId()).put("Size", image.getSize());
+                    node.putArray("RepoTags").add(image.getRepository() + ":" + image.getTag());
+                }
+                respondJson(out, 200, images);
+            } else if (method.equals("POST") && path.equals("/containers/create")) {
+                String image = MAPPER.readTree(body).path("Image").asText();
+                respondJson(out, 201, MAPPER.createObjectNode().put("Id", engine.createContainer(image, query.get("name"))));
+            } else if (method.equals("POST") && parts.length == 3 && parts[0].equals("containers") && parts[2].equals("start")) {
+                engine.startContainer(parts[1]);
+                respond(out, 204, null, null);
+            } else if (method.equals("POST") && parts.length == 3 && parts[0].equals("containers") && parts[2].equals("stop")) {
+                engine.stopContainer(parts[1]);
+                respond(out, 204, null, null);
+            } else if (method.equals("POST") && parts.length == 3 && parts[0].equals("containers") && parts[2].equals("rename")) {
+                engine.renameContainer(parts[1], query.get("name"));
+                respond(out, 204, null, null);
+            } else if (method.equals("POST") && parts.length == 3 && parts[0].equals("containers") && parts[2].equals("pause")) {
+                engine.pauseContainer(parts[1]);
+                respond(out, 204, null, null);
+            } else if (method.equals("POST") && parts.length == 3 && parts[0].equals("containers") && parts[2].equals("unpause")) {
+                engine.unpauseContainer(parts[1]);
+                respond(out, 204, null, null);
+            } else if (method.equals("DELETE") && parts.length == 2 && parts[0].equals("containers")) {
+                engine.removeContainer(parts[1]);
+                respond(out, 204, null, null);
+            } else if (method.equals("POST") && path.equals("/images/create")) {
+                pull(query, out);
+                return false;
+            } else if (method.equals("GET") && path.equals("/events")) {
+                events(in, out);
+                return false;
+            } else if (method.equals("GET") && parts.length == 3 && parts[0].equals("containers") && parts[2].equals("logs")) {
+                logs(parts[1], query, in, out);
+                return false;
+            } else {
+                respondJson(out, 404, MAPPER.createObjectNode().put("message", "page not found: " + method + " " + path));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (RuntimeException e) {
+            // le moteur factice signale un id inconnu par une exception
+            int status = e.getMessage() != null && e.getMessage().startsWith("No such") ? 404 : 500;
+            respondJson(out, status, MAPPER.createObjectNode().put("message", String.valueOf(e.getMessage())));
+        }
+        return true;
+    }
+
+    private ArrayNode containers(String filters) throws IOException {
+        JsonNode ids = filters == null ? null : MAPPER.readTree(filters).get("id");
+        ArrayNode result = MAPPER.createArrayNode();
+        for (ContainerInfo c : engine.listContainers()) {
+            if (ids != null && !contains(ids, c.getId())) {
+                continue;
+            }
+            ObjectNode node = result.addObject().put("Id", c.getId()).put("Image", c.getImage())
+                    .put("State", c.getState()).put("Created", c.getCreated());
+            node.putArray("Names").add(c.getName().startsWith("/") ? c.getName() : "/" + c.getName());
+            ObjectNode labels = node.putObject("Labels");
+            c.getLabels().forEach(labels::put);
+        }
+        return result;
+    }
+
+    private static boolean contains(JsonNode values, String id) {
+        for (JsonNode v : values) {
+            if (id.startsWith(v.asText())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void pull(Map<String, String> query, OutputStream out) throws IOException, InterruptedException {
+        String image = query.get("fromImage");
+        String tag = query.getOrDefault("tag", "latest");
+        startChunked(out, "application/json");
+        engine.pullImage(image, tag, p -> {
+            ObjectNode node = MAPPER.createObjectNode().put("status", p.getStatus());
+            if (p.getLayerId() != null) {
+                node.put("id", p.getLayerId());
+            }
+            if (p.getCurrent() != null) {
+                node.putObject("progressDetail").put("current", p.getCurrent()).put("total", p.getTotal());
+            }
+            chunk(out, (node + "\r\n").getBytes(StandardCharsets.UTF_8));
+        });
+        // lignes finales du démon, vérifiées par PullImageResultCallback
+        chunk(out, (MAPPER.createObjectNode().put("status", "Digest: sha256:fake") + "\r\n").getBytes(StandardCharsets.UTF_8));
+        chunk(out, (MAPPER.createObjectNode().put("status", "Status: Downloaded newer image for " + image + ":" + tag)
+                + "\r\n").getBytes(StandardCharsets.UTF_8));
+        endChunked(out);
+    }
+
+    private void events(InputStream in, OutputStream out) throws IOException {
+        startChunked(out, "application/json");
+        Closeable stream = engine.events(new DockerEngine.EventListener() {
+            @Override
+            public void onEvent(EngineEvent event) {
+                ObjectNode node = MAPPER.createObjectNode()
+                        .put("Type", event.getType().name().toLowerCase())
+                        .put("Action", event.getAction())
+                        .put("id", event.getId())
+                        .put("time", event.getTime());
+                ObjectNode actor = node.putObject("Actor").put("ID", event.getId());
+                ObjectNode attributes = actor.putObject("Attributes");
+                event.getAttributes().forEach(attributes::put);
+                chunk(out, (node + "\n").getBytes(StandardCharsets.UTF_8));
+            }
+
+            @Override
+            public void onEnd(Throwable error) {
+                closeQuietly(out);
+            }
+        });
+        awaitClientClose(in, stream);
+    }
+
+    // trames multiplexées de Docker : [flux 1][0 0 0][taille 4][charge utile]
+    private void logs(String id, Map<String, String> query, InputStream in, OutputStream out) throws IOException {
+        boolean stdout = truthy(query.get("stdout"));
+        boolean stderr = truthy(query.get("stderr"));
+        LogOptions.Stream stream = stdout && stderr ? LogOptions.Stream.ALL
+                : stderr ? LogOptions.Stream.STDERR : LogOptions.Stream.STDOUT;
+        String tail = query.get("tail");
+        String since = query.get("since");
+        Integer tailLines = tail == null || tail.equals("all") ? null : Integer.valueOf(tail);
+        Integer sinceSeconds = since == null || since.equals("0") ? null : Integer.valueOf(since);
+        byte streamType = (byte) (stream == LogOptions.Stream.STDERR ? 2 : 1);
+        Closeable handle = engine.logs(id, tailLines, sinceSeconds, truthy(query.get("follow")), stream, new LogListener() {
+            private boolean started;
+
+            @Override
+            public void onLine(String line) {
+                start();
+                byte[] payload = (line + "\n").getBytes(StandardCharsets.UTF_8);
+                ByteBuffer frame = ByteBuffer.allocate(8 + payload.length);
+                frame.put(streamType).put(new byte[3]).putInt(payload.length).put(payload);
+                chunk(out, frame.array());
+            }
+
+            @Override
+            public void onEnd(Throwable error) {
+                start();
+                try {
+                    endChunked(out);
+                } catch (IOException ignored) {
+                }
+                closeQuietly(out);
+            }
+
+            // en-têtes envoyés au premier message : un id inconnu donne encore une 404 ordinaire
+            private void start() {
+                if (!started) {
+                    started = true;
+                    try {
+                        startChunked(out, "application/vnd.docker.raw-stream");
+                    } catch (IOException ignored) {
+                    }
+                }
+            }
+        });
+        awaitClientClose(in, handle);
+    }
+
+    // le client ferme la connexion pour arrêter un flux ; la fin du flux côté moteur ferme la sortie
+    private static void awaitClientClose(InputStream in, Closeable stream) {
+        try {
+            while (in.read() >= 0) {
+                // rien à lire pendant un flux
+            }
+        } catch (IOException ignored) {
+        } finally {
+            try {
+                stream.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    private static boolean truthy(String value) {
+        return "1".equals(value) || "true".equalsIgnoreCase(value);
+    }
+
+    private static void respondJson(OutputStream out, int status, JsonNode json) throws IOException {
+        respond(out, status, "application/json", MAPPER.writeValueAsBytes(json));
+    }
+
+    private static void respond(OutputStream out, int status, String contentType, byte[] body) throws IOException {
+        StringBuilder head = new StringBuilder("HTTP/1.1 ").append(status).append(' ').append(reason(status)).append("\r\n");
+        if (contentType != null) {
+            head.append("Content-Type: ").append(contentType).append("\r\n");
+        }
+        head.append("Content-Length: ").append(body == null ? 0 : body.length).append("\r\n\r\n");
+        synchronized (out) {
+            out.write(head.toString().getBytes(StandardCharsets.ISO_8859_1));
+            if (body != null) {
+                out.write(body);
+            }
+            out.flush();
+        }
+    }
+
+    private static void startChunked(OutputStream out, String contentType) throws IOException {
+        synchronized (out) {
+            out.write(("HTTP/1.1 200 OK\r\nContent-Type: " + contentType
+                    + "\r\nTransfer-Encoding: chunked\r\nConnection: close\r\n\r\n").getBytes(StandardCharsets.ISO_8859_1));
+            out.flush();
+        }
+    }
+
+    // appelé depuis les threads du moteur : une erreur d'écriture veut dire que le client est parti
+    private static void chunk(OutputStream out, byte[] data) {
+        synchronized (out) {
+            try {
+                out.write((Integer.toHexString(data.length) + "\r\n").getBytes(StandardCharsets.ISO_8859_1));
+                out.write(data);
+                out.write("\r\n".getBytes(StandardCharsets.ISO_8859_1));
+                out.flush();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    private static void endChunked(OutputStream out) throws IOException {
+        synchronized (out) {
+            out.write("0\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1));
+            out.flush();
+        }
+    }
+
+    private static void closeQuietly(OutputStream out) {
+        try {
+            out.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    private static String reason(int status) {
+        switch (status) {
+            case 200:
+                return "OK";
+            case 201:
+                return "Created";
+            case 204:
+                return "No Content";
+            case 404:
+                return "Not Found";
+            default:
+                return "Internal Server Error";
+        }
+    }
+
+    private static Map<String, String> query(String query) {
+        Map<String, String> params = new HashMap<>();
+        for (String pair : query.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq > 0) {
+                params.put(URLDecoder.decode(pair.substring(0, eq), StandardCharsets.UTF_8),
+                        URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8));
+            }
+        }
+        return params;
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream(128);
+        int b;
+        while ((b = in.read()) >= 0) {
+            if (b == '\n') {
+                int n = line.size();
+                byte[] bytes = line.toByteArray();
+                return new String(bytes, 0, n > 0 && bytes[n - 1] == '\r' ? n - 1 : n, StandardCharsets.ISO_8859_1);
+            }
+            line.write(b);
+        }
+        return line.size() == 0 ? null : line.toString(StandardCharsets.ISO_8859_1);
+    }
+
+    private static byte[] readBody(InputStream in, Map<String, String> headers) throws IOException {
+        if ("chunked".equalsIgnoreCase(headers.get("transfer-encoding"))) {
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            int size;
+            while ((size = Integer.parseInt(readLine(in).split(";")[0].trim(), 16)) > 0) {
+                body.write(in.readNBytes(size));
+                readLine(in);
+            }
+            readLine(in);
+            return body.toByteArray();
+        }
+        String length = headers.get("content-length");
+        return length == null ? new byte[0] : in.readNBytes(Integer.parseInt(length));
+    }
+
+    // flux directs sur le canal : lecture et écriture concurrentes possibles pendant un flux
+    // (Channels.newInputStream/newOutputStream partagent un verrou en mode bloquant)
+    private static InputStream inputStream(SocketChannel channel) {
+        return new InputStream() {
+            @Override
+            public int read() throws IOException {
+                byte[] one = new byte[1];
+                return read(one, 0, 1) < 0 ? -1 : one[0] & 0xff;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                return channel.read(ByteBuffer.wrap(b, off, len));
+            }
+        };
+    }
+
+    private static OutputStream outputStream(SocketChannel channel) {
+        return new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[]{(byte) b}, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                ByteBuffer buffer = ByteBuffer.wrap(b, off, len);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            }
+
+            @Override
+            public void close() throws IOException {
+                channel.close();
+            }
+        };
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.out.println("Usage: FakeDockerApiServer <unix:///path.sock | tcp://host:port> [fake://?containers=..]");
+            return;
+        }
+        FakeDockerEngine engine = FakeDockerEngine.fromUri(args.length > 1 ? args[1] : FakeDockerEngine.SCHEME);
+        FakeDockerApiServer server = new FakeDockerApiServer(engine, args[0]).start();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                server.close();
+            } catch (IOException ignored) {
+            }
+        }));
+        ServerLog.info("FAKE", "Docker API on " + server.getUri());
+        Thread.currentThread().join();
+    }
+}
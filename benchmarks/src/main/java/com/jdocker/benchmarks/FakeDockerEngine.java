@@ -0,0 +1,558 @@
+package com.jdocker.benchmarks;
+
+import com.jdocker.server.ContainerInfo;
+import com.jdocker.server.DockerEngine;
+import com.jdocker.server.EngineEvent;
+import com.jdocker.server.ExecListener;
+import com.jdocker.server.ImageInfo;
+import com.jdocker.server.LogListener;
+import com.jdocker.server.LogOptions;
+import com.jdocker.server.PullProgress;
+import com.jdocker.server.StatsSample;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * In-memory {@link DockerEngine}: N containers and M images, a fixed latency per call,
+ * generated log lines and stats samples. Used to measure the server without a Docker host
+ * (benchmarks, load tests). Streams are delivered from their own threads, like the real client.
+ */
+public class FakeDockerEngine implements DockerEngine {
+
+    public static final String SCHEME = "fake://";
+
+    private static final int LOG_HISTORY = 100;
+
+    private final long latencyNanos;
+    private static final AtomicInteger INSTANCES = new AtomicInteger();
+
+    // ids reproductibles d'une exécution à l'autre, distincts entre deux moteurs du même processus
+    private final Random random = new Random(42 + INSTANCES.getAndIncrement());
+    private final Map<String, ContainerInfo> containers = new ConcurrentHashMap<>();
+    private final Map<String, ImageInfo> images = new ConcurrentHashMap<>();
+    private final Map<String, List<LogListener>> followers = new ConcurrentHashMap<>();
+    private final Map<String, List<Consumer<StatsSample>>> statsListeners = new ConcurrentHashMap<>();
+    private final List<EventListener> eventListeners = new CopyOnWriteArrayList<>();
+    private final Map<String, List<FakeExec>> execs = new ConcurrentHashMap<>();
+    private final AtomicInteger nameCounter = new AtomicInteger();
+    private final LongAdder requests = new LongAdder();
+
+    private final ExecutorService streamThreads;
+    private final ScheduledExecutorService ticker;
+
+    public FakeDockerEngine(int containerCount, int imageCount, long latencyMicros) {
+        this.latencyNanos = TimeUnit.MICROSECONDS.toNanos(latencyMicros);
+        AtomicInteger counter = new AtomicInteger();
+        this.streamThreads = Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "fake-engine-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        this.ticker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "fake-engine-ticker");
+            t.setDaemon(true);
+            return t;
+        });
+        long now = System.currentTimeMillis() / 1000;
+        for (int i = 0; i < imageCount; i++) {
+            String id = "sha256:" + newId();
+            images.put(id, new ImageInfo(id, "fake/image" + i, "latest", 50L * 1024 * 1024));
+        }
+        for (int i = 0; i < containerCount; i++) {
+            String id = newId();
+            Map<String, String> labels = Map.of("app", "app" + (i % 10));
+            containers.put(id, new ContainerInfo(id, "/fake-" + nameCounter.incrementAndGet(),
+                    "fake/image" + (imageCount == 0 ? 0 : i % imageCount) + ":latest", "running", labels, now - i));
+        }
+        ticker.scheduleAtFixedRate(this::emitStats, 1, 1, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Builds an engine from {@code fake://?containers=100&images=10&latencyMicros=200&logRate=10}
+     * (every parameter optional), the form accepted by {@code jdocker.engine.host}.
+     */
+    public static FakeDockerEngine fromUri(String uri) {
+        Map<String, String> params = new HashMap<>();
+        int query = uri.indexOf('?');
+        if (query >= 0) {
+            for (String pair : uri.substring(query + 1).split("&")) {
+                int eq = pair.indexOf('=');
+                if (eq > 0) {
+                    params.put(pair.substring(0, eq), pair.substring(eq + 1));
+                }
+            }
+        }
+        try {
+            FakeDockerEngine engine = new FakeDockerEngine(
+                    Integer.parseInt(params.getOrDefault("containers", "100")),
+                    Integer.parseInt(params.getOrDefault("images", "10")),
+                    Long.parseLong(params.getOrDefault("latencyMicros", "200")));
+            engine.setLogRate(Integer.parseInt(params.getOrDefault("logRate", "10")));
+            return engine;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid fake engine URI: " + uri);
+        }
+    }
+
+    /** Every following log stream receives {@code linesPerSecond} generated lines per second. */
+    public void setLogRate(int linesPerSecond) {
+        if (linesPerSecond <= 0) {
+            return;
+        }
+        long periodMicros = Math.max(1, 1_000_000L / linesPerSecond);
+        AtomicInteger seq = new AtomicInteger();
+        ticker.scheduleAtFixedRate(() -> {
+            for (String id : followers.keySet()) {
+                int n = seq.incrementAndGet();
+                // une ligne sur dix en erreur, sur stderr
+                if (n % 10 == 0) {
+                    emitLog(id, "ERROR fake log line " + n, true);
+                } else {
+                    emitLog(id, "INFO fake log line " + n, false);
+                }
+            }
+        }, periodMicros, periodMicros, TimeUnit.MICROSECONDS);
+    }
+
+    /** Pushes one stdout line to every following log stream of a container, on the calling thread. */
+    public void emitLog(String id, String line) {
+        emitLog(id, line, false);
+    }
+
+    public void emitLog(String id, String line, boolean stderr) {
+        List<LogListener> listeners = followers.get(id);
+        if (listeners != null) {
+            for (LogListener listener : listeners) {
+                if (!(listener instanceof OneStream) || ((OneStream) listener).stderr == stderr) {
+                    listener.onLine(line);
+                }
+            }
+        }
+    }
+
+    public List<String> getContainerIds() {
+        return new ArrayList<>(containers.keySet());
+    }
+
+    @Override
+    public void ping() {
+        call();
+    }
+
+    @Override
+    public List<ContainerInfo> listContainers() {
+        call();
+        return new ArrayList<>(containers.values());
+    }
+
+    @Override
+    public ContainerInfo inspectContainer(String id) {
+        call();
+        return containers.get(id);
+    }
+
+    @Override
+    public List<ImageInfo> listImages() {
+        call();
+        return new ArrayList<>(images.values());
+    }
+
+    @Override
+    public String createContainer(String image, String name) {
+        call();
+        for (ContainerInfo c : containers.values()) {
+            if (c.getShortName().equals(name)) {
+                throw new IllegalStateException("Conflict. The container name \"/" + name + "\" is already in use");
+            }
+        }
+        String id = newId();
+        containers.put(id, new ContainerInfo(id, "/" + name, image, "created", null, System.currentTimeMillis() / 1000));
+        Map<String, String> attributes = new HashMap<>();
+        attributes.put("name", name);
+        attributes.put("image", image);
+        fire("create", id, attributes);
+        return id;
+    }
+
+    @Override
+    public void startContainer(String id) {
+        call();
+        setState(id, "running", "start");
+    }
+
+    @Override
+    public void stopContainer(String id) {
+        call();
+        setState(id, "exited", "die");
+    }
+
+    @Override
+    public void renameContainer(String id, String newName) {
+        call();
+        ContainerInfo old = containers.get(id);
+        if (old == null) {
+            throw noSuchContainer(id);
+        }
+        for (ContainerInfo c : containers.values()) {
+            if (c.getShortName().equals(newName) && !c.getId().equals(id)) {
+                throw new IllegalStateException("Conflict. The container name \"/" + newName + "\" is already in use");
+            }
+        }
+        containers.put(id, old.withName("/" + newName));
+        fire("rename", id, Map.of("name", newName, "oldName", old.getName()));
+    }
+
+    @Override
+    public void pauseContainer(String id) {
+        call();
+        setState(id, "paused", "pause");
+    }
+
+    @Override
+    public void unpauseContainer(String id) {
+        call();
+        setState(id, "running", "unpause");
+    }
+
+    @Override
+    public void removeContainer(String id) {
+        call();
+        if (containers.remove(id) == null) {
+            throw noSuchContainer(id);
+        }
+        endStreams(id);
+        fire("destroy", id, Map.of());
+    }
+
+    @Override
+    public void pullImage(String image, String tag, Consumer<PullProgress> progress) throws InterruptedException {
+        call();
+        for (int layer = 0; layer < 3; layer++) {
+            String layerId = "layer" + layer;
+            for (long done = 0; done <= 4; done++) {
+                progress.accept(new PullProgress(layerId, "Downloading", done * 1024 * 1024, 4L * 1024 * 1024, null));
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+                LockSupport.parkNanos(latencyNanos);
+            }
+            progress.accept(new PullProgress(layerId, "Pull complete", null, null, null));
+        }
+        String id = "sha256:" + newId();
+        images.put(id, new ImageInfo(id, image, tag, 50L * 1024 * 1024));
+        for (EventListener listener : eventListeners) {
+            listener.onEvent(new EngineEvent(EngineEvent.Type.IMAGE, "pull", image + ":" + tag, Map.of(),
+                    System.currentTimeMillis() / 1000));
+        }
+    }
+
+    @Override
+    public Closeable logs(String id, Integer tail, Integer since, boolean follow, LogOptions.Stream stream,
+                          LogListener target) {
+        call();
+        LogListener listener = stream == LogOptions.Stream.ALL ? target
+                : new OneStream(target, stream == LogOptions.Stream.STDERR);
+        ContainerInfo container = containers.get(id);
+        if (container == null) {
+            throw noSuchContainer(id);
+        }
+        // l'historique simulé est considéré antérieur à tout "since" (reprise sans doublons)
+        int history = since != null ? 0 : tail == null ? LOG_HISTORY : Math.min(tail, LOG_HISTORY);
+        streamThreads.execute(() -> {
+            if (stream != LogOptions.Stream.STDERR) {
+                for (int i = LOG_HISTORY - history; i < LOG_HISTORY; i++) {
+                    listener.onLine(container.getShortName() + " history line " + i);
+                }
+            }
+            if (follow) {
+                followers.computeIfAbsent(id, k -> new CopyOnWriteArrayList<>()).add(listener);
+            } else {
+                listener.onEnd(null);
+            }
+        });
+        return () -> {
+            List<LogListener> listeners = followers.get(id);
+            if (listeners != null) {
+                listeners.remove(listener);
+            }
+        };
+    }
+
+    @Override
+    public Closeable stats(String id, Consumer<StatsSample> onSample, Consumer<Throwable> onEnd) {
+        call();
+        if (!containers.containsKey(id)) {
+            throw noSuchContainer(id);
+        }
+        statsListeners.computeIfAbsent(id, k -> new CopyOnWriteArrayList<>()).add(onSample);
+        return () -> {
+            List<Consumer<StatsSample>> listeners = statsListeners.get(id);
+            if (listeners != null) {
+                listeners.remove(onSample);
+            }
+        };
+    }
+
+    /**
+     * Simulated commands: {@code echo args...} prints its arguments, {@code yes [text]} repeats a line
+     * until detached, {@code cat} and the shells copy stdin to stdout until it ends; anything else
+     * exits with 127. Stopping the container ends them with 137.
+     */
+    @Override
+    public Closeable exec(String id, List<String> cmd, boolean tty, InputStream stdin, ExecListener listener) {
+        call();
+        ContainerInfo container = containers.get(id);
+        if (container == null) {
+            throw noSuchContainer(id);
+        }
+        if (!"running".equals(container.getState())) {
+            throw new IllegalStateException("Container " + id + " is not running");
+        }
+        if (cmd.isEmpty()) {
+            throw new IllegalArgumentException("No command specified");
+        }
+        FakeExec exec = new FakeExec(id, cmd, tty, stdin, listener);
+        execs.computeIfAbsent(id, k -> new CopyOnWriteArrayList<>()).add(exec);
+        streamThreads.execute(exec);
+        return exec;
+    }
+
+    @Override
+    public Closeable events(EventListener listener) {
+        eventListeners.add(listener);
+        return () -> eventListeners.remove(listener);
+    }
+
+    @Override
+    public Map<String, Number> getTransportStats() {
+        Map<String, Number> stats = new LinkedHashMap<>();
+        stats.put("requests", requests.sum());
+        stats.put("latencyMicros", TimeUnit.NANOSECONDS.toMicros(latencyNanos));
+        return stats;
+    }
+
+    @Override
+    public void close() {
+        ticker.shutdownNow();
+        streamThreads.shutdownNow();
+        for (EventListener listener : eventListeners) {
+            listener.onEnd(null);
+        }
+        eventListeners.clear();
+    }
+
+    // simulated engine round-trip
+    private void call() {
+        requests.increment();
+        if (latencyNanos > 0) {
+            LockSupport.parkNanos(latencyNanos);
+        }
+    }
+
+    private void setState(String id, String state, String action) {
+        ContainerInfo old = containers.get(id);
+        if (old == null) {
+            throw noSuchContainer(id);
+        }
+        containers.put(id, old.withState(state));
+        if (!"running".equals(state) && !"paused".equals(state)) {
+            endStreams(id);
+        }
+        fire(action, id, Map.of("name", old.getShortName()));
+    }
+
+    private void endStreams(String id) {
+        List<LogListener> listeners = followers.remove(id);
+        if (listeners != null) {
+            for (LogListener listener : listeners) {
+                listener.onEnd(null);
+            }
+        }
+        statsListeners.remove(id);
+        List<FakeExec> running = execs.remove(id);
+        if (running != null) {
+            for (FakeExec exec : running) {
+                exec.kill();
+            }
+        }
+    }
+
+    private final class FakeExec implements Runnable, Closeable {
+        final String containerId;
+        final List<String> cmd;
+        final boolean tty;
+        final InputStream stdin;
+        final ExecListener listener;
+        Thread runner;                        // guarded by this
+        volatile boolean killed;
+        volatile boolean detached;
+
+        FakeExec(String containerId, List<String> cmd, boolean tty, InputStream stdin, ExecListener listener) {
+            this.containerId = containerId;
+            this.cmd = cmd;
+            this.tty = tty;
+            this.stdin = stdin;
+            this.listener = listener;
+        }
+
+        @Override
+        public void run() {
+            Long exitCode = null;
+            Throwable error = null;
+            synchronized (this) {
+                runner = Thread.currentThread();
+            }
+            try {
+                if (killed || detached) {
+                    throw new InterruptedIOException();
+                }
+                exitCode = execute();
+            } catch (InterruptedIOException e) {
+                exitCode = 137L;
+            } catch (IOException e) {
+                error = e;
+            } finally {
+                synchronized (this) {
+                    runner = null;
+                    Thread.interrupted(); // le thread retourne au pool sans interruption en suspens
+                }
+                List<FakeExec> running = execs.get(containerId);
+                if (running != null) {
+                    running.remove(this);
+                }
+            }
+            if (!detached) {
+                listener.onExit(exitCode, error);
+            }
+        }
+
+        private long execute() throws IOException {
+            String program = cmd.get(0);
+            String args = String.join(" ", cmd.subList(1, cmd.size()));
+            switch (program) {
+                case "echo":
+                    print(args + "\n", false);
+                    return 0;
+                case "yes": {
+                    byte[] line = ((args.isEmpty() ? "y" : args) + "\n").getBytes(StandardCharsets.UTF_8);
+                    while (!killed && !detached && !Thread.currentThread().isInterrupted()) {
+                        listener.onOutput(false, line, 0, line.length);
+                    }
+                    throw new InterruptedIOException();
+                }
+                case "cat":
+                case "sh":
+                case "bash": {
+                    byte[] buffer = new byte[8192];
+                    int n;
+                    while ((n = stdin.read(buffer)) >= 0) {
+                        if (killed || detached) {
+                            throw new InterruptedIOException();
+                        }
+                        listener.onOutput(false, buffer, 0, n);
+                    }
+                    return 0;
+                }
+                default:
+                    print(program + ": not found\n", true);
+                    return 127;
+            }
+        }
+
+        // avec un tty, le moteur ne distingue plus stdout de stderr
+        private void print(String text, boolean stderr) {
+            byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+            listener.onOutput(stderr && !tty, bytes, 0, bytes.length);
+        }
+
+        void kill() {
+            killed = true;
+            interrupt();
+        }
+
+        @Override
+        public void close() {
+            detached = true;
+            interrupt();
+        }
+
+        private synchronized void interrupt() {
+            if (runner != null) {
+                runner.interrupt();
+            }
+        }
+    }
+
+    // abonné à un seul des deux flux
+    private static final class OneStream implements LogListener {
+        final LogListener delegate;
+        final boolean stderr;
+
+        OneStream(LogListener delegate, boolean stderr) {
+            this.delegate = delegate;
+            this.stderr = stderr;
+        }
+
+        @Override
+        public void onLine(String line) {
+            delegate.onLine(line);
+        }
+
+        @Override
+        public void onEnd(Throwable error) {
+            delegate.onEnd(error);
+        }
+    }
+
+        private void fire(String action, String id, Map<String, String> attributes) {
+        EngineEvent event = new EngineEvent(EngineEvent.Type.CONTAINER, action, id, attributes,
+                System.currentTimeMillis() / 1000);
+        for (EventListener listener : eventListeners) {
+            listener.onEvent(event);
+        }
+    }
+
+    private void emitStats() {
+        long t = System.currentTimeMillis() / 1000;
+        for (Map.Entry<String, List<Consumer<StatsSample>>> entry : statsListeners.entrySet()) {
+            int h = entry.getKey().hashCode();
+            StatsSample sample = new StatsSample((h & 0xff) % 100 / 2.0 + (t % 5), 64L * 1024 * 1024 + (h & 0xffff),
+                    t * 1000, t * 500, t * 100, t * 200);
+            for (Consumer<StatsSample> listener : entry.getValue()) {
+                listener.accept(sample);
+            }
+        }
+    }
+
+    private synchronized String newId() {
+        StringBuilder id = new StringBuilder(64);
+        while (id.length() < 64) {
+            id.append(String.format("%016x", random.nextLong()));
+        }
+        return id.toString();
+    }
+
+    private static IllegalArgumentException noSuchContainer(String id) {
+        return new IllegalArgumentException("No such container: " + id);
+    }
+}
@@ -0,0 +1,40 @@
+package com.jdocker.benchmarks;
+
+import com.jdocker.common.Response;
+import com.jdocker.server.ContainerStateCache;
+import com.jdocker.server.ResponseSink;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Shared helpers: a response sink that only counts, and a wait for the state cache seed.
+ */
+final class Fixtures {
+
+    private Fixtures() {
+    }
+
+    static final class CountingSink implements ResponseSink {
+        final LongAdder received = new LongAdder();
+
+        @Override
+        public void send(Response response) {
+            received.increment();
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+    }
+
+    static void awaitSynced(ContainerStateCache cache) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 30_000;
+        while (!cache.isSynced()) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new IllegalStateException("State cache did not sync");
+            }
+            Thread.sleep(10);
+        }
+    }
+}
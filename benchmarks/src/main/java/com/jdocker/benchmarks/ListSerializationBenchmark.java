@@ -0,0 +1,81 @@
+package com.jdocker.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.jdocker.common.Response;
+import com.jdocker.common.WireFormat;
+import com.jdocker.server.DockerService;
+import com.jdocker.server.ListQuery;
+import com.jdocker.server.Metrics;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * LIST_CONTAINERS: building the list (cached full listing vs filtered/projected query)
+ * and encoding it in each wire format.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ListSerializationBenchmark {
+
+    @Param({"100", "10000"})
+    int containers;
+
+    @Param({"LINE", "SMILE"})
+    WireFormat format;
+
+    private FakeDockerEngine engine;
+    private DockerService service;
+    private ListQuery everything;
+    private ListQuery filtered;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        engine = new FakeDockerEngine(containers, 10, 0);
+        service = new DockerService(engine, new Metrics());
+        long deadline = System.currentTimeMillis() + 30_000;
+        while (service.handleListContainers().path("containers").size() < containers) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new IllegalStateException("State cache did not sync");
+            }
+            Thread.sleep(10);
+        }
+        everything = ListQuery.fromJson(null);
+        filtered = ListQuery.fromJson(new ObjectMapper()
+                .readTree("{\"label\":\"app=app3\",\"fields\":[\"id\",\"name\",\"state\"]}"));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        service.close();
+    }
+
+    @Benchmark
+    public byte[] cachedList() throws Exception {
+        ObjectNode body = service.handleListContainers(everything, null);
+        return format.encode(Response.of("OK", "Containers list", body));
+    }
+
+    @Benchmark
+    public byte[] filteredList() throws Exception {
+        ObjectNode body = service.handleListContainers(filtered, null);
+        return format.encode(Response.of("OK", "Containers list", body));
+    }
+}
@@ -0,0 +1,639 @@
+package com.jdocker.benchmarks;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.jdocker.common.Request;
+import com.jdocker.common.Response;
+import com.jdocker.common.WireFormat;
+import com.jdocker.server.DockerServer;
+import com.jdocker.server.DockerService;
+import com.jdocker.server.Metrics;
+import com.jdocker.server.ServerConfig;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Headless load generator for the socket protocol.
+ * <p>
+ * Opens N connections and replays a weighted mix of LIST_CONTAINERS, START/STOP_CONTAINER and
+ * STREAM_LOGS at a fixed total rate (open loop: requests are sent on schedule, not after the previous
+ * response). Latency is measured from the time a request <em>should</em> have been sent, so a stalled
+ * server is charged for the requests it delayed (coordinated-omission correction); the uncorrected
+ * send-to-response latency is reported next to it.
+ * <p>
+ * With {@code --embedded} the server runs in-process over a {@link FakeDockerEngine}: no Docker host needed.
+ */
+public class LoadGenerator {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    // ---- options ----
+
+    private String host = "127.0.0.1";
+    private int port = 5000;
+    private WireFormat format = WireFormat.LINE;
+    private int connections = 50;
+    private int rate = 1000;              // requêtes/s, toutes connexions confondues
+    private int durationSeconds = 30;
+    private int warmupSeconds = 5;
+    private int maxInFlight = 32;         // par connexion, comme le serveur
+    private int logHoldSeconds = 5;       // durée de vie d'un abonnement STREAM_LOGS
+    private final Map<Op, Integer> mix = new LinkedHashMap<>();
+    private Integer embeddedContainers;   // non null = serveur embarqué
+    private long embeddedLatencyMicros = 200;
+    private String embeddedMode = "nio";
+
+    enum Op { LIST, STARTSTOP, LOGS }
+
+    public static void main(String[] args) throws Exception {
+        LoadGenerator generator = new LoadGenerator();
+        try {
+            generator.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+            usage();
+            return;
+        }
+        generator.run();
+    }
+
+    private static void usage() {
+        System.out.println("Usage: LoadGenerator [--host=127.0.0.1] [--port=5000] [--format=line|smile]");
+        System.out.println("       [--connections=50] [--rate=1000] [--duration=30] [--warmup=5] [--maxInFlight=32]");
+        System.out.println("       [--mix=list=70,startstop=20,logs=10] [--logHold=5]");
+        System.out.println("       [--embedded[=containers]] [--engineLatencyMicros=200] [--serverMode=nio|classic]");
+    }
+
+    private void parse(String[] args) {
+        mix.put(Op.LIST, 70);
+        mix.put(Op.STARTSTOP, 20);
+        mix.put(Op.LOGS, 10);
+        for (String arg : args) {
+            if (!arg.startsWith("--")) {
+                throw new IllegalArgumentException("Argument inconnu : " + arg);
+            }
+            int eq = arg.indexOf('=');
+            String key = eq < 0 ? arg.substring(2) : arg.substring(2, eq);
+            String value = eq < 0 ? null : arg.substring(eq + 1);
+            switch (key) {
+                case "host": host = value; break;
+                case "port": port = Integer.parseInt(value); break;
+                case "format":
+                    format = WireFormat.forName(value);
+                    if (format == null) {
+                        throw new IllegalArgumentException("Protocole inconnu : " + value);
+                    }
+                    break;
+                case "connections": connections = Integer.parseInt(value); break;
+                case "rate": rate = Integer.parseInt(value); break;
+                case "duration": durationSeconds = Integer.parseInt(value); break;
+                case "warmup": warmupSeconds = Integer.parseInt(value); break;
+                case "maxInFlight": maxInFlight = Integer.parseInt(value); break;
+                case "logHold": logHoldSeconds = Integer.parseInt(value); break;
+                case "mix": parseMix(value); break;
+                case "embedded": embeddedContainers = value == null ? 1000 : Integer.parseInt(value); break;
+                case "engineLatencyMicros": embeddedLatencyMicros = Long.parseLong(value); break;
+                case "serverMode": embeddedMode = value; break;
+                default:
+                    throw new IllegalArgumentException("Option inconnue : --" + key);
+            }
+        }
+        if (connections <= 0 || rate <= 0 || durationSeconds <= 0 || maxInFlight <= 0) {
+            throw new IllegalArgumentException("connections, rate, duration et maxInFlight doivent être > 0");
+        }
+    }
+
+    private void parseMix(String value) {
+        mix.clear();
+        for (String part : value.split(",")) {
+            String[] kv = part.split("=");
+            if (kv.length != 2) {
+                throw new IllegalArgumentException("Mix invalide : " + value);
+            }
+            mix.put(Op.valueOf(kv[0].trim().toUpperCase()), Integer.parseInt(kv[1].trim()));
+        }
+    }
+
+    // ---- run ----
+
+    private void run() throws Exception {
+        DockerServer embedded = null;
+        if (embeddedContainers != null) {
+            embedded = startEmbedded();
+        }
+        try {
+            List<String> targets = fetchContainerNames();
+            if (targets.isEmpty() && (weight(Op.STARTSTOP) > 0 || weight(Op.LOGS) > 0)) {
+                System.out.println("Aucun conteneur sur le serveur : START/STOP et STREAM_LOGS retirés du mix.");
+                mix.put(Op.STARTSTOP, 0);
+                mix.put(Op.LOGS, 0);
+            }
+            if (mix.values().stream().mapToInt(Integer::intValue).sum() <= 0) {
+                System.out.println("Mix vide.");
+                return;
+            }
+            System.out.println("Cible " + host + ":" + port + " (" + format.name().toLowerCase() + "), "
+                    + connections + " connexions, " + rate + " req/s, mix " + mix
+                    + ", warmup " + warmupSeconds + "s, mesure " + durationSeconds + "s");
+
+            long start = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(200);
+            long measureFrom = start + TimeUnit.SECONDS.toNanos(warmupSeconds);
+            long end = measureFrom + TimeUnit.SECONDS.toNanos(durationSeconds);
+
+            List<Connection> conns = new ArrayList<>();
+            for (int i = 0; i < connections; i++) {
+                Connection c = new Connection(i, targets, start, measureFrom, end);
+                c.open();
+                conns.add(c);
+            }
+            for (Connection c : conns) {
+                c.startThreads();
+            }
+
+            report(conns, start, end);
+        } finally {
+            if (embedded != null) {
+                embedded.stop();
+            }
+        }
+    }
+
+    private int weight(Op op) {
+        return mix.getOrDefault(op, 0);
+    }
+
+    private DockerServer startEmbedded() throws Exception {
+        try (ServerSocket probe = new ServerSocket(0)) {
+            port = probe.getLocalPort();
+        }
+        host = "127.0.0.1";
+        FakeDockerEngine engine = new FakeDockerEngine(embeddedContainers, 10, embeddedLatencyMicros);
+        engine.setLogRate(10);
+        ServerConfig config = ServerConfig.fromSystemProperties();
+        config.setMode(ServerConfig.Mode.valueOf(embeddedMode.toUpperCase()));
+        config.setMaxConnections(Math.max(config.getMaxConnections(), connections + 16));
+        DockerServer server = new DockerServer(port, config, new DockerService(engine, new Metrics()));
+        Thread thread = new Thread(() -> {
+            try {
+                server.start();
+            } catch (IOException e) {
+                System.out.println("Serveur embarqué arrêté : " + e.getMessage());
+            }
+        }, "embedded-server");
+        thread.setDaemon(true);
+        thread.start();
+
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (true) {
+            try (Socket ignored = new Socket(host, port)) {
+                break;
+            } catch (IOException e) {
+                if (System.currentTimeMillis() > deadline) {
+                    throw e;
+                }
+                Thread.sleep(50);
+            }
+        }
+        System.out.println("Serveur embarqué (" + embeddedMode + ") sur le port " + port + ", moteur factice : "
+                + embeddedContainers + " conteneurs, " + embeddedLatencyMicros + " µs par appel");
+        return server;
+    }
+
+    private List<String> fetchContainerNames() throws IOException {
+        try (Socket socket = new Socket(host, port)) {
+            InputStream in = new BufferedInputStream(socket.getInputStream());
+            OutputStream out = new BufferedOutputStream(socket.getOutputStream());
+            WireFormat wire = handshake(in, out);
+            Request request = new Request("LIST_CONTAINERS", null, "0");
+            ObjectNode payload = MAPPER.createObjectNode();
+            payload.putArray("fields").add("name");
+            request.setBody(payload);
+            out.write(wire.encode(request));
+            out.flush();
+            byte[] message;
+            while ((message = wire.read(in)) != null) {
+                Response response = wire.decode(message, Response.class);
+                if (!"0".equals(response.getId())) {
+                    continue;
+                }
+                if (!"OK".equals(response.getStatus())) {
+                    throw new IOException("LIST_CONTAINERS: " + response.getMessage());
+                }
+                List<String> names = new ArrayList<>();
+                for (JsonNode c : body(response).path("containers")) {
+                    String name = c.path("name").asText();
+                    names.add(name.startsWith("/") ? name.substring(1) : name);
+                }
+                return names;
+            }
+            throw new IOException("Connexion fermée par le serveur");
+        }
+    }
+
+    // HELLO reste en JSON ligne ; retourne le format effectivement utilisé
+    private WireFormat handshake(InputStream in, OutputStream out) throws IOException {
+        if (format == WireFormat.LINE) {
+            return WireFormat.LINE;
+        }
+        Request hello = new Request("HELLO", null);
+        hello.setBody(MAPPER.createObjectNode().put("protocol", format.name().toLowerCase()));
+        out.write(WireFormat.LINE.encode(hello));
+        out.flush();
+        byte[] reply = WireFormat.LINE.read(in);
+        Response response = reply == null ? null : WireFormat.LINE.decode(reply, Response.class);
+        if (response == null || !"OK".equals(response.getStatus())) {
+            throw new IOException("Protocole " + format + " refusé : "
+                    + (response == null ? "connexion fermée" : response.getMessage()));
+        }
+        return format;
+    }
+
+    private static JsonNode body(Response response) throws IOException {
+        if (response.getBody() != null) {
+            return response.getBody();
+        }
+        return response.getData() == null ? MAPPER.createObjectNode() : MAPPER.readTree(response.getData());
+    }
+
+    // ---- report ----
+
+    private void report(List<Connection> conns, long start, long end) throws InterruptedException {
+        long sleepUntil = end + TimeUnit.SECONDS.toNanos(5); // laisse le temps aux dernières réponses
+        while (System.nanoTime() < sleepUntil) {
+            long now = System.nanoTime();
+            if (now > end && conns.stream().allMatch(c -> c.pending.isEmpty())) {
+                break;
+            }
+            Thread.sleep(1000);
+            long sent = 0, done = 0, errors = 0, inFlight = 0;
+            for (Connection c : conns) {
+                sent += c.sent.get();
+                done += c.completed.get();
+                errors += c.errors.get();
+                inFlight += c.pending.size();
+            }
+            double elapsed = Math.max(0, System.nanoTime() - start) / 1e9;
+            System.out.printf("[%5.1fs] envoyées=%d terminées=%d erreurs=%d en vol=%d%n",
+                    elapsed, sent, done, errors, inFlight);
+        }
+
+        Map<String, Samples> byAction = new TreeMap<>();
+        Samples all = new Samples();
+        long lost = 0, logLines = 0, busy = 0;
+        for (Connection c : conns) {
+            c.close();
+            lost += c.pending.size();
+            logLines += c.logLines.get();
+            busy += c.busy ? 1 : 0;
+        }
+        for (Connection c : conns) {
+            try {
+                c.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            for (Map.Entry<String, Samples> e : c.samples.entrySet()) {
+                byAction.computeIfAbsent(e.getKey(), k -> new Samples()).addAll(e.getValue());
+                all.addAll(e.getValue());
+            }
+        }
+
+        double seconds = durationSeconds;
+        System.out.println();
+        System.out.printf("Débit mesuré : %.1f réponses/s (cible %d req/s), %d lignes de log reçues%n",
+                all.count / seconds, rate, logLines);
+        if (lost > 0 || busy > 0) {
+            System.out.println("Sans réponse : " + lost + ", connexions refusées (busy) : " + busy);
+        }
+        System.out.println("Latences en ms, corrigées (depuis l'heure d'envoi prévue) ; entre parenthèses : non corrigées");
+        System.out.printf("%-20s %9s %7s %18s %18s %18s %10s%n", "action", "réponses", "erreurs",
+                "p50", "p99", "p999", "max");
+        for (Map.Entry<String, Samples> e : byAction.entrySet()) {
+            print(e.getKey(), e.getValue());
+        }
+        print("TOTAL", all);
+    }
+
+    private static void print(String label, Samples s) {
+        s.sort();
+        System.out.printf("%-20s %9d %7d %18s %18s %18s %10.2f%n", label, s.count, s.errors,
+                pair(s, 0.50), pair(s, 0.99), pair(s, 0.999), s.corrected(1.0) / 1e6);
+    }
+
+    private static String pair(Samples s, double q) {
+        return String.format("%.2f (%.2f)", s.corrected(q) / 1e6, s.raw(q) / 1e6);
+    }
+
+    /** Latency samples of one action, in nanoseconds; filled by a single reader thread. */
+    static final class Samples {
+        long[] corrected = new long[1024];
+        long[] raw = new long[1024];
+        int count;
+        long errors;
+
+        void add(long correctedNanos, long rawNanos) {
+            if (count == corrected.length) {
+                corrected = Arrays.copyOf(corrected, count * 2);
+                raw = Arrays.copyOf(raw, count * 2);
+            }
+            corrected[count] = correctedNanos;
+            raw[count] = rawNanos;
+            count++;
+        }
+
+        void addAll(Samples other) {
+            for (int i = 0; i < other.count; i++) {
+                add(other.corrected[i], other.raw[i]);
+            }
+            errors += other.errors;
+        }
+
+        void sort() {
+            Arrays.sort(corrected, 0, count);
+            Arrays.sort(raw, 0, count);
+        }
+
+        long corrected(double q) {
+            return at(corrected, q);
+        }
+
+        long raw(double q) {
+            return at(raw, q);
+        }
+
+        private long at(long[] sorted, double q) {
+            if (count == 0) {
+                return 0;
+            }
+            int index = (int) Math.ceil(q * count) - 1;
+            return sorted[Math.max(0, Math.min(count - 1, index))];
+        }
+    }
+
+    private static final class Pending {
+        final String action;
+        final long intended;
+        final long sent;
+        final boolean measured;
+
+        Pending(String action, long intended, long sent, boolean measured) {
+            this.action = action;
+            this.intended = intended;
+            this.sent = sent;
+            this.measured = measured;
+        }
+    }
+
+    private static final class PendingStop {
+        final long deadline;
+        final String subscriptionId;
+
+        PendingStop(long deadline, String subscriptionId) {
+            this.deadline = deadline;
+            this.subscriptionId = subscriptionId;
+        }
+    }
+
+    // ---- one connection: a sender on schedule, a reader matching responses by id ----
+
+    private final class Connection {
+        final int index;
+        final List<String> targets;
+        final long start;
+        final long measureFrom;
+        final long end;
+        final long period;
+        final Random random;
+
+        final Map<String, Pending> pending = new ConcurrentHashMap<>();
+        final Map<String, Samples> samples = new LinkedHashMap<>(); // reader thread only
+        final Semaphore window = new Semaphore(maxInFlight);
+        final AtomicLong sent = new AtomicLong();
+        final AtomicLong completed = new AtomicLong();
+        final AtomicLong errors = new AtomicLong();
+        final AtomicLong logLines = new AtomicLong();
+        final ArrayDeque<PendingStop> stopQueue = new ArrayDeque<>();
+        volatile boolean busy;
+
+        Socket socket;
+        InputStream in;
+        OutputStream out;
+        WireFormat wire;
+        Thread sender;
+        Thread reader;
+        long nextId = 1;
+        boolean stopNext;
+
+        Connection(int index, List<String> targets, long start, long measureFrom, long end) {
+            this.index = index;
+            this.targets = targets;
+            // la connexion i envoie les requêtes i, i+N, i+2N... du planning global
+            this.period = TimeUnit.SECONDS.toNanos(1) * connections / rate;
+            this.start = start + TimeUnit.SECONDS.toNanos(1) * index / rate;
+            this.measureFrom = measureFrom;
+            this.end = end;
+            this.random = new Random(index);
+        }
+
+        void open() throws IOException {
+            socket = new Socket(host, port);
+            socket.setTcpNoDelay(true);
+            in = new BufferedInputStream(socket.getInputStream());
+            out = new BufferedOutputStream(socket.getOutputStream());
+            wire = handshake(in, out);
+        }
+
+        void startThreads() {
+            sender = new Thread(this::sendLoop, "load-send-" + index);
+            reader = new Thread(this::readLoop, "load-read-" + index);
+            sender.setDaemon(true);
+            reader.setDaemon(true);
+            reader.start();
+            sender.start();
+        }
+
+        private void sendLoop() {
+            try {
+                for (long k = 0; ; k++) {
+                    long intended = start + k * period;
+                    if (intended >= end) {
+                        break;
+                    }
+                    long wait;
+                    while ((wait = intended - System.nanoTime()) > 0) {
+                        stopExpiredLogs();
+                        LockSupport.parkNanos(Math.min(wait, TimeUnit.MILLISECONDS.toNanos(10)));
+                    }
+                    stopExpiredLogs();
+                    // fenêtre pleine : on attend, le retard est compté dans la latence corrigée
+                    window.acquire();
+                    send(pick(), intended);
+                }
+                // fin de la mesure : on ferme les abonnements encore ouverts
+                synchronized (stopQueue) {
+                    for (PendingStop stop : stopQueue) {
+                        sendStopLogs(stop.subscriptionId);
+                    }
+                    stopQueue.clear();
+                }
+            } catch (InterruptedException | IOException e) {
+                // connexion fermée
+            }
+        }
+
+        private Op pick() {
+            int total = 0;
+            for (int w : mix.values()) {
+                total += w;
+            }
+            int r = random.nextInt(total);
+            for (Map.Entry<Op, Integer> e : mix.entrySet()) {
+                r -= e.getValue();
+                if (r < 0) {
+                    return e.getKey();
+                }
+            }
+            return Op.LIST;
+        }
+
+        private void send(Op op, long intended) throws IOException {
+            Request request;
+            ObjectNode payload = MAPPER.createObjectNode();
+            switch (op) {
+                case STARTSTOP:
+                    // alternance stop/start, sur un conteneur au hasard
+                    stopNext = !stopNext;
+                    payload.put("idOrName", targets.get(random.nextInt(targets.size())));
+                    request = new Request(stopNext ? "STOP_CONTAINER" : "START_CONTAINER", null);
+                    break;
+                case LOGS:
+                    payload.put("idOrName", targets.get(random.nextInt(targets.size())))
+                            .put("tail", 10).put("follow", true).put("batch", true);
+                    request = new Request("STREAM_LOGS", null);
+                    break;
+                default:
+                    request = new Request("LIST_CONTAINERS", null);
+                    break;
+            }
+            if (payload.size() > 0) {
+                request.setBody(payload);
+            }
+            String id = String.valueOf(nextId++);
+            request.setId(id);
+            byte[] bytes = wire.encode(request);
+            long now = System.nanoTime();
+            pending.put(id, new Pending(request.getAction(), intended, now, intended >= measureFrom));
+            synchronized (out) {
+                out.write(bytes);
+                out.flush();
+            }
+            sent.incrementAndGet();
+        }
+
+        private void stopExpiredLogs() throws IOException {
+            synchronized (stopQueue) {
+                long now = System.nanoTime();
+                while (!stopQueue.isEmpty() && stopQueue.peekFirst().deadline <= now) {
+                    sendStopLogs(stopQueue.pollFirst().subscriptionId);
+                }
+            }
+        }
+
+        private void sendStopLogs(String subscriptionId) throws IOException {
+            Request stop = new Request("STOP_LOGS", null, "stop-" + subscriptionId);
+            stop.setBody(MAPPER.createObjectNode().put("subscriptionId", subscriptionId));
+            byte[] bytes = wire.encode(stop);
+            synchronized (out) {
+                out.write(bytes);
+                out.flush();
+            }
+        }
+
+        private void readLoop() {
+            try {
+                byte[] message;
+                while ((message = wire.read(in)) != null) {
+                    long now = System.nanoTime();
+                    Response response = wire.decode(message, Response.class);
+                    String msg = response.getMessage();
+                    if ("LOG_LINE".equals(msg)) {
+                        logLines.incrementAndGet();
+                        continue;
+                    }
+                    if ("LOG_LINES".equals(msg)) {
+                        logLines.addAndGet(body(response).size());
+                        continue;
+                    }
+                    if (response.getId() == null) {
+                        if ("ERROR".equals(response.getStatus()) && msg != null && msg.startsWith("Server busy")) {
+                            busy = true;
+                        }
+                        continue;
+                    }
+                    Pending p = pending.remove(response.getId());
+                    if (p == null) {
+                        continue; // STOP_LOGS, LOG_END...
+                    }
+                    window.release();
+                    completed.incrementAndGet();
+                    boolean error = !"OK".equals(response.getStatus());
+                    if (error) {
+                        errors.incrementAndGet();
+                    } else if ("STREAM_LOGS".equals(p.action)) {
+                        scheduleStop(body(response).path("subscriptionId").asText(null), now);
+                    }
+                    if (p.measured && p.intended < end) {
+                        Samples s = samples.computeIfAbsent(p.action, k -> new Samples());
+                        s.add(now - p.intended, now - p.sent);
+                        if (error) {
+                            s.errors++;
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                // connexion fermée
+            }
+        }
+
+        private void scheduleStop(String subscriptionId, long now) {
+            if (subscriptionId == null) {
+                return;
+            }
+            synchronized (stopQueue) {
+                stopQueue.addLast(new PendingStop(now + TimeUnit.SECONDS.toNanos(logHoldSeconds), subscriptionId));
+            }
+        }
+
+        void close() {
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+            }
+        }
+
+        void join() throws InterruptedException {
+            sender.join(1000);
+            reader.join(1000);
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.jdocker.benchmarks;
+
+import com.jdocker.common.Request;
+import com.jdocker.common.Response;
+import com.jdocker.server.DockerService;
+import com.jdocker.server.Metrics;
+import com.jdocker.server.RequestDispatcher;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of one engine log line delivered to N STREAM_LOGS subscribers of the same container
+ * (shared upstream, per-subscriber queues, drop-oldest so a slow drain never blocks the engine thread).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LogFanoutBenchmark {
+
+    @Param({"1", "10", "100"})
+    int subscribers;
+
+    private FakeDockerEngine engine;
+    private DockerService service;
+    private ExecutorService executor;
+    private RequestDispatcher dispatcher;
+    private final List<Fixtures.CountingSink> sinks = new ArrayList<>();
+    private String containerId;
+    private long seq;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        engine = new FakeDockerEngine(1, 1, 0);
+        service = new DockerService(engine, new Metrics());
+        executor = Executors.newCachedThreadPool();
+        dispatcher = new RequestDispatcher(service, executor);
+        containerId = engine.getContainerIds().get(0);
+
+        String payload = "{\"idOrName\":\"" + containerId + "\",\"follow\":true,\"tail\":0,"
+                + "\"overflow\":\"DROP_OLDEST\"}";
+        for (int i = 0; i < subscribers; i++) {
+            Fixtures.CountingSink sink = new Fixtures.CountingSink();
+            Response response = dispatcher.handleRequest(new Request("STREAM_LOGS", payload, "s" + i), sink);
+            if (response != null) {
+                throw new IllegalStateException("STREAM_LOGS failed: " + response.getMessage());
+            }
+            sinks.add(sink);
+        }
+        Thread.sleep(200); // le flux amont est ouvert de façon asynchrone
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        for (Fixtures.CountingSink sink : sinks) {
+            dispatcher.connectionClosed(sink);
+        }
+        service.close();
+        executor.shutdownNow();
+    }
+
+    @Benchmark
+    public void emitLine() {
+        engine.emitLog(containerId, "benchmark line " + seq++);
+    }
+}
@@ -0,0 +1,88 @@
+package com.jdocker.benchmarks;
+
+import com.jdocker.common.Request;
+import com.jdocker.common.Response;
+import com.jdocker.common.WireFormat;
+import com.jdocker.server.DockerService;
+import com.jdocker.server.Metrics;
+import com.jdocker.server.RequestDispatcher;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One request round-trip without sockets: decode the frame, dispatch, encode the response.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProtocolBenchmark {
+
+    @Param({"LINE", "SMILE"})
+    WireFormat format;
+
+    @Param({"ENGINE_STATS", "LIST_IMAGES", "LIST_CONTAINERS"})
+    String action;
+
+    /** Parameters of the request: none, or a filter read by the LIST actions (ignored by ENGINE_STATS). */
+    @Param({"", "{\"state\":\"running\",\"name\":\"fake-*\",\"limit\":20,\"fields\":[\"id\",\"state\"]}"})
+    String payload;
+
+    private FakeDockerEngine engine;
+    private DockerService service;
+    private ExecutorService executor;
+    private RequestDispatcher dispatcher;
+    private final Fixtures.CountingSink sink = new Fixtures.CountingSink();
+    private byte[] message;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        engine = new FakeDockerEngine(100, 10, 0);
+        service = new DockerService(engine, new Metrics());
+        executor = Executors.newCachedThreadPool();
+        dispatcher = new RequestDispatcher(service, executor);
+        Thread.sleep(200); // seed du cache
+
+        Request request = new Request(action, null, "1");
+        if (!payload.isEmpty()) {
+            request.setBody(WireFormat.LINE.mapper().readTree(payload));
+        }
+        byte[] framed = format.encode(request);
+        // le benchmark part du message déjà découpé par le transport
+        message = format == WireFormat.LINE
+                ? Arrays.copyOf(framed, framed.length - 1)
+                : Arrays.copyOfRange(framed, 4, framed.length);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        service.close();
+        executor.shutdownNow();
+    }
+
+    @Benchmark
+    public byte[] roundTrip() throws Exception {
+        Request request = format.decode(message, Request.class);
+        Response response = dispatcher.handleRequest(request, sink);
+        response.setId(request.getId());
+        return format.encode(response);
+    }
+}
@@ -0,0 +1,74 @@
+package com.jdocker.benchmarks;
+
+import com.jdocker.server.ContainerStateCache;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Container id/name resolution in the state cache: full id, name, and short id prefix.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ResolveBenchmark {
+
+    @Param({"10", "1000", "100000"})
+    int containers;
+
+    private FakeDockerEngine engine;
+    private ContainerStateCache cache;
+    private String fullId;
+    private String name;
+    private String prefix;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        engine = new FakeDockerEngine(containers, 1, 0);
+        cache = new ContainerStateCache(engine);
+        cache.start();
+        Fixtures.awaitSynced(cache);
+        List<String> ids = engine.getContainerIds();
+        fullId = ids.get(ids.size() / 2);
+        name = cache.get(fullId).getShortName();
+        // 12 caractères, comme "docker ps"
+        prefix = fullId.substring(0, 12);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        cache.close();
+        engine.close();
+    }
+
+    @Benchmark
+    public String byFullId() {
+        return cache.resolveId(fullId);
+    }
+
+    @Benchmark
+    public String byName() {
+        return cache.resolveId(name);
+    }
+
+    @Benchmark
+    public String byPrefix() {
+        return cache.resolveId(prefix);
+    }
+}
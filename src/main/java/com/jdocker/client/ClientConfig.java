@@ -0,0 +1,122 @@
+package com.jdocker.client;
+
+import com.jdocker.common.WireFormat;
+
+import java.time.Duration;
+
+/**
+ * Settings of a {@link JDockerClient}.
+ * Values can be overridden with -Djdocker.client.* system properties.
+ */
+public class ClientConfig {
+
+    private String host = "127.0.0.1";
+    private int port = 5000;
+    private WireFormat format = WireFormat.LINE;
+    private int poolSize = 2;
+    private Duration connectTimeout = Duration.ofSeconds(5);
+    private Duration requestTimeout = Duration.ZERO;          // 0 = no timeout (pulls can be long)
+    private Duration maxReconnectDelay = Duration.ofSeconds(5);
+    private boolean compression;              // demande "deflate" au serveur
+    private int compressionThreshold = 512;   // octets ; les petites requêtes partent telles quelles
+    private int compressionLevel = 1;
+
+    public static ClientConfig fromSystemProperties() {
+        ClientConfig config = new ClientConfig();
+        config.setHost(System.getProperty("jdocker.client.host", config.getHost()));
+        config.setPort(Integer.getInteger("jdocker.client.port", config.getPort()));
+        WireFormat format = WireFormat.forName(System.getProperty("jdocker.client.format", config.getFormat().name()));
+        if (format != null) {
+            config.setFormat(format);
+        }
+        config.setPoolSize(Integer.getInteger("jdocker.client.poolSize", config.getPoolSize()));
+        config.setConnectTimeout(Duration.ofMillis(Long.getLong("jdocker.client.connectTimeoutMs",
+                config.getConnectTimeout().toMillis())));
+        config.setRequestTimeout(Duration.ofMillis(Long.getLong("jdocker.client.requestTimeoutMs",
+                config.getRequestTimeout().toMillis())));
+        config.setCompression(Boolean.getBoolean("jdocker.client.compression"));
+        config.setCompressionThreshold(Integer.getInteger("jdocker.client.compressionThreshold",
+                config.getCompressionThreshold()));
+        return config;
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    public void setHost(String host) {
+        this.host = host;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    public void setPort(int port) {
+        this.port = port;
+    }
+
+    public WireFormat getFormat() {
+        return format;
+    }
+
+    public void setFormat(WireFormat format) {
+        this.format = format;
+    }
+
+    public int getPoolSize() {
+        return poolSize;
+    }
+
+    public void setPoolSize(int poolSize) {
+        this.poolSize = poolSize;
+    }
+
+    public Duration getConnectTimeout() {
+        return connectTimeout;
+    }
+
+    public void setConnectTimeout(Duration connectTimeout) {
+        this.connectTimeout = connectTimeout;
+    }
+
+    public Duration getRequestTimeout() {
+        return requestTimeout;
+    }
+
+    public void setRequestTimeout(Duration requestTimeout) {
+        this.requestTimeout = requestTimeout;
+    }
+
+    public Duration getMaxReconnectDelay() {
+        return maxReconnectDelay;
+    }
+
+    public void setMaxReconnectDelay(Duration maxReconnectDelay) {
+        this.maxReconnectDelay = maxReconnectDelay;
+    }
+
+    public boolean isCompression() {
+        return compression;
+    }
+
+    public void setCompression(boolean compression) {
+        this.compression = compression;
+    }
+
+    public int getCompressionThreshold() {
+        return compressionThreshold;
+    }
+
+    public void setCompressionThreshold(int compressionThreshold) {
+        this.compressionThreshold = compressionThreshold;
+    }
+
+    public int getCompressionLevel() {
+        return compressionLevel;
+    }
+
+    public void setCompressionLevel(int compressionLevel) {
+        this.compressionLevel = compressionLevel;
+    }
+}
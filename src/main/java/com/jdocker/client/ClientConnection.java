@@ -0,0 +1,193 @@
+package com.jdocker.client;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.jdocker.common.CompressionStats;
+import com.jdocker.common.DeflateCodec;
+import com.jdocker.common.Request;
+import com.jdocker.common.Response;
+import com.jdocker.common.WireFormat;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * One socket to the server. Requests are written by the callers; a reader thread hands every
+ * response to the handler registered under its id, so many requests can be in flight at once.
+ */
+class ClientConnection {
+
+    /** Receives the responses of one request. */
+    interface Handler {
+        /** Returns true when the request is over (its handler is then dropped). */
+        boolean onResponse(Response response);
+
+        void onError(Throwable error);
+    }
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final Socket socket;
+    private final InputStream in;
+    private final OutputStream out;
+    private final WireFormat format;
+    private DeflateCodec codec;          // set once by the handshake
+    private final Map<String, Handler> handlers = new ConcurrentHashMap<>();
+    private volatile boolean closed;
+
+    ClientConnection(ClientConfig config, CompressionStats compressionStats, String name) throws IOException {
+        socket = new Socket();
+        socket.connect(new InetSocketAddress(config.getHost(), config.getPort()),
+                (int) config.getConnectTimeout().toMillis());
+        socket.setTcpNoDelay(true);
+        in = new BufferedInputStream(socket.getInputStream());
+        out = new BufferedOutputStream(socket.getOutputStream());
+        format = handshake(config, compressionStats);
+
+        Thread reader = new Thread(this::readLoop, name);
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    // négociation : HELLO et sa réponse sont toujours en JSON ligne ; repli sur LINE sans compression si refusé
+    private WireFormat handshake(ClientConfig config, CompressionStats compressionStats) throws IOException {
+        WireFormat wanted = config.getFormat();
+        if (wanted == WireFormat.LINE && !config.isCompression()) {
+            return WireFormat.LINE;
+        }
+        ObjectNode params = MAPPER.createObjectNode().put("protocol", wanted.name().toLowerCase());
+        if (config.isCompression()) {
+            params.put("compression", DeflateCodec.NAME);
+        }
+        Request hello = new Request("HELLO", null);
+        hello.setBody(params);
+        out.write(WireFormat.LINE.encode(hello));
+        out.flush();
+        byte[] reply = WireFormat.LINE.read(in);
+        if (reply == null) {
+            socket.close();
+            throw new IOException("Connection closed during handshake");
+        }
+        Response response = WireFormat.LINE.decode(reply, Response.class);
+        if (!"OK".equals(response.getStatus())) {
+            return WireFormat.LINE;
+        }
+        JsonNode selected = JDockerClient.body(response);
+        if (DeflateCodec.NAME.equals(selected.path("compression").asText())) {
+            codec = new DeflateCodec(config.getCompressionThreshold(), config.getCompressionLevel(), compressionStats);
+        }
+        return wanted;
+    }
+
+    WireFormat getFormat() {
+        return format;
+    }
+
+    boolean isCompressed() {
+        return codec != null;
+    }
+
+    boolean isOpen() {
+        return !closed;
+    }
+
+    int getInFlight() {
+        return handlers.size();
+    }
+
+    /** Registers the handler, then writes the request; a write failure is reported to the handler. */
+    void send(Request request, Handler handler) {
+        if (closed) {
+            handler.onError(new IOException("Connection closed"));
+            return;
+        }
+        handlers.put(request.getId(), handler);
+        try {
+            write(request);
+        } catch (IOException e) {
+            handlers.remove(request.getId());
+            handler.onError(e);
+            close();
+        }
+    }
+
+    /**
+     * Writes a request that gets no reply (EXEC_INPUT, EXEC_WINDOW): sent without id, so the server
+     * applies them in the order they were written.
+     */
+    void post(Request request) throws IOException {
+        if (closed) {
+            throw new IOException("Connection closed");
+        }
+        try {
+            write(request);
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    private void write(Request request) throws IOException {
+        synchronized (out) {
+            // encodé sous le verrou : avec deflate, l'ordre des trames compte
+            if (codec == null) {
+                format.write(request, out);
+            } else {
+                out.write(codec.encode(format.serialize(request)));
+            }
+            out.flush();
+        }
+    }
+
+    /** Forgets a request whose caller gave up (timeout); late responses are ignored. */
+    void abandon(String requestId) {
+        handlers.remove(requestId);
+    }
+
+    private void readLoop() {
+        IOException failure = null;
+        try {
+            byte[] message;
+            while ((message = codec == null ? format.read(in) : codec.read(in)) != null) {
+                Response response = format.decode(message, Response.class);
+                if (response.getId() == null) {
+                    continue; // "Server busy", requête invalide... : rien à corréler
+                }
+                Handler handler = handlers.get(response.getId());
+                if (handler != null && handler.onResponse(response)) {
+                    handlers.remove(response.getId(), handler);
+                }
+            }
+        } catch (IOException e) {
+            failure = e;
+        }
+        close();
+        IOException error = failure != null ? failure : new IOException("Connection closed by server");
+        List<Handler> orphans = new ArrayList<>(handlers.values());
+        handlers.clear();
+        for (Handler handler : orphans) {
+            handler.onError(error);
+        }
+    }
+
+    void close() {
+        closed = true;
+        try {
+            socket.close();
+        } catch (IOException ignored) {
+        }
+        if (codec != null) {
+            codec.close();
+        }
+    }
+}
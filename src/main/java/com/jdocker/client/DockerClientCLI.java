@@ -1,82 +1,88 @@
 package com.jdocker.client;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.jdocker.common.Request;
-import com.jdocker.common.Response;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.jdocker.common.CompressionStats;
+import com.jdocker.common.WireFormat;
 
-import java.io.*;
-import java.net.Socket;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Scanner;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 public class DockerClientCLI {
 
+    // abonnements en cours, pour stoplogs / stopstats / stopwatch (l'id change après une reconnexion)
+    private static final List<Subscription> SUBSCRIPTIONS = new CopyOnWriteArrayList<>();
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
     public static void main(String[] args) {
-        String host = "127.0.0.1";
-        int port = 5000;
+        ClientConfig config = ClientConfig.fromSystemProperties();
+        config.setPoolSize(1); // un seul utilisateur : une connexion suffit
 
         if (args.length >= 1) {
-            host = args[0];
+            config.setHost(args[0]);
         }
         if (args.length >= 2) {
-            port = Integer.parseInt(args[1]);
+            config.setPort(Integer.parseInt(args[1]));
+        }
+        if (args.length >= 3) {
+            WireFormat format = WireFormat.forName(args[2]);
+            if (format == null) {
+                System.out.println("Protocole inconnu : " + args[2] + " (line ou smile)");
+                return;
+            }
+            config.setFormat(format);
+        }
+        if (args.length >= 4) {
+            if (!"deflate".equalsIgnoreCase(args[3])) {
+                System.out.println("Compression inconnue : " + args[3] + " (deflate)");
+                return;
+            }
+            config.setCompression(true);
         }
 
-        ObjectMapper mapper = new ObjectMapper();
-
-        try (Socket socket = new Socket(host, port);
-             BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-             PrintWriter out = new PrintWriter(new OutputStreamWriter(socket.getOutputStream()), true);
+        try (JDockerClient client = new JDockerClient(config).connect();
              Scanner scanner = new Scanner(System.in)) {
 
-            System.out.println("Connecté au serveur " + host + ":" + port);
-            System.out.println("Commandes disponibles : images, containers, pull <image>[:tag], run <image> <name>, stop <name>, rm <name>, logs <name>, exit");
-
-            Thread readerThread = new Thread(() -> {
-                try {
-                    String line;
-                    while ((line = in.readLine()) != null) {
-                        try {
-                            Response response = mapper.readValue(line, Response.class);
-                            if ("LOG_LINE".equals(response.getMessage())) {
-                                if (response.getData() != null) {
-                                    System.out.println(response.getData());
-                                }
-                            } else {
-                                System.out.println("[SERVER] status=" + response.getStatus() + " message=" + response.getMessage());
-                                if (response.getData() != null) {
-                                    System.out.println("[DATA] " + response.getData());
-                                }
-                            }
-                        } catch (Exception e) {
-                            System.out.println("[SERVER RAW] " + line);
-                        }
-                    }
-                } catch (IOException e) {
-                    System.out.println("Connexion fermée par le serveur.");
-                }
-            });
-            readerThread.setDaemon(true);
-            readerThread.start();
+            System.out.println("Connecté au serveur " + config.getHost() + ":" + config.getPort());
+            if (config.isCompression()) {
+                System.out.println(client.isCompressed() ? "Compression : deflate"
+                        : "Compression refusée par le serveur, liaison non compressée.");
+            }
+            System.out.println("Commandes disponibles : images, containers, engines, pull <image>[:tag], job <jobId>, run <image> <name> [engine], stop <name...>, rm <name...>, logs <name> [tail] [motif], stoplogs <id>, stats <name...>, stopstats <id>, watch, stopwatch <id>, exec <name> <cmd...>, compression, exit");
 
             while (true) {
                 System.out.print("jdocker> ");
+                if (!scanner.hasNextLine()) {
+                    break;
+                }
                 String input = scanner.nextLine().trim();
                 if ("exit".equalsIgnoreCase(input)) {
                     break;
                 }
+                if (input.isEmpty()) {
+                    continue;
+                }
 
                 String[] parts = input.split("\\s+");
                 String cmd = parts[0].toLowerCase();
 
-                Request request;
                 switch (cmd) {
                     case "images":
-                        request = new Request("LIST_IMAGES", null);
+                        print(client.listImages());
                         break;
                     case "containers":
-                        request = new Request("LIST_CONTAINERS", null);
+                        print(client.listContainers());
+                        break;
+                    case "engines":
+                        print(client.listEngines());
                         break;
-                    case "pull":
+                    case "pull": {
                         if (parts.length < 2) {
                             System.out.println("Usage: pull <image>[:tag]");
                             continue;
@@ -89,56 +95,253 @@ public class DockerClientCLI {
                             image = imageArg.substring(0, colon);
                             tag = imageArg.substring(colon + 1);
                         }
-                        String pullPayload = String.format("{\"image\":\"%s\",\"tag\":\"%s\"}", image, tag);
-                        request = new Request("PULL_IMAGE", pullPayload);
+                        // job asynchrone : la progression s'affiche pendant que le prompt reste disponible
+                        print(client.pullImage(image, tag, null, DockerClientCLI::printPullProgress));
+                        break;
+                    }
+                    case "job":
+                        if (parts.length < 2) {
+                            System.out.println("Usage: job <jobId>");
+                            continue;
+                        }
+                        print(client.jobStatus(parts[1]));
                         break;
                     case "run":
                         if (parts.length < 3) {
-                            System.out.println("Usage: run <image> <name>");
+                            System.out.println("Usage: run <image> <name> [engine]");
                             continue;
                         }
-                        String runImage = parts[1];
-                        String runName = parts[2];
-                        String createPayload = String.format("{\"image\":\"%s\",\"name\":\"%s\"}", runImage, runName);
-                        request = new Request("RUN_CONTAINER", createPayload);
+                        print(client.runContainer(parts[1], parts[2], parts.length >= 4 ? parts[3] : null));
                         break;
                     case "stop":
                         if (parts.length < 2) {
-                            System.out.println("Usage: stop <nameOrId>");
+                            System.out.println("Usage: stop <nameOrId> [nameOrId...]");
                             continue;
                         }
-                        String stopName = parts[1];
-                        String stopPayload = String.format("{\"idOrName\":\"%s\"}", stopName);
-                        request = new Request("STOP_CONTAINER", stopPayload);
+                        // plusieurs conteneurs : une seule requête groupée
+                        print(parts.length > 2
+                                ? client.stopContainers(targets(parts), p -> System.out.println("[BULK] " + p))
+                                : client.stopContainer(parts[1]));
                         break;
                     case "rm":
                         if (parts.length < 2) {
-                            System.out.println("Usage: rm <nameOrId>");
+                            System.out.println("Usage: rm <nameOrId> [nameOrId...]");
                             continue;
                         }
-                        String rmName = parts[1];
-                        String rmPayload = String.format("{\"idOrName\":\"%s\"}", rmName);
-                        request = new Request("REMOVE_CONTAINER", rmPayload);
+                        print(parts.length > 2
+                                ? client.removeContainers(targets(parts), p -> System.out.println("[BULK] " + p))
+                                : client.removeContainer(parts[1]));
                         break;
-                    case "logs":
+                    case "logs": {
                         if (parts.length < 2) {
-                            System.out.println("Usage: logs <nameOrId>");
+                            System.out.println("Usage: logs <nameOrId> [tail] [motif]");
                             continue;
                         }
-                        String logName = parts[1];
-                        String logPayload = String.format("{\"idOrName\":\"%s\"}", logName);
-                        request = new Request("STREAM_LOGS", logPayload);
+                        ObjectNode logOptions = MAPPER.createObjectNode()
+                                .put("tail", parts.length >= 3 ? Integer.parseInt(parts[2]) : 100);
+                        if (parts.length >= 4) {
+                            // filtré côté serveur : seules les lignes correspondantes transitent
+                            logOptions.put("include", input.split("\\s+", 4)[3])
+                                    .put("ignoreCase", true);
+                        }
+                        track("LOGS", client.streamLogs(parts[1], logOptions, new JDockerClient.LogListener() {
+                            @Override
+                            public void onLines(List<String> lines) {
+                                lines.forEach(System.out::println);
+                            }
+
+                            @Override
+                            public void onDropped(long count) {
+                                System.out.println("[LOGS] lignes perdues : " + count);
+                            }
+
+                            @Override
+                            public void onSuppressed(long count) {
+                                System.out.println("[LOGS] " + count + " lignes non transmises (limite de débit)");
+                            }
+
+                            @Override
+                            public void onResubscribed(String subscriptionId) {
+                                System.out.println("[LOGS] reconnecté, nouvel abonnement " + subscriptionId);
+                            }
+
+                            @Override
+                            public void onEnd(Throwable error) {
+                                System.out.println("[LOGS] fin du flux" + (error == null ? "" : " : " + message(error)));
+                            }
+                        }));
                         break;
+                    }
+                    case "stats":
+                        if (parts.length < 2) {
+                            System.out.println("Usage: stats <nameOrId> [nameOrId...]");
+                            continue;
+                        }
+                        track("STATS", client.streamStats(targets(parts), "10s", new JDockerClient.StatsListener() {
+                            @Override
+                            public void onStats(JsonNode stats) {
+                                stats.path("containers").fields().forEachRemaining(c ->
+                                        System.out.println("[STATS] " + c.getKey() + " " + c.getValue()));
+                            }
+
+                            @Override
+                            public void onEnd(Throwable error) {
+                                System.out.println("[STATS] fin du flux" + (error == null ? "" : " : " + message(error)));
+                            }
+                        }));
+                        break;
+                    case "watch":
+                        track("WATCH", client.watchContainers(new JDockerClient.WatchListener() {
+                            @Override
+                            public void onSnapshot(long seq, JsonNode containers) {
+                                System.out.println("[WATCH] " + containers.size() + " conteneurs (seq " + seq + ")");
+                            }
+
+                            @Override
+                            public void onChanges(JsonNode changes) {
+                                for (JsonNode change : changes) {
+                                    System.out.println("[WATCH] #" + change.path("seq").asLong() + " "
+                                            + change.path("type").asText() + " " + change.path("id").asText().substring(0, 12)
+                                            + (change.has("container") ? " " + change.path("container").path("name").asText() : ""));
+                                }
+                            }
+
+                            @Override
+                            public void onEnd(Throwable error) {
+                                System.out.println("[WATCH] fin du flux" + (error == null ? "" : " : " + message(error)));
+                            }
+                        }));
+                        break;
+                    case "stoplogs":
+                    case "stopstats":
+                    case "stopwatch": {
+                        if (parts.length < 2) {
+                            System.out.println("Usage: " + cmd + " <subscriptionId>");
+                            continue;
+                        }
+                        Subscription subscription = SUBSCRIPTIONS.stream()
+                                .filter(s -> parts[1].equals(s.getId())).findFirst().orElse(null);
+                        if (subscription == null) {
+                            System.out.println("Abonnement inconnu : " + parts[1]);
+                            continue;
+                        }
+                        SUBSCRIPTIONS.remove(subscription);
+                        subscription.stop().whenComplete((ok, error) -> System.out.println(error == null
+                                ? "[SERVER] abonnement " + parts[1] + " arrêté"
+                                : "[SERVER] ERROR " + message(error)));
+                        break;
+                    }
+                    case "exec":
+                        if (parts.length < 3) {
+                            System.out.println("Usage: exec <nameOrId> <cmd> [args...]");
+                            continue;
+                        }
+                        exec(client, scanner, parts[1], Arrays.asList(parts).subList(2, parts.length));
+                        break;
+                    case "compression": {
+                        CompressionStats stats = client.getCompressionStats();
+                        System.out.printf("[COMPRESSION] envoyés : %d bruts, %d compressés (%d -> %d octets)%n",
+                                stats.getRawMessages(), stats.getDeflatedMessages(),
+                                stats.getDeflateInBytes(), stats.getDeflateOutBytes());
+                        System.out.printf("[COMPRESSION] reçus : %d -> %d octets, ratio %.2f, inflate %.1f ms%n",
+                                stats.getInflateInBytes(), stats.getInflateOutBytes(),
+                                stats.getInflateInBytes() == 0 ? 1.0 : (double) stats.getInflateOutBytes() / stats.getInflateInBytes(),
+                                stats.getInflateNanos() / 1e6);
+                        break;
+                    }
                     default:
-                        System.out.println("Commande inconnue. Utilisez: images, containers, pull, run, stop, rm, logs, exit");
-                        continue;
+                        System.out.println("Commande inconnue. Utilisez: images, containers, engines, pull, job, run, stop, rm, logs, stoplogs, stats, stopstats, watch, stopwatch, exec, compression, exit");
+                }
+            }
+        } catch (IOException e) {
+            System.out.println("Connexion impossible : " + e.getMessage());
+        }
+    }
+
+    // session interactive : chaque ligne tapée part sur stdin jusqu'à la fin de la commande ;
+    // "~." ferme stdin, "~~" arrête la session
+    private static void exec(JDockerClient client, Scanner scanner, String container, List<String> cmd) {
+        CompletableFuture<Long> exited = new CompletableFuture<>();
+        ExecSession session;
+        try {
+            session = client.exec(container, cmd, false, new JDockerClient.ExecListener() {
+                @Override
+                public void onOutput(boolean stderr, byte[] data) {
+                    (stderr ? System.err : System.out).write(data, 0, data.length);
+                    (stderr ? System.err : System.out).flush();
                 }
 
-                String json = mapper.writeValueAsString(request);
-                out.println(json);
+                @Override
+                public void onExit(Long exitCode, Throwable error) {
+                    System.out.println("[EXEC] terminé" + (exitCode != null ? ", code " + exitCode : "")
+                            + (error != null ? " : " + message(error) : "") + " (Entrée pour revenir au prompt)");
+                    exited.complete(exitCode);
+                }
+            }).join();
+        } catch (CompletionException e) {
+            System.out.println("[EXEC] ERROR " + message(e));
+            return;
+        }
+        System.out.println("[EXEC] session " + session.getId() + " (~. ferme l'entrée, ~~ arrête la session)");
+        try {
+            while (!exited.isDone() && scanner.hasNextLine()) {
+                String line = scanner.nextLine();
+                if (exited.isDone()) {
+                    break;
+                }
+                if ("~.".equals(line)) {
+                    session.closeInput();
+                } else if ("~~".equals(line)) {
+                    session.stop().join();
+                } else {
+                    session.write(line + "\n");
+                }
             }
         } catch (IOException e) {
-            e.printStackTrace();
+            System.out.println("[EXEC] ERROR " + e.getMessage());
+            session.stop();
         }
     }
+
+    // la réponse s'affiche quand elle arrive, le prompt reste disponible
+    private static void print(CompletableFuture<JsonNode> result) {
+        result.whenComplete((body, error) -> {
+            if (error != null) {
+                System.out.println("[SERVER] ERROR " + message(error));
+            } else {
+                System.out.println("[SERVER] OK");
+                if (body != null && !body.isNull()) {
+                    System.out.println("[DATA] " + body);
+                }
+            }
+        });
+    }
+
+    private static void track(String tag, CompletableFuture<Subscription> opened) {
+        opened.whenComplete((subscription, error) -> {
+            if (error != null) {
+                System.out.println("[" + tag + "] ERROR " + message(error));
+            } else {
+                SUBSCRIPTIONS.add(subscription);
+                System.out.println("[" + tag + "] abonnement " + subscription.getId());
+            }
+        });
+    }
+
+    private static void printPullProgress(JsonNode progress) {
+        for (JsonNode layer : progress.path("layers")) {
+            System.out.println("[PULL] " + layer.path("id").asText() + " "
+                    + layer.path("status").asText()
+                    + (layer.has("total") ? " " + layer.path("current").asLong() * 100 / Math.max(1, layer.path("total").asLong()) + "%" : ""));
+        }
+    }
+
+    private static List<String> targets(String[] parts) {
+        return Arrays.asList(parts).subList(1, parts.length);
+    }
+
+    private static String message(Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        return cause.getMessage();
+    }
 }
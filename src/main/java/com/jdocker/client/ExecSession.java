@@ -0,0 +1,156 @@
+package com.jdocker.client;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.jdocker.common.Request;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A command running in a container (EXEC). Every output chunk handed to the listener is granted
+ * back to the server, so the listener's pace is the command's pace. Input beyond the stdin window
+ * granted by the server is queued here and sent as the command consumes what it already has.
+ * A session does not survive a lost connection: the listener then gets {@code onExit(null, error)}.
+ */
+public class ExecSession implements Closeable {
+
+    interface Stopper {
+        CompletableFuture<JsonNode> stop(ExecSession session);
+    }
+
+    private static final int MAX_INPUT_FRAME = 32 * 1024;
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final ClientConnection connection;
+    private final String id;
+    private final JDockerClient.ExecListener listener;
+    private final Stopper stopper;
+    private final long grantThreshold;
+    private final AtomicBoolean ended = new AtomicBoolean();
+
+    private final ArrayDeque<byte[]> pending = new ArrayDeque<>();  // guarded by this
+    private long inputWindow;                                       // guarded by this
+    private boolean inputClosed;                                    // guarded by this
+    private boolean eofSent;                                        // guarded by this
+    private long received;   // sortie pas encore rendue au serveur, thread lecteur uniquement
+
+    ExecSession(ClientConnection connection, String id, long inputWindow, long outputWindow,
+                JDockerClient.ExecListener listener, Stopper stopper) {
+        this.connection = connection;
+        this.id = id;
+        this.inputWindow = inputWindow;
+        this.grantThreshold = Math.max(1, outputWindow / 4);
+        this.listener = listener;
+        this.stopper = stopper;
+    }
+
+    /** Server-side session id ("exec-7"). */
+    public String getId() {
+        return id;
+    }
+
+    public boolean isEnded() {
+        return ended.get();
+    }
+
+    /** Sends bytes to the command's stdin, now or once the server has room for them. */
+    public synchronized void write(byte[] data) throws IOException {
+        if (inputClosed || ended.get()) {
+            throw new IOException("Input of " + id + " is closed");
+        }
+        if (data.length > 0) {
+            pending.addLast(data.clone());
+            flush();
+        }
+    }
+
+    public void write(String text) throws IOException {
+        write(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** Ends the command's stdin once the queued input has been sent. */
+    public synchronized void closeInput() throws IOException {
+        inputClosed = true;
+        flush();
+    }
+
+    /** Sends STOP_EXEC; the listener then receives {@code onExit(null, null)}. */
+    public CompletableFuture<Void> stop() {
+        if (ended.get()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return stopper.stop(this).handle((body, error) -> {
+            end(null, null);
+            return null;
+        });
+    }
+
+    @Override
+    public void close() {
+        stop();
+    }
+
+    // sous le verrou : les EXEC_INPUT partent dans l'ordre des écritures
+    private void flush() throws IOException {
+        while (!pending.isEmpty() && inputWindow > 0) {
+            byte[] head = pending.pollFirst();
+            int n = (int) Math.min(head.length, Math.min(inputWindow, MAX_INPUT_FRAME));
+            if (n < head.length) {
+                pending.addFirst(Arrays.copyOfRange(head, n, head.length));
+                head = Arrays.copyOf(head, n);
+            }
+            inputWindow -= n;
+            post(head, inputClosed && pending.isEmpty());
+        }
+        if (inputClosed && !eofSent && pending.isEmpty()) {
+            post(new byte[0], true);
+        }
+    }
+
+    private void post(byte[] data, boolean eof) throws IOException {
+        ObjectNode payload = MAPPER.createObjectNode().put("sessionId", id).put("data", data);
+        if (eof) {
+            payload.put("eof", true);
+            eofSent = true;
+        }
+        Request request = new Request("EXEC_INPUT", null);
+        request.setBody(payload);
+        connection.post(request);
+    }
+
+    // ---- appelées par le thread lecteur de la connexion ----
+
+    void onOutput(JsonNode body) throws IOException {
+        byte[] data = body.path("data").binaryValue();
+        if (data == null) {
+            return;
+        }
+        listener.onOutput("stderr".equals(body.path("stream").asText()), data);
+        received += data.length;
+        if (received >= grantThreshold) {
+            Request request = new Request("EXEC_WINDOW", null);
+            request.setBody(MAPPER.createObjectNode().put("sessionId", id).put("bytes", received));
+            received = 0;
+            connection.post(request);
+        }
+    }
+
+    synchronized void onInputWindow(long bytes) throws IOException {
+        inputWindow += bytes;
+        flush();
+    }
+
+    void end(Long exitCode, Throwable error) {
+        if (ended.compareAndSet(false, true)) {
+            listener.onExit(exitCode, error);
+        }
+    }
+}
@@ -0,0 +1,776 @@
+package com.jdocker.client;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.jdocker.common.CompressionStats;
+import com.jdocker.common.Request;
+import com.jdocker.common.Response;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Asynchronous client of the socket protocol.
+ * <p>
+ * Keeps a small pool of connections; requests are spread round-robin and many can be in flight
+ * on each connection (responses are matched by request id). Every call returns a
+ * {@link CompletableFuture} of the response body; an ERROR reply completes it with a
+ * {@link JDockerException}, a lost connection with an {@link IOException}. Requests are never
+ * replayed (START/STOP are not idempotent): a dead connection is simply reopened on next use.
+ * <p>
+ * Log and stats streams survive a reconnect: they are re-subscribed in the background with
+ * exponential backoff. Futures and listeners are completed on the connection reader threads:
+ * callbacks must not block.
+ */
+public class JDockerClient implements Closeable {
+
+    /** Receives the lines of a STREAM_LOGS subscription. */
+    public interface LogListener {
+        void onLines(List<String> lines);
+
+        /** Lines discarded by the server because this client read too slowly. */
+        default void onDropped(long count) {
+        }
+
+        /** Lines skipped by the server because of the {@code maxLinesPerSecond} option. */
+        default void onSuppressed(long count) {
+        }
+
+        /** The stream was re-opened after a reconnect, under a new subscription id. */
+        default void onResubscribed(String subscriptionId) {
+        }
+
+        /** End of the stream: container stopped, {@link Subscription#stop()}, or an error. */
+        default void onEnd(Throwable error) {
+        }
+    }
+
+    /** Receives the samples of a STREAM_STATS subscription. */
+    public interface StatsListener {
+        void onStats(JsonNode stats);
+
+        default void onResubscribed(String subscriptionId) {
+        }
+
+        default void onEnd(Throwable error) {
+        }
+    }
+
+    /** Receives the container state of a WATCH_CONTAINERS subscription. */
+    public interface WatchListener {
+        /**
+         * Full state at {@code seq}; replaces whatever the listener held. Sent first, and again if
+         * the client fell too far behind or its sequence could not be resumed.
+         */
+        void onSnapshot(long seq, JsonNode containers);
+
+        /** Deltas in sequence order: {@code seq}, {@code type} (created, started, died, removed...), {@code id}, {@code container}. */
+        void onChanges(JsonNode changes);
+
+        default void onResubscribed(String subscriptionId) {
+        }
+
+        default void onEnd(Throwable error) {
+        }
+    }
+
+    /** Receives the output of an EXEC session. */
+    public interface ExecListener {
+        /** One chunk of output; {@code data} belongs to the listener. */
+        void onOutput(boolean stderr, byte[] data);
+
+        /** End of the command: its exit code (null if unknown), or the error that ended the session. */
+        void onExit(Long exitCode, Throwable error);
+    }
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    // réponses intermédiaires : la requête continue
+    private static final Set<String> PROGRESS_MESSAGES = Set.of("LIST_CHUNK", "BULK_PROGRESS", "PULL_PROGRESS");
+    private static final long INITIAL_RECONNECT_DELAY_MS = 100;
+
+    private final ClientConfig config;
+    private final ClientConnection[] slots;
+    private final AtomicInteger nextSlot = new AtomicInteger();
+    private final AtomicLong nextId = new AtomicLong();
+    private final CompressionStats compressionStats = new CompressionStats();
+    private final ScheduledExecutorService reconnector = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "jdocker-client-reconnect");
+        t.setDaemon(true);
+        return t;
+    });
+    private volatile boolean closed;
+
+    public JDockerClient(ClientConfig config) {
+        this.config = config;
+        this.slots = new ClientConnection[Math.max(1, config.getPoolSize())];
+    }
+
+    public JDockerClient(String host, int port) {
+        this(withAddress(host, port));
+    }
+
+    private static ClientConfig withAddress(String host, int port) {
+        ClientConfig config = new ClientConfig();
+        config.setHost(host);
+        config.setPort(port);
+        return config;
+    }
+
+    /** Opens every connection of the pool now instead of on first use; fails if the server is unreachable. */
+    public JDockerClient connect() throws IOException {
+        for (int i = 0; i < slots.length; i++) {
+            connection(i);
+        }
+        return this;
+    }
+
+    public ClientConfig getConfig() {
+        return config;
+    }
+
+    /** Sizes and time spent compressing/decompressing on this client, all connections together. */
+    public CompressionStats getCompressionStats() {
+        return compressionStats;
+    }
+
+    /** True if the server accepted deflate on the connections opened so far. */
+    public boolean isCompressed() {
+        synchronized (slots) {
+            for (ClientConnection connection : slots) {
+                if (connection != null && connection.isOpen() && connection.isCompressed()) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    // ---- requêtes simples ----
+
+    public CompletableFuture<JsonNode> listContainers() {
+        return listContainers(null);
+    }
+
+    /** {@code query}: the LIST_CONTAINERS filters (state, label, name, image, host, fields, limit...). */
+    public CompletableFuture<JsonNode> listContainers(ObjectNode query) {
+        return call("LIST_CONTAINERS", query);
+    }
+
+    public CompletableFuture<JsonNode> listImages() {
+        return listImages(null);
+    }
+
+    public CompletableFuture<JsonNode> listImages(ObjectNode query) {
+        return call("LIST_IMAGES", query);
+    }
+
+    public CompletableFuture<JsonNode> listEngines() {
+        return call("LIST_ENGINES", null);
+    }
+
+    public CompletableFuture<JsonNode> engineStats() {
+        return call("ENGINE_STATS", null);
+    }
+
+    public CompletableFuture<JsonNode> metrics() {
+        return call("METRICS", null);
+    }
+
+    public CompletableFuture<JsonNode> jobStatus(String jobId) {
+        return call("JOB_STATUS", MAPPER.createObjectNode().put("jobId", jobId));
+    }
+
+    public CompletableFuture<JsonNode> pullImage(String image, String tag) {
+        return pullImage(image, tag, null, null);
+    }
+
+    /**
+     * Pulls an image ({@code host} null = every engine). With a {@code progress} consumer the pull
+     * runs as a server job and each PULL_PROGRESS body is passed to it; the future completes with
+     * the PULL_DONE body.
+     */
+    public CompletableFuture<JsonNode> pullImage(String image, String tag, String host, Consumer<JsonNode> progress) {
+        ObjectNode payload = MAPPER.createObjectNode().put("image", image).put("tag", tag == null ? "latest" : tag);
+        if (host != null) {
+            payload.put("host", host);
+        }
+        if (progress == null) {
+            return call("PULL_IMAGE", payload);
+        }
+        payload.put("async", true);
+        CompletableFuture<JsonNode> result = new CompletableFuture<>();
+        send("PULL_IMAGE", payload, result, new ClientConnection.Handler() {
+            @Override
+            public boolean onResponse(Response response) {
+                if ("PULL_PROGRESS".equals(response.getMessage())) {
+                    progress.accept(body(response));
+                    return false;
+                }
+                if ("PULL_DONE".equals(response.getMessage())) {
+                    JsonNode done = body(response);
+                    if ("ERROR".equals(response.getStatus())) {
+                        result.completeExceptionally(new JDockerException("PULL_IMAGE", done.path("error").asText("Pull failed")));
+                    } else {
+                        result.complete(done);
+                    }
+                    return true;
+                }
+                if ("ERROR".equals(response.getStatus())) {
+                    result.completeExceptionally(new JDockerException("PULL_IMAGE", response.getMessage()));
+                    return true;
+                }
+                return false; // accusé "Pull job started"
+            }
+
+            @Override
+            public void onError(Throwable error) {
+                result.completeExceptionally(error);
+            }
+        });
+        return result;
+    }
+
+    public CompletableFuture<JsonNode> createContainer(String image, String name, String host) {
+        return call("CREATE_CONTAINER", placement(image, name, host));
+    }
+
+    public CompletableFuture<JsonNode> runContainer(String image, String name, String host) {
+        return call("RUN_CONTAINER", placement(image, name, host));
+    }
+
+    public CompletableFuture<JsonNode> startContainer(String idOrName) {
+        return call("START_CONTAINER", MAPPER.createObjectNode().put("idOrName", idOrName));
+    }
+
+    public CompletableFuture<JsonNode> stopContainer(String idOrName) {
+        return call("STOP_CONTAINER", MAPPER.createObjectNode().put("idOrName", idOrName));
+    }
+
+    public CompletableFuture<JsonNode> removeContainer(String idOrName) {
+        return call("REMOVE_CONTAINER", MAPPER.createObjectNode().put("idOrName", idOrName));
+    }
+
+    /** Bulk start; {@code progress} (nullable) receives each BULK_PROGRESS body. */
+    public CompletableFuture<JsonNode> startContainers(List<String> targets, Consumer<JsonNode> progress) {
+        return call("START_CONTAINERS", bulk(targets, progress), progress);
+    }
+
+    public CompletableFuture<JsonNode> stopContainers(List<String> targets, Consumer<JsonNode> progress) {
+        return call("STOP_CONTAINERS", bulk(targets, progress), progress);
+    }
+
+    public CompletableFuture<JsonNode> removeContainers(List<String> targets, Consumer<JsonNode> progress) {
+        return call("REMOVE_CONTAINERS", bulk(targets, progress), progress);
+    }
+
+    /** Any action, for requests without a typed method. */
+    public CompletableFuture<JsonNode> call(String action, JsonNode payload) {
+        return call(action, payload, null);
+    }
+
+    /**
+     * Any action; intermediate replies (LIST_CHUNK, BULK_PROGRESS, PULL_PROGRESS) go to
+     * {@code progress} (nullable) and the future completes with the final reply.
+     */
+    public CompletableFuture<JsonNode> call(String action, JsonNode payload, Consumer<JsonNode> progress) {
+        CompletableFuture<JsonNode> result = new CompletableFuture<>();
+        send(action, payload, result, new ClientConnection.Handler() {
+            @Override
+            public boolean onResponse(Response response) {
+                if ("OK".equals(response.getStatus()) && PROGRESS_MESSAGES.contains(response.getMessage())) {
+                    if (progress != null) {
+                        progress.accept(body(response));
+                    }
+                    return false;
+                }
+                complete(result, action, response);
+                return true;
+            }
+
+            @Override
+            public void onError(Throwable error) {
+                result.completeExceptionally(error);
+            }
+        });
+        return result;
+    }
+
+    // ---- flux ----
+
+    /**
+     * Follows the logs of a container ({@code tail} null = whole history). The future completes
+     * with the subscription once the server acknowledged it.
+     */
+    public CompletableFuture<Subscription> streamLogs(String idOrName, Integer tail, LogListener listener) {
+        ObjectNode options = MAPPER.createObjectNode();
+        if (tail != null) {
+            options.put("tail", tail);
+        }
+        return streamLogs(idOrName, options, listener);
+    }
+
+    /**
+     * Same with the STREAM_LOGS options as given ({@code since} e.g. "10m", {@code follow},
+     * {@code source}...).
+     */
+    public CompletableFuture<Subscription> streamLogs(String idOrName, ObjectNode options, LogListener listener) {
+        ObjectNode payload = options.deepCopy().put("idOrName", idOrName).put("batch", true);
+        Stream stream = new Stream("STREAM_LOGS", "STOP_LOGS", payload, new StreamListener() {
+            @Override
+            public boolean onMessage(Response response) {
+                switch (String.valueOf(response.getMessage())) {
+                    case "LOG_LINES": {
+                        List<String> lines = new ArrayList<>();
+                        for (JsonNode line : body(response)) {
+                            lines.add(line.asText());
+                        }
+                        listener.onLines(lines);
+                        return false;
+                    }
+                    case "LOG_LINE":
+                        listener.onLines(List.of(String.valueOf(response.getData())));
+                        return false;
+                    case "LOG_DROPPED":
+                        listener.onDropped(body(response).path("dropped").asLong());
+                        return false;
+                    case "LOG_SUPPRESSED":
+                        listener.onSuppressed(body(response).path("suppressed").asLong());
+                        return false;
+                    case "LOG_END":
+                        return true;
+                    default:
+                        return false;
+                }
+            }
+
+            @Override
+            public void onResubscribed(String subscriptionId) {
+                listener.onResubscribed(subscriptionId);
+            }
+
+            @Override
+            public void onEnd(Throwable error) {
+                listener.onEnd(error);
+            }
+
+            @Override
+            public void prepareResubscribe(ObjectNode payload, long lostAtMillis) {
+                // reprise à partir de la coupure plutôt que de tout l'historique
+                payload.remove("tail");
+                payload.put("since", lostAtMillis / 1000);
+            }
+        });
+        stream.open();
+        return stream.opened;
+    }
+
+    /** Windowed stats of several containers ({@code window} e.g. "10s", null = server default). */
+    public CompletableFuture<Subscription> streamStats(List<String> targets, String window, StatsListener listener) {
+        ObjectNode payload = MAPPER.createObjectNode();
+        targets.forEach(payload.putArray("targets")::add);
+        if (window != null) {
+            payload.put("window", window);
+        }
+        Stream stream = new Stream("STREAM_STATS", "STOP_STATS", payload, new StreamListener() {
+            @Override
+            public boolean onMessage(Response response) {
+                if ("STATS".equals(response.getMessage())) {
+                    listener.onStats(body(response));
+                    return false;
+                }
+                return "STATS_END".equals(response.getMessage());
+            }
+
+            @Override
+            public void onResubscribed(String subscriptionId) {
+                listener.onResubscribed(subscriptionId);
+            }
+
+            @Override
+            public void onEnd(Throwable error) {
+                listener.onEnd(error);
+            }
+        });
+        stream.open();
+        return stream.opened;
+    }
+
+    /**
+     * Follows the containers of the server: one snapshot, then deltas. After a reconnect the
+     * subscription resumes from the last sequence received, without a new snapshot when the
+     * server still has the missed changes.
+     */
+    public CompletableFuture<Subscription> watchContainers(WatchListener listener) {
+        ObjectNode payload = MAPPER.createObjectNode();
+        Stream stream = new Stream("WATCH_CONTAINERS", "STOP_WATCH", payload, new StreamListener() {
+            private volatile long lastSeq = -1;
+            private volatile String epoch;
+
+            @Override
+            public boolean onMessage(Response response) {
+                JsonNode body = body(response);
+                switch (String.valueOf(response.getMessage())) {
+                    case "WATCH_SNAPSHOT":
+                        epoch = body.path("epoch").asText(null);
+                        lastSeq = body.path("seq").asLong();
+                        listener.onSnapshot(lastSeq, body.path("containers"));
+                        return false;
+                    case "WATCH_CHANGES": {
+                        JsonNode changes = body.path("changes");
+                        if (changes.size() > 0) {
+                            lastSeq = changes.get(changes.size() - 1).path("seq").asLong();
+                        }
+                        listener.onChanges(changes);
+                        return false;
+                    }
+                    default:
+                        return false;
+                }
+            }
+
+            @Override
+            public void onResubscribed(String subscriptionId) {
+                listener.onResubscribed(subscriptionId);
+            }
+
+            @Override
+            public void onEnd(Throwable error) {
+                listener.onEnd(error);
+            }
+
+            @Override
+            public void prepareResubscribe(ObjectNode payload, long lostAtMillis) {
+                if (lastSeq >= 0 && epoch != null) {
+                    payload.put("since", lastSeq).put("epoch", epoch);
+                }
+            }
+        });
+        stream.open();
+        return stream.opened;
+    }
+
+    /**
+     * Runs {@code cmd} in a running container. The future completes with the session once the
+     * server started it; several sessions can share a connection, each with its own windows.
+     */
+    public CompletableFuture<ExecSession> exec(String idOrName, List<String> cmd, boolean tty, ExecListener listener) {
+        ObjectNode payload = MAPPER.createObjectNode().put("idOrName", idOrName).put("tty", tty);
+        cmd.forEach(payload.putArray("cmd")::add);
+        CompletableFuture<ExecSession> opened = new CompletableFuture<>();
+        ClientConnection connection;
+        try {
+            connection = connection(Math.floorMod(nextSlot.getAndIncrement(), slots.length));
+        } catch (IOException e) {
+            opened.completeExceptionally(e);
+            return opened;
+        }
+        Request request = newRequest("EXEC", payload);
+        connection.send(request, new ClientConnection.Handler() {
+            private ExecSession session;
+
+            @Override
+            public boolean onResponse(Response response) {
+                JsonNode body = body(response);
+                if (session == null) {
+                    if ("ERROR".equals(response.getStatus())) {
+                        opened.completeExceptionally(new JDockerException("EXEC", response.getMessage()));
+                        return true;
+                    }
+                    session = new ExecSession(connection, body.path("sessionId").asText(),
+                            body.path("stdinWindow").asLong(), body.path("window").asLong(), listener, s -> {
+                                CompletableFuture<JsonNode> result = new CompletableFuture<>();
+                                // l'arrêt part sur la connexion qui porte la session
+                                sendOn(connection, "STOP_EXEC", MAPPER.createObjectNode().put("sessionId", s.getId()), result);
+                                return result.whenComplete((b, error) -> connection.abandon(request.getId()));
+                            });
+                    opened.complete(session);
+                    return false;
+                }
+                try {
+                    switch (String.valueOf(response.getMessage())) {
+                        case "EXEC_OUTPUT":
+                            session.onOutput(body);
+                            return false;
+                        case "EXEC_WINDOW":
+                            session.onInputWindow(body.path("stdin").asLong());
+                            return false;
+                        case "EXEC_EXIT":
+                            session.end(body.hasNonNull("exitCode") ? body.get("exitCode").asLong() : null,
+                                    "ERROR".equals(response.getStatus())
+                                            ? new JDockerException("EXEC", body.path("error").asText()) : null);
+                            return true;
+                        default:
+                            return false;
+                    }
+                } catch (IOException e) {
+                    session.end(null, e);
+                    connection.close();
+                    return true;
+                }
+            }
+
+            @Override
+            public void onError(Throwable error) {
+                if (session == null) {
+                    opened.completeExceptionally(error);
+                } else {
+                    session.end(null, error);
+                }
+            }
+        });
+        return opened;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        reconnector.shutdownNow();
+        synchronized (slots) {
+            for (ClientConnection connection : slots) {
+                if (connection != null) {
+                    connection.close();
+                }
+            }
+        }
+    }
+
+    // ---- interne ----
+
+    private interface StreamListener {
+        /** Returns true on the end-of-stream message. */
+        boolean onMessage(Response response);
+
+        void onResubscribed(String subscriptionId);
+
+        void onEnd(Throwable error);
+
+        default void prepareResubscribe(ObjectNode payload, long lostAtMillis) {
+        }
+    }
+
+    /** One logical subscription, re-opened on a fresh connection each time its connection dies. */
+    private final class Stream {
+        private final String action;
+        private final ObjectNode payload;
+        private final StreamListener listener;
+        private final Subscription subscription;
+        private final CompletableFuture<Subscription> opened = new CompletableFuture<>();
+        private final AtomicBoolean ended = new AtomicBoolean();
+        private volatile ClientConnection connection;
+        private volatile String requestId;
+        private int failures;
+
+        Stream(String action, String stopAction, ObjectNode payload, StreamListener listener) {
+            this.action = action;
+            this.payload = payload;
+            this.listener = listener;
+            this.subscription = new Subscription(stopAction, s -> stop());
+        }
+
+        void open() {
+            if (closed || subscription.isClosed()) {
+                end(closed ? new IOException("Client closed") : null);
+                return;
+            }
+            ClientConnection target;
+            try {
+                target = connection(Math.floorMod(nextSlot.getAndIncrement(), slots.length));
+            } catch (IOException e) {
+                lost(e);
+                return;
+            }
+            Request request = newRequest(action, payload);
+            connection = target;
+            requestId = request.getId();
+            target.send(request, new ClientConnection.Handler() {
+                private boolean acked;
+
+                @Override
+                public boolean onResponse(Response response) {
+                    if (acked) {
+                        if (listener.onMessage(response)) {
+                            end(null);
+                            return true;
+                        }
+                        return false;
+                    }
+                    if ("ERROR".equals(response.getStatus())) {
+                        end(new JDockerException(action, response.getMessage()));
+                        return true;
+                    }
+                    acked = true;
+                    failures = 0;
+                    subscription.attach(body(response).path("subscriptionId").asText(null));
+                    if (!opened.complete(subscription)) {
+                        listener.onResubscribed(subscription.getId());
+                    }
+                    return false;
+                }
+
+                @Override
+                public void onError(Throwable error) {
+                    lost(error);
+                }
+            });
+        }
+
+        private void lost(Throwable error) {
+            if (closed || subscription.isClosed() || !opened.isDone()) {
+                end(closed ? null : error); // première ouverture ratée : l'appelant reçoit l'erreur
+                return;
+            }
+            listener.prepareResubscribe(payload, System.currentTimeMillis());
+            long delay = Math.min(config.getMaxReconnectDelay().toMillis(),
+                    INITIAL_RECONNECT_DELAY_MS << Math.min(failures++, 10));
+            try {
+                reconnector.schedule(this::open, delay, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                end(error);
+            }
+        }
+
+        private CompletableFuture<JsonNode> stop() {
+            ClientConnection current = connection;
+            String id = subscription.getId();
+            if (current == null || !current.isOpen() || id == null) {
+                end(null);
+                return CompletableFuture.completedFuture(null);
+            }
+            CompletableFuture<JsonNode> result = new CompletableFuture<>();
+            ObjectNode stopPayload = MAPPER.createObjectNode().put("subscriptionId", id);
+            // le STOP doit partir sur la connexion qui porte le flux
+            sendOn(current, subscription.getStopAction(), stopPayload, result);
+            return result.whenComplete((body, error) -> {
+                current.abandon(requestId);
+                end(null);
+            });
+        }
+
+        private void end(Throwable error) {
+            subscription.markClosed();
+            if (!ended.compareAndSet(false, true)) {
+                return;
+            }
+            if (!opened.isDone()) {
+                opened.completeExceptionally(error != null ? error : new IOException("Stream ended before it started"));
+                return;
+            }
+            listener.onEnd(error);
+        }
+    }
+
+    private ObjectNode placement(String image, String name, String host) {
+        ObjectNode payload = MAPPER.createObjectNode().put("image", image).put("name", name);
+        if (host != null) {
+            payload.put("host", host);
+        }
+        return payload;
+    }
+
+    private ObjectNode bulk(List<String> targets, Consumer<JsonNode> progress) {
+        ObjectNode payload = MAPPER.createObjectNode().put("progress", progress != null);
+        targets.forEach(payload.putArray("targets")::add);
+        return payload;
+    }
+
+    private void send(String action, JsonNode payload, CompletableFuture<JsonNode> result, ClientConnection.Handler handler) {
+        ClientConnection connection;
+        try {
+            connection = connection(Math.floorMod(nextSlot.getAndIncrement(), slots.length));
+        } catch (IOException e) {
+            result.completeExceptionally(e);
+            return;
+        }
+        send(connection, newRequest(action, payload), result, handler);
+    }
+
+    private void sendOn(ClientConnection connection, String action, JsonNode payload, CompletableFuture<JsonNode> result) {
+        send(connection, newRequest(action, payload), result, new ClientConnection.Handler() {
+            @Override
+            public boolean onResponse(Response response) {
+                complete(result, action, response);
+                return true;
+            }
+
+            @Override
+            public void onError(Throwable error) {
+                result.completeExceptionally(error);
+            }
+        });
+    }
+
+    private void send(ClientConnection connection, Request request, CompletableFuture<JsonNode> result,
+                      ClientConnection.Handler handler) {
+        long timeoutMs = config.getRequestTimeout().toMillis();
+        if (timeoutMs > 0) {
+            result.orTimeout(timeoutMs, TimeUnit.MILLISECONDS).whenComplete((body, error) -> {
+                if (error instanceof TimeoutException) {
+                    connection.abandon(request.getId());
+                }
+            });
+        }
+        connection.send(request, handler);
+    }
+
+    // connexion morte : on en rouvre une à la première utilisation du slot
+    private ClientConnection connection(int slot) throws IOException {
+        synchronized (slots) {
+            if (closed) {
+                throw new IOException("Client closed");
+            }
+            ClientConnection connection = slots[slot];
+            if (connection == null || !connection.isOpen()) {
+                connection = new ClientConnection(config, compressionStats, "jdocker-client-" + slot);
+                slots[slot] = connection;
+            }
+            return connection;
+        }
+    }
+
+    private Request newRequest(String action, JsonNode payload) {
+        Request request = new Request(action, null, String.valueOf(nextId.incrementAndGet()));
+        if (payload != null && payload.size() > 0) {
+            // en JSON ligne, le body est converti en chaîne "payload" par WireFormat
+            request.setBody(payload);
+        }
+        return request;
+    }
+
+    private static void complete(CompletableFuture<JsonNode> result, String action, Response response) {
+        if ("ERROR".equals(response.getStatus())) {
+            result.completeExceptionally(new JDockerException(action, response.getMessage()));
+        } else {
+            result.complete(body(response));
+        }
+    }
+
+    /** Structured part of a response: the framed body, or the JSON parsed from "data". */
+    static JsonNode body(Response response) {
+        if (response.getBody() != null) {
+            return response.getBody();
+        }
+        if (response.getData() == null) {
+            return MAPPER.nullNode();
+        }
+        try {
+            return MAPPER.readTree(response.getData());
+        } catch (IOException e) {
+            return MAPPER.getNodeFactory().textNode(response.getData());
+        }
+    }
+}
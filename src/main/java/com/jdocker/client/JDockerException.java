@@ -0,0 +1,21 @@
+package com.jdocker.client;
+
+/**
+ * An ERROR reply of the server; the message is the one sent by the server.
+ */
+public class JDockerException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String action;
+
+    public JDockerException(String action, String message) {
+        super(message);
+        this.action = action;
+    }
+
+    /** The request action that failed. */
+    public String getAction() {
+        return action;
+    }
+}
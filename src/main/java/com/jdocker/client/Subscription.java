@@ -0,0 +1,62 @@
+package com.jdocker.client;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.io.Closeable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A live STREAM_LOGS or STREAM_STATS subscription. The server id changes when the client
+ * re-subscribes after a reconnect; {@link #close()} stops the stream wherever it currently runs.
+ */
+public class Subscription implements Closeable {
+
+    interface Stopper {
+        CompletableFuture<JsonNode> stop(Subscription subscription);
+    }
+
+    private final String stopAction;
+    private final Stopper stopper;
+    private final AtomicBoolean closed = new AtomicBoolean();
+    private volatile String id;
+
+    Subscription(String stopAction, Stopper stopper) {
+        this.stopAction = stopAction;
+        this.stopper = stopper;
+    }
+
+    /** Server-side subscription id ("logs-12", "stats-3"...). */
+    public String getId() {
+        return id;
+    }
+
+    public boolean isClosed() {
+        return closed.get();
+    }
+
+    /** Sends the STOP request; the listener then receives {@code onEnd(null)}. */
+    public CompletableFuture<Void> stop() {
+        if (!closed.compareAndSet(false, true)) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return stopper.stop(this).thenApply(body -> null);
+    }
+
+    @Override
+    public void close() {
+        stop();
+    }
+
+    String getStopAction() {
+        return stopAction;
+    }
+
+    void attach(String id) {
+        this.id = id;
+    }
+
+    void markClosed() {
+        closed.set(true);
+    }
+}
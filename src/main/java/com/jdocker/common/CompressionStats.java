@@ -0,0 +1,88 @@
+package com.jdocker.common;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters of the "deflate" link compression, shared by every connection of a server (or of a client).
+ * Sizes are payload bytes, frame headers excluded; times are wall-clock time spent in
+ * Deflater/Inflater on the calling thread.
+ */
+public class CompressionStats {
+
+    private final LongAdder rawMessages = new LongAdder();
+    private final LongAdder rawBytes = new LongAdder();
+    private final LongAdder deflatedMessages = new LongAdder();
+    private final LongAdder deflateInBytes = new LongAdder();
+    private final LongAdder deflateOutBytes = new LongAdder();
+    private final LongAdder deflateNanos = new LongAdder();
+    private final LongAdder inflateInBytes = new LongAdder();
+    private final LongAdder inflateOutBytes = new LongAdder();
+    private final LongAdder inflateNanos = new LongAdder();
+
+    void recordRaw(int bytes) {
+        rawMessages.increment();
+        rawBytes.add(bytes);
+    }
+
+    void recordDeflate(int in, int out, long nanos) {
+        deflatedMessages.increment();
+        deflateInBytes.add(in);
+        deflateOutBytes.add(out);
+        deflateNanos.add(nanos);
+    }
+
+    void recordInflate(int in, int out, long nanos) {
+        inflateInBytes.add(in);
+        inflateOutBytes.add(out);
+        inflateNanos.add(nanos);
+    }
+
+    /** Messages sent uncompressed because they were under the threshold. */
+    public long getRawMessages() {
+        return rawMessages.sum();
+    }
+
+    public long getRawBytes() {
+        return rawBytes.sum();
+    }
+
+    public long getDeflatedMessages() {
+        return deflatedMessages.sum();
+    }
+
+    public long getDeflateInBytes() {
+        return deflateInBytes.sum();
+    }
+
+    public long getDeflateOutBytes() {
+        return deflateOutBytes.sum();
+    }
+
+    public long getDeflateNanos() {
+        return deflateNanos.sum();
+    }
+
+    public long getInflateInBytes() {
+        return inflateInBytes.sum();
+    }
+
+    public long getInflateOutBytes() {
+        return inflateOutBytes.sum();
+    }
+
+    public long getInflateNanos() {
+        return inflateNanos.sum();
+    }
+
+    /** Uncompressed / compressed size of the deflated messages (1 when nothing was compressed). */
+    public double getRatio() {
+        long out = getDeflateOutBytes();
+        return out == 0 ? 1.0 : (double) getDeflateInBytes() / out;
+    }
+
+    /** Compression cost in microseconds per megabyte of input. */
+    public double getDeflateMicrosPerMB() {
+        long in = getDeflateInBytes();
+        return in == 0 ? 0 : getDeflateNanos() / 1000.0 / (in / (1024.0 * 1024.0));
+    }
+}
@@ -0,0 +1,159 @@
+package com.jdocker.common;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * "deflate" compression of a connection, negotiated with HELLO. Every message then travels as a
+ * flag byte, a 4-byte big-endian length and the payload (the LINE or SMILE document, unframed).
+ * <p>
+ * Messages under the threshold are sent raw. Larger ones go through one Deflater per direction
+ * kept for the whole connection, so repeated keys and container ids compress against earlier
+ * messages; the stream is sync-flushed at every message boundary so each message can be decoded
+ * as soon as it arrives (no added latency on log streams).
+ */
+public class DeflateCodec {
+
+    public static final String NAME = "deflate";
+    public static final int HEADER_SIZE = 5;
+
+    private static final byte RAW = 0;
+    private static final byte DEFLATED = 1;
+
+    private final int threshold;
+    private final CompressionStats stats;
+    private final Deflater deflater;
+    private final Inflater inflater = new Inflater();
+    private final byte[] deflateBuffer = new byte[8 * 1024];
+    private final byte[] inflateBuffer = new byte[8 * 1024];
+    private boolean closed;
+
+    public DeflateCodec(int threshold, int level, CompressionStats stats) {
+        this.threshold = threshold;
+        this.stats = stats;
+        this.deflater = new Deflater(level);
+    }
+
+    public int getThreshold() {
+        return threshold;
+    }
+
+    /**
+     * Frames one serialized message. The compressed stream is stateful: frames must be written
+     * in the order this method produced them.
+     */
+    public byte[] encode(byte[] message) throws IOException {
+        if (message.length < threshold) {
+            stats.recordRaw(message.length);
+            return frame(RAW, message, message.length);
+        }
+        synchronized (deflater) {
+            if (closed) {
+                throw new IOException("Connection closed");
+            }
+            long start = System.nanoTime();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(message.length / 4 + 64);
+            out.write(new byte[HEADER_SIZE], 0, HEADER_SIZE);
+            deflater.setInput(message);
+            int n;
+            do {
+                n = deflater.deflate(deflateBuffer, 0, deflateBuffer.length, Deflater.SYNC_FLUSH);
+                out.write(deflateBuffer, 0, n);
+            } while (n == deflateBuffer.length);
+            byte[] framed = out.toByteArray();
+            int length = framed.length - HEADER_SIZE;
+            writeHeader(framed, DEFLATED, length);
+            stats.recordDeflate(message.length, length, System.nanoTime() - start);
+            return framed;
+        }
+    }
+
+    /** Payload of a received frame; frames must be passed in arrival order. */
+    public byte[] decode(byte flag, byte[] payload) throws IOException {
+        if (flag == RAW) {
+            return payload;
+        }
+        if (flag != DEFLATED) {
+            throw new IOException("Invalid compression flag: " + flag);
+        }
+        synchronized (inflater) {
+            if (closed) {
+                throw new IOException("Connection closed");
+            }
+            long start = System.nanoTime();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(payload.length * 4);
+            inflater.setInput(payload);
+            try {
+                int n;
+                while ((n = inflater.inflate(inflateBuffer)) > 0 || !inflater.needsInput()) {
+                    if (n == 0 && (inflater.finished() || inflater.needsDictionary())) {
+                        throw new IOException("Unexpected end of compressed stream");
+                    }
+                    out.write(inflateBuffer, 0, n);
+                    if (out.size() > WireFormat.MAX_MESSAGE_SIZE) {
+                        throw new IOException("Message too large");
+                    }
+                }
+            } catch (DataFormatException e) {
+                throw new IOException("Corrupt compressed frame: " + e.getMessage());
+            }
+            stats.recordInflate(payload.length, out.size(), System.nanoTime() - start);
+            return out.toByteArray();
+        }
+    }
+
+    /** Reads and decodes one frame; returns null at end of stream. */
+    public byte[] read(InputStream in) throws IOException {
+        int flag = in.read();
+        if (flag < 0) {
+            return null;
+        }
+        DataInputStream data = new DataInputStream(in);
+        int length;
+        try {
+            length = data.readInt();
+        } catch (EOFException e) {
+            return null;
+        }
+        if (length < 0 || length > WireFormat.MAX_MESSAGE_SIZE) {
+            throw new IOException("Invalid frame length: " + length);
+        }
+        byte[] payload = new byte[length];
+        data.readFully(payload);
+        return decode((byte) flag, payload);
+    }
+
+    /** Releases the native zlib state; later calls fail with an IOException. */
+    public void close() {
+        synchronized (deflater) {
+            synchronized (inflater) {
+                if (!closed) {
+                    closed = true;
+                    deflater.end();
+                    inflater.end();
+                }
+            }
+        }
+    }
+
+    private static byte[] frame(byte flag, byte[] payload, int length) {
+        byte[] framed = new byte[HEADER_SIZE + length];
+        writeHeader(framed, flag, length);
+        System.arraycopy(payload, 0, framed, HEADER_SIZE, length);
+        return framed;
+    }
+
+    private static void writeHeader(byte[] framed, byte flag, int length) {
+        framed[0] = flag;
+        framed[1] = (byte) (length >>> 24);
+        framed[2] = (byte) (length >>> 16);
+        framed[3] = (byte) (length >>> 8);
+        framed[4] = (byte) length;
+    }
+}
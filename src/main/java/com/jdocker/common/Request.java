@@ -1,8 +1,15 @@
 package com.jdocker.common;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.JsonNode;
+
 public class Request {
     private String action;
     private String payload; // JSON string depending on action
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String id;      // optional, echoed back in the matching Response
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private JsonNode body;  // structured payload (framed protocol), used instead of payload
 
     public Request() {
     }
@@ -12,6 +19,12 @@ public class Request {
         this.payload = payload;
     }
 
+    public Request(String action, String payload, String id) {
+        this.action = action;
+        this.payload = payload;
+        this.id = id;
+    }
+
     public String getAction() {
         return action;
     }
@@ -27,4 +40,20 @@ public class Request {
     public void setPayload(String payload) {
         this.payload = payload;
     }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public JsonNode getBody() {
+        return body;
+    }
+
+    public void setBody(JsonNode body) {
+        this.body = body;
+    }
 }
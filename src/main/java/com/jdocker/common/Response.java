@@ -1,9 +1,16 @@
 package com.jdocker.common;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.JsonNode;
+
 public class Response {
     private String status;   // OK or ERROR
     private String message;  // human readable
     private String data;     // JSON string with structured data
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String id;       // id of the Request this answers, if it had one
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private JsonNode body;   // structured data; sent as is by the framed protocol, as a string in data otherwise
 
     public Response() {
     }
@@ -14,6 +21,12 @@ public class Response {
         this.data = data;
     }
 
+    public static Response of(String status, String message, JsonNode body) {
+        Response response = new Response(status, message, null);
+        response.setBody(body);
+        return response;
+    }
+
     public String getStatus() {
         return status;
     }
@@ -37,4 +50,20 @@ public class Response {
     public void setData(String data) {
         this.data = data;
     }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public JsonNode getBody() {
+        return body;
+    }
+
+    public void setBody(JsonNode body) {
+        this.body = body;
+    }
 }
@@ -0,0 +1,195 @@
+package com.jdocker.common;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.dataformat.smile.databind.SmileMapper;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Encodings of the client/server link, chosen with a HELLO request at connect time.
+ * <ul>
+ *   <li>LINE: one JSON object per line; structured payloads travel as nested JSON strings
+ *       ({@code payload} / {@code data}), as in the original protocol.</li>
+ *   <li>SMILE: 4-byte big-endian length followed by a Smile (binary JSON) document;
+ *       structured payloads travel directly in {@code body}.</li>
+ * </ul>
+ * Either format can additionally be compressed ({@link DeflateCodec}), which replaces the framing.
+ */
+public enum WireFormat {
+
+    LINE(new ObjectMapper()),
+    SMILE(new SmileMapper());
+
+    public static final int MAX_MESSAGE_SIZE = 16 * 1024 * 1024;
+
+    private final ObjectMapper mapper;
+    // construits une fois : pas de recherche de sérialiseur par message
+    private final ObjectReader requestReader;
+    private final ObjectReader responseReader;
+    private final ObjectWriter requestWriter;
+    private final ObjectWriter responseWriter;
+    private final ObjectWriter treeWriter;
+
+    WireFormat(ObjectMapper mapper) {
+        this.mapper = mapper;
+        this.requestReader = mapper.readerFor(Request.class);
+        this.responseReader = mapper.readerFor(Response.class);
+        this.requestWriter = streamWriter(mapper, Request.class);
+        this.responseWriter = streamWriter(mapper, Response.class);
+        this.treeWriter = mapper.writer();
+    }
+
+    // le flux appartient au puits : ni fermé ni vidé à chaque message
+    private static ObjectWriter streamWriter(ObjectMapper mapper, Class<?> type) {
+        return mapper.writerFor(type)
+                .without(JsonGenerator.Feature.AUTO_CLOSE_TARGET)
+                .without(JsonGenerator.Feature.FLUSH_PASSED_TO_STREAM)
+                .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+    }
+
+    public static WireFormat forName(String name) {
+        for (WireFormat format : values()) {
+            if (format.name().equalsIgnoreCase(name)) {
+                return format;
+            }
+        }
+        return null;
+    }
+
+    public ObjectMapper mapper() {
+        return mapper;
+    }
+
+    public byte[] encode(Request request) throws IOException {
+        return frame(serialize(request));
+    }
+
+    public byte[] encode(Response response) throws IOException {
+        return frame(serialize(response));
+    }
+
+    /**
+     * Encodes and frames a request directly into a buffered stream, which is neither flushed nor
+     * closed. LINE is generated straight into the stream; SMILE is serialized once then written
+     * after its length.
+     */
+    public void write(Request request, OutputStream out) throws IOException {
+        if (this == LINE) {
+            requestWriter.writeValue(out, flat(request));
+            out.write('\n');
+        } else {
+            writeFrame(requestWriter.writeValueAsBytes(request), out);
+        }
+    }
+
+    public void write(Response response, OutputStream out) throws IOException {
+        if (this == LINE) {
+            responseWriter.writeValue(out, flat(response));
+            out.write('\n');
+        } else {
+            writeFrame(responseWriter.writeValueAsBytes(response), out);
+        }
+    }
+
+    /** The document alone, without newline or length prefix (framed by {@link DeflateCodec}). */
+    public byte[] serialize(Request request) throws IOException {
+        return requestWriter.writeValueAsBytes(this == LINE ? flat(request) : request);
+    }
+
+    public byte[] serialize(Response response) throws IOException {
+        return responseWriter.writeValueAsBytes(this == LINE ? flat(response) : response);
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> T decode(byte[] message, Class<T> type) throws IOException {
+        if (type == Request.class) {
+            return (T) requestReader.readValue(message);
+        }
+        if (type == Response.class) {
+            return (T) responseReader.readValue(message);
+        }
+        return mapper.readValue(message, type);
+    }
+
+    // LINE : le corps structuré voyage comme chaîne JSON imbriquée (payload / data)
+    private Request flat(Request request) throws IOException {
+        if (request.getBody() == null) {
+            return request;
+        }
+        return new Request(request.getAction(), treeWriter.writeValueAsString(request.getBody()), request.getId());
+    }
+
+    private Response flat(Response response) throws IOException {
+        if (response.getBody() == null) {
+            return response;
+        }
+        Response flat = new Response(response.getStatus(), response.getMessage(),
+                treeWriter.writeValueAsString(response.getBody()));
+        flat.setId(response.getId());
+        return flat;
+    }
+
+    /** Reads one message; returns null at end of stream. */
+    public byte[] read(InputStream in) throws IOException {
+        if (this == LINE) {
+            ByteArrayOutputStream line = new ByteArrayOutputStream();
+            int b;
+            while ((b = in.read()) != -1) {
+                if (b == '\n') {
+                    return line.toByteArray();
+                }
+                line.write(b);
+                if (line.size() > MAX_MESSAGE_SIZE) {
+                    throw new IOException("Message too large");
+                }
+            }
+            return line.size() > 0 ? line.toByteArray() : null;
+        }
+
+        DataInputStream data = new DataInputStream(in);
+        int length;
+        try {
+            length = data.readInt();
+        } catch (EOFException e) {
+            return null;
+        }
+        if (length < 0 || length > MAX_MESSAGE_SIZE) {
+            throw new IOException("Invalid frame length: " + length);
+        }
+        byte[] message = new byte[length];
+        data.readFully(message);
+        return message;
+    }
+
+    private byte[] frame(byte[] bytes) {
+        byte[] framed = new byte[bytes.length + (this == LINE ? 1 : 4)];
+        if (this == LINE) {
+            System.arraycopy(bytes, 0, framed, 0, bytes.length);
+            framed[bytes.length] = '\n';
+        } else {
+            framed[0] = (byte) (bytes.length >>> 24);
+            framed[1] = (byte) (bytes.length >>> 16);
+            framed[2] = (byte) (bytes.length >>> 8);
+            framed[3] = (byte) bytes.length;
+            System.arraycopy(bytes, 0, framed, 4, bytes.length);
+        }
+        return framed;
+    }
+
+    private static void writeFrame(byte[] bytes, OutputStream out) throws IOException {
+        out.write(bytes.length >>> 24);
+        out.write(bytes.length >>> 16);
+        out.write(bytes.length >>> 8);
+        out.write(bytes.length);
+        out.write(bytes);
+    }
+}
@@ -0,0 +1,144 @@
+package com.jdocker.server;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.jdocker.common.Response;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Start, stop or remove many containers in one request. Targets are resolved once up front,
+ * then the engine calls run in parallel, at most {@code concurrency} at a time.
+ */
+public class BulkOperation {
+
+    public enum Kind { START, STOP, REMOVE }
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final DockerService dockerService;
+    private final Kind kind;
+    private final Executor executor;
+    private final int concurrency;
+    private final ResponseSink progressSink;   // null = no progress messages
+    private final String requestId;
+
+    private volatile boolean cancelled;
+
+    public BulkOperation(DockerService dockerService, Kind kind, Executor executor, int concurrency,
+                         ResponseSink progressSink, String requestId) {
+        this.dockerService = dockerService;
+        this.kind = kind;
+        this.executor = executor;
+        this.concurrency = Math.max(1, concurrency);
+        this.progressSink = progressSink;
+        this.requestId = requestId;
+    }
+
+    /**
+     * @param targets  ids or names, in the order of the results
+     * @param resolved target to container id; targets missing from the map fail as not found
+     */
+    public ObjectNode run(List<String> targets, Map<String, String> resolved) throws InterruptedException {
+        int n = targets.size();
+        ObjectNode[] results = new ObjectNode[n];
+        AtomicInteger next = new AtomicInteger();
+        AtomicInteger failed = new AtomicInteger();
+
+        Runnable worker = () -> {
+            int i;
+            while (!cancelled && (i = next.getAndIncrement()) < n) {
+                String target = targets.get(i);
+                ObjectNode item = execute(target, resolved.get(target));
+                if (item.has("error")) {
+                    failed.incrementAndGet();
+                }
+                results[i] = item;
+                progress(item);
+            }
+        };
+
+        // le thread appelant est l'un des workers : pas d'interblocage si le pool est saturé
+        int workers = Math.min(concurrency, n);
+        CountDownLatch done = new CountDownLatch(Math.max(0, workers - 1));
+        for (int w = 1; w < workers; w++) {
+            try {
+                executor.execute(() -> {
+                    try {
+                        worker.run();
+                    } finally {
+                        done.countDown();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                done.countDown();
+            }
+        }
+        worker.run();
+        done.await();
+
+        ObjectNode root = MAPPER.createObjectNode();
+        ArrayNode arr = MAPPER.createArrayNode();
+        int completed = 0;
+        for (ObjectNode item : results) {
+            if (item != null) {
+                arr.add(item);
+                completed++;
+            }
+        }
+        root.put("total", n);
+        root.put("succeeded", completed - failed.get());
+        root.put("failed", failed.get());
+        root.set("results", arr);
+        return root;
+    }
+
+    private ObjectNode execute(String target, String id) {
+        ObjectNode item;
+        if (id == null) {
+            item = MAPPER.createObjectNode();
+            item.put("error", "Container not found: " + target);
+        } else {
+            try {
+                switch (kind) {
+                    case START:
+                        item = dockerService.startContainer(id);
+                        break;
+                    case STOP:
+                        item = dockerService.stopContainer(id);
+                        break;
+                    default:
+                        item = dockerService.removeContainer(id);
+                        break;
+                }
+            } catch (RuntimeException e) {
+                item = MAPPER.createObjectNode();
+                item.put("id", id);
+                item.put("error", e.getMessage());
+            }
+        }
+        item.put("target", target);
+        return item;
+    }
+
+    private void progress(ObjectNode item) {
+        if (progressSink == null) {
+            return;
+        }
+        Response response = Response.of("OK", "BULK_PROGRESS", item);
+        response.setId(requestId);
+        try {
+            progressSink.send(response);
+        } catch (IOException e) {
+            // client parti : inutile de continuer
+            cancelled = true;
+        }
+    }
+}
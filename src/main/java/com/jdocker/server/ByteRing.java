@@ -0,0 +1,133 @@
+package com.jdocker.server;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Bounded byte queue over a pooled direct buffer, between one writing and one reading thread.
+ * Bytes are copied in once and read back in place ({@link #peek}) or copied out once ({@link #read}),
+ * with no intermediate array or String per chunk.
+ */
+final class ByteRing {
+
+    private final DirectBufferPool pool;
+    private final int capacity;
+    private ByteBuffer buffer;   // null une fois rendu au pool
+    private long head;           // prochain octet à lire
+    private long tail;           // prochain octet à écrire
+    private boolean ended;       // plus d'écriture : fin de flux pour le lecteur
+
+    ByteRing(DirectBufferPool pool) {
+        this.pool = pool;
+        this.buffer = pool.acquire();
+        this.capacity = buffer.capacity();
+    }
+
+    int capacity() {
+        return capacity;
+    }
+
+    synchronized int size() {
+        return (int) (tail - head);
+    }
+
+    synchronized boolean isEmpty() {
+        return tail == head;
+    }
+
+    /** Copies as many bytes as fit; returns how many. */
+    synchronized int offer(byte[] src, int offset, int length) {
+        if (ended || buffer == null) {
+            return 0;
+        }
+        int n = Math.min(length, capacity - (int) (tail - head));
+        int index = (int) (tail % capacity);
+        int first = Math.min(n, capacity - index);
+        buffer.put(index, src, offset, first);
+        buffer.put(0, src, offset + first, n - first);
+        tail += n;
+        if (n > 0) {
+            notifyAll();
+        }
+        return n;
+    }
+
+    /** Copies all the bytes, or none when they do not fit. */
+    synchronized boolean offerAll(byte[] src, int offset, int length) {
+        if (ended || buffer == null || capacity - (tail - head) < length) {
+            return false;
+        }
+        offer(src, offset, length);
+        return true;
+    }
+
+    /** Blocks until some bytes are available; -1 once the ring is ended and empty. */
+    synchronized int read(byte[] dst, int offset, int length) throws InterruptedException {
+        while (tail == head && !ended) {
+            wait();
+        }
+        if (tail == head || buffer == null) {
+            return -1;
+        }
+        int index = (int) (head % capacity);
+        int n = Math.min(length, Math.min((int) (tail - head), capacity - index));
+        buffer.get(index, dst, offset, n);
+        head += n;
+        notifyAll();
+        return n;
+    }
+
+    /**
+     * Up to {@code max} readable bytes as a view of the buffer, left in place until {@link #consume}:
+     * the writer never touches them meanwhile. Shorter than available when the data wraps around.
+     */
+    synchronized ByteBuffer peek(int max) {
+        if (buffer == null) {
+            return ByteBuffer.allocate(0);
+        }
+        int index = (int) (head % capacity);
+        int n = Math.max(0, Math.min(max, Math.min((int) (tail - head), capacity - index)));
+        return buffer.slice(index, n);
+    }
+
+    synchronized void consume(int n) {
+        head = Math.min(tail, head + n);
+        notifyAll();
+    }
+
+    /** Blocks until at least one byte can be written; false once ended. */
+    synchronized boolean awaitSpace() throws InterruptedException {
+        while (!ended && tail - head == capacity) {
+            wait();
+        }
+        return !ended;
+    }
+
+    /** Blocks until every byte has been read; false once ended. */
+    synchronized boolean awaitEmpty() throws InterruptedException {
+        while (!ended && tail != head) {
+            wait();
+        }
+        return !ended;
+    }
+
+    /** No more writes: the reader gets what is left, then the end of the stream. */
+    synchronized void end() {
+        ended = true;
+        notifyAll();
+    }
+
+    /** Drops what is left and ends the ring. */
+    synchronized void discard() {
+        head = tail;
+        end();
+    }
+
+    /** Gives the buffer back; only once no view returned by {@link #peek} is in use. */
+    synchronized void release() {
+        discard();
+        if (buffer != null) {
+            pool.release(buffer);
+            buffer = null;
+        }
+    }
+}
@@ -1,178 +1,117 @@
 package com.jdocker.server;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jdocker.common.CompressionStats;
+import com.jdocker.common.DeflateCodec;
 import com.jdocker.common.Request;
 import com.jdocker.common.Response;
+import com.jdocker.common.WireFormat;
 
 import java.io.*;
 import java.net.Socket;
+import java.util.List;
 
 public class ClientHandler extends Thread {
 
     private final Socket clientSocket;
-    private final ObjectMapper mapper = new ObjectMapper();
-    private final DockerService dockerService = new DockerService();
+    private final RequestDispatcher dispatcher;
+    private final RequestScheduler scheduler;
+    private final ServerConfig config;
+    private final CompressionStats compressionStats;
+    private final Runnable onClose;
+    private volatile WireFormat format = WireFormat.LINE;
+    private volatile DeflateCodec codec;
+    private ResponseSink sink;
 
-    public ClientHandler(Socket clientSocket) {
+    public ClientHandler(Socket clientSocket, RequestDispatcher dispatcher, RequestScheduler scheduler,
+                         ServerConfig config, CompressionStats compressionStats, Runnable onClose) {
         this.clientSocket = clientSocket;
+        this.dispatcher = dispatcher;
+        this.scheduler = scheduler;
+        this.config = config;
+        this.compressionStats = compressionStats;
+        this.onClose = onClose;
     }
 
     @Override
     public void run() {
-        try (BufferedReader in = new BufferedReader(new InputStreamReader(clientSocket.getInputStream()));
-             PrintWriter out = new PrintWriter(new OutputStreamWriter(clientSocket.getOutputStream()), true)) {
+        try (InputStream in = new BufferedInputStream(clientSocket.getInputStream());
+             OutputStream out = new BufferedOutputStream(clientSocket.getOutputStream())) {
 
-            String line;
-            while ((line = in.readLine()) != null) {
-                System.out.println("[SERVER] Received: " + line);
+            // un seul flux de sortie par socket, partagé avec les flux de logs
+            ResponseSink sink = new ResponseSink() {
+                @Override
+                public void send(Response response) throws IOException {
+                    sendAll(List.of(response));
+                }
+
+                @Override
+                public void sendAll(List<Response> responses) throws IOException {
+                    synchronized (out) {
+                        WireFormat current = format;
+                        DeflateCodec compression = codec;
+                        for (Response response : responses) {
+                            if (compression == null) {
+                                current.write(response, out);
+                            } else {
+                                out.write(compression.encode(current.serialize(response)));
+                            }
+                        }
+                        out.flush();
+                    }
+                }
+
+                @Override
+                public boolean isOpen() {
+                    return !clientSocket.isClosed();
+                }
+            };
+            RequestPipeline pipeline = new RequestPipeline(dispatcher, sink, scheduler,
+                    clientSocket.getInetAddress().getHostAddress(), config.getMaxInFlightPerConnection(), true, null);
+
+            this.sink = sink;
+            boolean first = true;
+            byte[] message;
+            while ((message = codec == null ? format.read(in) : codec.read(in)) != null) {
                 try {
-                    Request request = mapper.readValue(line, Request.class);
-                    Response response = handleRequest(request);
-                    String json = mapper.writeValueAsString(response);
-                    out.println(json);
+                    Request request = format.decode(message, Request.class);
+                    if (Handshake.isHello(request)) {
+                        Handshake handshake = Handshake.negotiate(request, dispatcher.params(request), first,
+                                config, compressionStats);
+                        synchronized (out) {
+                            out.write(WireFormat.LINE.encode(handshake.getReply()));
+                            out.flush();
+                            if (handshake.getFormat() != null) {
+                                format = handshake.getFormat();
+                                codec = handshake.getCodec();
+                            }
+                        }
+                    } else {
+                        pipeline.submit(request);
+                        // thread dédié à ce client : il peut attendre la réponse avant de lire la suite
+                        pipeline.awaitInOrder();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
                 } catch (Exception e) {
-                    Response error = new Response("ERROR", "Invalid request: " + e.getMessage(), null);
-                    out.println(mapper.writeValueAsString(error));
+                    sink.send(new Response("ERROR", "Invalid request: " + e.getMessage(), null));
                 }
+                first = false;
             }
         } catch (IOException e) {
-            System.out.println("[SERVER] Client disconnected: " + clientSocket.getRemoteSocketAddress());
+            ServerLog.info("SERVER", "Client disconnected: " + clientSocket.getRemoteSocketAddress());
         } finally {
             try {
                 clientSocket.close();
             } catch (IOException ignored) {
             }
-        }
-    }
-
-    private Response handleRequest(Request request) {
-        String action = request.getAction();
-        if (action == null) {
-            return new Response("ERROR", "Missing action", null);
-        }
-
-        try {
-            switch (action) {
-                case "LIST_IMAGES":
-                    return new Response("OK", "Images list", dockerService.handleListImages());
-                case "LIST_CONTAINERS":
-                    return new Response("OK", "Containers list", dockerService.handleListContainers());
-                case "PULL_IMAGE": {
-                    if (request.getPayload() == null) {
-                        return new Response("ERROR", "Missing payload for PULL_IMAGE", null);
-                    }
-                    var node = mapper.readTree(request.getPayload());
-                    String image = node.path("image").asText(null);
-                    String tag = node.path("tag").asText(null);
-                    if (image == null) {
-                        return new Response("ERROR", "Missing image name", null);
-                    }
-                    String data = dockerService.handlePullImage(image, tag);
-                    return new Response("OK", "Image pulled", data);
-                }
-                case "CREATE_CONTAINER": {
-                    if (request.getPayload() == null) {
-                        return new Response("ERROR", "Missing payload for CREATE_CONTAINER", null);
-                    }
-                    var node = mapper.readTree(request.getPayload());
-                    String image = node.path("image").asText(null);
-                    String name = node.path("name").asText(null);
-                    if (image == null || name == null) {
-                        return new Response("ERROR", "Missing image or name", null);
-                    }
-                    String data = dockerService.handleCreateContainer(image, name);
-                    return new Response("OK", "Container created", data);
-                }
-                case "RUN_CONTAINER": {
-                    if (request.getPayload() == null) {
-                        return new Response("ERROR", "Missing payload for RUN_CONTAINER", null);
-                    }
-                    var node = mapper.readTree(request.getPayload());
-                    String image = node.path("image").asText(null);
-                    String name = node.path("name").asText(null);
-                    if (image == null || name == null) {
-                        return new Response("ERROR", "Missing image or name", null);
-                    }
-                    String data = dockerService.handleRunContainer(image, name);
-                    return new Response("OK", "Container created and started", data);
-                }
-                case "START_CONTAINER": {
-                    if (request.getPayload() == null) {
-                        return new Response("ERROR", "Missing payload for START_CONTAINER", null);
-                    }
-                    var node = mapper.readTree(request.getPayload());
-                    String idOrName = node.path("idOrName").asText(null);
-                    if (idOrName == null) {
-                        return new Response("ERROR", "Missing container idOrName", null);
-                    }
-                    String data = dockerService.handleStartContainer(idOrName);
-                    return new Response("OK", "Container started", data);
-                }
-                case "STOP_CONTAINER": {
-                    if (request.getPayload() == null) {
-                        return new Response("ERROR", "Missing payload for STOP_CONTAINER", null);
-                    }
-                    var node = mapper.readTree(request.getPayload());
-                    String idOrName = node.path("idOrName").asText(null);
-                    if (idOrName == null) {
-                        return new Response("ERROR", "Missing container idOrName", null);
-                    }
-                    String data = dockerService.handleStopContainer(idOrName);
-                    return new Response("OK", "Container stopped", data);
-                }
-                case "REMOVE_CONTAINER": {
-                    if (request.getPayload() == null) {
-                        return new Response("ERROR", "Missing payload for REMOVE_CONTAINER", null);
-                    }
-                    var node = mapper.readTree(request.getPayload());
-                    String idOrName = node.path("idOrName").asText(null);
-                    if (idOrName == null) {
-                        return new Response("ERROR", "Missing container idOrName", null);
-                    }
-                    String data = dockerService.handleRemoveContainer(idOrName);
-                    return new Response("OK", "Container removed", data);
-                }
-                case "STREAM_LOGS": {
-                    if (request.getPayload() == null) {
-                        return new Response("ERROR", "Missing payload for STREAM_LOGS", null);
-                    }
-                    var node = mapper.readTree(request.getPayload());
-                    String idOrName = node.path("idOrName").asText(null);
-                    if (idOrName == null) {
-                        return new Response("ERROR", "Missing container idOrName", null);
-                    }
-
-                    Thread logThread = new Thread(() -> {
-                        try {
-                            dockerService.streamLogs(idOrName, line -> {
-                                try {
-                                    synchronized (mapper) {
-                                        Response logResp = new Response("OK", "LOG_LINE", line.trim());
-                                        String json = mapper.writeValueAsString(logResp);
-                                        synchronized (ClientHandler.this) {
-                                            // on ré-ouvre un writer pour ce socket
-                                            try (PrintWriter out = new PrintWriter(new OutputStreamWriter(clientSocket.getOutputStream()), true)) {
-                                                out.println(json);
-                                            }
-                                        }
-                                    }
-                                } catch (Exception ignored) {
-                                }
-                            });
-                        } catch (Exception e) {
-                            // en cas d'erreur de stream, on arrête le thread
-                        }
-                    });
-                    logThread.setDaemon(true);
-                    logThread.start();
-
-                    return new Response("OK", "Log streaming started", null);
-                }
-                default:
-                    return new Response("ERROR", "Unknown action: " + action, null);
+            if (sink != null) {
+                dispatcher.connectionClosed(sink);
+            }
+            if (codec != null) {
+                codec.close();
             }
-        } catch (Exception e) {
-            return new Response("ERROR", "Server error: " + e.getMessage(), null);
+            onClose.run();
         }
     }
 }
@@ -0,0 +1,195 @@
+package com.jdocker.server;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.exc.ValueInstantiationException;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.jdocker.common.Request;
+import com.jdocker.common.Response;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Actions known to the server. Each command decodes its payload into a typed, immutable object
+ * with an {@link ObjectReader} built once at registration, checks it, and only then runs its
+ * handler: a malformed request is answered before it takes a lane slot, and the JSON of a request
+ * is read once, straight into the payload class (no intermediate tree for the LINE format).
+ * New actions are added with {@link #register}, without touching the dispatcher.
+ */
+public class CommandRegistry {
+
+    /** Runs one action; returns the response, or null when it already wrote its reply to the sink. */
+    public interface Handler<P> {
+        Response handle(P payload, Request request, ResponseSink sink) throws Exception;
+    }
+
+    /** Payloads able to check themselves once decoded. */
+    public interface Validated {
+        /** Error message for the client, or null when the payload is usable. */
+        String validate();
+    }
+
+    private static final ObjectNode EMPTY = JsonNodeFactory.instance.objectNode();
+
+    private final ObjectMapper mapper = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+    private final Map<String, Command<?>> commands = new ConcurrentHashMap<>();
+
+    /** A fast-lane action whose payload may be omitted (it then reads as {@code {}}). */
+    public <P> void register(String action, Class<P> payloadType, Handler<P> handler) {
+        register(action, RequestScheduler.LaneKind.FAST, payloadType, false, handler);
+    }
+
+    /**
+     * @param payloadType {@code Void.class} for actions without parameters
+     * @param payloadRequired answer "Missing payload for ACTION" when the request has none
+     */
+    public <P> void register(String action, RequestScheduler.LaneKind lane, Class<P> payloadType,
+                             boolean payloadRequired, Handler<P> handler) {
+        add(new Command<>(action, lane, false, payloadType, reader(payloadType), payloadRequired, handler));
+    }
+
+    /**
+     * An action run on the connection's reading thread, outside the scheduler (no lane slot, no rate
+     * limit token, never refused as busy). Only for handlers that touch memory and never block.
+     */
+    public <P> void registerInline(String action, Class<P> payloadType, Handler<P> handler) {
+        add(new Command<>(action, RequestScheduler.LaneKind.FAST, true, payloadType, reader(payloadType), true,
+                handler));
+    }
+
+    private ObjectReader reader(Class<?> payloadType) {
+        return payloadType == Void.class ? null : mapper.readerFor(payloadType);
+    }
+
+    private void add(Command<?> command) {
+        if (commands.putIfAbsent(command.action, command) != null) {
+            throw new IllegalArgumentException("Action already registered: " + command.action);
+        }
+    }
+
+    /** Decodes and checks the payload of {@code request}; unknown actions and bad payloads yield an error. */
+    public Call decode(Request request) {
+        long start = System.nanoTime();
+        String action = request.getAction();
+        if (action == null) {
+            return new Call(null, null, "Missing action", start);
+        }
+        Command<?> command = commands.get(action);
+        if (command == null) {
+            return new Call(null, null, "Unknown action: " + action, start);
+        }
+        try {
+            Object payload = command.decode(request);
+            String error = payload == null && command.payloadRequired ? "Missing payload for " + action
+                    : payload instanceof Validated ? ((Validated) payload).validate() : null;
+            return new Call(command, payload, error, start);
+        } catch (IOException e) {
+            return new Call(command, null, message(action, e), start);
+        }
+    }
+
+    // une erreur levée par le constructeur d'un payload (durée, énumération...) est rendue telle quelle
+    private static String message(String action, IOException e) {
+        if (e instanceof ValueInstantiationException && e.getCause() instanceof IllegalArgumentException) {
+            return e.getCause().getMessage();
+        }
+        String detail = e instanceof JsonProcessingException ? ((JsonProcessingException) e).getOriginalMessage()
+                : e.getMessage();
+        return "Invalid payload for " + action + ": " + detail;
+    }
+
+    private static final class Command<P> {
+        final String action;
+        final RequestScheduler.LaneKind lane;
+        final boolean inline;
+        final Class<P> payloadType;
+        final ObjectReader reader;
+        final boolean payloadRequired;
+        final Handler<P> handler;
+        private volatile P empty;   // payload d'une requête sans paramètres, immuable donc partagé
+
+        Command(String action, RequestScheduler.LaneKind lane, boolean inline, Class<P> payloadType,
+                ObjectReader reader, boolean payloadRequired, Handler<P> handler) {
+            this.action = action;
+            this.lane = lane;
+            this.inline = inline;
+            this.payloadType = payloadType;
+            this.reader = reader;
+            this.payloadRequired = payloadRequired;
+            this.handler = handler;
+        }
+
+        P decode(Request request) throws IOException {
+            if (reader == null) {
+                return null;
+            }
+            P payload = null;
+            if (request.getBody() != null) {
+                payload = reader.readValue(request.getBody());
+            } else if (request.getPayload() != null && !request.getPayload().isBlank()) {
+                payload = reader.readValue(request.getPayload());
+            }
+            if (payload != null || payloadRequired) {
+                return payload;
+            }
+            P e = empty;
+            if (e == null) {
+                e = reader.readValue(EMPTY);
+                empty = e;
+            }
+            return e;
+        }
+
+        Response run(Object payload, Request request, ResponseSink sink) throws Exception {
+            return handler.handle(payloadType.cast(payload), request, sink);
+        }
+    }
+
+    /** A request decoded against its command, ready to be scheduled. */
+    public static final class Call {
+        private final Command<?> command;
+        private final Object payload;
+        private final String error;
+        private final long decodeNanos;
+
+        Call(Command<?> command, Object payload, String error, long start) {
+            this.command = command;
+            this.payload = payload;
+            this.error = error;
+            this.decodeNanos = System.nanoTime() - start;
+        }
+
+        /** Null when the request can run. */
+        public String getError() {
+            return error;
+        }
+
+        /** Action name used for metrics: null for an unknown or missing action. */
+        public String getAction() {
+            return command == null ? null : command.action;
+        }
+
+        public RequestScheduler.LaneKind getLane() {
+            return command == null ? RequestScheduler.LaneKind.FAST : command.lane;
+        }
+
+        /** Run by the reading thread itself, see {@link CommandRegistry#registerInline}. */
+        public boolean isInline() {
+            return command != null && command.inline;
+        }
+
+        long getDecodeNanos() {
+            return decodeNanos;
+        }
+
+        Response run(Request request, ResponseSink sink) throws Exception {
+            return command.run(payload, request, sink);
+        }
+    }
+}
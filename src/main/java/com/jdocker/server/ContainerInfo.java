@@ -0,0 +1,83 @@
+package com.jdocker.server;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Immutable snapshot of one container as kept by {@link ContainerStateCache}.
+ */
+public final class ContainerInfo {
+
+    private final String id;
+    private final String name;   // as reported by the engine, e.g. "/web1"
+    private final String image;
+    private final String state;
+    private final Map<String, String> labels;
+    private final long created;  // epoch seconds
+
+    public ContainerInfo(String id, String name, String image, String state, Map<String, String> labels, long created) {
+        this.id = id;
+        this.name = name == null ? "" : name;
+        this.image = image;
+        this.state = state;
+        this.labels = labels == null ? Collections.emptyMap() : Collections.unmodifiableMap(labels);
+        this.created = created;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /** Name without the leading slash, as typed by users. */
+    public String getShortName() {
+        return name.startsWith("/") ? name.substring(1) : name;
+    }
+
+    public String getImage() {
+        return image;
+    }
+
+    public String getState() {
+        return state;
+    }
+
+    public Map<String, String> getLabels() {
+        return labels;
+    }
+
+    public long getCreated() {
+        return created;
+    }
+
+    public ContainerInfo withState(String newState) {
+        return new ContainerInfo(id, name, image, newState, labels, created);
+    }
+
+    public ContainerInfo withName(String newName) {
+        return new ContainerInfo(id, newName, image, state, labels, created);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof ContainerInfo)) {
+            return false;
+        }
+        ContainerInfo other = (ContainerInfo) o;
+        return created == other.created && id.equals(other.id) && name.equals(other.name)
+                && Objects.equals(image, other.image) && Objects.equals(state, other.state)
+                && labels.equals(other.labels);
+    }
+
+    @Override
+    public int hashCode() {
+        return id.hashCode();
+    }
+}
@@ -0,0 +1,409 @@
+package com.jdocker.server;
+
+import java.io.Closeable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory view of the engine's containers, seeded with one full listing and then kept
+ * current from the engine event stream. If the stream drops, the cache is marked unsynced
+ * (callers fall back to the engine) and rebuilt in the background.
+ * <p>
+ * Every effective change (not the re-application of an identical state) is reported to the
+ * {@link ChangeListener}, including the differences found by a rebuild.
+ */
+public class ContainerStateCache implements Closeable {
+
+    /** Called under the cache lock, in order: must not block. */
+    public interface ChangeListener {
+        /** {@code previous} null = new container, {@code current} null = removed. */
+        void onChange(ContainerInfo previous, ContainerInfo current);
+    }
+
+    private static final long RESYNC_BACKOFF_MS = 2000;
+    private static final int REMOVED_IDS_KEPT = 4096;
+
+    private final DockerEngine engine;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "jdocker-state-cache");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final Object lock = new Object();
+    private final Map<String, ContainerInfo> byId = new ConcurrentHashMap<>();
+    private final Map<String, String> idByName = new ConcurrentHashMap<>();
+    private final ConcurrentSkipListSet<String> sortedIds = new ConcurrentSkipListSet<>();
+    private final AtomicLong version = new AtomicLong();
+    private final AtomicLong imageVersion = new AtomicLong();
+
+    private volatile boolean synced;
+    private volatile boolean closed;
+    private final AtomicBoolean resyncScheduled = new AtomicBoolean();
+    private volatile Closeable eventStream;
+    private volatile ChangeListener changeListener;
+    private long streamGeneration;        // guarded by lock
+    private List<EngineEvent> pendingEvents; // non-null while seeding, guarded by lock
+    private long eventSequence;              // guarded by lock
+    private final Map<String, Long> lastEventById = new HashMap<>();   // guarded by lock
+    private final ArrayDeque<String> removedIds = new ArrayDeque<>();  // guarded by lock
+
+    public ContainerStateCache(DockerEngine engine) {
+        this.engine = engine;
+    }
+
+    public void start() {
+        scheduler.execute(this::resync);
+    }
+
+    public void setChangeListener(ChangeListener listener) {
+        this.changeListener = listener;
+    }
+
+    public boolean isSynced() {
+        return synced;
+    }
+
+    /** Incremented on every container change; lets callers cache derived views. */
+    public long getVersion() {
+        return version.get();
+    }
+
+    /** Incremented on every image event (pull, tag, delete...). */
+    public long getImageVersion() {
+        return imageVersion.get();
+    }
+
+    public Collection<ContainerInfo> getContainers() {
+        return new ArrayList<>(byId.values());
+    }
+
+    public int size() {
+        return byId.size();
+    }
+
+    public ContainerInfo get(String id) {
+        return byId.get(id);
+    }
+
+    /**
+     * Full id, then name, then unique id prefix. Returns null if nothing matches.
+     */
+    public String resolveId(String idOrName) {
+        if (byId.containsKey(idOrName)) {
+            return idOrName;
+        }
+        String shortName = idOrName.startsWith("/") ? idOrName.substring(1) : idOrName;
+        String byName = idByName.get(shortName);
+        if (byName != null) {
+            return byName;
+        }
+        String first = sortedIds.ceiling(idOrName);
+        if (first == null || !first.startsWith(idOrName)) {
+            return null;
+        }
+        String next = sortedIds.higher(first);
+        if (next != null && next.startsWith(idOrName)) {
+            throw new IllegalArgumentException("Ambiguous container id prefix: " + idOrName);
+        }
+        return first;
+    }
+
+    /** Sequence of the last applied engine event; taken before an engine call, see {@link #putOptimistic}. */
+    public long eventSequence() {
+        synchronized (lock) {
+            return eventSequence;
+        }
+    }
+
+    // Updates applied directly after our own engine calls, so a client sees its change
+    // immediately; the matching engine event re-applies the same state later. Skipped when an
+    // event (or a removal) for that container was applied after {@code since}: it is newer.
+    public void putOptimistic(ContainerInfo info, long since) {
+        synchronized (lock) {
+            if (!changedSince(info.getId(), since)) {
+                put(info);
+            }
+        }
+    }
+
+    public void markStateOptimistic(String id, String state, long since) {
+        synchronized (lock) {
+            if (!changedSince(id, since)) {
+                markState(id, state);
+            }
+        }
+    }
+
+    // caller holds lock
+    private boolean changedSince(String id, long since) {
+        Long last = lastEventById.get(id);
+        return last != null && last > since;
+    }
+
+    // caller holds lock
+    private void recordEvent(String id) {
+        lastEventById.put(id, ++eventSequence);
+    }
+
+    public void put(ContainerInfo info) {
+        synchronized (lock) {
+            ContainerInfo old = byId.put(info.getId(), info);
+            if (info.equals(old)) {
+                return; // état déjà connu (événement qui suit notre propre appel)
+            }
+            if (old != null && !old.getShortName().equals(info.getShortName())) {
+                idByName.remove(old.getShortName(), old.getId());
+            }
+            if (!info.getShortName().isEmpty()) {
+                idByName.put(info.getShortName(), info.getId());
+            }
+            sortedIds.add(info.getId());
+            version.incrementAndGet();
+            changed(old, info);
+        }
+    }
+
+    public void markState(String id, String state) {
+        synchronized (lock) {
+            ContainerInfo old = byId.get(id);
+            if (old != null) {
+                put(old.withState(state));
+            }
+        }
+    }
+
+    public void invalidateImages() {
+        imageVersion.incrementAndGet();
+    }
+
+    public void remove(String id) {
+        synchronized (lock) {
+            ContainerInfo old = byId.remove(id);
+            if (old != null) {
+                idByName.remove(old.getShortName(), id);
+                sortedIds.remove(id);
+                version.incrementAndGet();
+                changed(old, null);
+            }
+            // trace gardée un temps : une écriture optimiste en retard ne doit pas ressusciter le conteneur
+            recordEvent(id);
+            removedIds.add(id);
+            while (removedIds.size() > REMOVED_IDS_KEPT) {
+                String oldest = removedIds.poll();
+                if (!byId.containsKey(oldest)) {
+                    lastEventById.remove(oldest);
+                }
+            }
+        }
+    }
+
+    private void resync() {
+        resyncScheduled.set(false);
+        if (closed) {
+            return;
+        }
+        synced = false;
+        try {
+            synchronized (lock) {
+                pendingEvents = new ArrayList<>();
+            }
+            // on s'abonne avant de lister : les événements reçus pendant le listing sont rejoués après
+            subscribe();
+            List<ContainerInfo> containers = engine.listContainers();
+            synchronized (lock) {
+                // différence avec l'état connu : seuls les vrais changements sont signalés
+                Set<String> listed = new HashSet<>();
+                for (ContainerInfo c : containers) {
+                    listed.add(c.getId());
+                }
+                for (String id : new ArrayList<>(byId.keySet())) {
+                    if (!listed.contains(id)) {
+                        remove(id);
+                    }
+                }
+                for (ContainerInfo c : containers) {
+                    put(c);
+                }
+                for (EngineEvent e : pendingEvents) {
+                    apply(e);
+                }
+                pendingEvents = null;
+                imageVersion.incrementAndGet();
+                synced = true;
+            }
+            ServerLog.info("CACHE", "Synced " + containers.size() + " containers");
+        } catch (Exception e) {
+            ServerLog.warn("CACHE", "Resync failed: " + e.getMessage());
+            scheduleResync();
+        }
+    }
+
+    private void subscribe() {
+        long generation;
+        synchronized (lock) {
+            generation = ++streamGeneration;
+        }
+        closeEventStream();
+        eventStream = engine.events(new DockerEngine.EventListener() {
+            @Override
+            public void onEvent(EngineEvent event) {
+                ContainerStateCache.this.onEvent(event);
+            }
+
+            @Override
+            public void onEnd(Throwable error) {
+                streamLost(generation);
+            }
+        });
+    }
+
+    private void streamLost(long generation) {
+        synchronized (lock) {
+            if (closed || generation != streamGeneration) {
+                return; // ancien flux fermé volontairement
+            }
+            streamGeneration++;
+        }
+        synced = false;
+        ServerLog.warn("CACHE", "Event stream lost, rebuilding");
+        scheduleResync();
+    }
+
+    private void scheduleResync() {
+        if (!closed && resyncScheduled.compareAndSet(false, true)) {
+            scheduler.schedule(this::resync, RESYNC_BACKOFF_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void onEvent(EngineEvent event) {
+        synchronized (lock) {
+            if (pendingEvents != null) {
+                pendingEvents.add(event);
+            } else {
+                apply(event);
+            }
+        }
+    }
+
+    // caller holds lock
+    private void apply(EngineEvent event) {
+        if (event.getType() == EngineEvent.Type.IMAGE) {
+            imageVersion.incrementAndGet();
+            return;
+        }
+        if (event.getType() != EngineEvent.Type.CONTAINER || event.getAction() == null) {
+            return;
+        }
+        String id = event.getId();
+        if (id == null) {
+            return;
+        }
+        recordEvent(id);
+        Map<String, String> attributes = event.getAttributes();
+
+        // "exec_start: sh" -> "exec_start"
+        String action = event.getAction();
+        int colon = action.indexOf(':');
+        if (colon >= 0) {
+            action = action.substring(0, colon);
+        }
+
+        switch (action) {
+            case "create": {
+                Map<String, String> labels = new HashMap<>(attributes);
+                labels.remove("name");
+                labels.remove("image");
+                put(new ContainerInfo(id, "/" + attributes.getOrDefault("name", ""),
+                        attributes.get("image"), "created", labels, event.getTime()));
+                break;
+            }
+            case "start":
+            case "unpause":
+            case "restart":
+                updateOrRefresh(id, "running");
+                break;
+            case "pause":
+                updateOrRefresh(id, "paused");
+                break;
+            case "die":
+                updateOrRefresh(id, "exited");
+                break;
+            case "rename": {
+                ContainerInfo old = byId.get(id);
+                if (old == null) {
+                    refreshLater(id);
+                } else if (attributes.containsKey("name")) {
+                    put(old.withName("/" + attributes.get("name")));
+                }
+                break;
+            }
+            case "destroy":
+                remove(id);
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void changed(ContainerInfo previous, ContainerInfo current) {
+        ChangeListener listener = changeListener;
+        if (listener != null) {
+            listener.onChange(previous, current);
+        }
+    }
+
+    private void updateOrRefresh(String id, String state) {
+        if (byId.containsKey(id)) {
+            markState(id, state);
+        } else {
+            refreshLater(id);
+        }
+    }
+
+    // Container unknown to the cache (e.g. created while the stream was reconnecting): ask the engine.
+    private void refreshLater(String id) {
+        scheduler.execute(() -> {
+            try {
+                ContainerInfo found = engine.inspectContainer(id);
+                if (found != null) {
+                    put(found);
+                }
+            } catch (Exception e) {
+                ServerLog.warn("CACHE", "Refresh of " + id + " failed: " + e.getMessage());
+            }
+        });
+    }
+
+    private void closeEventStream() {
+        Closeable stream = eventStream;
+        eventStream = null;
+        if (stream != null) {
+            try {
+                stream.close();
+            } catch (Exception ignored) {
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        synced = false;
+        scheduler.shutdownNow();
+        closeEventStream();
+    }
+}
@@ -0,0 +1,170 @@
+package com.jdocker.server;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+
+/**
+ * Numbered journal of container changes for WATCH_CONTAINERS, fed by the state caches of every
+ * engine host. Each effective change gets the next sequence number and is kept in a bounded
+ * journal, so a client that reconnects with its last sequence only receives what it missed.
+ * <p>
+ * The hub keeps its own copy of the watched state: a snapshot and the sequence it corresponds
+ * to are always taken together. Sequences restart with the server; the {@code epoch} tells a
+ * client that its sequence belongs to another run.
+ */
+public class ContainerWatchHub {
+
+    /** One delta; {@code container} is null for a removal. */
+    public static final class Change {
+        final long seq;
+        final String type;
+        final String id;
+        final String host;
+        final ContainerInfo container;
+
+        Change(long seq, String type, String id, String host, ContainerInfo container) {
+            this.seq = seq;
+            this.type = type;
+            this.id = id;
+            this.host = host;
+            this.container = container;
+        }
+    }
+
+    /** Receives the changes in sequence order, under the hub lock: must not block. */
+    interface Watcher {
+        void onChange(Change change);
+    }
+
+    /** Starting point of a watcher: the missed changes, or a full snapshot when they are gone. */
+    static final class Start {
+        final long seq;
+        final List<Change> backlog;            // null = snapshot
+        final List<Change> snapshot;
+
+        Start(long seq, List<Change> backlog, List<Change> snapshot) {
+            this.seq = seq;
+            this.backlog = backlog;
+            this.snapshot = snapshot;
+        }
+    }
+
+    private final String epoch = Long.toString(System.currentTimeMillis(), 36);
+    private final int journalSize;
+    private final ArrayDeque<Change> journal = new ArrayDeque<>();       // guarded by this
+    private final Map<String, Change> state = new LinkedHashMap<>();      // id -> last change, guarded by this
+    private final Set<Watcher> watchers = new CopyOnWriteArraySet<>();
+    private long seq;                                                     // guarded by this
+
+    public ContainerWatchHub(int journalSize) {
+        this.journalSize = Math.max(1, journalSize);
+    }
+
+    public String getEpoch() {
+        return epoch;
+    }
+
+    public synchronized long getSequence() {
+        return seq;
+    }
+
+    /** Listener to install on the state cache of {@code host} (null with a single engine). */
+    ContainerStateCache.ChangeListener listenerFor(String host) {
+        return (previous, current) -> record(host, previous, current);
+    }
+
+    private synchronized void record(String host, ContainerInfo previous, ContainerInfo current) {
+        // conteneurs du pool invisibles : un conteneur réclamé (renommé) apparaît comme créé
+        if (previous != null && WarmPool.isPoolContainer(previous)) {
+            previous = null;
+        }
+        if (current != null && WarmPool.isPoolContainer(current)) {
+            current = null;
+        }
+        if (previous == null && current == null) {
+            return;
+        }
+        String id = current != null ? current.getId() : previous.getId();
+        Change change = new Change(++seq, type(previous, current), id, host, current);
+        journal.addLast(change);
+        if (journal.size() > journalSize) {
+            journal.removeFirst();
+        }
+        if (current == null) {
+            state.remove(id);
+        } else {
+            state.put(id, change);
+        }
+        for (Watcher watcher : watchers) {
+            watcher.onChange(change);
+        }
+    }
+
+    private static String type(ContainerInfo previous, ContainerInfo current) {
+        if (previous == null) {
+            return "created";
+        }
+        if (current == null) {
+            return "removed";
+        }
+        if (!previous.getName().equals(current.getName())) {
+            return "renamed";
+        }
+        if (!String.valueOf(previous.getState()).equals(current.getState())) {
+            switch (String.valueOf(current.getState())) {
+                case "running":
+                    return "started";
+                case "exited":
+                case "dead":
+                    return "died";
+                case "paused":
+                    return "paused";
+                default:
+                    break;
+            }
+        }
+        return "updated";
+    }
+
+    /**
+     * Registers a watcher and returns where it starts: the changes after {@code since} when the
+     * journal still holds all of them (same epoch), otherwise a snapshot.
+     */
+    synchronized Start watch(Watcher watcher, Long since, String clientEpoch) {
+        watchers.add(watcher);
+        if (since != null && epoch.equals(clientEpoch) && since <= seq) {
+            long oldest = journal.isEmpty() ? seq + 1 : journal.peekFirst().seq;
+            if (since >= oldest - 1) {
+                List<Change> backlog = new ArrayList<>();
+                for (Iterator<Change> it = journal.descendingIterator(); it.hasNext(); ) {
+                    Change change = it.next();
+                    if (change.seq <= since) {
+                        break;
+                    }
+                    backlog.add(0, change);
+                }
+                return new Start(seq, backlog, null);
+            }
+        }
+        return snapshot();
+    }
+
+    /** Current state, for a watcher that fell too far behind. */
+    synchronized Start snapshot() {
+        return new Start(seq, null, new ArrayList<>(state.values()));
+    }
+
+    void unwatch(Watcher watcher) {
+        watchers.remove(watcher);
+    }
+
+    public int getWatcherCount() {
+        return watchers.size();
+    }
+}
@@ -0,0 +1,71 @@
+package com.jdocker.server;
+
+import java.io.Closeable;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * The Docker engine operations the server relies on, expressed with our own types so that
+ * {@link DockerService} can run against the real engine ({@link DockerJavaEngine}) or an
+ * in-memory one ({@code FakeDockerEngine} of the benchmarks module, for benchmarks and offline load tests).
+ * Failures are reported as runtime exceptions whose message is shown to the client.
+ */
+public interface DockerEngine extends Closeable {
+
+    /** Cheap round-trip used by health checks; throws if the engine is unreachable. */
+    void ping();
+
+    List<ContainerInfo> listContainers();
+
+    /** One container by full id, or null if the engine does not know it. */
+    ContainerInfo inspectContainer(String id);
+
+    List<ImageInfo> listImages();
+
+    /** Returns the id of the new container. */
+    String createContainer(String image, String name);
+
+    void startContainer(String id);
+
+    void stopContainer(String id);
+
+    void renameContainer(String id, String newName);
+
+    /** Freezes the processes of a running container (cgroup freezer). */
+    void pauseContainer(String id);
+
+    void unpauseContainer(String id);
+
+    /** Forced removal: a running container is killed first. */
+    void removeContainer(String id);
+
+    /** Blocks until the pull is over; progress messages are handed to {@code progress}. */
+    void pullImage(String image, String tag, Consumer<PullProgress> progress) throws InterruptedException;
+
+    /** Log stream of a container; closing the handle stops it. tail/since null = no limit. */
+    Closeable logs(String id, Integer tail, Integer since, boolean follow, LogOptions.Stream stream,
+                   LogListener listener);
+
+    /** Resource usage samples of a running container, about one per second. */
+    Closeable stats(String id, Consumer<StatsSample> onSample, Consumer<Throwable> onEnd);
+
+    /**
+     * Runs {@code cmd} in a running container. {@code stdin} is read until it ends (-1), the output
+     * goes to {@code listener}; closing the handle detaches from the command.
+     */
+    Closeable exec(String id, List<String> cmd, boolean tty, InputStream stdin, ExecListener listener);
+
+    /** Container and image events, until the handle is closed or the stream breaks. */
+    Closeable events(EventListener listener);
+
+    /** Transport counters reported by ENGINE_STATS, in display order. */
+    Map<String, Number> getTransportStats();
+
+    interface EventListener {
+        void onEvent(EngineEvent event);
+
+        void onEnd(Throwable error);
+    }
+}
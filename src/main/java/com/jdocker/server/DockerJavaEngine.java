@@ -0,0 +1,345 @@
+package com.jdocker.server;
+
+import com.github.dockerjava.api.DockerClient;
+import com.github.dockerjava.api.async.ResultCallback;
+import com.github.dockerjava.api.async.ResultCallbackTemplate;
+import com.github.dockerjava.api.command.LogContainerCmd;
+import com.github.dockerjava.api.model.BlkioStatEntry;
+import com.github.dockerjava.api.model.Container;
+import com.github.dockerjava.api.model.CpuStatsConfig;
+import com.github.dockerjava.api.model.Event;
+import com.github.dockerjava.api.model.EventType;
+import com.github.dockerjava.api.model.Frame;
+import com.github.dockerjava.api.model.Image;
+import com.github.dockerjava.api.model.PullResponseItem;
+import com.github.dockerjava.api.model.StatisticNetworksConfig;
+import com.github.dockerjava.api.model.Statistics;
+import com.github.dockerjava.api.model.StreamType;
+import com.github.dockerjava.core.DefaultDockerClientConfig;
+import com.github.dockerjava.core.DockerClientImpl;
+import com.github.dockerjava.core.command.PullImageResultCallback;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * {@link DockerEngine} backed by docker-java over the pooled HTTP transport.
+ */
+public class DockerJavaEngine implements DockerEngine {
+
+    private final PooledDockerHttpClient httpClient;
+    private final DockerClient dockerClient;
+
+    /** {@code name} labels the pool gauge, one per host when the server fronts several engines. */
+    public DockerJavaEngine(String name, EngineConfig engineConfig, Metrics metrics) {
+        DefaultDockerClientConfig config = DefaultDockerClientConfig
+                .createDefaultConfigBuilder()
+                .withDockerHost(engineConfig.getDockerHost())
+                .build();
+        this.httpClient = new PooledDockerHttpClient(engineConfig, metrics);
+        this.dockerClient = DockerClientImpl.getInstance(config, httpClient);
+        metrics.gauge("engine.pool.leased", "host", name, httpClient::getLeased);
+    }
+
+    @Override
+    public void ping() {
+        dockerClient.pingCmd().exec();
+    }
+
+    @Override
+    public List<ContainerInfo> listContainers() {
+        List<ContainerInfo> result = new ArrayList<>();
+        for (Container c : dockerClient.listContainersCmd().withShowAll(true).exec()) {
+            result.add(toInfo(c));
+        }
+        return result;
+    }
+
+    @Override
+    public ContainerInfo inspectContainer(String id) {
+        List<Container> found = dockerClient.listContainersCmd()
+                .withShowAll(true)
+                .withIdFilter(List.of(id))
+                .exec();
+        return found.isEmpty() ? null : toInfo(found.get(0));
+    }
+
+    @Override
+    public List<ImageInfo> listImages() {
+        List<ImageInfo> result = new ArrayList<>();
+        for (Image img : dockerClient.listImagesCmd().withShowAll(true).exec()) {
+            String[] repoTags = img.getRepoTags();
+            String repository = null;
+            String tag = null;
+            if (repoTags != null && repoTags.length > 0) {
+                String[] parts = repoTags[0].split(":", 2);
+                repository = parts[0];
+                if (parts.length > 1) {
+                    tag = parts[1];
+                }
+            }
+            result.add(new ImageInfo(img.getId(), repository, tag, img.getSize() == null ? 0 : img.getSize()));
+        }
+        return result;
+    }
+
+    @Override
+    public String createContainer(String image, String name) {
+        return dockerClient.createContainerCmd(image).withName(name).exec().getId();
+    }
+
+    @Override
+    public void startContainer(String id) {
+        dockerClient.startContainerCmd(id).exec();
+    }
+
+    @Override
+    public void stopContainer(String id) {
+        dockerClient.stopContainerCmd(id).exec();
+    }
+
+    @Override
+    public void renameContainer(String id, String newName) {
+        dockerClient.renameContainerCmd(id).withName(newName).exec();
+    }
+
+    @Override
+    public void pauseContainer(String id) {
+        dockerClient.pauseContainerCmd(id).exec();
+    }
+
+    @Override
+    public void unpauseContainer(String id) {
+        dockerClient.unpauseContainerCmd(id).exec();
+    }
+
+    @Override
+    public void removeContainer(String id) {
+        dockerClient.removeContainerCmd(id).withForce(true).exec();
+    }
+
+    @Override
+    public void pullImage(String image, String tag, Consumer<PullProgress> progress) throws InterruptedException {
+        dockerClient
+                .pullImageCmd(image)
+                .withTag(tag)
+                .exec(new PullImageResultCallback() {
+                    @Override
+                    public void onNext(PullResponseItem item) {
+                        progress.accept(toProgress(item));
+                        super.onNext(item);
+                    }
+                })
+                .awaitCompletion();
+    }
+
+    @Override
+    public Closeable logs(String id, Integer tail, Integer since, boolean follow, LogOptions.Stream stream,
+                          LogListener listener) {
+        LogContainerCmd cmd = dockerClient.logContainerCmd(id)
+                .withStdOut(stream != LogOptions.Stream.STDERR)
+                .withStdErr(stream != LogOptions.Stream.STDOUT)
+                .withFollowStream(follow);
+        if (tail != null) {
+            cmd.withTail(tail);
+        } else {
+            cmd.withTailAll();
+        }
+        if (since != null) {
+            cmd.withSince(since);
+        }
+
+        return cmd.exec(new ResultCallbackTemplate<ResultCallbackTemplate<?, Frame>, Frame>() {
+            @Override
+            public void onNext(Frame frame) {
+                listener.onLine(new String(frame.getPayload(), StandardCharsets.UTF_8).trim());
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                listener.onEnd(throwable);
+            }
+
+            @Override
+            public void onComplete() {
+                listener.onEnd(null);
+                super.onComplete();
+            }
+        });
+    }
+
+    @Override
+    public Closeable stats(String id, Consumer<StatsSample> onSample, Consumer<Throwable> onEnd) {
+        return dockerClient.statsCmd(id).exec(new ResultCallbackTemplate<ResultCallbackTemplate<?, Statistics>, Statistics>() {
+            @Override
+            public void onNext(Statistics stats) {
+                onSample.accept(toSample(stats));
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                onEnd.accept(throwable);
+            }
+
+            @Override
+            public void onComplete() {
+                onEnd.accept(null);
+                super.onComplete();
+            }
+        });
+    }
+
+    @Override
+    public Closeable exec(String id, List<String> cmd, boolean tty, InputStream stdin, ExecListener listener) {
+        String execId = dockerClient.execCreateCmd(id)
+                .withCmd(cmd.toArray(new String[0]))
+                .withAttachStdin(true)
+                .withAttachStdout(true)
+                .withAttachStderr(true)
+                .withTty(tty)
+                .exec()
+                .getId();
+        // connexion détournée (hijack) : docker-java copie stdin vers le démon depuis son propre thread
+        return dockerClient.execStartCmd(execId)
+                .withStdIn(stdin)
+                .withTty(tty)
+                .exec(new ResultCallbackTemplate<ResultCallbackTemplate<?, Frame>, Frame>() {
+                    @Override
+                    public void onNext(Frame frame) {
+                        byte[] payload = frame.getPayload();
+                        listener.onOutput(frame.getStreamType() == StreamType.STDERR, payload, 0, payload.length);
+                    }
+
+                    @Override
+                    public void onError(Throwable throwable) {
+                        listener.onExit(null, throwable);
+                    }
+
+                    @Override
+                    public void onComplete() {
+                        Long exitCode = null;
+                        try {
+                            exitCode = dockerClient.inspectExecCmd(execId).exec().getExitCodeLong();
+                        } catch (RuntimeException ignored) {
+                        }
+                        listener.onExit(exitCode, null);
+                        super.onComplete();
+                    }
+                });
+    }
+
+    @Override
+    public Closeable events(EventListener listener) {
+        return dockerClient.eventsCmd()
+                .withEventTypeFilter(EventType.CONTAINER, EventType.IMAGE)
+                .exec(new ResultCallback.Adapter<>() {
+                    @Override
+                    public void onNext(Event event) {
+                        listener.onEvent(toEvent(event));
+                    }
+
+                    @Override
+                    public void onError(Throwable throwable) {
+                        listener.onEnd(throwable);
+                    }
+
+                    @Override
+                    public void onComplete() {
+                        listener.onEnd(null);
+                    }
+                });
+    }
+
+    @Override
+    public Map<String, Number> getTransportStats() {
+        Map<String, Number> stats = new LinkedHashMap<>();
+        stats.put("maxConnections", httpClient.getMaxConnections());
+        stats.put("leased", httpClient.getLeased());
+        stats.put("peakLeased", httpClient.getPeakLeased());
+        stats.put("requests", httpClient.getRequests());
+        stats.put("failures", httpClient.getFailures());
+        return stats;
+    }
+
+    @Override
+    public void close() throws IOException {
+        // closes the underlying pooled transport as well
+        dockerClient.close();
+    }
+
+    private static ContainerInfo toInfo(Container c) {
+        String name = (c.getNames() != null && c.getNames().length > 0) ? c.getNames()[0] : "";
+        long created = c.getCreated() == null ? 0 : c.getCreated();
+        return new ContainerInfo(c.getId(), name, c.getImage(), c.getState(), c.getLabels(), created);
+    }
+
+    private static PullProgress toProgress(PullResponseItem item) {
+        if (item.isErrorIndicated()) {
+            String error = item.getErrorDetail() != null ? item.getErrorDetail().getMessage() : item.getError();
+            return new PullProgress(item.getId(), item.getStatus(), null, null, error);
+        }
+        Long current = item.getProgressDetail() == null ? null : item.getProgressDetail().getCurrent();
+        Long total = item.getProgressDetail() == null ? null : item.getProgressDetail().getTotal();
+        return new PullProgress(item.getId(), item.getStatus(), current, total, null);
+    }
+
+    private static EngineEvent toEvent(Event event) {
+        EngineEvent.Type type = event.getType() == EventType.CONTAINER ? EngineEvent.Type.CONTAINER
+                : event.getType() == EventType.IMAGE ? EngineEvent.Type.IMAGE : EngineEvent.Type.OTHER;
+        String id = event.getActor() != null && event.getActor().getId() != null
+                ? event.getActor().getId() : event.getId();
+        Map<String, String> attributes = event.getActor() != null ? event.getActor().getAttributes() : null;
+        long time = event.getTime() == null ? System.currentTimeMillis() / 1000 : event.getTime();
+        return new EngineEvent(type, event.getAction(), id, attributes, time);
+    }
+
+    private static StatsSample toSample(Statistics stats) {
+        long netRx = 0, netTx = 0;
+        if (stats.getNetworks() != null) {
+            for (StatisticNetworksConfig net : stats.getNetworks().values()) {
+                netRx += orZero(net.getRxBytes());
+                netTx += orZero(net.getTxBytes());
+            }
+        }
+        long blkRead = 0, blkWrite = 0;
+        if (stats.getBlkioStats() != null && stats.getBlkioStats().getIoServiceBytesRecursive() != null) {
+            for (BlkioStatEntry entry : stats.getBlkioStats().getIoServiceBytesRecursive()) {
+                if ("read".equalsIgnoreCase(entry.getOp())) {
+                    blkRead += orZero(entry.getValue());
+                } else if ("write".equalsIgnoreCase(entry.getOp())) {
+                    blkWrite += orZero(entry.getValue());
+                }
+            }
+        }
+        long memory = stats.getMemoryStats() == null ? 0 : orZero(stats.getMemoryStats().getUsage());
+        return new StatsSample(cpuPercent(stats.getCpuStats(), stats.getPreCpuStats()), memory,
+                netRx, netTx, blkRead, blkWrite);
+    }
+
+    private static double cpuPercent(CpuStatsConfig cpu, CpuStatsConfig pre) {
+        if (cpu == null || pre == null || cpu.getCpuUsage() == null || pre.getCpuUsage() == null) {
+            return 0;
+        }
+        long cpuDelta = orZero(cpu.getCpuUsage().getTotalUsage()) - orZero(pre.getCpuUsage().getTotalUsage());
+        long systemDelta = orZero(cpu.getSystemCpuUsage()) - orZero(pre.getSystemCpuUsage());
+        if (cpuDelta <= 0 || systemDelta <= 0) {
+            return 0;
+        }
+        long cpus = orZero(cpu.getOnlineCpus());
+        if (cpus == 0 && cpu.getCpuUsage().getPercpuUsage() != null) {
+            cpus = cpu.getCpuUsage().getPercpuUsage().size();
+        }
+        return (double) cpuDelta / systemDelta * Math.max(1, cpus) * 100.0;
+    }
+
+    private static long orZero(Long value) {
+        return value == null ? 0 : value;
+    }
+}
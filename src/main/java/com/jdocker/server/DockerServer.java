@@ -1,35 +1,153 @@
 package com.jdocker.server;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jdocker.common.CompressionStats;
+import com.jdocker.common.Response;
+
 import java.io.IOException;
+import java.io.OutputStream;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class DockerServer {
 
     private final int port;
+    private final ServerConfig config;
+    private final DockerService dockerService;
+    private final RequestDispatcher dispatcher;
+    private final ExecutorService requestExecutor;    // flux (logs, stats), opérations groupées
+    private final RequestScheduler scheduler;
+    private final AtomicInteger activeConnections = new AtomicInteger();
+    private final CompressionStats compressionStats = new CompressionStats();
+    private volatile ServerSocket serverSocket;
+    private volatile NioDockerServer nioServer;
 
     public DockerServer(int port) {
+        this(port, ServerConfig.fromSystemProperties(), new DockerService());
+    }
+
+    public DockerServer(int port, ServerConfig config, DockerService dockerService) {
         this.port = port;
+        this.config = config;
+        this.dockerService = dockerService;
+        AtomicInteger counter = new AtomicInteger();
+        this.requestExecutor = Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "jdocker-request-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        this.dispatcher = new RequestDispatcher(dockerService, requestExecutor);
+
+        Metrics metrics = dockerService.getMetrics();
+        this.scheduler = new RequestScheduler(config, metrics);
+        metrics.gauge("connections.active", () -> {
+            NioDockerServer nio = nioServer;
+            return nio != null ? nio.getConnectionCount() : activeConnections.get();
+        });
+        // le mode classique écrit directement sur la socket : rien n'est mis en file
+        metrics.gauge("connections.queuedBytes", () -> {
+            NioDockerServer nio = nioServer;
+            return nio != null ? nio.getQueuedBytes() : 0;
+        });
+        // compression négociée (HELLO "compression": "deflate") : gain et coût CPU, pour choisir par déploiement
+        metrics.gauge("compression.rawMessages", compressionStats::getRawMessages);
+        metrics.gauge("compression.deflatedMessages", compressionStats::getDeflatedMessages);
+        metrics.gauge("compression.deflateInBytes", compressionStats::getDeflateInBytes);
+        metrics.gauge("compression.deflateOutBytes", compressionStats::getDeflateOutBytes);
+        metrics.gauge("compression.ratio", compressionStats::getRatio);
+        metrics.gauge("compression.deflateMicrosPerMB", compressionStats::getDeflateMicrosPerMB);
+        metrics.gauge("compression.deflateMillis", () -> compressionStats.getDeflateNanos() / 1_000_000);
+        metrics.gauge("compression.inflateMillis", () -> compressionStats.getInflateNanos() / 1_000_000);
     }
 
     public void start() throws IOException {
+        MetricsHttpServer metricsServer = null;
+        if (config.getMetricsPort() > 0) {
+            metricsServer = new MetricsHttpServer(config.getMetricsPort(), dockerService.getMetrics());
+            metricsServer.start();
+        }
+        try {
+            if (config.getMode() == ServerConfig.Mode.NIO) {
+                nioServer = new NioDockerServer(port, config, dispatcher, scheduler, compressionStats);
+                nioServer.start();
+            } else {
+                startClassic();
+            }
+        } finally {
+            if (metricsServer != null) {
+                metricsServer.stop();
+            }
+            scheduler.close();
+            requestExecutor.shutdown();
+            dockerService.close();
+        }
+    }
+
+    private void startClassic() throws IOException {
         try (ServerSocket serverSocket = new ServerSocket(port)) {
-            System.out.println("[SERVER] Listening on port " + port);
-            while (true) {
-                Socket clientSocket = serverSocket.accept();
-                System.out.println("[SERVER] New client connected: " + clientSocket.getRemoteSocketAddress());
-                ClientHandler handler = new ClientHandler(clientSocket);
+            this.serverSocket = serverSocket;
+            ServerLog.info("SERVER", "Listening on port " + port);
+            while (!serverSocket.isClosed()) {
+                Socket clientSocket;
+                try {
+                    clientSocket = serverSocket.accept();
+                } catch (IOException e) {
+                    if (serverSocket.isClosed()) {
+                        break;
+                    }
+                    throw e;
+                }
+                if (activeConnections.incrementAndGet() > config.getMaxConnections()) {
+                    activeConnections.decrementAndGet();
+                    rejectBusy(clientSocket);
+                    continue;
+                }
+                ServerLog.info("SERVER", "New client connected: " + clientSocket.getRemoteSocketAddress());
+                ClientHandler handler = new ClientHandler(clientSocket, dispatcher, scheduler,
+                        config, compressionStats, activeConnections::decrementAndGet);
                 handler.start();
             }
         }
     }
 
+    private void rejectBusy(Socket clientSocket) {
+        try (clientSocket) {
+            Response busy = new Response("ERROR", "Server busy: too many connections", null);
+            OutputStream out = clientSocket.getOutputStream();
+            out.write((new ObjectMapper().writeValueAsString(busy) + "\n").getBytes(StandardCharsets.UTF_8));
+            out.flush();
+        } catch (IOException ignored) {
+        }
+    }
+
+    public void stop() {
+        NioDockerServer nio = nioServer;
+        if (nio != null) {
+            nio.stop();
+        }
+        try {
+            if (serverSocket != null) {
+                serverSocket.close();
+            }
+        } catch (IOException ignored) {
+        }
+    }
+
     public static void main(String[] args) {
         int port = 5000;
         if (args.length > 0) {
             port = Integer.parseInt(args[0]);
         }
-        DockerServer server = new DockerServer(port);
+        ServerConfig config = ServerConfig.fromSystemProperties();
+        if (args.length > 1) {
+            config.setMode(ServerConfig.Mode.valueOf(args[1].toUpperCase()));
+        }
+        DockerServer server = new DockerServer(port, config, new DockerService());
+        Runtime.getRuntime().addShutdownHook(new Thread(server::stop));
         try {
             server.start();
         } catch (IOException e) {
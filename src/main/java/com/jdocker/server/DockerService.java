@@ -1,198 +1,987 @@
 package com.jdocker.server;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
-import com.github.dockerjava.api.DockerClient;
-import com.github.dockerjava.api.async.ResultCallbackTemplate;
-import com.github.dockerjava.api.command.CreateContainerResponse;
-import com.github.dockerjava.api.exception.NotFoundException;
-import com.github.dockerjava.api.model.Container;
-import com.github.dockerjava.api.model.Frame;
-import com.github.dockerjava.api.model.Image;
-import com.github.dockerjava.core.DefaultDockerClientConfig;
-import com.github.dockerjava.core.DockerClientBuilder;
-import com.github.dockerjava.core.command.PullImageResultCallback;
-
-import java.nio.charset.StandardCharsets;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
-
-public class DockerService {
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Server-wide, thread-safe facade over the Docker engines.
+ * A single instance is shared by all client connections. It fronts one or more named engine
+ * hosts ({@link EngineHost}); with several hosts, listings are scatter-gathered in parallel with a
+ * per-host timeout (partial results name the missing hosts) and container operations are routed
+ * to the host that owns the container.
+ */
+public class DockerService implements Closeable {
 
     private final ObjectMapper mapper = new ObjectMapper();
-    private final DockerClient dockerClient;
+    private final Map<String, EngineHost> hosts;
+    private final boolean fleet;                      // more than one engine host
+    private final ExecutorService fleetExecutor;      // scatter-gather, null with a single host
+    private final ScheduledExecutorService healthChecker;
+    private final long hostTimeoutMs = Long.getLong("jdocker.fleet.hostTimeoutMs", 5000);
+    private final LogHub logHub;
+    private final StatsHub statsHub;
+    private final ContainerWatchHub watchHub;
+    private final LogSpool logSpool;                  // null unless jdocker.logs.spool.dir is set
+    private final WarmPool warmPool;                  // null unless jdocker.pool.templates is set
+    private final Metrics metrics;
+
+    // last built lists, reused while the cache versions do not change
+    private volatile CachedJson containersJson;
+    private final Map<String, CachedJson> imagesJson = new ConcurrentHashMap<>(); // by host
 
     public DockerService() {
-        DefaultDockerClientConfig config = DefaultDockerClientConfig
-                .createDefaultConfigBuilder()
-                .withDockerHost("tcp://localhost:2375")
-                .build();
-        this.dockerClient = DockerClientBuilder.getInstance(config).build();
+        this(new Metrics());
     }
 
-    public String handleListImages() throws Exception {
-        List<Image> images = dockerClient.listImagesCmd().withShowAll(true).exec();
+    // endpoints from jdocker.engines (or the single jdocker.engine.host)
+    private DockerService(Metrics metrics) {
+        this(createEngines(EngineConfig.endpointsFromSystemProperties(), metrics), metrics);
+    }
 
-        ObjectNode root = mapper.createObjectNode();
-        ArrayNode arr = mapper.createArrayNode();
+    public DockerService(EngineConfig engineConfig) {
+        this(engineConfig, new Metrics());
+    }
 
-        for (Image img : images) {
-            ObjectNode node = mapper.createObjectNode();
-            String[] repoTags = img.getRepoTags();
-            String repository = null;
-            String tag = null;
-            if (repoTags != null && repoTags.length > 0) {
-                String[] parts = repoTags[0].split(":", 2);
-                repository = parts[0];
-                if (parts.length > 1) {
-                    tag = parts[1];
+    public DockerService(EngineConfig engineConfig, Metrics metrics) {
+        this(createEngine("local", engineConfig, metrics), metrics);
+    }
+
+    /** Over an engine built by the caller (the in-memory one of the benchmarks, for instance). */
+    public DockerService(DockerEngine engine, Metrics metrics) {
+        this(Map.of("local", engine), metrics);
+    }
+
+    /** One host per entry, in iteration order; names are used in "host" fields and in "host/name" targets. */
+    public DockerService(Map<String, DockerEngine> engines, Metrics metrics) {
+        if (engines.isEmpty()) {
+            throw new IllegalArgumentException("No engine configured");
+        }
+        this.metrics = metrics;
+        Map<String, EngineHost> byName = new LinkedHashMap<>();
+        engines.forEach((name, engine) -> byName.put(name, new EngineHost(name, engine)));
+        this.hosts = Collections.unmodifiableMap(byName);
+        this.fleet = hosts.size() > 1;
+        this.watchHub = new ContainerWatchHub(Integer.getInteger("jdocker.watch.journalSize", 10_000));
+        for (EngineHost host : hosts.values()) {
+            // avant le premier listing : le remplissage initial du cache est journalisé lui aussi
+            host.getStateCache().setChangeListener(watchHub.listenerFor(fleet ? host.getName() : null));
+            host.start();
+        }
+        this.logHub = new LogHub(this, Integer.getInteger("jdocker.logs.ringSize", 1000));
+        this.statsHub = new StatsHub(this, Integer.getInteger("jdocker.stats.ringSize", 300));
+
+        if (fleet) {
+            AtomicInteger counter = new AtomicInteger();
+            this.fleetExecutor = Executors.newCachedThreadPool(r -> {
+                Thread t = new Thread(r, "jdocker-fleet-" + counter.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            });
+            this.healthChecker = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "jdocker-health");
+                t.setDaemon(true);
+                return t;
+            });
+            long interval = Long.getLong("jdocker.fleet.healthIntervalMs", 10_000);
+            // chaque hôte est sondé sur le pool : un moteur bloqué ne retarde pas les autres
+            healthChecker.scheduleWithFixedDelay(() -> {
+                for (EngineHost host : hosts.values()) {
+                    fleetExecutor.execute(host::check);
                 }
+            }, interval, interval, TimeUnit.MILLISECONDS);
+            for (EngineHost host : hosts.values()) {
+                metrics.gauge("engine.up", "host", host.getName(), () -> host.isUp() ? 1 : 0);
+            }
+            ServerLog.info("FLEET", "Fronting " + hosts.size() + " engines: " + hosts.keySet());
+        } else {
+            this.fleetExecutor = null;
+            this.healthChecker = null;
+        }
+
+        metrics.gauge("cache.containers", () -> {
+            long total = 0;
+            for (EngineHost host : hosts.values()) {
+                total += host.getStateCache().size();
+            }
+            return total;
+        });
+        metrics.gauge("logs.engineStreams", logHub::getChannelCount);
+        metrics.gauge("stats.engineStreams", statsHub::getStreamCount);
+        metrics.gauge("watch.seq", watchHub::getSequence);
+
+        this.logSpool = LogSpool.fromSystemProperties(this);
+        if (logSpool != null) {
+            try {
+                logSpool.start();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot open log spool", e);
+            }
+            metrics.gauge("logs.spool.bytes", logSpool::getBytes);
+            metrics.gauge("logs.spool.containers", logSpool::getContainerCount);
+            metrics.gauge("logs.spool.captures", logSpool::getCaptureCount);
+        }
+
+        this.warmPool = WarmPool.fromSystemProperties(hosts.values(), metrics);
+        if (warmPool != null) {
+            warmPool.start();
+        }
+    }
+
+    private static DockerEngine createEngine(String name, EngineConfig engineConfig, Metrics metrics) {
+        ServerLog.info("SERVER", "Docker engine at " + engineConfig.getDockerHost()
+                + " (" + engineConfig.getTransport() + " transport)");
+        return new DockerJavaEngine(name, engineConfig, metrics);
+    }
+
+    private static Map<String, DockerEngine> createEngines(Map<String, EngineConfig> endpoints, Metrics metrics) {
+        Map<String, DockerEngine> engines = new LinkedHashMap<>();
+        endpoints.forEach((name, config) -> engines.put(name, createEngine(name, config, metrics)));
+        return engines;
+    }
+
+    public ObjectNode handlePoolStats() throws Exception {
+        ObjectNode root = mapper.createObjectNode();
+        if (!fleet) {
+            single().getEngine().getTransportStats().forEach((name, value) -> root.put(name, value.longValue()));
+            return root;
+        }
+        for (EngineHost host : hosts.values()) {
+            ObjectNode node = root.putObject(host.getName());
+            node.put("health", host.getHealth().name().toLowerCase());
+            host.getEngine().getTransportStats().forEach((name, value) -> node.put(name, value.longValue()));
+        }
+        return root;
+    }
+
+    /** LIST_ENGINES: every configured host with its health and cache state. */
+    public ObjectNode handleListEngines() {
+        ObjectNode root = mapper.createObjectNode();
+        ArrayNode arr = root.putArray("engines");
+        for (EngineHost host : hosts.values()) {
+            ObjectNode node = arr.addObject();
+            node.put("name", host.getName());
+            node.put("health", host.getHealth().name().toLowerCase());
+            node.put("synced", host.getStateCache().isSynced());
+            node.put("containers", host.getStateCache().size());
+            if (host.getLastCheck() > 0) {
+                node.put("lastCheck", host.getLastCheck());
+            }
+            if (host.getLastLatencyMicros() > 0) {
+                node.put("latencyMicros", host.getLastLatencyMicros());
+            }
+            if (host.getLastError() != null) {
+                node.put("error", host.getLastError());
             }
+        }
+        return root;
+    }
+
+    /** Receives the chunks of a streamed listing, in order. */
+    public interface ChunkSink {
+        void write(ArrayNode chunk) throws IOException;
+    }
 
-            node.put("repository", repository == null ? "<none>" : repository);
-            node.put("tag", tag == null ? "<none>" : tag);
+    public ObjectNode handleListImages() throws Exception {
+        List<String> unavailable = new ArrayList<>();
+        Map<EngineHost, ArrayNode> perHost = gather(hosts.values(), this::imagesOf, unavailable);
+        ObjectNode root = mapper.createObjectNode();
+        if (!fleet) {
+            root.set("images", perHost.values().iterator().next());
+            return root;
+        }
+        ArrayNode arr = root.putArray("images");
+        perHost.values().forEach(arr::addAll);
+        markPartial(root, unavailable);
+        return root;
+    }
+
+    // images d'un hôte, reconstruites seulement quand son cache signale un événement image
+    private ArrayNode imagesOf(EngineHost host) {
+        ContainerStateCache cache = host.getStateCache();
+        boolean cacheable = cache.isSynced();
+        long version = cache.getImageVersion();
+        CachedJson cached = imagesJson.get(host.getName());
+        if (cacheable && cached != null && cached.version == version) {
+            return (ArrayNode) cached.json.get("images");
+        }
+
+        ObjectNode root = mapper.createObjectNode();
+        ArrayNode arr = root.putArray("images");
+        for (ImageInfo img : host.getEngine().listImages()) {
+            ObjectNode node = mapper.createObjectNode();
+            node.put("repository", img.getRepository());
+            node.put("tag", img.getTag());
             node.put("id", img.getId());
             node.put("size", img.getSize() / (1024.0 * 1024.0)); // Mo
+            if (fleet) {
+                node.put("host", host.getName());
+            }
             arr.add(node);
         }
 
-        root.set("images", arr);
-        return mapper.writeValueAsString(root);
+        if (cacheable) {
+            imagesJson.put(host.getName(), new CachedJson(version, root));
+        }
+        return arr;
+    }
+
+    public ObjectNode handleListImages(ListQuery query, ChunkSink chunks) throws Exception {
+        if (query.isDefault()) {
+            return handleListImages();
+        }
+        List<String> unavailable = new ArrayList<>();
+        List<JsonNode> images = new ArrayList<>();
+        gather(scope(query), this::imagesOf, unavailable).values().forEach(arr -> arr.forEach(images::add));
+        // le même id peut exister sur plusieurs hôtes : l'hôte fait partie de l'ordre (et du curseur)
+        images.sort(IMAGE_ORDER);
+        ObjectNode root = page(query, images, IMAGE_ORDER, imageAt(query.getCursor()),
+                img -> img.path("id").asText() + "/" + img.path("host").asText(),
+                img -> query.matchesImage(img.path("repository").asText(), img.path("tag").asText()),
+                img -> project((ObjectNode) img, query), "images", chunks);
+        markPartial(root, unavailable);
+        return root;
     }
 
-    public String handleListContainers() throws Exception {
-        List<Container> containers = dockerClient.listContainersCmd().withShowAll(true).exec();
+    public ObjectNode handleListContainers() throws Exception {
+        long version = 0;
+        boolean cacheable = true;
+        for (EngineHost host : hosts.values()) {
+            cacheable &= host.getStateCache().isSynced();
+            version += host.getStateCache().getVersion(); // chaque version ne fait que croître
+        }
+        CachedJson cached = containersJson;
+        if (cacheable && cached != null && cached.version == version) {
+            return cached.json;
+        }
+
+        List<String> unavailable = new ArrayList<>();
+        Map<String, String> hostOf = new HashMap<>();
+        List<ContainerInfo> containers = collectContainers(hosts.values(), hostOf, unavailable);
+        containers.sort(CONTAINER_ORDER);
 
         ObjectNode root = mapper.createObjectNode();
         ArrayNode arr = mapper.createArrayNode();
+        for (ContainerInfo c : containers) {
+            if (!WarmPool.isPoolContainer(c)) {
+                arr.add(renderContainer(c, null, hostOf.get(c.getId())));
+            }
+        }
+        root.set("containers", arr);
+        if (!unavailable.isEmpty()) {
+            markPartial(root, unavailable);
+        } else if (cacheable) {
+            containersJson = new CachedJson(version, root);
+        }
+        return root;
+    }
 
-        for (Container c : containers) {
-            ObjectNode node = mapper.createObjectNode();
-            node.put("id", c.getId());
-            String name = (c.getNames() != null && c.getNames().length > 0) ? c.getNames()[0] : "";
-            node.put("name", name);
-            node.put("image", c.getImage());
-            node.put("state", c.getState());
-            arr.add(node);
+    public ObjectNode handleListContainers(ListQuery query, ChunkSink chunks) throws Exception {
+        if (query.isDefault()) {
+            return handleListContainers();
         }
+        List<String> unavailable = new ArrayList<>();
+        Map<String, String> hostOf = new HashMap<>();
+        List<ContainerInfo> containers = collectContainers(scope(query), hostOf, unavailable);
+        containers.sort(CONTAINER_ORDER);
+        ObjectNode root = page(query, containers, CONTAINER_ORDER, containerAt(query.getCursor()),
+                DockerService::containerCursor, query::matches,
+                c -> renderContainer(c, query, hostOf.get(c.getId())), "containers", chunks);
+        markPartial(root, unavailable);
+        return root;
+    }
 
-        root.set("containers", arr);
-        return mapper.writeValueAsString(root);
+    /**
+     * Containers of the given hosts: synced caches are read in place, the other hosts are listed
+     * in parallel. {@code hostOf} receives the owning host of every container (fleet mode only).
+     */
+    private List<ContainerInfo> collectContainers(Collection<EngineHost> targets, Map<String, String> hostOf,
+                                                  List<String> unavailable) {
+        List<ContainerInfo> containers = new ArrayList<>();
+        List<EngineHost> toList = new ArrayList<>();
+        for (EngineHost host : targets) {
+            if (host.getStateCache().isSynced()) {
+                addAll(containers, hostOf, host, host.getStateCache().getContainers());
+            } else {
+                toList.add(host);
+            }
+        }
+        if (!toList.isEmpty()) {
+            // au moins un cache a répondu : l'échec des autres hôtes donne un résultat partiel
+            Map<EngineHost, List<ContainerInfo>> listed = gather(toList, h -> h.getEngine().listContainers(),
+                    unavailable, !containers.isEmpty() || toList.size() < targets.size());
+            listed.forEach((host, list) -> addAll(containers, hostOf, host, list));
+        }
+        return containers;
     }
 
-    public String handlePullImage(String image, String tag) throws Exception {
-        if (tag == null || tag.isEmpty()) {
-            tag = "latest";
+    private void addAll(List<ContainerInfo> containers, Map<String, String> hostOf, EngineHost host,
+                        Collection<ContainerInfo> list) {
+        containers.addAll(list);
+        if (fleet) {
+            for (ContainerInfo c : list) {
+                hostOf.put(c.getId(), host.getName());
+            }
         }
+    }
 
-        dockerClient
-                .pullImageCmd(image)
-                .withTag(tag)
-                .exec(new PullImageResultCallback())
-                .awaitCompletion();
+    private void markPartial(ObjectNode root, List<String> unavailable) {
+        if (!unavailable.isEmpty()) {
+            root.put("partial", true);
+            ArrayNode missing = root.putArray("unavailable");
+            unavailable.forEach(missing::add);
+        }
+    }
 
+    /**
+     * Filters and paginates a list sorted by {@code order}. Items up to {@code after} (the decoded
+     * cursor, null for the first page) are skipped; only the last item of a page is turned into a
+     * cursor string. In stream mode items are handed to the chunk sink as they are rendered, so only
+     * one chunk is held in memory at a time.
+     */
+    private <T> ObjectNode page(ListQuery query, List<T> sorted, Comparator<T> order, T after,
+                                Function<T, String> cursorOf, Predicate<T> filter,
+                                Function<T, ObjectNode> render, String field, ChunkSink chunks) throws IOException {
+        boolean stream = query.isStream() && chunks != null;
         ObjectNode root = mapper.createObjectNode();
-        root.put("image", image);
-        root.put("tag", tag);
-        root.put("status", "pulled");
-        return mapper.writeValueAsString(root);
+        ArrayNode out = stream ? mapper.createArrayNode() : root.putArray(field);
+
+        int count = 0;
+        T last = null;
+        boolean more = false;
+        for (T item : sorted) {
+            if ((after != null && order.compare(item, after) <= 0) || !filter.test(item)) {
+                continue;
+            }
+            if (query.getLimit() > 0 && count == query.getLimit()) {
+                more = true;
+                break;
+            }
+            out.add(render.apply(item));
+            count++;
+            last = item;
+            if (stream && out.size() >= query.getChunkSize()) {
+                chunks.write(out);
+                out = mapper.createArrayNode();
+            }
+        }
+        if (stream && out.size() > 0) {
+            chunks.write(out);
+        }
+
+        root.put("count", count);
+        if (more) {
+            root.put("nextCursor", ListQuery.encodeCursor(cursorOf.apply(last)));
+        }
+        return root;
     }
 
-    public String handleCreateContainer(String image, String name) throws Exception {
-        CreateContainerResponse response = dockerClient
-                .createContainerCmd(image)
-                .withName(name)
-                .exec();
+    // created desc, then id: the order of the engine API
+    private static final Comparator<ContainerInfo> CONTAINER_ORDER =
+            Comparator.comparingLong(ContainerInfo::getCreated).reversed().thenComparing(ContainerInfo::getId);
+
+    private static final Comparator<JsonNode> IMAGE_ORDER =
+            Comparator.comparing((JsonNode img) -> img.path("id").asText()).thenComparing(img -> img.path("host").asText());
+
+    // même format qu'avant ("%019d:%s", date inversée) : les curseurs déjà distribués restent valides
+    private static String containerCursor(ContainerInfo c) {
+        return String.format("%019d:%s", Long.MAX_VALUE - c.getCreated(), c.getId());
+    }
+
+    // position du curseur, comparable aux conteneurs avec CONTAINER_ORDER
+    private static ContainerInfo containerAt(String cursor) {
+        if (cursor == null) {
+            return null;
+        }
+        String position = ListQuery.decodeCursor(cursor);
+        int colon = position.indexOf(':');
+        try {
+            return new ContainerInfo(position.substring(colon + 1), null, null, null, null,
+                    Long.MAX_VALUE - Long.parseLong(position.substring(0, colon)));
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid cursor: " + cursor);
+        }
+    }
+
+    private JsonNode imageAt(String cursor) {
+        if (cursor == null) {
+            return null;
+        }
+        String position = ListQuery.decodeCursor(cursor);
+        int slash = position.indexOf('/');
+        ObjectNode probe = mapper.createObjectNode();
+        probe.put("id", slash < 0 ? position : position.substring(0, slash));
+        probe.put("host", slash < 0 ? "" : position.substring(slash + 1));
+        return probe;
+    }
+
+    private ObjectNode renderContainer(ContainerInfo c, ListQuery query, String host) {
+        ObjectNode node = mapper.createObjectNode();
+        if (query == null || query.wants("id")) {
+            node.put("id", c.getId());
+        }
+        if (query == null || query.wants("name")) {
+            node.put("name", c.getName());
+        }
+        if (query == null || query.wants("image")) {
+            node.put("image", c.getImage());
+        }
+        if (query == null || query.wants("state")) {
+            node.put("state", c.getState());
+        }
+        if (host != null && (query == null || query.wants("host"))) {
+            node.put("host", host);
+        }
+        // champs supplémentaires, uniquement sur demande explicite
+        if (query != null && query.hasProjection() && query.wants("labels")) {
+            node.set("labels", mapper.valueToTree(c.getLabels()));
+        }
+        if (query != null && query.hasProjection() && query.wants("created")) {
+            node.put("created", c.getCreated());
+        }
+        return node;
+    }
+
+    private ObjectNode project(ObjectNode node, ListQuery query) {
+        if (!query.hasProjection()) {
+            return node;
+        }
+        ObjectNode projected = mapper.createObjectNode();
+        node.fields().forEachRemaining(e -> {
+            if (query.wants(e.getKey())) {
+                projected.set(e.getKey(), e.getValue());
+            }
+        });
+        return projected;
+    }
+
+    /**
+     * Blocking pull on one host, or on every available host in parallel when {@code host} is null.
+     * Every progress message of the engines is handed to {@code progress}; with several hosts the
+     * layer ids are prefixed with the host name.
+     */
+    public void pullImage(String image, String tag, String host, Consumer<PullProgress> progress)
+            throws InterruptedException {
+        if (!fleet || host != null) {
+            EngineHost target = host == null ? single() : hostNamed(host);
+            target.getEngine().pullImage(image, tag, progress);
+            target.getStateCache().invalidateImages();
+            return;
+        }
+        Map<EngineHost, Future<?>> pulls = new LinkedHashMap<>();
+        for (EngineHost target : hosts.values()) {
+            if (!target.isUp()) {
+                continue;
+            }
+            pulls.put(target, fleetExecutor.submit(() -> {
+                target.getEngine().pullImage(image, tag, p -> progress.accept(p.getLayerId() == null ? p
+                        : new PullProgress(target.getName() + "/" + p.getLayerId(), p.getStatus(),
+                        p.getCurrent(), p.getTotal(), p.getError())));
+                target.getStateCache().invalidateImages();
+                return null;
+            }));
+        }
+        if (pulls.isEmpty()) {
+            throw new IllegalStateException("No engine available");
+        }
+        List<String> failures = new ArrayList<>();
+        for (Map.Entry<EngineHost, Future<?>> e : pulls.entrySet()) {
+            try {
+                e.getValue().get();
+            } catch (ExecutionException ex) {
+                failures.add(e.getKey().getName() + ": " + ex.getCause().getMessage());
+            } catch (InterruptedException ex) {
+                pulls.values().forEach(f -> f.cancel(true));
+                throw ex;
+            }
+        }
+        if (!failures.isEmpty()) {
+            throw new IllegalStateException(String.join("; ", failures));
+        }
+    }
+
+    public ObjectNode handleCreateContainer(String image, String name, String host) throws Exception {
+        EngineHost target = placement(host);
+        long since = target.getStateCache().eventSequence();
+        String id = target.getEngine().createContainer(image, name);
+        target.getStateCache().putOptimistic(new ContainerInfo(id, "/" + name, image, "created", null,
+                System.currentTimeMillis() / 1000), since);
 
         ObjectNode root = mapper.createObjectNode();
-        root.put("id", response.getId());
+        root.put("id", id);
         root.put("name", name);
         root.put("image", image);
-        return mapper.writeValueAsString(root);
+        if (fleet) {
+            root.put("host", target.getName());
+        }
+        return root;
     }
 
-    public String handleRunContainer(String image, String name) throws Exception {
-        CreateContainerResponse response = dockerClient
-                .createContainerCmd(image)
-                .withName(name)
-                .exec();
+    public ObjectNode handleRunContainer(String image, String name, String host) throws Exception {
+        return handleRunContainer(image, name, host, null);
+    }
 
-        dockerClient.startContainerCmd(response.getId()).exec();
+    /** {@code template}: warm pool template to claim from (null = the template of {@code image}, if any). */
+    public ObjectNode handleRunContainer(String image, String name, String host, String template) throws Exception {
+        WarmPool.Template pooled = null;
+        if (warmPool != null) {
+            pooled = warmPool.templateFor(template, image);
+        } else if (template != null) {
+            throw new IllegalArgumentException("No warm pool configured (jdocker.pool.templates)");
+        }
+        if (pooled != null) {
+            image = pooled.getImage();
+        }
+        EngineHost target = placement(host);
+        long since = target.getStateCache().eventSequence();
+        String id = pooled == null ? null : warmPool.claim(pooled, target, name);
+        boolean hit = id != null;
+        if (!hit) {
+            long start = System.nanoTime();
+            boolean failed = true;
+            try {
+                id = target.getEngine().createContainer(image, name);
+                target.getEngine().startContainer(id);
+                failed = false;
+            } finally {
+                if (pooled != null) {
+                    warmPool.recordMiss(System.nanoTime() - start, failed);
+                }
+            }
+        }
+        ContainerInfo known = target.getStateCache().get(id);
+        target.getStateCache().putOptimistic(new ContainerInfo(id, "/" + name, image, "running",
+                known == null ? null : known.getLabels(),
+                known == null ? System.currentTimeMillis() / 1000 : known.getCreated()), since);
 
         ObjectNode root = mapper.createObjectNode();
-        root.put("id", response.getId());
+        root.put("id", id);
         root.put("name", name);
         root.put("image", image);
         root.put("status", "running");
-        return mapper.writeValueAsString(root);
+        if (pooled != null) {
+            root.put("pool", hit ? "hit" : "miss");
+        }
+        if (fleet) {
+            root.put("host", target.getName());
+        }
+        return root;
     }
 
-    public String handleStartContainer(String idOrName) throws Exception {
-        String id = resolveContainerId(idOrName);
-        dockerClient.startContainerCmd(id).exec();
+    public ObjectNode handleStartContainer(String idOrName) throws Exception {
+        return startContainer(resolveContainerId(idOrName));
+    }
+
+    public ObjectNode handleStopContainer(String idOrName) throws Exception {
+        return stopContainer(resolveContainerId(idOrName));
+    }
+
+    public ObjectNode handleRemoveContainer(String idOrName) throws Exception {
+        return removeContainer(resolveContainerId(idOrName));
+    }
+
+    // variantes par id déjà résolu, utilisées aussi par les opérations groupées
+    ObjectNode startContainer(String id) {
+        EngineHost host = route(id);
+        long since = host.getStateCache().eventSequence();
+        host.getEngine().startContainer(id);
+        host.getStateCache().markStateOptimistic(id, "running", since);
 
         ObjectNode root = mapper.createObjectNode();
         root.put("id", id);
         root.put("status", "started");
-        return mapper.writeValueAsString(root);
+        return root;
     }
 
-    public String handleStopContainer(String idOrName) throws Exception {
-        String id = resolveContainerId(idOrName);
-        dockerClient.stopContainerCmd(id).exec();
+    ObjectNode stopContainer(String id) {
+        EngineHost host = route(id);
+        long since = host.getStateCache().eventSequence();
+        host.getEngine().stopContainer(id);
+        host.getStateCache().markStateOptimistic(id, "exited", since);
 
         ObjectNode root = mapper.createObjectNode();
         root.put("id", id);
         root.put("status", "stopped");
-        return mapper.writeValueAsString(root);
+        return root;
     }
 
-    public String handleRemoveContainer(String idOrName) throws Exception {
-        String id = resolveContainerId(idOrName);
-        dockerClient.removeContainerCmd(id).withForce(true).exec();
+    ObjectNode removeContainer(String id) {
+        EngineHost host = route(id);
+        host.getEngine().removeContainer(id);
+        host.getStateCache().remove(id);
 
         ObjectNode root = mapper.createObjectNode();
         root.put("id", id);
         root.put("status", "removed");
-        return mapper.writeValueAsString(root);
+        return root;
     }
 
-    public void streamLogs(String idOrName, Consumer<String> lineConsumer) throws Exception {
+    /**
+     * Resolves many targets at once: from the caches, with at most one engine listing per host for
+     * the misses. Targets that are unknown or ambiguous are absent from the returned map.
+     */
+    public Map<String, String> resolveContainerIds(Collection<String> targets) {
+        Map<String, String> resolved = new LinkedHashMap<>();
+        List<String> misses = new ArrayList<>();
+        for (String target : targets) {
+            String id;
+            try {
+                id = resolveInCaches(scope(target), unscoped(target));
+            } catch (IllegalArgumentException ambiguous) {
+                continue;
+            }
+            if (id != null) {
+                resolved.put(target, id);
+            } else {
+                misses.add(target);
+            }
+        }
+        if (!misses.isEmpty()) {
+            Map<EngineHost, List<ContainerInfo>> listings = gather(hosts.values(),
+                    h -> h.getEngine().listContainers(), new ArrayList<>());
+            for (String target : misses) {
+                try {
+                    String id = resolveInListings(listings, scope(target), unscoped(target));
+                    if (id != null) {
+                        resolved.put(target, id);
+                    }
+                } catch (IllegalArgumentException ambiguous) {
+                    // absent du résultat, comme une cible inconnue
+                }
+            }
+        }
+        return resolved;
+    }
+
+    /** Ids of the containers matching a selector (label, state, name, image patterns or host). */
+    public List<String> selectContainerIds(ListQuery selector) {
+        List<ContainerInfo> containers = collectContainers(scope(selector), new HashMap<>(), new ArrayList<>());
+        List<String> ids = new ArrayList<>();
+        for (ContainerInfo c : containers) {
+            if (selector.matches(c)) {
+                ids.add(c.getId());
+            }
+        }
+        return ids;
+    }
+
+    public Closeable streamLogs(String idOrName, LogOptions options, LogSubscription subscription) throws Exception {
+        String id;
+        try {
+            id = resolveContainerId(idOrName);
+        } catch (IllegalArgumentException e) {
+            // conteneur supprimé : ses logs restent lisibles dans le spool
+            String spooled = logSpool == null ? null : logSpool.resolve(idOrName);
+            if (spooled == null) {
+                throw e;
+            }
+            if (options.getStream() != LogOptions.Stream.ALL) {
+                throw new IllegalArgumentException("stdout/stderr selection is not available for removed containers");
+            }
+            return logSpool.replay(spooled, options, subscription);
+        }
+        // le spool et le hub mélangent stdout et stderr : une sélection de flux va au moteur
+        if (options.getStream() == LogOptions.Stream.ALL) {
+            if (logSpool != null && logSpool.canServe(id, options)) {
+                return logSpool.replay(id, options, subscription);
+            }
+            if (logHub.canServe(options)) {
+                return logHub.subscribe(id, subscription);
+            }
+        }
+        return route(id).getEngine().logs(id, options.getTail(), options.getSince(), options.isFollow(),
+                options.getStream(), subscription);
+    }
+
+    /** Starts {@code cmd} in a running container, relayed by {@code session}; closing the handle detaches. */
+    public Closeable exec(String idOrName, List<String> cmd, boolean tty, ExecSession session) {
         String id = resolveContainerId(idOrName);
+        return route(id).getEngine().exec(id, cmd, tty, session.stdin(), session);
+    }
 
-        dockerClient.logContainerCmd(id)
-                .withStdOut(true)
-                .withStdErr(true)
-                .withTailAll()
-                .exec(new ResultCallbackTemplate<ResultCallbackTemplate<?, Frame>, Frame>() {
-                    @Override
-                    public void onNext(Frame frame) {
-                        String line = new String(frame.getPayload(), StandardCharsets.UTF_8);
-                        lineConsumer.accept(line);
-                    }
+    /** Containers of the synced host caches, by host name. */
+    Map<String, Collection<ContainerInfo>> cachedContainers() {
+        Map<String, Collection<ContainerInfo>> result = new LinkedHashMap<>();
+        for (EngineHost host : hosts.values()) {
+            ContainerStateCache cache = host.getStateCache();
+            if (cache.isSynced()) {
+                result.put(host.getName(), cache.getContainers());
+            }
+        }
+        return result;
+    }
 
-                    @Override
-                    public void onError(Throwable throwable) {
-                        lineConsumer.accept("[LOG_ERROR] " + throwable.getMessage());
-                    }
-                });
+    /** Opens one engine log stream (stdout and stderr); closing the returned handle stops it. */
+    Closeable openLogStream(String id, Integer tail, Integer since, boolean follow, LogListener listener) {
+        return route(id).getEngine().logs(id, tail, since, follow, LogOptions.Stream.ALL, listener);
+    }
+
+    public Metrics getMetrics() {
+        return metrics;
+    }
+
+    public StatsHub getStatsHub() {
+        return statsHub;
+    }
+
+    public ContainerWatchHub getWatchHub() {
+        return watchHub;
+    }
+
+    /** Opens the engine stats stream of a container (about one sample per second). */
+    Closeable openStatsStream(String id, Consumer<StatsSample> onSample, Consumer<Throwable> onEnd) {
+        return route(id).getEngine().stats(id, onSample, onEnd);
     }
 
     private String resolveContainerId(String idOrName) {
-        List<Container> containers = dockerClient.listContainersCmd().withShowAll(true).exec();
-        for (Container c : containers) {
-            if (c.getId().startsWith(idOrName)) {
+        Collection<EngineHost> scope = scope(idOrName);
+        String target = unscoped(idOrName);
+        String id = resolveInCaches(scope, target);
+        if (id != null) {
+            return id;
+        }
+        // absent des caches : peut-être créé à l'instant, on vérifie auprès des moteurs
+        id = resolveInListings(gather(scope, h -> h.getEngine().listContainers(), new ArrayList<>()), scope, target);
+        if (id != null) {
+            return id;
+        }
+        throw new IllegalArgumentException("Container not found: " + idOrName);
+    }
+
+    private String resolveInCaches(Collection<EngineHost> scope, String idOrName) {
+        String found = null;
+        for (EngineHost host : scope) {
+            ContainerStateCache cache = host.getStateCache();
+            if (!cache.isSynced()) {
+                continue;
+            }
+            found = unique(found, cache.resolveId(idOrName), idOrName);
+        }
+        return found;
+    }
+
+    private String resolveInListings(Map<EngineHost, List<ContainerInfo>> listings, Collection<EngineHost> scope,
+                                     String idOrName) {
+        String found = null;
+        for (Map.Entry<EngineHost, List<ContainerInfo>> e : listings.entrySet()) {
+            if (scope.contains(e.getKey())) {
+                found = unique(found, findContainer(e.getValue(), idOrName), idOrName);
+            }
+        }
+        return found;
+    }
+
+    private static String unique(String found, String id, String idOrName) {
+        if (found != null && id != null && !found.equals(id)) {
+            throw new IllegalArgumentException("Ambiguous container: " + idOrName
+                    + " exists on several engines, use <engine>/" + idOrName);
+        }
+        return found != null ? found : id;
+    }
+
+    private static String findContainer(List<ContainerInfo> containers, String idOrName) {
+        String shortName = idOrName.startsWith("/") ? idOrName.substring(1) : idOrName;
+        for (ContainerInfo c : containers) {
+            if (c.getId().startsWith(idOrName) || c.getShortName().equals(shortName)) {
                 return c.getId();
             }
-            if (c.getNames() != null) {
-                for (String n : c.getNames()) {
-                    if (n.equals(idOrName) || n.equals("/" + idOrName)) {
-                        return c.getId();
-                    }
+        }
+        return null;
+    }
+
+    /**
+     * Host of a container. The per-host state caches are the container-to-host index; a container
+     * they do not know yet (created a moment ago) is looked up on the engines in parallel.
+     */
+    private EngineHost route(String id) {
+        if (!fleet) {
+            return single();
+        }
+        for (EngineHost host : hosts.values()) {
+            if (host.getStateCache().get(id) != null) {
+                return host;
+            }
+        }
+        Map<EngineHost, ContainerInfo> found = gather(hosts.values(),
+                h -> h.getEngine().inspectContainer(id), new ArrayList<>());
+        for (Map.Entry<EngineHost, ContainerInfo> e : found.entrySet()) {
+            if (e.getValue() != null) {
+                return e.getKey();
+            }
+        }
+        throw new IllegalArgumentException("Container not found: " + id);
+    }
+
+    // "edge/web-1" : cible limitée à l'hôte "edge"
+    private Collection<EngineHost> scope(String target) {
+        int slash = target.indexOf('/');
+        if (fleet && slash > 0 && hosts.containsKey(target.substring(0, slash))) {
+            return List.of(hosts.get(target.substring(0, slash)));
+        }
+        return hosts.values();
+    }
+
+    private String unscoped(String target) {
+        int slash = target.indexOf('/');
+        if (fleet && slash > 0 && hosts.containsKey(target.substring(0, slash))) {
+            return target.substring(slash + 1);
+        }
+        return target;
+    }
+
+    private Collection<EngineHost> scope(ListQuery query) {
+        return query.getHost() == null ? hosts.values() : List.of(hostNamed(query.getHost()));
+    }
+
+    private EngineHost hostNamed(String name) {
+        EngineHost host = hosts.get(name);
+        if (host == null) {
+            throw new IllegalArgumentException("Unknown engine: " + name);
+        }
+        return host;
+    }
+
+    private EngineHost single() {
+        return hosts.values().iterator().next();
+    }
+
+    // hôte demandé, sinon l'hôte disponible qui a le moins de conteneurs
+    private EngineHost placement(String host) {
+        if (host != null) {
+            return hostNamed(host);
+        }
+        EngineHost best = null;
+        for (EngineHost candidate : hosts.values()) {
+            if (candidate.isUp() && (best == null
+                    || candidate.getStateCache().size() < best.getStateCache().size())) {
+                best = candidate;
+            }
+        }
+        return best != null ? best : single();
+    }
+
+    interface HostCall<T> {
+        T call(EngineHost host) throws Exception;
+    }
+
+    private <T> Map<EngineHost, T> gather(Collection<EngineHost> targets, HostCall<T> call, List<String> unavailable) {
+        return gather(targets, call, unavailable, false);
+    }
+
+    /**
+     * Runs {@code call} on the given hosts in parallel and waits at most {@code jdocker.fleet.hostTimeoutMs}
+     * for all of them. Hosts that are DOWN, fail or time out are added to {@code unavailable} and left
+     * out of the result; when no host answered (and {@code allowEmpty} is false) the first failure is
+     * thrown. With a single host the call runs inline and its failure is thrown as is.
+     */
+    private <T> Map<EngineHost, T> gather(Collection<EngineHost> targets, HostCall<T> call, List<String> unavailable,
+                                          boolean allowEmpty) {
+        Map<EngineHost, T> results = new LinkedHashMap<>();
+        if (!fleet) {
+            for (EngineHost host : targets) {
+                try {
+                    results.put(host, call.call(host));
+                } catch (RuntimeException e) {
+                    throw e;
+                } catch (Exception e) {
+                    throw new IllegalStateException(e.getMessage(), e);
                 }
             }
+            return results;
+        }
+
+        // tous les hôtes visés sont DOWN : on tente quand même, l'état de santé peut être périmé
+        boolean tryAll = targets.stream().noneMatch(EngineHost::isUp);
+        Map<EngineHost, Future<T>> futures = new LinkedHashMap<>();
+        for (EngineHost host : targets) {
+            if (host.isUp() || tryAll) {
+                futures.put(host, fleetExecutor.submit(() -> call.call(host)));
+            } else {
+                unavailable.add(host.getName());
+            }
+        }
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(hostTimeoutMs);
+        RuntimeException firstError = null;
+        for (Map.Entry<EngineHost, Future<T>> e : futures.entrySet()) {
+            EngineHost host = e.getKey();
+            Throwable error;
+            try {
+                results.put(host, e.getValue().get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS));
+                continue;
+            } catch (TimeoutException ex) {
+                e.getValue().cancel(true);
+                error = new TimeoutException("Engine " + host.getName() + " did not answer within " + hostTimeoutMs + " ms");
+            } catch (ExecutionException ex) {
+                error = ex.getCause();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                futures.values().forEach(f -> f.cancel(true));
+                throw new IllegalStateException("Interrupted");
+            }
+            host.markDown(error);
+            unavailable.add(host.getName());
+            if (firstError == null) {
+                firstError = error instanceof RuntimeException ? (RuntimeException) error
+                        : new IllegalStateException(error.getMessage(), error);
+            }
+        }
+        if (results.isEmpty() && !allowEmpty && !targets.isEmpty()) {
+            throw firstError != null ? firstError : new IllegalStateException("No engine available");
+        }
+        return results;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (fleet) {
+            healthChecker.shutdownNow();
+            fleetExecutor.shutdownNow();
+        }
+        if (logSpool != null) {
+            logSpool.close();
+        }
+        if (warmPool != null) {
+            warmPool.close();
+        }
+        logHub.close();
+        statsHub.close();
+        for (EngineHost host : hosts.values()) {
+            host.close();
+        }
+    }
+
+    // the cached tree is shared between requests and must not be modified
+    private static final class CachedJson {
+        final long version;
+        final ObjectNode json;
+
+        CachedJson(long version, ObjectNode json) {
+            this.version = version;
+            this.json = json;
         }
-        throw new NotFoundException("Container not found: " + idOrName);
     }
 }
@@ -0,0 +1,123 @@
+package com.jdocker.server;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Connection settings for the Docker engine client.
+ * Values can be overridden with -Djdocker.engine.* system properties.
+ * <p>
+ * The host is {@code unix:///path/docker.sock} (local engine, no TCP/IP stack, no exposed port),
+ * or {@code tcp://host:port}. Without {@code jdocker.engine.host}: DOCKER_HOST,
+ * then the local socket when it is usable, then {@code tcp://localhost:2375}.
+ */
+public class EngineConfig {
+
+    public static final String LOCAL_SOCKET = "/var/run/docker.sock";
+
+    private String dockerHost = defaultDockerHost();
+    private int maxConnections = 32;
+    private Duration connectTimeout = Duration.ofSeconds(5);
+    private Duration responseTimeout = Duration.ZERO; // 0 = no read timeout (log streams stay open)
+    private boolean keepAlive = true;
+
+    public static EngineConfig fromSystemProperties() {
+        EngineConfig config = new EngineConfig();
+        config.setDockerHost(System.getProperty("jdocker.engine.host", config.getDockerHost()));
+        config.setMaxConnections(Integer.getInteger("jdocker.engine.maxConnections", config.getMaxConnections()));
+        config.setConnectTimeout(Duration.ofMillis(Long.getLong("jdocker.engine.connectTimeoutMs",
+                config.getConnectTimeout().toMillis())));
+        config.setResponseTimeout(Duration.ofMillis(Long.getLong("jdocker.engine.responseTimeoutMs",
+                config.getResponseTimeout().toMillis())));
+        config.setKeepAlive(Boolean.parseBoolean(System.getProperty("jdocker.engine.keepAlive",
+                String.valueOf(config.isKeepAlive()))));
+        return config;
+    }
+
+    /**
+     * Named engine endpoints, from {@code jdocker.engines=local=tcp://localhost:2375,edge=tcp://10.0.0.5:2375}.
+     * Every endpoint shares the other jdocker.engine.* settings. Without the property: one endpoint
+     * named "local" at {@code jdocker.engine.host}.
+     */
+    public static Map<String, EngineConfig> endpointsFromSystemProperties() {
+        Map<String, EngineConfig> endpoints = new LinkedHashMap<>();
+        String list = System.getProperty("jdocker.engines");
+        if (list == null || list.isBlank()) {
+            endpoints.put("local", fromSystemProperties());
+            return endpoints;
+        }
+        for (String entry : list.split(",")) {
+            int eq = entry.indexOf('=');
+            if (eq <= 0) {
+                throw new IllegalArgumentException("Invalid engine endpoint (expected name=uri): " + entry);
+            }
+            EngineConfig config = fromSystemProperties();
+            config.setDockerHost(entry.substring(eq + 1).trim());
+            endpoints.put(entry.substring(0, eq).trim(), config);
+        }
+        return endpoints;
+    }
+
+    static String defaultDockerHost() {
+        String env = System.getenv("DOCKER_HOST");
+        if (env != null && !env.isBlank()) {
+            return env.trim();
+        }
+        Path socket = Path.of(LOCAL_SOCKET);
+        if (Files.exists(socket) && Files.isWritable(socket)) {
+            return "unix://" + LOCAL_SOCKET;
+        }
+        return "tcp://localhost:2375";
+    }
+
+    public String getDockerHost() {
+        return dockerHost;
+    }
+
+    public void setDockerHost(String dockerHost) {
+        if (!dockerHost.startsWith("unix://") && !dockerHost.startsWith("tcp://")) {
+            throw new IllegalArgumentException("Unsupported Docker host (unix:// or tcp://): " + dockerHost);
+        }
+        this.dockerHost = dockerHost;
+    }
+
+    /** "unix" or "tcp". */
+    public String getTransport() {
+        return dockerHost.substring(0, dockerHost.indexOf(':'));
+    }
+
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    public void setMaxConnections(int maxConnections) {
+        this.maxConnections = maxConnections;
+    }
+
+    public Duration getConnectTimeout() {
+        return connectTimeout;
+    }
+
+    public void setConnectTimeout(Duration connectTimeout) {
+        this.connectTimeout = connectTimeout;
+    }
+
+    public Duration getResponseTimeout() {
+        return responseTimeout;
+    }
+
+    public void setResponseTimeout(Duration responseTimeout) {
+        this.responseTimeout = responseTimeout;
+    }
+
+    public boolean isKeepAlive() {
+        return keepAlive;
+    }
+
+    public void setKeepAlive(boolean keepAlive) {
+        this.keepAlive = keepAlive;
+    }
+}
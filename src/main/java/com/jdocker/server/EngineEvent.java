@@ -0,0 +1,46 @@
+package com.jdocker.server;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * A container or image event of the engine event stream.
+ */
+public final class EngineEvent {
+
+    public enum Type { CONTAINER, IMAGE, OTHER }
+
+    private final Type type;
+    private final String action;                  // "create", "start", "die", "exec_start: sh"...
+    private final String id;
+    private final Map<String, String> attributes; // name, image and labels for containers
+    private final long time;                      // epoch seconds
+
+    public EngineEvent(Type type, String action, String id, Map<String, String> attributes, long time) {
+        this.type = type;
+        this.action = action;
+        this.id = id;
+        this.attributes = attributes == null ? Collections.emptyMap() : attributes;
+        this.time = time;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public String getAction() {
+        return action;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public Map<String, String> getAttributes() {
+        return attributes;
+    }
+
+    public long getTime() {
+        return time;
+    }
+}
@@ -0,0 +1,102 @@
+package com.jdocker.server;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One named engine endpoint: its client (with its own connection pool), its state cache and its
+ * health. A host is marked DOWN when a call fails or times out and UP again only by the next successful
+ * health check; scatter-gather queries skip DOWN hosts.
+ */
+public class EngineHost implements Closeable {
+
+    public enum Health { UP, DOWN }
+
+    private final String name;
+    private final DockerEngine engine;
+    private final ContainerStateCache stateCache;
+
+    private volatile Health health = Health.UP;
+    private volatile String lastError;
+    private volatile long lastCheck;          // epoch ms
+    private volatile long lastLatencyMicros;
+
+    public EngineHost(String name, DockerEngine engine) {
+        this.name = name;
+        this.engine = engine;
+        this.stateCache = new ContainerStateCache(engine);
+    }
+
+    void start() {
+        stateCache.start();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public DockerEngine getEngine() {
+        return engine;
+    }
+
+    public ContainerStateCache getStateCache() {
+        return stateCache;
+    }
+
+    public Health getHealth() {
+        return health;
+    }
+
+    public boolean isUp() {
+        return health == Health.UP;
+    }
+
+    public String getLastError() {
+        return lastError;
+    }
+
+    public long getLastCheck() {
+        return lastCheck;
+    }
+
+    public long getLastLatencyMicros() {
+        return lastLatencyMicros;
+    }
+
+    /** Pings the engine and updates the health state. */
+    public void check() {
+        long start = System.nanoTime();
+        try {
+            engine.ping();
+            markUp(System.nanoTime() - start);
+        } catch (Exception e) {
+            markDown(e);
+        }
+    }
+
+    void markUp(long latencyNanos) {
+        if (health != Health.UP) {
+            ServerLog.info("FLEET", "Engine " + name + " is up");
+        }
+        lastLatencyMicros = TimeUnit.NANOSECONDS.toMicros(latencyNanos);
+        lastCheck = System.currentTimeMillis();
+        lastError = null;
+        health = Health.UP;
+    }
+
+    void markDown(Throwable error) {
+        if (health != Health.DOWN) {
+            ServerLog.warn("FLEET", "Engine " + name + " is down: " + error.getMessage());
+        }
+        lastCheck = System.currentTimeMillis();
+        lastError = error.getMessage() == null ? error.getClass().getSimpleName() : error.getMessage();
+        health = Health.DOWN;
+    }
+
+    @Override
+    public void close() throws IOException {
+        stateCache.close();
+        engine.close();
+    }
+}
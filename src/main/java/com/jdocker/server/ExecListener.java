@@ -0,0 +1,16 @@
+package com.jdocker.server;
+
+/**
+ * Receives the output of one command run by {@link DockerEngine#exec}.
+ */
+public interface ExecListener {
+
+    /**
+     * Called from the engine stream thread; {@code data} is only valid during the call. May block:
+     * the engine then stops reading the command output, which is how a session applies its window.
+     */
+    void onOutput(boolean stderr, byte[] data, int offset, int length);
+
+    /** End of the command; exitCode is null when it could not be read (error or detached stream). */
+    void onExit(Long exitCode, Throwable error);
+}
@@ -0,0 +1,341 @@
+package com.jdocker.server;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonSerializable;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.jsontype.TypeSerializer;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.jdocker.common.Response;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * One EXEC session: a command running in a container, relayed over the client connection as
+ * EXEC_OUTPUT frames tagged stdout / stderr, and fed by the client's EXEC_INPUT frames.
+ * <p>
+ * Each direction goes through a {@link ByteRing} over a pooled direct buffer. Output only leaves
+ * within the window granted by the client (EXEC_WINDOW); once the window is used up and the ring
+ * is full, the engine thread of this session blocks, which slows the command down at the source
+ * without holding back the other sessions of the connection. Stdin works the other way round: the
+ * server grants the client more input as the command consumes it.
+ */
+public class ExecSession implements ExecListener {
+
+    private static final int MAX_FRAME = 32 * 1024;
+    private static final int FRAMES_PER_DRAIN = 4;
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final String id;
+    private final String requestId;
+    private final ResponseSink sink;
+    private final Executor executor;
+    private final Runnable onClose;
+
+    private final ByteRing output;
+    private final ByteRing input;
+    private final AtomicLong window;                            // octets de sortie encore autorisés
+    private final AtomicLong inputConsumed = new AtomicLong();  // stdin lu par le moteur, pas encore rendu
+    private final AtomicBoolean draining = new AtomicBoolean();
+
+    private volatile boolean outputStderr;   // flux des octets présents dans le tampon de sortie
+    private volatile boolean started;
+    private volatile boolean completed;
+    private volatile boolean closed;
+    private volatile Long exitCode;
+    private volatile String error;
+    private volatile Closeable upstream;
+
+    ExecSession(String id, String requestId, ResponseSink sink, DirectBufferPool buffers, long window,
+                Executor executor, Runnable onClose) {
+        this.id = id;
+        this.requestId = requestId;
+        this.sink = sink;
+        this.executor = executor;
+        this.onClose = onClose;
+        this.output = new ByteRing(buffers);
+        this.input = new ByteRing(buffers);
+        this.window = new AtomicLong(window);
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public ResponseSink getSink() {
+        return sink;
+    }
+
+    /** Output bytes the client may still receive before it grants more. */
+    public long getWindow() {
+        return window.get();
+    }
+
+    /** Stdin bytes the client may send before the first grant. */
+    public int getInputWindow() {
+        return input.capacity();
+    }
+
+    void attach(Closeable upstream) {
+        this.upstream = upstream;
+        if (closed) {
+            closeUpstream();
+        }
+    }
+
+    /** Lets the output flow once the acknowledgement has been written. */
+    void start() {
+        started = true;
+        scheduleDrain();
+    }
+
+    /** Stdin of the command, read by the engine thread. */
+    InputStream stdin() {
+        return new InputStream() {
+            @Override
+            public int read() throws IOException {
+                byte[] one = new byte[1];
+                return read(one, 0, 1) < 0 ? -1 : one[0] & 0xff;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                if (len == 0) {
+                    return 0;
+                }
+                int n;
+                try {
+                    n = input.read(b, off, len);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException();
+                }
+                if (n > 0) {
+                    inputConsumed.addAndGet(n);
+                    scheduleDrain();
+                }
+                return n;
+            }
+        };
+    }
+
+    /** Bytes of an EXEC_INPUT frame; a client that sends past its stdin window loses the session. */
+    void input(byte[] data, boolean eof) {
+        if (closed || completed) {
+            return;
+        }
+        if (!input.offerAll(data, 0, data.length)) {
+            fail("stdin window exceeded");
+            return;
+        }
+        if (eof) {
+            input.end();
+        }
+    }
+
+    /** EXEC_WINDOW from the client: {@code bytes} more output may be sent. */
+    void grant(long bytes) {
+        if (bytes > 0) {
+            window.addAndGet(bytes);
+            scheduleDrain();
+        }
+    }
+
+    @Override
+    public void onOutput(boolean stderr, byte[] data, int offset, int length) {
+        try {
+            // changement de flux : on attend que le tampon soit vidé, l'ordre entre stdout et stderr est gardé
+            if (stderr != outputStderr && !output.awaitEmpty()) {
+                return;
+            }
+            outputStderr = stderr;
+            while (length > 0) {
+                // tampon plein, fenêtre épuisée : le thread du moteur attend, la commande ralentit
+                if (!output.awaitSpace()) {
+                    return;
+                }
+                int n = output.offer(data, offset, length);
+                offset += n;
+                length -= n;
+                scheduleDrain();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void onExit(Long exitCode, Throwable error) {
+        this.exitCode = exitCode;
+        if (error != null) {
+            this.error = error.getMessage();
+        }
+        completed = true;
+        input.discard();
+        scheduleDrain();
+    }
+
+    /** Ends the session with an EXEC_EXIT carrying {@code message}. */
+    void fail(String message) {
+        error = message;
+        completed = true;
+        input.discard();
+        closeUpstream();
+        scheduleDrain();
+    }
+
+    public void cancel() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        output.discard();
+        input.discard();
+        closeUpstream();
+        onClose.run();
+        // les tampons ne retournent au pool qu'une fois la vidange terminée
+        if (draining.compareAndSet(false, true)) {
+            releaseBuffers();
+        }
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    private void scheduleDrain() {
+        if (started && !closed && draining.compareAndSet(false, true)) {
+            executor.execute(this::drain);
+        }
+    }
+
+    // quelques trames par passage puis on rend la main : les sessions se partagent l'exécuteur
+    private void drain() {
+        try {
+            for (int i = 0; i < FRAMES_PER_DRAIN && !closed; i++) {
+                List<Response> frames = new ArrayList<>(2);
+                long granted = inputConsumed.getAndSet(0);
+                if (granted > 0) {
+                    frames.add(withRequestId(Response.of("OK", "EXEC_WINDOW",
+                            MAPPER.createObjectNode().put("sessionId", id).put("stdin", granted))));
+                }
+                ByteBuffer chunk = output.peek((int) Math.min(MAX_FRAME, window.get()));
+                int n = chunk.remaining();
+                if (n > 0) {
+                    frames.add(outputFrame(chunk, outputStderr));
+                }
+                if (frames.isEmpty()) {
+                    break;
+                }
+                sink.sendAll(frames);
+                if (n > 0) {
+                    output.consume(n);
+                    window.addAndGet(-n);
+                }
+            }
+            if (completed && !closed && output.isEmpty()) {
+                ObjectNode body = MAPPER.createObjectNode().put("sessionId", id);
+                if (exitCode != null) {
+                    body.put("exitCode", exitCode);
+                }
+                if (error != null) {
+                    body.put("error", error);
+                }
+                sink.send(withRequestId(Response.of(error == null ? "OK" : "ERROR", "EXEC_EXIT", body)));
+                cancel();
+            }
+        } catch (IOException e) {
+            cancel();
+        } finally {
+            draining.set(false);
+        }
+        if (closed) {
+            if (draining.compareAndSet(false, true)) {
+                releaseBuffers();
+            }
+            return;
+        }
+        boolean pending = inputConsumed.get() > 0 || (!output.isEmpty() && window.get() > 0)
+                || (completed && output.isEmpty());
+        if (pending) {
+            scheduleDrain();
+        }
+    }
+
+    private Response outputFrame(ByteBuffer chunk, boolean stderr) {
+        ObjectNode body = MAPPER.createObjectNode()
+                .put("sessionId", id)
+                .put("stream", stderr ? "stderr" : "stdout");
+        body.putPOJO("data", new Chunk(chunk));
+        return withRequestId(Response.of("OK", "EXEC_OUTPUT", body));
+    }
+
+    private Response withRequestId(Response response) {
+        response.setId(requestId);
+        return response;
+    }
+
+    private void releaseBuffers() {
+        output.release();
+        input.release();
+    }
+
+    private void closeUpstream() {
+        Closeable up = upstream;
+        if (up != null) {
+            try {
+                up.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    /**
+     * Bytes written straight from the ring by the sink (base64 in JSON, raw in Smile). Only valid
+     * until the frame is encoded, which the sinks do within send().
+     */
+    private static final class Chunk implements JsonSerializable {
+        private final ByteBuffer bytes;
+
+        Chunk(ByteBuffer bytes) {
+            this.bytes = bytes;
+        }
+
+        @Override
+        public void serialize(JsonGenerator gen, SerializerProvider serializers) throws IOException {
+            ByteBuffer view = bytes.duplicate();
+            gen.writeBinary(new InputStream() {
+                @Override
+                public int read() {
+                    return view.hasRemaining() ? view.get() & 0xff : -1;
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) {
+                    if (!view.hasRemaining()) {
+                        return -1;
+                    }
+                    int n = Math.min(len, view.remaining());
+                    view.get(b, off, n);
+                    return n;
+                }
+            }, view.remaining());
+        }
+
+        @Override
+        public void serializeWithType(JsonGenerator gen, SerializerProvider serializers, TypeSerializer typeSer)
+                throws IOException {
+            serialize(gen, serializers);
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.jdocker.server;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Registry of EXEC sessions, so their frames (EXEC_INPUT, EXEC_WINDOW, STOP_EXEC) can be routed by
+ * id and they can all be closed when their connection goes away. Owns the direct buffers they share.
+ */
+public class ExecSessionManager {
+
+    private final Executor executor;
+    private final DirectBufferPool buffers = new DirectBufferPool(
+            Integer.getInteger("jdocker.exec.bufferSize", 64 * 1024),
+            Integer.getInteger("jdocker.exec.pooledBuffers", 64));
+    private final long defaultWindow = Long.getLong("jdocker.exec.window", 256 * 1024);
+    private final AtomicLong nextId = new AtomicLong();
+    private final Map<String, ExecSession> sessions = new ConcurrentHashMap<>();
+
+    public ExecSessionManager(Executor executor) {
+        this.executor = executor;
+    }
+
+    /** {@code window}: output bytes the client accepts before its first grant (null = default). */
+    public ExecSession open(ResponseSink sink, String requestId, Long window) {
+        String id = "exec-" + nextId.incrementAndGet();
+        ExecSession session = new ExecSession(id, requestId, sink, buffers,
+                window == null || window <= 0 ? defaultWindow : window, executor, () -> closed(id, sink));
+        sink.streamOpened();
+        sessions.put(id, session);
+        return session;
+    }
+
+    /** The session, if it belongs to this connection. */
+    public ExecSession get(String sessionId, ResponseSink sink) {
+        ExecSession session = sessions.get(sessionId);
+        return session == null || session.getSink() != sink ? null : session;
+    }
+
+    /** Only the connection that opened a session may stop it. */
+    public boolean stop(String sessionId, ResponseSink sink) {
+        ExecSession session = get(sessionId, sink);
+        if (session == null) {
+            return false;
+        }
+        session.cancel();
+        return true;
+    }
+
+    public void closeAll(ResponseSink sink) {
+        for (ExecSession session : sessions.values()) {
+            if (session.getSink() == sink) {
+                session.cancel();
+            }
+        }
+    }
+
+    private void closed(String id, ResponseSink sink) {
+        if (sessions.remove(id) != null) {
+            sink.streamClosed();
+        }
+    }
+
+    public int getActiveCount() {
+        return sessions.size();
+    }
+
+    public DirectBufferPool getBuffers() {
+        return buffers;
+    }
+}
@@ -0,0 +1,82 @@
+package com.jdocker.server;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.jdocker.common.CompressionStats;
+import com.jdocker.common.DeflateCodec;
+import com.jdocker.common.Request;
+import com.jdocker.common.Response;
+import com.jdocker.common.WireFormat;
+
+/**
+ * HELLO negotiation. It must be the first message of a connection and is always answered in
+ * line JSON; both sides switch to the agreed format right after that reply.
+ * <p>
+ * {@code "compression": "deflate"} additionally asks for {@link DeflateCodec} framing; a server
+ * with compression disabled simply leaves it out of the reply and the link stays uncompressed.
+ */
+public class Handshake {
+
+    public static final String ACTION = "HELLO";
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final WireFormat format;
+    private final DeflateCodec codec;
+    private final Response reply;
+
+    private Handshake(WireFormat format, DeflateCodec codec, Response reply) {
+        this.format = format;
+        this.codec = codec;
+        this.reply = reply;
+    }
+
+    public static boolean isHello(Request request) {
+        return ACTION.equals(request.getAction());
+    }
+
+    public static Handshake negotiate(Request hello, JsonNode params, boolean firstMessage) {
+        return negotiate(hello, params, firstMessage, null, null);
+    }
+
+    public static Handshake negotiate(Request hello, JsonNode params, boolean firstMessage,
+                                      ServerConfig config, CompressionStats compressionStats) {
+        Response reply;
+        if (!firstMessage) {
+            reply = new Response("ERROR", "HELLO must be the first message", null);
+            reply.setId(hello.getId());
+            return new Handshake(null, null, reply);
+        }
+        String requested = params == null ? "line" : params.path("protocol").asText("line");
+        WireFormat format = WireFormat.forName(requested);
+        DeflateCodec codec = null;
+        if (format == null) {
+            reply = new Response("ERROR", "Unsupported protocol: " + requested, null);
+        } else {
+            ObjectNode selected = MAPPER.createObjectNode().put("protocol", format.name().toLowerCase());
+            boolean wantsDeflate = params != null && DeflateCodec.NAME.equalsIgnoreCase(params.path("compression").asText());
+            if (wantsDeflate && config != null && config.isCompressionEnabled()) {
+                codec = new DeflateCodec(config.getCompressionThreshold(), config.getCompressionLevel(), compressionStats);
+                selected.put("compression", DeflateCodec.NAME).put("threshold", codec.getThreshold());
+            }
+            reply = Response.of("OK", "Protocol selected", selected);
+        }
+        reply.setId(hello.getId());
+        return new Handshake(format, codec, reply);
+    }
+
+    /** Format to use after the reply, or null if the connection stays as it was. */
+    public WireFormat getFormat() {
+        return format;
+    }
+
+    /** Compression to use after the reply, or null. */
+    public DeflateCodec getCodec() {
+        return codec;
+    }
+
+    public Response getReply() {
+        return reply;
+    }
+}
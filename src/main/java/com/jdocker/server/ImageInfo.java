@@ -0,0 +1,35 @@
+package com.jdocker.server;
+
+/**
+ * One image as listed by the engine (first repository tag only).
+ */
+public final class ImageInfo {
+
+    private final String id;
+    private final String repository;   // "<none>" for dangling images
+    private final String tag;
+    private final long size;           // bytes
+
+    public ImageInfo(String id, String repository, String tag, long size) {
+        this.id = id;
+        this.repository = repository == null ? "<none>" : repository;
+        this.tag = tag == null ? "<none>" : tag;
+        this.size = size;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getRepository() {
+        return repository;
+    }
+
+    public String getTag() {
+        return tag;
+    }
+
+    public long getSize() {
+        return size;
+    }
+}
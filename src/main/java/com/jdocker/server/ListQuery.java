@@ -0,0 +1,172 @@
+package com.jdocker.server;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Filters, projection and pagination of LIST_CONTAINERS / LIST_IMAGES, read from the request payload.
+ * An empty payload gives the historical behaviour: everything, default fields, one response.
+ */
+public class ListQuery {
+
+    public static final int DEFAULT_CHUNK_SIZE = 500;
+
+    private final String state;
+    private final String label;          // "key" or "key=value"
+    private final Pattern namePattern;
+    private final Pattern imagePattern;
+    private final String host;           // engine name, multi-engine mode
+    private final Set<String> fields;    // null = default fields
+    private final int limit;             // 0 = no limit
+    private final String cursor;
+    private final boolean stream;
+    private final int chunkSize;
+    private final boolean pool;          // conteneurs du pool de préchauffage, masqués par défaut
+
+    // décodé directement depuis la requête, sans arbre JSON intermédiaire
+    @JsonCreator
+    ListQuery(@JsonProperty("state") String state, @JsonProperty("label") String label,
+              @JsonProperty("name") String name, @JsonProperty("image") String image,
+              @JsonProperty("host") String host, @JsonProperty("fields") List<String> fields,
+              @JsonProperty("limit") int limit, @JsonProperty("cursor") String cursor,
+              @JsonProperty("stream") boolean stream, @JsonProperty("chunkSize") Integer chunkSize,
+              @JsonProperty("pool") boolean pool) {
+        this.state = state;
+        this.label = label;
+        this.namePattern = name == null ? null : glob(name);
+        this.imagePattern = image == null ? null : glob(image);
+        this.host = host;
+        this.fields = fields == null ? null : new LinkedHashSet<>(fields);
+        this.limit = Math.max(0, limit);
+        this.cursor = cursor;
+        this.stream = stream;
+        this.chunkSize = chunkSize == null ? DEFAULT_CHUNK_SIZE : Math.max(1, chunkSize);
+        this.pool = pool;
+    }
+
+    public static ListQuery fromJson(JsonNode node) {
+        if (node == null) {
+            return new ListQuery(null, null, null, null, null, null, 0, null, false, null, false);
+        }
+        List<String> fields = null;
+        if (node.path("fields").isArray()) {
+            fields = new ArrayList<>();
+            for (JsonNode f : node.get("fields")) {
+                fields.add(f.asText());
+            }
+        }
+        return new ListQuery(node.path("state").asText(null), node.path("label").asText(null),
+                node.hasNonNull("name") ? node.get("name").asText() : null,
+                node.hasNonNull("image") ? node.get("image").asText() : null,
+                node.path("host").asText(null), fields, node.path("limit").asInt(0),
+                node.path("cursor").asText(null), node.path("stream").asBoolean(false),
+                node.path("chunkSize").asInt(DEFAULT_CHUNK_SIZE), node.path("pool").asBoolean(false));
+    }
+
+    /** True when the query can be answered from the cached full listing. */
+    public boolean isDefault() {
+        return state == null && label == null && namePattern == null && imagePattern == null && host == null
+                && fields == null && limit == 0 && cursor == null && !stream && !pool;
+    }
+
+    /** True when at least one filter is set, i.e. the query does not select everything. */
+    public boolean hasFilter() {
+        return state != null || label != null || namePattern != null || imagePattern != null || host != null;
+    }
+
+    /** Warm pool containers only match when asked for with {@code "pool": true}. */
+    public boolean matches(ContainerInfo c) {
+        if (!pool && WarmPool.isPoolContainer(c)) {
+            return false;
+        }
+        if (state != null && !state.equalsIgnoreCase(c.getState())) {
+            return false;
+        }
+        if (label != null && !matchesLabel(c.getLabels())) {
+            return false;
+        }
+        if (namePattern != null && !namePattern.matcher(c.getShortName()).matches()) {
+            return false;
+        }
+        return imagePattern == null || (c.getImage() != null && imagePattern.matcher(c.getImage()).matches());
+    }
+
+    /** Images are matched on "repository:tag" with the name (or image) pattern. */
+    public boolean matchesImage(String repository, String tag) {
+        Pattern p = namePattern != null ? namePattern : imagePattern;
+        return p == null || p.matcher(repository + ":" + tag).matches() || p.matcher(repository).matches();
+    }
+
+    private boolean matchesLabel(Map<String, String> labels) {
+        int eq = label.indexOf('=');
+        if (eq < 0) {
+            return labels.containsKey(label);
+        }
+        return label.substring(eq + 1).equals(labels.get(label.substring(0, eq)));
+    }
+
+    public boolean wants(String field) {
+        return fields == null || fields.contains(field);
+    }
+
+    public boolean hasProjection() {
+        return fields != null;
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public String getCursor() {
+        return cursor;
+    }
+
+    public boolean isStream() {
+        return stream;
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    public static String encodeCursor(String position) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(position.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static String decodeCursor(String cursor) {
+        try {
+            return new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid cursor: " + cursor);
+        }
+    }
+
+    // "web-*" -> ^web\-.*$
+    private static Pattern glob(String glob) {
+        StringBuilder regex = new StringBuilder();
+        for (char ch : glob.toCharArray()) {
+            if (ch == '*') {
+                regex.append(".*");
+            } else if (ch == '?') {
+                regex.append('.');
+            } else {
+                regex.append(Pattern.quote(String.valueOf(ch)));
+            }
+        }
+        return Pattern.compile(regex.toString());
+    }
+}
@@ -0,0 +1,169 @@
+package com.jdocker.server;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Server-side filter of a STREAM_LOGS subscription, applied to each line before it is queued, so
+ * rejected lines are never serialized. Patterns are compiled once per subscription.
+ * <p>
+ * Lines come from one producer at a time (engine callback, hub or spool replay): the matchers and
+ * the rate window are not thread-safe, only the suppressed counter is read by the drain task.
+ */
+public class LogFilter {
+
+    // niveaux reconnus, du moins au plus grave
+    private static final Pattern LEVEL = Pattern.compile(
+            "\\b(TRACE|DEBUG|INFO|NOTICE|WARN|WARNING|ERR|ERROR|CRIT|CRITICAL|FATAL|PANIC)\\b",
+            Pattern.CASE_INSENSITIVE);
+
+    private final Matcher include;     // null = toutes les lignes
+    private final Matcher exclude;
+    private final String includeLiteral; // un seul littéral sensible à la casse : String.contains suffit
+    private final int minLevel;        // -1 = pas de filtre de niveau
+    private final Matcher levelMatcher;
+    private final int maxLinesPerSecond;
+    private final AtomicLong suppressed = new AtomicLong();
+
+    private int lastLevel = -1;        // une ligne sans niveau (pile d'exception) hérite de la précédente
+    private long windowStart;
+    private int windowCount;
+
+    private LogFilter(Pattern include, String includeLiteral, Pattern exclude, int minLevel, int maxLinesPerSecond) {
+        this.include = include == null ? null : include.matcher("");
+        this.includeLiteral = includeLiteral;
+        this.exclude = exclude == null ? null : exclude.matcher("");
+        this.minLevel = minLevel;
+        this.levelMatcher = minLevel < 0 ? null : LEVEL.matcher("");
+        this.maxLinesPerSecond = maxLinesPerSecond;
+    }
+
+    /**
+     * Filter described by the {@code include}, {@code exclude} (string or array), {@code regex},
+     * {@code ignoreCase}, {@code level} and {@code maxLinesPerSecond} options; null when none is set.
+     */
+    public static LogFilter of(JsonNode include, JsonNode exclude, boolean regex, boolean ignoreCase, String level,
+                               int maxLinesPerSecond) {
+        List<String> includes = strings(include);
+        List<String> excludes = strings(exclude);
+        int minLevel = -1;
+        if (level != null) {
+            minLevel = level(level);
+            if (minLevel < 0) {
+                throw new IllegalArgumentException("Unknown log level: " + level);
+            }
+        }
+        if (includes.isEmpty() && excludes.isEmpty() && minLevel < 0 && maxLinesPerSecond <= 0) {
+            return null;
+        }
+        String literal = !regex && !ignoreCase && includes.size() == 1 ? includes.get(0) : null;
+        return new LogFilter(literal == null ? compile(includes, regex, ignoreCase) : null, literal,
+                compile(excludes, regex, ignoreCase), minLevel, maxLinesPerSecond);
+    }
+
+    /** True if the line must be sent; lines over the rate limit are counted as suppressed. */
+    public boolean accept(String line) {
+        if (includeLiteral != null && !line.contains(includeLiteral)) {
+            return false;
+        }
+        if (include != null && !include.reset(line).find()) {
+            return false;
+        }
+        if (exclude != null && exclude.reset(line).find()) {
+            return false;
+        }
+        if (levelMatcher != null) {
+            if (levelMatcher.reset(line).find()) {
+                lastLevel = level(levelMatcher.group(1));
+            }
+            if (lastLevel < minLevel) {
+                return false;
+            }
+        }
+        if (maxLinesPerSecond > 0) {
+            long now = System.nanoTime();
+            if (now - windowStart >= TimeUnit.SECONDS.toNanos(1)) {
+                windowStart = now;
+                windowCount = 0;
+            }
+            if (++windowCount > maxLinesPerSecond) {
+                suppressed.incrementAndGet();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Lines suppressed by the rate limit since the last call. */
+    public long takeSuppressed() {
+        return suppressed.getAndSet(0);
+    }
+
+    private static int level(String name) {
+        switch (name.toUpperCase(Locale.ROOT)) {
+            case "TRACE":
+                return 0;
+            case "DEBUG":
+                return 1;
+            case "INFO":
+            case "NOTICE":
+                return 2;
+            case "WARN":
+            case "WARNING":
+                return 3;
+            case "ERR":
+            case "ERROR":
+                return 4;
+            case "CRIT":
+            case "CRITICAL":
+            case "FATAL":
+            case "PANIC":
+                return 5;
+            default:
+                return -1;
+        }
+    }
+
+    // une seule alternative compilée : un seul parcours de la ligne quel que soit le nombre de motifs
+    private static Pattern compile(List<String> patterns, boolean regex, boolean ignoreCase) {
+        if (patterns.isEmpty()) {
+            return null;
+        }
+        StringBuilder sb = new StringBuilder();
+        for (String p : patterns) {
+            if (sb.length() > 0) {
+                sb.append('|');
+            }
+            sb.append(regex ? "(?:" + p + ")" : Pattern.quote(p));
+        }
+        try {
+            return Pattern.compile(sb.toString(), ignoreCase ? Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE : 0);
+        } catch (PatternSyntaxException e) {
+            throw new IllegalArgumentException("Invalid log filter pattern: " + e.getDescription());
+        }
+    }
+
+    private static List<String> strings(JsonNode node) {
+        List<String> values = new ArrayList<>();
+        if (node == null || node.isNull()) {
+            return values;
+        }
+        if (node.isArray()) {
+            for (JsonNode n : node) {
+                values.add(n.asText());
+            }
+        } else {
+            values.add(node.asText());
+        }
+        values.removeIf(String::isEmpty);
+        return values;
+    }
+}
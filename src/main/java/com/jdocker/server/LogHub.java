@@ -0,0 +1,238 @@
+package com.jdocker.server;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Shares one engine log stream per container between all following subscribers.
+ * Each subscriber keeps its own queue; recent lines are kept in a ring so that
+ * late subscribers get their tail from memory.
+ * <p>
+ * The engine stream is opened with a tail of the whole ring. Its history is held back until it has
+ * arrived (the ring is full, or no line came for {@code WARMUP_QUIET_MS}); subscribers that came
+ * meanwhile then take their own tail from the ring, like later ones.
+ */
+public class LogHub implements Closeable {
+
+    private static final long WARMUP_QUIET_MS = 50;
+    private static final long WARMUP_MAX_MS = 500;   // conteneur bavard : l'attente reste bornée
+
+    private final DockerService dockerService;
+    private final int ringSize;
+    private final Map<String, Channel> channels = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "jdocker-loghub");
+        t.setDaemon(true);
+        return t;
+    });
+
+    public LogHub(DockerService dockerService, int ringSize) {
+        this.dockerService = dockerService;
+        this.ringSize = ringSize;
+    }
+
+    /**
+     * Following streams with a bounded tail can be shared; others need their own engine stream.
+     * So do subscribers asking for BLOCK (they must not hold back the shared stream) and tails the
+     * ring cannot hold.
+     */
+    public boolean canServe(LogOptions options) {
+        return options.isFollow() && options.getSince() == null && options.getTail() != null
+                && options.getTail() <= ringSize
+                && (options.isDefaultOverflow() || options.getOverflow() != LogOptions.OverflowPolicy.BLOCK);
+    }
+
+    /** Only for options accepted by {@link #canServe}. Without a chosen policy, the subscriber drops its oldest lines. */
+    public Closeable subscribe(String containerId, LogSubscription subscription) {
+        if (subscription.getOptions().isDefaultOverflow()) {
+            subscription.overrideOverflow(LogOptions.OverflowPolicy.DROP_OLDEST);
+        }
+        int tail = subscription.getOptions().getTail();
+        while (true) {
+            Channel channel = channels.computeIfAbsent(containerId, Channel::new);
+            if (channel.add(subscription, tail)) {
+                channel.ensureOpen();
+                return () -> channel.remove(subscription);
+            }
+            // le dernier abonné vient de partir : on recrée un canal
+            channels.remove(containerId, channel);
+        }
+    }
+
+    public int getChannelCount() {
+        return channels.size();
+    }
+
+    @Override
+    public void close() {
+        for (Channel channel : channels.values()) {
+            channel.shutdown();
+        }
+        channels.clear();
+        timer.shutdownNow();
+    }
+
+    private class Channel implements LogListener {
+        private final String containerId;
+        private final String[] ring = new String[ringSize];
+        private int next;
+        private int size;
+        private final CopyOnWriteArraySet<LogSubscription> subscribers = new CopyOnWriteArraySet<>();
+        private final Map<LogSubscription, Integer> waiting = new LinkedHashMap<>();   // abonné -> tail
+        private boolean warming = ringSize > 0;
+        private long openedAt;
+        private long lastLineAt;
+        private boolean closed;
+        private Closeable upstream;
+
+        Channel(String containerId) {
+            this.containerId = containerId;
+        }
+
+        synchronized boolean add(LogSubscription subscription, int tail) {
+            if (closed) {
+                return false;
+            }
+            if (warming) {
+                waiting.put(subscription, tail);
+                return true;
+            }
+            replay(subscription, tail);
+            subscribers.add(subscription);
+            return true;
+        }
+
+        private void replay(LogSubscription subscription, int tail) {
+            int n = Math.min(tail, size);
+            for (int i = n; i > 0; i--) {
+                subscription.offer(ring[Math.floorMod(next - i, ring.length)]);
+            }
+        }
+
+        synchronized void ensureOpen() {
+            if (upstream != null || closed) {
+                return;
+            }
+            openedAt = System.currentTimeMillis();
+            lastLineAt = openedAt;
+            try {
+                upstream = dockerService.openLogStream(containerId, ringSize, null, true, this);
+            } catch (RuntimeException e) {
+                onEnd(e);
+                return;
+            }
+            if (warming) {
+                timer.schedule(this::settle, WARMUP_QUIET_MS, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        // l'historique est complet quand plus rien n'arrive depuis WARMUP_QUIET_MS
+        private synchronized void settle() {
+            if (!warming || closed) {
+                return;
+            }
+            long now = System.currentTimeMillis();
+            long wait = Math.min(lastLineAt + WARMUP_QUIET_MS, openedAt + WARMUP_MAX_MS) - now;
+            if (wait > 0) {
+                timer.schedule(this::settle, wait, TimeUnit.MILLISECONDS);
+                return;
+            }
+            endWarmup();
+        }
+
+        private void endWarmup() {
+            warming = false;
+            waiting.forEach((subscription, tail) -> {
+                replay(subscription, tail);
+                subscribers.add(subscription);
+            });
+            waiting.clear();
+        }
+
+        void remove(LogSubscription subscription) {
+            boolean last;
+            synchronized (this) {
+                subscribers.remove(subscription);
+                waiting.remove(subscription);
+                last = subscribers.isEmpty() && waiting.isEmpty() && !closed;
+                if (last) {
+                    closed = true;
+                }
+            }
+            if (last) {
+                channels.remove(containerId, this);
+                closeUpstream();
+            }
+        }
+
+        @Override
+        public synchronized void onLine(String line) {
+            if (closed) {
+                return;
+            }
+            if (ring.length > 0) {
+                ring[next] = line;
+                next = (next + 1) % ring.length;
+                size = Math.min(size + 1, ring.length);
+            }
+            if (warming) {
+                // pas plus de ringSize lignes d'historique : un anneau plein clôt le chargement
+                lastLineAt = System.currentTimeMillis();
+                if (size == ring.length) {
+                    endWarmup();
+                }
+                return;
+            }
+            for (LogSubscription subscriber : subscribers) {
+                subscriber.offer(line);
+            }
+        }
+
+        @Override
+        public void onEnd(Throwable error) {
+            List<LogSubscription> toNotify;
+            synchronized (this) {
+                if (warming) {
+                    endWarmup();
+                }
+                closed = true;
+                toNotify = new ArrayList<>(subscribers);
+                subscribers.clear();
+            }
+            channels.remove(containerId, this);
+            for (LogSubscription subscriber : toNotify) {
+                subscriber.onEnd(error);
+            }
+        }
+
+        void shutdown() {
+            synchronized (this) {
+                closed = true;
+            }
+            closeUpstream();
+        }
+
+        private void closeUpstream() {
+            Closeable up;
+            synchronized (this) {
+                up = upstream;
+                upstream = null;
+            }
+            if (up != null) {
+                try {
+                    up.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+}
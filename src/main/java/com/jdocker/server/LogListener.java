@@ -0,0 +1,12 @@
+package com.jdocker.server;
+
+/**
+ * Receives the decoded lines of one engine log stream.
+ */
+public interface LogListener {
+
+    void onLine(String line);
+
+    /** End of the stream; error is null on a normal end. */
+    void onEnd(Throwable error);
+}
@@ -0,0 +1,106 @@
+package com.jdocker.server;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * Options of a STREAM_LOGS subscription, read from the request payload. Immutable: a subscription
+ * that changes policy on the way (spool replay reaching the live stream) takes a copy.
+ */
+public class LogOptions {
+
+    public enum OverflowPolicy { BLOCK, DROP_OLDEST, SAMPLE }
+
+    /** Where the history comes from: AUTO uses the {@link LogSpool} when it covers the request. */
+    public enum Source { AUTO, ENGINE, SPOOL }
+
+    public enum Stream { ALL, STDOUT, STDERR }
+
+    private final Integer tail;          // null = whole history
+    private final Integer since;         // epoch seconds, null = no lower bound
+    private final boolean follow;
+    private final boolean batch;         // one LOG_LINES response per write instead of one LOG_LINE per line
+    private final int queueCapacity;
+    private final OverflowPolicy overflow;   // null = non précisée : BLOCK, DROP_OLDEST sur le hub
+    private final Source source;
+    private final Stream stream;         // choisi côté moteur : l'autre flux ne quitte pas Docker
+    private final LogFilter filter;      // null = toutes les lignes
+
+    LogOptions(Integer tail, Integer since, boolean follow, boolean batch, int queueCapacity,
+               OverflowPolicy overflow, Source source, Stream stream, LogFilter filter) {
+        this.tail = tail;
+        this.since = since;
+        this.follow = follow;
+        this.batch = batch;
+        this.queueCapacity = queueCapacity;
+        this.overflow = overflow;
+        this.source = source;
+        this.stream = stream;
+        this.filter = filter;
+    }
+
+    /**
+     * Options as found in the payload; absent values take their defaults (follow, queue of 10000,
+     * BLOCK or DROP_OLDEST for {@link LogHub} subscribers, AUTO, both streams). {@code since} is epoch seconds or a duration back from now ("10m").
+     */
+    public static LogOptions of(Integer tail, JsonNode since, Boolean follow, boolean batch, Integer queueCapacity,
+                                String overflow, String source, String stream, LogFilter filter) {
+        Integer from = null;
+        if (since != null && !since.isNull()) {
+            // "10m", "2h" : relatif à maintenant
+            from = since.isNumber() || since.asText().matches("\\d+") ? since.asInt()
+                    : (int) ((System.currentTimeMillis() - StatsStreamManager.parseDuration(since.asText())) / 1000);
+        }
+        return new LogOptions(tail, from, follow == null || follow, batch,
+                Math.max(16, queueCapacity == null ? 10_000 : queueCapacity),
+                overflow == null ? null : OverflowPolicy.valueOf(overflow.toUpperCase()),
+                source == null ? Source.AUTO : Source.valueOf(source.toUpperCase()),
+                stream == null ? Stream.ALL : Stream.valueOf(stream.toUpperCase()), filter);
+    }
+
+    /** The same options with another overflow policy. */
+    public LogOptions withOverflow(OverflowPolicy overflow) {
+        return overflow == this.overflow ? this
+                : new LogOptions(tail, since, follow, batch, queueCapacity, overflow, source, stream, filter);
+    }
+
+    public Integer getTail() {
+        return tail;
+    }
+
+    public Integer getSince() {
+        return since;
+    }
+
+    public boolean isFollow() {
+        return follow;
+    }
+
+    public boolean isBatch() {
+        return batch;
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    public OverflowPolicy getOverflow() {
+        return overflow == null ? OverflowPolicy.BLOCK : overflow;
+    }
+
+    /** True when the client did not choose a policy (the BLOCK of {@link #getOverflow} is only a default). */
+    public boolean isDefaultOverflow() {
+        return overflow == null;
+    }
+
+    public Source getSource() {
+        return source;
+    }
+
+    public Stream getStream() {
+        return stream;
+    }
+
+    public LogFilter getFilter() {
+        return filter;
+    }
+}
@@ -0,0 +1,368 @@
+package com.jdocker.server;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Opt-in persistent log spool ({@code -Djdocker.logs.spool.dir=...}).
+ * <p>
+ * Every running container (optionally only those matching {@code jdocker.logs.spool.label}) gets
+ * one following engine stream whose lines are appended to a {@link SpoolLog}. STREAM_LOGS
+ * requests with a {@code since} covered by the spool, or for a container that no longer exists,
+ * are answered from disk: the replay seeks through the sparse index instead of asking the engine
+ * for the whole history, then continues with the live lines of the capture.
+ * Oldest segments are deleted by age and when the spool exceeds its total size.
+ */
+public class LogSpool implements Closeable {
+
+    private static final long FLUSH_INTERVAL_MS = 500;
+    private static final long RECONCILE_INTERVAL_MS = 5000;
+    private static final int REPLAY_BATCH = 512;
+
+    private final DockerService dockerService;
+    private final Path dir;
+    private final long maxBytes;
+    private final long maxAgeMillis;
+    private final long segmentBytes;
+    private final ListQuery filter;      // null = tous les conteneurs
+    private final Map<String, SpoolLog> logs = new ConcurrentHashMap<>();
+    private final Map<String, Closeable> captures = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "jdocker-spool");
+        t.setDaemon(true);
+        return t;
+    });
+    private final ExecutorService replays;
+    private volatile boolean closed;
+
+    public LogSpool(DockerService dockerService, Path dir, long maxBytes, long maxAgeMillis, long segmentBytes,
+                    ListQuery filter) {
+        this.dockerService = dockerService;
+        this.dir = dir;
+        this.maxBytes = maxBytes;
+        this.maxAgeMillis = maxAgeMillis;
+        this.segmentBytes = segmentBytes;
+        this.filter = filter;
+        AtomicInteger counter = new AtomicInteger();
+        this.replays = Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "jdocker-spool-replay-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /** Spool configured by jdocker.logs.spool.* properties, or null when no directory is set. */
+    public static LogSpool fromSystemProperties(DockerService dockerService) {
+        String path = System.getProperty("jdocker.logs.spool.dir");
+        if (path == null || path.isEmpty()) {
+            return null;
+        }
+        String label = System.getProperty("jdocker.logs.spool.label");
+        ListQuery filter = label == null ? null
+                : new ListQuery(null, label, null, null, null, null, 0, null, false, null, false);
+        return new LogSpool(dockerService, Paths.get(path),
+                Long.getLong("jdocker.logs.spool.maxBytes", 1024L * 1024 * 1024),
+                TimeUnit.HOURS.toMillis(Long.getLong("jdocker.logs.spool.maxAgeHours", 7 * 24)),
+                Long.getLong("jdocker.logs.spool.segmentBytes", 16L * 1024 * 1024),
+                filter);
+    }
+
+    public void start() throws IOException {
+        Files.createDirectories(dir);
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, Files::isDirectory)) {
+            for (Path containerDir : stream) {
+                SpoolLog log = SpoolLog.load(containerDir, segmentBytes);
+                if (log.isEmpty()) {
+                    log.deleteAll();
+                } else {
+                    logs.put(log.getContainerId(), log);
+                }
+            }
+        }
+        ServerLog.info("SPOOL", "Log spool in " + dir + " (" + logs.size() + " containers, "
+                + getBytes() / (1024 * 1024) + " MB)");
+        scheduler.scheduleWithFixedDelay(this::flushAll, FLUSH_INTERVAL_MS, FLUSH_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        scheduler.scheduleWithFixedDelay(this::maintain, 0, RECONCILE_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    public int getContainerCount() {
+        return logs.size();
+    }
+
+    public int getCaptureCount() {
+        return captures.size();
+    }
+
+    public long getBytes() {
+        long total = 0;
+        for (SpoolLog log : logs.values()) {
+            total += log.getBytes();
+        }
+        return total;
+    }
+
+    // ---- lecture ----
+
+    /**
+     * True if the request is better answered from disk: forced with {@code "source":"spool"}, or a
+     * {@code since} that the spool covers. Tails stay with the engine / {@link LogHub}.
+     */
+    boolean canServe(String id, LogOptions options) {
+        if (options.getSource() == LogOptions.Source.ENGINE) {
+            return false;
+        }
+        SpoolLog log = logs.get(id);
+        if (log == null || log.isEmpty()) {
+            return false;
+        }
+        if (options.getSource() == LogOptions.Source.SPOOL) {
+            return true;
+        }
+        return options.getSince() != null && log.getFirstTimestamp() <= options.getSince() * 1000L;
+    }
+
+    /**
+     * Spooled container whose id, id prefix or last known name matches; used when the engine no
+     * longer knows it. The most recently written one wins between several containers of the same name.
+     */
+    String resolve(String idOrName) {
+        if (logs.containsKey(idOrName)) {
+            return idOrName;
+        }
+        String shortName = idOrName.startsWith("/") ? idOrName.substring(1) : idOrName;
+        SpoolLog byName = null;
+        List<String> byPrefix = new ArrayList<>();
+        for (SpoolLog log : logs.values()) {
+            if (log.getName().equals(shortName)
+                    && (byName == null || log.getLastTimestamp() > byName.getLastTimestamp())) {
+                byName = log;
+            }
+            if (log.getContainerId().startsWith(idOrName)) {
+                byPrefix.add(log.getContainerId());
+            }
+        }
+        if (byName != null) {
+            return byName.getContainerId();
+        }
+        if (byPrefix.size() > 1) {
+            throw new IllegalArgumentException("Ambiguous container id prefix: " + idOrName);
+        }
+        return byPrefix.isEmpty() ? null : byPrefix.get(0);
+    }
+
+    /**
+     * Replays the spooled lines from {@code since} and/or the last {@code tail} lines, on a replay
+     * thread, then follows the capture if it is running and the request follows.
+     */
+    Closeable replay(String id, LogOptions options, LogSubscription subscription) {
+        SpoolLog log = logs.get(id);
+        if (log == null) {
+            throw new IllegalArgumentException("No spooled logs for container: " + id);
+        }
+        log.flush();
+        long start = log.getStartRecord();
+        if (options.getSince() != null) {
+            start = Math.max(start, log.recordAt(options.getSince() * 1000L));
+        }
+        if (options.getTail() != null) {
+            start = Math.max(start, log.getEndRecord() - options.getTail());
+        }
+        SpoolLog.Cursor cursor = log.seek(start);
+        Replay replay = new Replay(log, cursor, options, subscription);
+        replays.execute(replay);
+        return replay;
+    }
+
+    private final class Replay implements Runnable, Closeable {
+        private final SpoolLog log;
+        private final SpoolLog.Cursor cursor;
+        private final LogOptions options;
+        private final LogSubscription subscription;
+        private volatile boolean cancelled;
+
+        Replay(SpoolLog log, SpoolLog.Cursor cursor, LogOptions options, LogSubscription subscription) {
+            this.log = log;
+            this.cursor = cursor;
+            this.options = options;
+            this.subscription = subscription;
+        }
+
+        @Override
+        public void run() {
+            try {
+                // historique : la file de l'abonné (BLOCK par défaut) freine la lecture
+                List<String> lines;
+                while (!cancelled && !(lines = log.read(cursor, REPLAY_BATCH)).isEmpty()) {
+                    for (String line : lines) {
+                        subscription.offer(line);
+                    }
+                }
+                if (cancelled) {
+                    return;
+                }
+                // au contact du flux en direct, un abonné lent ne doit pas bloquer la capture
+                if (options.getOverflow() == LogOptions.OverflowPolicy.BLOCK) {
+                    subscription.overrideOverflow(LogOptions.OverflowPolicy.DROP_OLDEST);
+                }
+                if (!log.catchUp(cursor, subscription, options.isFollow())) {
+                    subscription.onEnd(null);
+                }
+            } catch (RuntimeException e) {
+                subscription.onEnd(e);
+            }
+        }
+
+        @Override
+        public void close() {
+            cancelled = true;
+            log.unfollow(subscription);
+        }
+    }
+
+    // ---- capture ----
+
+    private void flushAll() {
+        for (SpoolLog log : logs.values()) {
+            log.flush();
+        }
+    }
+
+    private void maintain() {
+        if (closed) {
+            return;
+        }
+        try {
+            reconcile();
+            applyRetention();
+        } catch (RuntimeException e) {
+            ServerLog.warn("SPOOL", "Maintenance failed: " + e.getMessage());
+        }
+    }
+
+    // un flux moteur par conteneur en marche ; un conteneur arrêté termine son flux de lui-même
+    private void reconcile() {
+        for (Map.Entry<String, Collection<ContainerInfo>> host : dockerService.cachedContainers().entrySet()) {
+            for (ContainerInfo c : host.getValue()) {
+                if (!"running".equals(c.getState()) || captures.containsKey(c.getId())
+                        || (filter != null && !filter.matches(c))) {
+                    continue;
+                }
+                startCapture(c, host.getKey());
+            }
+        }
+    }
+
+    private void startCapture(ContainerInfo container, String host) {
+        String id = container.getId();
+        SpoolLog log = logs.computeIfAbsent(id, k -> new SpoolLog(k, dir.resolve(k), segmentBytes));
+        log.describe(container.getShortName(), container.getImage(), host);
+        long last = log.getLastTimestamp();
+        // première capture : seulement les nouvelles lignes (l'horodatage est celui de réception) ;
+        // reprise : depuis la seconde qui suit la dernière ligne écrite
+        Integer tail = last == 0 ? 0 : null;
+        Integer since = last == 0 ? null : (int) (last / 1000 + 1);
+        LogListener capture = new LogListener() {
+            @Override
+            public void onLine(String line) {
+                log.append(System.currentTimeMillis(), line);
+            }
+
+            @Override
+            public void onEnd(Throwable error) {
+                captures.remove(id);
+                log.endCapture(error);
+            }
+        };
+        Closeable opening = () -> { };
+        log.setCapturing(true);
+        captures.put(id, opening);
+        try {
+            Closeable handle = dockerService.openLogStream(id, tail, since, true, capture);
+            // le flux peut déjà être terminé (conteneur arrêté entre-temps)
+            captures.replace(id, opening, handle);
+        } catch (RuntimeException e) {
+            captures.remove(id);
+            log.setCapturing(false);
+            ServerLog.warn("SPOOL", "Cannot capture logs of " + container.getShortName() + ": " + e.getMessage());
+        }
+    }
+
+    private void applyRetention() {
+        long now = System.currentTimeMillis();
+        List<Candidate> candidates = new ArrayList<>();
+        long total = 0;
+        for (SpoolLog log : logs.values()) {
+            List<SpoolLog.Segment> segments = log.getSegments();
+            for (int i = 0; i < segments.size(); i++) {
+                SpoolLog.Segment segment = segments.get(i);
+                total += segment.committed;
+                // le segment en cours d'une capture active n'est jamais supprimé
+                boolean writing = log.isCapturing() && i == segments.size() - 1;
+                if (!writing) {
+                    candidates.add(new Candidate(log, segment));
+                }
+            }
+        }
+        candidates.sort(Comparator.comparingLong(c -> c.lastTimestamp));
+        for (Candidate candidate : candidates) {
+            SpoolLog.Segment segment = candidate.segment;
+            boolean expired = segment.lastTimestamp < now - maxAgeMillis;
+            if (!expired && total <= maxBytes) {
+                break; // triés du plus ancien au plus récent
+            }
+            total -= segment.committed;
+            candidate.log.delete(segment);
+        }
+        for (SpoolLog log : logs.values()) {
+            if (log.isEmpty() && !log.isCapturing()) {
+                logs.remove(log.getContainerId(), log);
+                log.deleteAll();
+            }
+        }
+    }
+
+    /** A closed segment that retention may delete. */
+    private static final class Candidate {
+        final SpoolLog log;
+        final SpoolLog.Segment segment;
+        final long lastTimestamp;   // figé : l'ordre du tri ne bouge pas pendant le tri
+
+        Candidate(SpoolLog log, SpoolLog.Segment segment) {
+            this.log = log;
+            this.segment = segment;
+            this.lastTimestamp = segment.lastTimestamp;
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        scheduler.shutdownNow();
+        replays.shutdownNow();
+        for (Closeable capture : captures.values()) {
+            try {
+                capture.close();
+            } catch (IOException ignored) {
+            }
+        }
+        captures.clear();
+        for (SpoolLog log : logs.values()) {
+            log.endCapture(null);
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.jdocker.server;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Registry of active log subscriptions, so they can be stopped by id (STOP_LOGS)
+ * or all at once when their connection goes away.
+ */
+public class LogStreamManager {
+
+    private final Executor executor;
+    private final AtomicLong nextId = new AtomicLong();
+    private final Map<String, LogSubscription> subscriptions = new ConcurrentHashMap<>();
+
+    public LogStreamManager(Executor executor) {
+        this.executor = executor;
+    }
+
+    public LogSubscription open(ResponseSink sink, String requestId, LogOptions options) {
+        String id = "logs-" + nextId.incrementAndGet();
+        LogSubscription subscription = new LogSubscription(id, requestId, sink, options, executor,
+                () -> closed(id, sink));
+        sink.streamOpened();
+        subscriptions.put(id, subscription);
+        return subscription;
+    }
+
+    /** Only the connection that opened a subscription may stop it. */
+    public boolean stop(String subscriptionId, ResponseSink sink) {
+        LogSubscription subscription = subscriptions.get(subscriptionId);
+        if (subscription == null || subscription.getSink() != sink) {
+            return false;
+        }
+        subscription.cancel();
+        return true;
+    }
+
+    public void closeAll(ResponseSink sink) {
+        for (LogSubscription subscription : subscriptions.values()) {
+            if (subscription.getSink() == sink) {
+                subscription.cancel();
+            }
+        }
+    }
+
+    private void closed(String id, ResponseSink sink) {
+        if (subscriptions.remove(id) != null) {
+            sink.streamClosed();
+        }
+    }
+
+    public int getActiveCount() {
+        return subscriptions.size();
+    }
+}
@@ -0,0 +1,256 @@
+package com.jdocker.server;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.jdocker.common.Response;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * One client's log stream: the engine callback fills a bounded queue, a drain task empties it
+ * in batches so that many lines leave in a single network write. A batch is only taken once the
+ * client has read most of its pending output: a slow follower backs up into this queue, where its
+ * overflow policy applies, not into the connection's write queue.
+ */
+public class LogSubscription implements LogListener {
+
+    private static final int MAX_BATCH = 512;
+    private static final int SAMPLE_RATE = 10;
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final String id;
+    private final String requestId;
+    private final ResponseSink sink;
+    private volatile LogOptions options;
+    private final Executor executor;
+    private final Runnable onClose;
+
+    private final BlockingQueue<String> queue;
+    private final AtomicBoolean draining = new AtomicBoolean();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong sampleCounter = new AtomicLong();
+
+    private volatile boolean started;
+    private volatile boolean completed;
+    private volatile boolean closed;
+    private volatile Closeable upstream;
+
+    LogSubscription(String id, String requestId, ResponseSink sink, LogOptions options,
+                    Executor executor, Runnable onClose) {
+        this.id = id;
+        this.requestId = requestId;
+        this.sink = sink;
+        this.options = options;
+        this.executor = executor;
+        this.onClose = onClose;
+        this.queue = new ArrayBlockingQueue<>(options.getQueueCapacity());
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public ResponseSink getSink() {
+        return sink;
+    }
+
+    public LogOptions getOptions() {
+        return options;
+    }
+
+    /** Switches the overflow policy of a running subscription (a copy of its options is taken). */
+    void overrideOverflow(LogOptions.OverflowPolicy overflow) {
+        options = options.withOverflow(overflow);
+    }
+
+    void attach(Closeable upstream) {
+        this.upstream = upstream;
+        if (closed) {
+            closeUpstream();
+        }
+    }
+
+    /** Lets queued lines flow once the acknowledgement has been written. */
+    void start() {
+        started = true;
+        scheduleDrain();
+    }
+
+    /** Called from the engine callback thread for every decoded line. */
+    public void offer(String line) {
+        LogFilter filter = options.getFilter();
+        if (filter != null && !filter.accept(line)) {
+            return;
+        }
+        enqueue(line);
+    }
+
+    private void enqueue(String line) {
+        if (closed || !sink.isOpen()) {
+            cancel();
+            return;
+        }
+        switch (options.getOverflow()) {
+            case BLOCK:
+                try {
+                    // bloque le callback docker-java : la contre-pression remonte jusqu'au moteur
+                    queue.put(line);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                break;
+            case DROP_OLDEST:
+                while (!queue.offer(line)) {
+                    if (queue.poll() != null) {
+                        dropped.incrementAndGet();
+                    }
+                }
+                break;
+            case SAMPLE:
+                // au-delà de la moitié de la file, on ne garde qu'une ligne sur SAMPLE_RATE
+                boolean pressured = queue.remainingCapacity() < options.getQueueCapacity() / 2;
+                if ((pressured && sampleCounter.incrementAndGet() % SAMPLE_RATE != 0) || !queue.offer(line)) {
+                    dropped.incrementAndGet();
+                }
+                break;
+        }
+        scheduleDrain();
+    }
+
+    @Override
+    public void onLine(String line) {
+        offer(line);
+    }
+
+    @Override
+    public void onEnd(Throwable error) {
+        if (error != null) {
+            enqueue("[LOG_ERROR] " + error.getMessage());
+        }
+        complete();
+    }
+
+    /** The engine stream ended (container stopped, or follow=false and history consumed). */
+    public void complete() {
+        completed = true;
+        scheduleDrain();
+    }
+
+    public void cancel() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        queue.clear();
+        closeUpstream();
+        onClose.run();
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    private void scheduleDrain() {
+        if (started && !closed && draining.compareAndSet(false, true)) {
+            executor.execute(this::drain);
+        }
+    }
+
+    private void drain() {
+        try {
+            List<String> batch = new ArrayList<>(Math.min(MAX_BATCH, queue.size() + 1));
+            while (!closed && !queue.isEmpty() && hasCapacity()) {
+                queue.drainTo(batch, MAX_BATCH);
+                sink.sendAll(toResponses(batch));
+                batch.clear();
+            }
+            if (completed && queue.isEmpty() && !closed) {
+                Response summary = suppressedSummary();
+                if (summary != null) {
+                    sink.send(summary);
+                }
+                sink.send(withRequestId(Response.of("OK", "LOG_END", MAPPER.createObjectNode().put("subscriptionId", id))));
+                cancel();
+            }
+        } catch (IOException e) {
+            cancel();
+        } finally {
+            draining.set(false);
+        }
+        if (!queue.isEmpty() || (completed && !closed)) {
+            scheduleDrain();
+        }
+    }
+
+    // le client ne lit toujours pas : les lignes restent dans la file, la politique de débordement décide
+    private boolean hasCapacity() throws IOException {
+        try {
+            sink.awaitCapacity();
+            return true;
+        } catch (IOException e) {
+            if (!sink.isOpen()) {
+                throw e;
+            }
+            return false;
+        }
+    }
+
+    private List<Response> toResponses(List<String> lines) {
+        List<Response> responses = new ArrayList<>(options.isBatch() ? 2 : lines.size() + 1);
+        long lost = dropped.getAndSet(0);
+        if (lost > 0) {
+            responses.add(withRequestId(Response.of("OK", "LOG_DROPPED", MAPPER.createObjectNode().put("dropped", lost))));
+        }
+        Response summary = suppressedSummary();
+        if (summary != null) {
+            responses.add(summary);
+        }
+        if (options.isBatch()) {
+            ArrayNode arr = MAPPER.createArrayNode();
+            for (String line : lines) {
+                arr.add(line);
+            }
+            responses.add(withRequestId(Response.of("OK", "LOG_LINES", arr)));
+        } else {
+            for (String line : lines) {
+                responses.add(withRequestId(new Response("OK", "LOG_LINE", line)));
+            }
+        }
+        return responses;
+    }
+
+    // lignes écartées par maxLinesPerSecond depuis le dernier envoi
+    private Response suppressedSummary() {
+        LogFilter filter = options.getFilter();
+        long suppressed = filter == null ? 0 : filter.takeSuppressed();
+        if (suppressed == 0) {
+            return null;
+        }
+        return withRequestId(Response.of("OK", "LOG_SUPPRESSED", MAPPER.createObjectNode().put("suppressed", suppressed)));
+    }
+
+    private Response withRequestId(Response response) {
+        response.setId(requestId);
+        return response;
+    }
+
+    private void closeUpstream() {
+        Closeable up = upstream;
+        if (up != null) {
+            try {
+                up.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+}
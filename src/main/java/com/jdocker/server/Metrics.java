@@ -0,0 +1,146 @@
+package com.jdocker.server;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Server metrics: per-action request timers, engine call timers, internal timers and gauges.
+ * Exposed through the METRICS action (JSON) and, optionally, a Prometheus HTTP endpoint.
+ */
+public class Metrics {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final Map<String, Timer> requests = new ConcurrentSkipListMap<>();
+    private final Map<String, Timer> engineCalls = new ConcurrentSkipListMap<>();
+    private final Map<String, Timer> timers = new ConcurrentSkipListMap<>();
+    private final Map<String, Supplier<? extends Number>> gauges = new ConcurrentSkipListMap<>();
+    private final Map<String, LabeledGauge> labeledGauges = new ConcurrentSkipListMap<>();
+
+    /** The caller maps unknown actions to a single key, so a client cannot grow the map at will. */
+    public void recordRequest(String action, long nanos, boolean error) {
+        requests.computeIfAbsent(action, k -> new Timer()).record(nanos, error);
+    }
+
+    public void recordEngineCall(String operation, long nanos, boolean error) {
+        engineCalls.computeIfAbsent(operation, k -> new Timer()).record(nanos, error);
+    }
+
+    /** Latency of a server-side step that is neither a request nor a single engine call. */
+    public void recordTimer(String name, long nanos, boolean error) {
+        timers.computeIfAbsent(name, k -> new Timer()).record(nanos, error);
+    }
+
+    public void gauge(String name, Supplier<? extends Number> value) {
+        gauges.put(name, value);
+    }
+
+    /**
+     * One value per host, template... under a single metric name: the label value may be any string,
+     * it never ends up in the Prometheus metric name.
+     */
+    public void gauge(String name, String label, String labelValue, Supplier<? extends Number> value) {
+        labeledGauges.computeIfAbsent(name, k -> new LabeledGauge(label)).values.put(labelValue, value);
+    }
+
+    public ObjectNode toJson() {
+        ObjectNode root = MAPPER.createObjectNode();
+        timersToJson(root.putObject("requests"), requests);
+        timersToJson(root.putObject("engine"), engineCalls);
+        if (!timers.isEmpty()) {
+            timersToJson(root.putObject("timers"), timers);
+        }
+        ObjectNode g = root.putObject("gauges");
+        gauges.forEach((name, value) -> g.put(name, value.get().doubleValue()));
+        labeledGauges.forEach((name, gauge) -> {
+            ObjectNode l = g.putObject(name);
+            gauge.values.forEach((labelValue, value) -> l.put(labelValue, value.get().doubleValue()));
+        });
+        return root;
+    }
+
+    /** Prometheus text exposition format (version 0.0.4). */
+    public String toPrometheus() {
+        StringBuilder out = new StringBuilder(4096);
+        timersToPrometheus(out, "jdocker_request", "action", requests);
+        timersToPrometheus(out, "jdocker_engine_call", "operation", engineCalls);
+        timersToPrometheus(out, "jdocker_timer", "name", timers);
+        gauges.forEach((name, value) -> {
+            String metric = "jdocker_" + name.replace('.', '_');
+            out.append("# TYPE ").append(metric).append(" gauge\n");
+            out.append(metric).append(' ').append(value.get().doubleValue()).append('\n');
+        });
+        labeledGauges.forEach((name, gauge) -> {
+            String metric = "jdocker_" + name.replace('.', '_');
+            out.append("# TYPE ").append(metric).append(" gauge\n");
+            gauge.values.forEach((labelValue, value) -> out.append(metric).append('{').append(gauge.label).append("=\"")
+                    .append(labelValue.replace("\\", "\\\\").replace("\"", "\\\"")).append("\"} ")
+                    .append(value.get().doubleValue()).append('\n'));
+        });
+        return out.toString();
+    }
+
+    private static void timersToJson(ObjectNode node, Map<String, Timer> timers) {
+        timers.forEach((name, timer) -> {
+            LatencyHistogram h = timer.latency;
+            ObjectNode t = node.putObject(name);
+            t.put("count", h.getCount());
+            t.put("errors", timer.errors.sum());
+            t.put("avgMs", h.getCount() == 0 ? 0 : h.getSumMicros() / 1000.0 / h.getCount());
+            t.put("p50Ms", h.quantileMillis(0.50));
+            t.put("p99Ms", h.quantileMillis(0.99));
+            t.put("maxMs", h.getMaxMicros() / 1000.0);
+        });
+    }
+
+    private static void timersToPrometheus(StringBuilder out, String metric, String label, Map<String, Timer> timers) {
+        if (timers.isEmpty()) {
+            return;
+        }
+        out.append("# TYPE ").append(metric).append("_seconds histogram\n");
+        timers.forEach((name, timer) -> {
+            String l = label + "=\"" + name.replace("\"", "\\\"") + "\"";
+            long[] counts = timer.latency.getBucketCounts();
+            long cumulative = 0;
+            for (int i = 0; i < counts.length; i++) {
+                cumulative += counts[i];
+                String le = i < LatencyHistogram.BOUNDS_MICROS.length
+                        ? String.valueOf(LatencyHistogram.BOUNDS_MICROS[i] / 1_000_000.0) : "+Inf";
+                out.append(metric).append("_seconds_bucket{").append(l).append(",le=\"").append(le).append("\"} ")
+                        .append(cumulative).append('\n');
+            }
+            out.append(metric).append("_seconds_sum{").append(l).append("} ")
+                    .append(timer.latency.getSumMicros() / 1_000_000.0).append('\n');
+            out.append(metric).append("_seconds_count{").append(l).append("} ").append(cumulative).append('\n');
+        });
+        out.append("# TYPE ").append(metric).append("_errors_total counter\n");
+        timers.forEach((name, timer) -> out.append(metric).append("_errors_total{").append(label).append("=\"")
+                .append(name.replace("\"", "\\\"")).append("\"} ").append(timer.errors.sum()).append('\n'));
+    }
+
+    private static final class LabeledGauge {
+        final String label;
+        final Map<String, Supplier<? extends Number>> values = new ConcurrentSkipListMap<>();
+
+        LabeledGauge(String label) {
+            this.label = label;
+        }
+    }
+
+    private static final class Timer {
+        final LatencyHistogram latency = new LatencyHistogram();
+        final LongAdder errors = new LongAdder();
+
+        void record(long nanos, boolean error) {
+            latency.record(nanos);
+            if (error) {
+                errors.increment();
+            }
+        }
+    }
+}
@@ -0,0 +1,523 @@
+package com.jdocker.server;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jdocker.common.CompressionStats;
+import com.jdocker.common.DeflateCodec;
+import com.jdocker.common.Request;
+import com.jdocker.common.Response;
+import com.jdocker.common.WireFormat;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Event-loop server: a single selector thread owns every socket, requests are executed on a
+ * small worker pool. Idle connections cost a few buffers instead of an OS thread each.
+ */
+public class NioDockerServer {
+
+    private static final int READ_BUFFER_SIZE = 8 * 1024;
+    private static final int MAX_LINE_LENGTH = 1024 * 1024;
+    private static final long MAX_QUEUED_BYTES = 16L * 1024 * 1024;
+    // les listes en morceaux attendent sous ce seuil, au plus PACING_TIMEOUT_MS par morceau
+    private static final long PACING_BYTES = MAX_QUEUED_BYTES / 4;
+    private static final long PACING_TIMEOUT_MS = 30_000;
+    private static final long REAP_INTERVAL_MS = 1000;
+
+    private final int port;
+    private final ServerConfig config;
+    private final RequestDispatcher dispatcher;
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final ExecutorService workers;
+    private final RequestScheduler scheduler;
+    private final CompressionStats compressionStats;
+
+    private final Set<Connection> connections = ConcurrentHashMap.newKeySet();
+    private final LongAdder queuedBytesTotal = new LongAdder();
+    private final Queue<Connection> pendingWrites = new ConcurrentLinkedQueue<>();
+    private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+
+    private volatile boolean running;
+    private volatile Selector selector;
+
+    public NioDockerServer(int port, ServerConfig config, RequestDispatcher dispatcher, RequestScheduler scheduler,
+                           CompressionStats compressionStats) {
+        this.port = port;
+        this.config = config;
+        this.dispatcher = dispatcher;
+        this.scheduler = scheduler;
+        this.compressionStats = compressionStats;
+        AtomicInteger counter = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(config.getWorkerThreads(), r -> {
+            Thread t = new Thread(r, "jdocker-worker-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    public void start() throws IOException {
+        running = true;
+        try (Selector selector = Selector.open();
+             ServerSocketChannel server = ServerSocketChannel.open()) {
+            this.selector = selector;
+            server.bind(new InetSocketAddress(port), 1024);
+            server.configureBlocking(false);
+            server.register(selector, SelectionKey.OP_ACCEPT);
+            ServerLog.info("SERVER", "Listening on port " + port + " (nio, maxConnections="
+                    + config.getMaxConnections() + ")");
+
+            long nextReap = System.currentTimeMillis() + REAP_INTERVAL_MS;
+            while (running) {
+                selector.select(REAP_INTERVAL_MS);
+                registerPendingWrites();
+
+                Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                while (it.hasNext()) {
+                    SelectionKey key = it.next();
+                    it.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept(server, selector);
+                        continue;
+                    }
+                    Connection conn = (Connection) key.attachment();
+                    try {
+                        if (key.isReadable()) {
+                            conn.read();
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            conn.flush();
+                        }
+                    } catch (IOException e) {
+                        conn.close();
+                    }
+                }
+
+                long now = System.currentTimeMillis();
+                if (now >= nextReap) {
+                    reapIdle(now);
+                    nextReap = now + REAP_INTERVAL_MS;
+                }
+            }
+        } finally {
+            for (Connection conn : connections) {
+                conn.close();
+            }
+            workers.shutdown();
+            try {
+                workers.awaitTermination(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    public void stop() {
+        running = false;
+        Selector s = selector;
+        if (s != null) {
+            s.wakeup();
+        }
+    }
+
+    public int getConnectionCount() {
+        return connections.size();
+    }
+
+    /** Bytes encoded but not yet written to the sockets, over all connections. */
+    public long getQueuedBytes() {
+        return queuedBytesTotal.sum();
+    }
+
+    private void accept(ServerSocketChannel server, Selector selector) throws IOException {
+        SocketChannel channel;
+        while ((channel = server.accept()) != null) {
+            if (connections.size() >= config.getMaxConnections()) {
+                rejectBusy(channel);
+                continue;
+            }
+            channel.configureBlocking(false);
+            channel.socket().setTcpNoDelay(true);
+            Connection conn = new Connection(channel);
+            conn.key = channel.register(selector, SelectionKey.OP_READ, conn);
+            connections.add(conn);
+        }
+    }
+
+    private void rejectBusy(SocketChannel channel) {
+        try (channel) {
+            channel.configureBlocking(false);
+            Response busy = new Response("ERROR", "Server busy: too many connections", null);
+            channel.write(ByteBuffer.wrap((mapper.writeValueAsString(busy) + "\n").getBytes(StandardCharsets.UTF_8)));
+        } catch (IOException ignored) {
+        }
+    }
+
+    private void registerPendingWrites() {
+        Connection conn;
+        while ((conn = pendingWrites.poll()) != null) {
+            conn.writeRequested.set(false);
+            if (conn.key != null && conn.key.isValid()) {
+                try {
+                    // tentative d'écriture directe avant de s'abonner à OP_WRITE
+                    conn.flush();
+                } catch (IOException e) {
+                    conn.close();
+                }
+            }
+        }
+    }
+
+    private void reapIdle(long now) {
+        long idleMs = config.getIdleTimeout().toMillis();
+        if (idleMs <= 0) {
+            return;
+        }
+        for (Connection conn : connections) {
+            // un abonné silencieux (WATCH, logs calmes...) ou une requête en cours n'est pas inactif
+            if (now - conn.lastActivity > idleMs && !conn.pipeline.isBlocked() && conn.streams.get() == 0) {
+                conn.close();
+            }
+        }
+    }
+
+    private class Connection implements ResponseSink {
+        private final SocketChannel channel;
+        private volatile SelectionKey key;
+        private volatile long lastActivity = System.currentTimeMillis();
+        private volatile boolean closed;
+        private final AtomicInteger streams = new AtomicInteger();   // abonnements, sessions exec, pulls suivis
+
+        // selector thread only
+        private final ByteArrayOutputStream lineBuffer = new ByteArrayOutputStream();
+        private WireFormat readFormat = WireFormat.LINE;
+        private int headerBytes;
+        private byte frameFlag;
+        private int frameLength;
+        private byte[] frame;
+        private int framePos;
+        private boolean firstMessage = true;
+
+        private volatile WireFormat format = WireFormat.LINE;
+        private volatile DeflateCodec codec;
+        private final Queue<byte[]> inbox = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean draining = new AtomicBoolean();
+
+        private final ArrayDeque<ByteBuffer> writeQueue = new ArrayDeque<>();
+        private long queuedBytes;
+        private final AtomicBoolean writeRequested = new AtomicBoolean();
+        private final RequestPipeline pipeline;
+
+        Connection(SocketChannel channel) {
+            this.channel = channel;
+            this.pipeline = new RequestPipeline(dispatcher, this, scheduler,
+                    channel.socket().getInetAddress().getHostAddress(), config.getMaxInFlightPerConnection(), false,
+                    this::resume);
+        }
+
+        // selector thread
+        void read() throws IOException {
+            readBuffer.clear();
+            int n = channel.read(readBuffer);
+            if (n < 0) {
+                close();
+                return;
+            }
+            lastActivity = System.currentTimeMillis();
+            readBuffer.flip();
+            while (readBuffer.hasRemaining() && !closed) {
+                if (readFormat == WireFormat.LINE && codec == null) {
+                    readLineByte();
+                } else {
+                    readFrameBytes();
+                }
+            }
+            scheduleDrain();
+        }
+
+        private void readLineByte() throws IOException {
+            byte b = readBuffer.get();
+            if (b == '\n') {
+                byte[] line = lineBuffer.toByteArray();
+                lineBuffer.reset();
+                if (line.length > 0 && !(line.length == 1 && line[0] == '\r')) {
+                    onMessage(line);
+                }
+            } else {
+                lineBuffer.write(b);
+                if (lineBuffer.size() > MAX_LINE_LENGTH) {
+                    send(new Response("ERROR", "Request too large", null));
+                    close();
+                }
+            }
+        }
+
+        // length-prefixed frames (SMILE), with a leading compression flag once deflate is negotiated
+        private void readFrameBytes() throws IOException {
+            int headerSize = codec == null ? 4 : DeflateCodec.HEADER_SIZE;
+            if (headerBytes < headerSize) {
+                byte b = readBuffer.get();
+                if (headerSize == DeflateCodec.HEADER_SIZE && headerBytes == 0) {
+                    frameFlag = b;
+                } else {
+                    frameLength = (frameLength << 8) | (b & 0xff);
+                }
+                if (++headerBytes == headerSize) {
+                    if (frameLength < 0 || frameLength > WireFormat.MAX_MESSAGE_SIZE) {
+                        close();
+                        return;
+                    }
+                    frame = new byte[frameLength];
+                    framePos = 0;
+                }
+            } else {
+                int chunk = Math.min(readBuffer.remaining(), frameLength - framePos);
+                readBuffer.get(frame, framePos, chunk);
+                framePos += chunk;
+            }
+            if (headerBytes == headerSize && framePos == frameLength) {
+                byte[] complete = frame;
+                frame = null;
+                headerBytes = 0;
+                frameLength = 0;
+                onMessage(codec == null ? complete : codec.decode(frameFlag, complete));
+            }
+        }
+
+        // selector thread; HELLO is handled here so that following bytes are parsed in the new format
+        private void onMessage(byte[] message) throws IOException {
+            if (firstMessage) {
+                firstMessage = false;
+                Request request;
+                try {
+                    request = readFormat.decode(message, Request.class);
+                } catch (IOException e) {
+                    inbox.add(message); // reported as invalid by the worker
+                    return;
+                }
+                if (Handshake.isHello(request)) {
+                    Handshake handshake = Handshake.negotiate(request, dispatcher.params(request), true,
+                            config, compressionStats);
+                    enqueue(WireFormat.LINE.encode(handshake.getReply()));
+                    if (handshake.getFormat() != null) {
+                        readFormat = handshake.getFormat();
+                        format = handshake.getFormat();
+                        codec = handshake.getCodec();
+                    }
+                    return;
+                }
+            }
+            inbox.add(message);
+        }
+
+        // Messages of one connection are decoded in order on the worker pool; requests with an id
+        // are then handed to the pipeline and may complete out of order.
+        // A request without id blocks the pipeline until answered: draining stops and OP_READ is
+        // dropped, so the client's further requests wait in TCP rather than on a worker thread.
+        private void scheduleDrain() {
+            if (!closed && !inbox.isEmpty() && !pipeline.isBlocked() && draining.compareAndSet(false, true)) {
+                workers.execute(this::drain);
+            }
+        }
+
+        private void drain() {
+            try {
+                byte[] message;
+                while (!closed && !pipeline.isBlocked() && (message = inbox.poll()) != null) {
+                    try {
+                        Request request = format.decode(message, Request.class);
+                        if (Handshake.isHello(request)) {
+                            send(Handshake.negotiate(request, null, false).getReply());
+                        } else {
+                            pipeline.submit(request);
+                            if (pipeline.isBlocked()) {
+                                requestFlush();  // recalcule l'intérêt : plus de OP_READ
+                            }
+                        }
+                    } catch (Exception e) {
+                        send(new Response("ERROR", "Invalid request: " + e.getMessage(), null));
+                    }
+                }
+            } catch (IOException e) {
+                close();
+            } finally {
+                draining.set(false);
+                scheduleDrain();
+            }
+        }
+
+        @Override
+        public void send(Response response) throws IOException {
+            sendAll(List.of(response));
+        }
+
+        @Override
+        public void sendAll(List<Response> responses) throws IOException {
+            if (closed) {
+                throw new IOException("Connection closed");
+            }
+            WireFormat current = format;
+            DeflateCodec compression = codec;
+            if (compression == null) {
+                if (responses.size() == 1) {
+                    enqueue(current.encode(responses.get(0)));  // cas courant : pas de tampon intermédiaire
+                    return;
+                }
+                ByteArrayOutputStream buf = new ByteArrayOutputStream();
+                for (Response response : responses) {
+                    current.write(response, buf);
+                }
+                enqueue(buf.toByteArray());
+                return;
+            }
+            // flux compressé avec état : les trames doivent partir dans l'ordre où elles ont été produites
+            synchronized (compression) {
+                ByteArrayOutputStream buf = new ByteArrayOutputStream();
+                for (Response response : responses) {
+                    buf.write(compression.encode(current.serialize(response)));
+                }
+                enqueue(buf.toByteArray());
+            }
+        }
+
+        private void enqueue(byte[] bytes) throws IOException {
+            synchronized (writeQueue) {
+                if (queuedBytes + bytes.length > MAX_QUEUED_BYTES) {
+                    // client trop lent : on coupe plutôt que de saturer la mémoire
+                    close();
+                    throw new IOException("Slow consumer, connection dropped");
+                }
+                writeQueue.add(ByteBuffer.wrap(bytes));
+                queuedBytes += bytes.length;
+                queuedBytesTotal.add(bytes.length);
+            }
+            requestFlush();
+        }
+
+        // any thread: flush() runs on the selector thread, which also owns the interest ops
+        private void requestFlush() {
+            if (writeRequested.compareAndSet(false, true)) {
+                pendingWrites.add(this);
+                selector.wakeup();
+            }
+        }
+
+        // called by the pipeline once the requests without id are answered
+        private void resume() {
+            requestFlush();
+            scheduleDrain();
+        }
+
+        private int readInterest() {
+            return pipeline.isBlocked() ? 0 : SelectionKey.OP_READ;
+        }
+
+        // selector thread
+        void flush() throws IOException {
+            synchronized (writeQueue) {
+                while (!writeQueue.isEmpty()) {
+                    ByteBuffer head = writeQueue.peek();
+                    int written = channel.write(head);
+                    queuedBytes -= written;
+                    queuedBytesTotal.add(-written);
+                    if (written > 0) {
+                        writeQueue.notifyAll();  // producteurs en attente dans awaitCapacity
+                    }
+                    if (head.hasRemaining()) {
+                        key.interestOps(readInterest() | SelectionKey.OP_WRITE);
+                        return;
+                    }
+                    writeQueue.poll();
+                }
+                lastActivity = System.currentTimeMillis();
+                key.interestOps(readInterest());
+            }
+        }
+
+        @Override
+        public void awaitCapacity() throws IOException {
+            long deadline = System.currentTimeMillis() + PACING_TIMEOUT_MS;
+            synchronized (writeQueue) {
+                while (queuedBytes > PACING_BYTES) {
+                    long left = deadline - System.currentTimeMillis();
+                    if (closed) {
+                        throw new IOException("Connection closed");
+                    }
+                    if (left <= 0) {
+                        throw new IOException("Slow consumer, output not drained");
+                    }
+                    try {
+                        writeQueue.wait(left);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new InterruptedIOException();
+                    }
+                }
+            }
+        }
+
+        @Override
+        public boolean isOpen() {
+            return !closed;
+        }
+
+        @Override
+        public void streamOpened() {
+            streams.incrementAndGet();
+        }
+
+        @Override
+        public void streamClosed() {
+            streams.decrementAndGet();
+        }
+
+        void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            connections.remove(this);
+            if (key != null) {
+                key.cancel();
+            }
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+            }
+            synchronized (writeQueue) {
+                queuedBytesTotal.add(-queuedBytes);
+                queuedBytes = 0;
+                writeQueue.clear();
+                writeQueue.notifyAll();
+            }
+            dispatcher.connectionClosed(this);
+            DeflateCodec compression = codec;
+            if (compression != null) {
+                compression.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,423 @@
+package com.jdocker.server;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Typed payloads of the actions registered by {@link RequestDispatcher}, decoded once by the
+ * {@link CommandRegistry}. Field names are those of the protocol; unknown fields are ignored.
+ */
+public final class Payloads {
+
+    private Payloads() {
+    }
+
+    /** START / STOP / REMOVE_CONTAINER: {"idOrName": ...}. */
+    public static final class Target implements CommandRegistry.Validated {
+        private final String idOrName;
+
+        @JsonCreator
+        public Target(@JsonProperty("idOrName") String idOrName) {
+            this.idOrName = idOrName;
+        }
+
+        public String getIdOrName() {
+            return idOrName;
+        }
+
+        @Override
+        public String validate() {
+            return idOrName == null ? "Missing container idOrName" : null;
+        }
+    }
+
+    /** CREATE_CONTAINER: without "host" the container goes to the engine running the fewest. */
+    public static final class Create implements CommandRegistry.Validated {
+        private final String image;
+        private final String name;
+        private final String host;
+
+        @JsonCreator
+        public Create(@JsonProperty("image") String image, @JsonProperty("name") String name,
+                      @JsonProperty("host") String host) {
+            this.image = image;
+            this.name = name;
+            this.host = host;
+        }
+
+        public String getImage() {
+            return image;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getHost() {
+            return host;
+        }
+
+        @Override
+        public String validate() {
+            return image == null || name == null ? "Missing image or name" : null;
+        }
+    }
+
+    /** RUN_CONTAINER: a pool template may stand for the image. */
+    public static final class Run implements CommandRegistry.Validated {
+        private final String image;
+        private final String name;
+        private final String host;
+        private final String template;
+
+        @JsonCreator
+        public Run(@JsonProperty("image") String image, @JsonProperty("name") String name,
+                   @JsonProperty("host") String host, @JsonProperty("template") String template) {
+            this.image = image;
+            this.name = name;
+            this.host = host;
+            this.template = template;
+        }
+
+        public String getImage() {
+            return image;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getHost() {
+            return host;
+        }
+
+        public String getTemplate() {
+            return template;
+        }
+
+        @Override
+        public String validate() {
+            return (image == null && template == null) || name == null ? "Missing image or name" : null;
+        }
+    }
+
+    /** PULL_IMAGE: without "host" the image is pulled on every engine. */
+    public static final class Pull implements CommandRegistry.Validated {
+        private final String image;
+        private final String tag;
+        private final String host;
+        private final boolean async;
+
+        @JsonCreator
+        public Pull(@JsonProperty("image") String image, @JsonProperty("tag") String tag,
+                    @JsonProperty("host") String host, @JsonProperty("async") boolean async) {
+            this.image = image;
+            this.tag = tag == null || tag.isEmpty() ? "latest" : tag;
+            this.host = host;
+            this.async = async;
+        }
+
+        public String getImage() {
+            return image;
+        }
+
+        public String getTag() {
+            return tag;
+        }
+
+        public String getHost() {
+            return host;
+        }
+
+        public boolean isAsync() {
+            return async;
+        }
+
+        @Override
+        public String validate() {
+            return image == null ? "Missing image name" : null;
+        }
+    }
+
+    /** JOB_STATUS. */
+    public static final class JobRef implements CommandRegistry.Validated {
+        private final String jobId;
+
+        @JsonCreator
+        public JobRef(@JsonProperty("jobId") String jobId) {
+            this.jobId = jobId;
+        }
+
+        public String getJobId() {
+            return jobId;
+        }
+
+        @Override
+        public String validate() {
+            return jobId == null ? "Missing jobId" : null;
+        }
+    }
+
+    /** STOP_LOGS / STOP_STATS / STOP_WATCH. */
+    public static final class SubscriptionRef implements CommandRegistry.Validated {
+        private final String subscriptionId;
+
+        @JsonCreator
+        public SubscriptionRef(@JsonProperty("subscriptionId") String subscriptionId) {
+            this.subscriptionId = subscriptionId;
+        }
+
+        public String getSubscriptionId() {
+            return subscriptionId;
+        }
+
+        @Override
+        public String validate() {
+            return subscriptionId == null ? "Missing subscriptionId" : null;
+        }
+    }
+
+    /** STOP_EXEC. */
+    public static final class SessionRef implements CommandRegistry.Validated {
+        private final String sessionId;
+
+        @JsonCreator
+        public SessionRef(@JsonProperty("sessionId") String sessionId) {
+            this.sessionId = sessionId;
+        }
+
+        public String getSessionId() {
+            return sessionId;
+        }
+
+        @Override
+        public String validate() {
+            return sessionId == null ? "Missing sessionId" : null;
+        }
+    }
+
+    /** WATCH_CONTAINERS: resumed from {"since": last seq received, "epoch": ...}, else a full snapshot. */
+    public static final class Watch {
+        private final Long since;
+        private final String epoch;
+
+        @JsonCreator
+        public Watch(@JsonProperty("since") Long since, @JsonProperty("epoch") String epoch) {
+            this.since = since;
+            this.epoch = epoch;
+        }
+
+        public Long getSince() {
+            return since;
+        }
+
+        public String getEpoch() {
+            return epoch;
+        }
+    }
+
+    /** STREAM_LOGS: the container plus the {@link LogOptions} read from the same object. */
+    public static final class Logs implements CommandRegistry.Validated {
+        private final String idOrName;
+        private final LogOptions options;
+
+        @JsonCreator
+        public Logs(@JsonProperty("idOrName") String idOrName, @JsonProperty("tail") Integer tail,
+                    @JsonProperty("since") JsonNode since, @JsonProperty("follow") Boolean follow,
+                    @JsonProperty("batch") boolean batch, @JsonProperty("queueCapacity") Integer queueCapacity,
+                    @JsonProperty("overflow") String overflow, @JsonProperty("source") String source,
+                    @JsonProperty("stream") String stream, @JsonProperty("include") JsonNode include,
+                    @JsonProperty("exclude") JsonNode exclude, @JsonProperty("regex") boolean regex,
+                    @JsonProperty("ignoreCase") boolean ignoreCase, @JsonProperty("level") String level,
+                    @JsonProperty("maxLinesPerSecond") int maxLinesPerSecond) {
+            this.idOrName = idOrName;
+            this.options = LogOptions.of(tail, since, follow, batch, queueCapacity, overflow, source, stream,
+                    LogFilter.of(include, exclude, regex, ignoreCase, level, maxLinesPerSecond));
+        }
+
+        public String getIdOrName() {
+            return idOrName;
+        }
+
+        public LogOptions getOptions() {
+            return options;
+        }
+
+        @Override
+        public String validate() {
+            return idOrName == null ? "Missing container idOrName" : null;
+        }
+    }
+
+    /**
+     * Bulk actions: {"targets":[...]} (ids or names) or a selector ({"label":"app=web", "state":..., "name":...}),
+     * plus optional "concurrency" and "progress". An empty selector must not mean "every container".
+     */
+    public static final class Selection implements CommandRegistry.Validated {
+        private final List<String> targets;   // null : sélection par critères
+        private final ListQuery selector;
+        private final Integer concurrency;
+        private final boolean progress;
+
+        @JsonCreator
+        public Selection(@JsonProperty("targets") List<String> targets, @JsonProperty("state") String state,
+                         @JsonProperty("label") String label, @JsonProperty("name") String name,
+                         @JsonProperty("image") String image, @JsonProperty("host") String host,
+                         @JsonProperty("pool") boolean pool, @JsonProperty("concurrency") Integer concurrency,
+                         @JsonProperty("progress") boolean progress) {
+            this.targets = targets == null ? null : Collections.unmodifiableList(new ArrayList<>(targets));
+            this.selector = new ListQuery(state, label, name, image, host, null, 0, null, false, null, pool);
+            this.concurrency = concurrency;
+            this.progress = progress;
+        }
+
+        public List<String> getTargets() {
+            return targets;
+        }
+
+        public ListQuery getSelector() {
+            return selector;
+        }
+
+        public Integer getConcurrency() {
+            return concurrency;
+        }
+
+        public boolean isProgress() {
+            return progress;
+        }
+
+        @Override
+        public String validate() {
+            return targets == null && !selector.hasFilter() ? "Missing targets or selector" : null;
+        }
+    }
+
+    /** STREAM_STATS: a selection plus "window" and "interval" durations ("10s", "500ms"...). */
+    public static final class Stats implements CommandRegistry.Validated {
+        private final Selection selection;
+        private final long window;
+        private final long interval;
+
+        @JsonCreator
+        public Stats(@JsonProperty("targets") List<String> targets, @JsonProperty("state") String state,
+                     @JsonProperty("label") String label, @JsonProperty("name") String name,
+                     @JsonProperty("image") String image, @JsonProperty("host") String host,
+                     @JsonProperty("pool") boolean pool, @JsonProperty("window") String window,
+                     @JsonProperty("interval") String interval) {
+            this.selection = new Selection(targets, state, label, name, image, host, pool, null, false);
+            this.window = StatsStreamManager.parseDuration(window == null ? "10s" : window);
+            this.interval = Math.max(100, StatsStreamManager.parseDuration(interval == null ? "1s" : interval));
+        }
+
+        public Selection getSelection() {
+            return selection;
+        }
+
+        public long getWindow() {
+            return window;
+        }
+
+        public long getInterval() {
+            return interval;
+        }
+
+        @Override
+        public String validate() {
+            return selection.validate();
+        }
+    }
+
+    /** EXEC: "cmd" is an array of arguments or a string split on blanks. */
+    public static final class Exec implements CommandRegistry.Validated {
+        private final String idOrName;
+        private final List<String> cmd;
+        private final boolean tty;
+        private final Long window;
+
+        @JsonCreator
+        public Exec(@JsonProperty("idOrName") String idOrName, @JsonProperty("cmd") JsonNode cmd,
+                    @JsonProperty("tty") boolean tty, @JsonProperty("window") Long window) {
+            this.idOrName = idOrName;
+            List<String> args = new ArrayList<>();
+            if (cmd != null && cmd.isArray()) {
+                cmd.forEach(arg -> args.add(arg.asText()));
+            } else if (cmd != null && !cmd.asText("").isBlank()) {
+                args.addAll(List.of(cmd.asText().trim().split("\\s+")));
+            }
+            this.cmd = Collections.unmodifiableList(args);
+            this.tty = tty;
+            this.window = window;
+        }
+
+        public String getIdOrName() {
+            return idOrName;
+        }
+
+        public List<String> getCmd() {
+            return cmd;
+        }
+
+        public boolean isTty() {
+            return tty;
+        }
+
+        public Long getWindow() {
+            return window;
+        }
+
+        @Override
+        public String validate() {
+            if (idOrName == null) {
+                return "Missing container idOrName";
+            }
+            return cmd.isEmpty() ? "Missing cmd" : null;
+        }
+    }
+
+    /** EXEC_INPUT {"sessionId", "data", "eof"} and EXEC_WINDOW {"sessionId", "bytes"}. */
+    public static final class ExecFrame implements CommandRegistry.Validated {
+        private static final byte[] NO_DATA = new byte[0];
+
+        private final String sessionId;
+        private final byte[] data;   // base64 en JSON, binaire en Smile
+        private final boolean eof;
+        private final long bytes;
+
+        @JsonCreator
+        public ExecFrame(@JsonProperty("sessionId") String sessionId, @JsonProperty("data") byte[] data,
+                         @JsonProperty("eof") boolean eof, @JsonProperty("bytes") long bytes) {
+            this.sessionId = sessionId;
+            this.data = data == null ? NO_DATA : data;
+            this.eof = eof;
+            this.bytes = bytes;
+        }
+
+        public String getSessionId() {
+            return sessionId;
+        }
+
+        /** Not copied: the frame is handed over to the session as is. */
+        public byte[] getData() {
+            return data;
+        }
+
+        public boolean isEof() {
+            return eof;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+
+        @Override
+        public String validate() {
+            return sessionId == null ? "Missing sessionId" : null;
+        }
+    }
+}
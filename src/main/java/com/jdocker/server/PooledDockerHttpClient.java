@@ -0,0 +1,147 @@
+package com.jdocker.server;
+
+import com.github.dockerjava.httpclient5.ApacheDockerHttpClient;
+import com.github.dockerjava.transport.DockerHttpClient;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Pooled HTTP transport shared by every engine call, with lease counters
+ * so the server can report how busy the pool is.
+ */
+public class PooledDockerHttpClient implements DockerHttpClient {
+
+    // segments that follow /containers or /images without being an id
+    private static final Set<String> NON_ID_SEGMENTS = Set.of("json", "create", "prune", "load", "search", "get");
+
+    private final DockerHttpClient delegate;
+    private final EngineConfig config;
+    private final Metrics metrics;
+
+    private final AtomicInteger leased = new AtomicInteger();
+    private final AtomicInteger peakLeased = new AtomicInteger();
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+
+    public PooledDockerHttpClient(EngineConfig config, Metrics metrics) {
+        this.config = config;
+        this.metrics = metrics;
+        ApacheDockerHttpClient.Builder builder = new ApacheDockerHttpClient.Builder()
+                .dockerHost(URI.create(config.getDockerHost()))
+                .maxConnections(config.getMaxConnections())
+                .connectionTimeout(config.getConnectTimeout());
+        if (!config.getResponseTimeout().isZero()) {
+            builder.responseTimeout(config.getResponseTimeout());
+        }
+        this.delegate = builder.build();
+    }
+
+    @Override
+    public Response execute(Request request) {
+        if (!config.isKeepAlive()) {
+            request = Request.builder().from(request).putHeader("Connection", "close").build();
+        }
+        requests.increment();
+        int now = leased.incrementAndGet();
+        peakLeased.accumulateAndGet(now, Math::max);
+        long start = System.nanoTime();
+        String operation = operation(request);
+        try {
+            Response response = delegate.execute(request);
+            // pour les flux (logs, stats, events) : temps jusqu'aux en-têtes
+            metrics.recordEngineCall(operation, System.nanoTime() - start, response.getStatusCode() >= 400);
+            return new LeasedResponse(response);
+        } catch (RuntimeException e) {
+            metrics.recordEngineCall(operation, System.nanoTime() - start, true);
+            leased.decrementAndGet();
+            failures.increment();
+            throw e;
+        }
+    }
+
+    // "POST /v1.41/containers/3f2a.../start?t=10" -> "POST /containers/{id}/start"
+    static String operation(Request request) {
+        String path = request.path();
+        int query = path.indexOf('?');
+        if (query >= 0) {
+            path = path.substring(0, query);
+        }
+        StringBuilder op = new StringBuilder(request.method()).append(' ');
+        String previous = "";
+        for (String segment : path.split("/")) {
+            if (segment.isEmpty() || (segment.startsWith("v1.") && previous.isEmpty())) {
+                continue;
+            }
+            boolean resource = previous.equals("containers") || previous.equals("images") || previous.equals("exec");
+            op.append('/').append(resource && !NON_ID_SEGMENTS.contains(segment) ? "{id}" : segment);
+            previous = segment;
+        }
+        return op.toString();
+    }
+
+    public int getMaxConnections() {
+        return config.getMaxConnections();
+    }
+
+    public int getLeased() {
+        return leased.get();
+    }
+
+    public int getPeakLeased() {
+        return peakLeased.get();
+    }
+
+    public long getRequests() {
+        return requests.sum();
+    }
+
+    public long getFailures() {
+        return failures.sum();
+    }
+
+    @Override
+    public void close() throws IOException {
+        delegate.close();
+    }
+
+    // Keeps the lease counted until the caller has consumed and closed the response.
+    private class LeasedResponse implements Response {
+        private final Response response;
+        private boolean closed;
+
+        LeasedResponse(Response response) {
+            this.response = response;
+        }
+
+        @Override
+        public int getStatusCode() {
+            return response.getStatusCode();
+        }
+
+        @Override
+        public Map<String, List<String>> getHeaders() {
+            return response.getHeaders();
+        }
+
+        @Override
+        public InputStream getBody() {
+            return response.getBody();
+        }
+
+        @Override
+        public synchronized void close() {
+            if (!closed) {
+                closed = true;
+                leased.decrementAndGet();
+            }
+            response.close();
+        }
+    }
+}
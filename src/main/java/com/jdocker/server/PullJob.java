@@ -0,0 +1,235 @@
+package com.jdocker.server;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.jdocker.common.Response;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * One engine pull of an image reference, shared by every request that asked for it while it was
+ * running. Layer progress is pushed to the attached clients as PULL_PROGRESS messages.
+ */
+public class PullJob {
+
+    public enum State { QUEUED, PULLING, DONE, FAILED }
+
+    // au plus un message de progression par intervalle, sauf changement d'étape d'une couche
+    private static final long PROGRESS_INTERVAL_MS = 250;
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final String id;
+    private final String image;
+    private final String tag;
+    private final String host;     // null = every engine
+    private final CompletableFuture<ObjectNode> result = new CompletableFuture<>();
+    private final List<Watcher> watchers = new CopyOnWriteArrayList<>();
+
+    // guarded by this
+    private final Map<String, Layer> layers = new LinkedHashMap<>();
+    private final Set<String> changed = new LinkedHashSet<>();
+    private long lastEmit;
+    private volatile State state = State.QUEUED;
+    private volatile String error;
+
+    PullJob(String id, String image, String tag, String host) {
+        this.id = id;
+        this.image = image;
+        this.tag = tag;
+        this.host = host;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getReference() {
+        return host == null ? image + ":" + tag : host + "/" + image + ":" + tag;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public CompletableFuture<ObjectNode> getResult() {
+        return result;
+    }
+
+    /** Streams progress of this job to a client; the final PULL_DONE is sent even if already finished. */
+    public void watch(ResponseSink sink, String requestId) {
+        Watcher watcher = new Watcher(sink, requestId);
+        synchronized (this) {
+            if (!isFinished()) {
+                watchers.add(watcher);
+                sink.streamOpened();
+                return;
+            }
+        }
+        watcher.send(doneResponse());
+    }
+
+    public synchronized void unwatch(ResponseSink sink) {
+        for (Watcher watcher : watchers) {
+            if (watcher.sink == sink && watchers.remove(watcher)) {
+                sink.streamClosed();
+            }
+        }
+    }
+
+    void run(DockerService dockerService) {
+        state = State.PULLING;
+        try {
+            dockerService.pullImage(image, tag, host, this::onProgress);
+            if (error == null) {
+                finish(State.DONE);
+            } else {
+                finish(State.FAILED);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            error = "Interrupted";
+            finish(State.FAILED);
+        } catch (RuntimeException e) {
+            error = e.getMessage();
+            finish(State.FAILED);
+        }
+    }
+
+    private void onProgress(PullProgress item) {
+        if (item.getError() != null) {
+            error = item.getError();
+            return;
+        }
+        if (item.getLayerId() == null) {
+            return; // messages globaux ("Pulling from library/nginx", "Digest: ...")
+        }
+        ObjectNode event = null;
+        synchronized (this) {
+            Layer layer = layers.computeIfAbsent(item.getLayerId(), k -> new Layer());
+            boolean stepChanged = item.getStatus() != null && !item.getStatus().equals(layer.status);
+            layer.status = item.getStatus();
+            layer.current = item.getCurrent() == null ? layer.current : item.getCurrent();
+            layer.total = item.getTotal() == null ? layer.total : item.getTotal();
+            changed.add(item.getLayerId());
+            long now = System.currentTimeMillis();
+            if (stepChanged || now - lastEmit >= PROGRESS_INTERVAL_MS) {
+                lastEmit = now;
+                event = progressEvent(changed);
+                changed.clear();
+            }
+        }
+        if (event != null) {
+            broadcast(Response.of("OK", "PULL_PROGRESS", event));
+        }
+    }
+
+    private void finish(State finalState) {
+        List<Watcher> toNotify;
+        synchronized (this) {
+            state = finalState;
+            toNotify = List.copyOf(watchers);
+            watchers.clear();
+        }
+        if (finalState == State.DONE) {
+            result.complete(done());
+        } else {
+            result.completeExceptionally(new IllegalStateException("Pull failed for " + getReference() + ": " + error));
+        }
+        Response response = doneResponse();
+        for (Watcher watcher : toNotify) {
+            watcher.send(response);
+            watcher.sink.streamClosed();
+        }
+    }
+
+    private boolean isFinished() {
+        return state == State.DONE || state == State.FAILED;
+    }
+
+    private Response doneResponse() {
+        return Response.of(state == State.DONE ? "OK" : "ERROR", "PULL_DONE", done());
+    }
+
+    /** JOB_STATUS view: state plus the last known progress of every layer. */
+    public synchronized ObjectNode snapshot() {
+        ObjectNode root = done();
+        root.set("layers", progressEvent(layers.keySet()).get("layers"));
+        return root;
+    }
+
+    private ObjectNode done() {
+        ObjectNode root = MAPPER.createObjectNode();
+        root.put("jobId", id);
+        root.put("image", image);
+        root.put("tag", tag);
+        if (host != null) {
+            root.put("host", host);
+        }
+        root.put("status", state == State.DONE ? "pulled" : state.name().toLowerCase());
+        if (error != null) {
+            root.put("error", error);
+        }
+        return root;
+    }
+
+    private ObjectNode progressEvent(Set<String> layerIds) {
+        ObjectNode root = MAPPER.createObjectNode();
+        root.put("jobId", id);
+        ArrayNode arr = root.putArray("layers");
+        for (String layerId : layerIds) {
+            Layer layer = layers.get(layerId);
+            ObjectNode node = arr.addObject();
+            node.put("id", layerId);
+            node.put("status", layer.status);
+            if (layer.total > 0) {
+                node.put("current", layer.current);
+                node.put("total", layer.total);
+            }
+        }
+        return root;
+    }
+
+    private void broadcast(Response response) {
+        for (Watcher watcher : watchers) {
+            watcher.send(response);
+        }
+    }
+
+    private static final class Layer {
+        String status;
+        long current;
+        long total;
+    }
+
+    private final class Watcher {
+        final ResponseSink sink;
+        final String requestId;
+
+        Watcher(ResponseSink sink, String requestId) {
+            this.sink = sink;
+            this.requestId = requestId;
+        }
+
+        void send(Response shared) {
+            // chaque client reçoit sa propre copie, avec l'id de sa requête
+            Response response = Response.of(shared.getStatus(), shared.getMessage(), shared.getBody());
+            response.setId(requestId);
+            try {
+                sink.send(response);
+            } catch (IOException e) {
+                if (watchers.remove(this)) {
+                    sink.streamClosed();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.jdocker.server;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs image pulls as server-side jobs. Requests for a reference that is already being pulled
+ * attach to the running job instead of starting another engine pull, and at most
+ * {@code maxConcurrent} pulls run at once (the others stay QUEUED).
+ */
+public class PullJobManager {
+
+    private static final int FINISHED_JOBS_KEPT = 256;
+
+    private final DockerService dockerService;
+    private final ExecutorService pullExecutor;
+    private final AtomicLong nextId = new AtomicLong();
+    private final Map<String, PullJob> jobs = new ConcurrentHashMap<>();
+    private final Map<String, PullJob> running = new ConcurrentHashMap<>();   // by reference
+    private final Queue<String> finished = new ConcurrentLinkedQueue<>();
+
+    public PullJobManager(DockerService dockerService, int maxConcurrent) {
+        this.dockerService = dockerService;
+        AtomicInteger counter = new AtomicInteger();
+        this.pullExecutor = Executors.newFixedThreadPool(Math.max(1, maxConcurrent), r -> {
+            Thread t = new Thread(r, "jdocker-pull-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /** Returns the running job for image:tag (on one engine, or all when host is null), or starts a new one. */
+    public PullJob pull(String image, String tag, String host) {
+        String reference = host == null ? image + ":" + tag : host + "/" + image + ":" + tag;
+        PullJob[] created = new PullJob[1];
+        PullJob job = running.computeIfAbsent(reference, ref -> {
+            created[0] = new PullJob("pull-" + nextId.incrementAndGet(), image, tag, host);
+            return created[0];
+        });
+        if (created[0] != null) {
+            jobs.put(job.getId(), job);
+            job.getResult().whenComplete((r, e) -> retire(job));
+            pullExecutor.execute(() -> job.run(dockerService));
+        }
+        return job;
+    }
+
+    public PullJob get(String jobId) {
+        return jobs.get(jobId);
+    }
+
+    public void unwatchAll(ResponseSink sink) {
+        for (PullJob job : running.values()) {
+            job.unwatch(sink);
+        }
+    }
+
+    public int getRunningCount() {
+        return running.size();
+    }
+
+    private void retire(PullJob job) {
+        running.remove(job.getReference(), job);
+        // on garde les derniers jobs terminés pour JOB_STATUS
+        finished.add(job.getId());
+        while (finished.size() > FINISHED_JOBS_KEPT) {
+            String oldest = finished.poll();
+            if (oldest != null) {
+                jobs.remove(oldest);
+            }
+        }
+    }
+}
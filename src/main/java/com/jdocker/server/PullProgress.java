@@ -0,0 +1,42 @@
+package com.jdocker.server;
+
+/**
+ * One progress message of an image pull. {@code layerId} is null for global messages
+ * ("Pulling from library/nginx", "Digest: ..."); {@code error} is set when the pull failed.
+ */
+public final class PullProgress {
+
+    private final String layerId;
+    private final String status;
+    private final Long current;
+    private final Long total;
+    private final String error;
+
+    public PullProgress(String layerId, String status, Long current, Long total, String error) {
+        this.layerId = layerId;
+        this.status = status;
+        this.current = current;
+        this.total = total;
+        this.error = error;
+    }
+
+    public String getLayerId() {
+        return layerId;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public Long getCurrent() {
+        return current;
+    }
+
+    public Long getTotal() {
+        return total;
+    }
+
+    public String getError() {
+        return error;
+    }
+}
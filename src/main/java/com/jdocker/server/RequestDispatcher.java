@@ -0,0 +1,334 @@
+package com.jdocker.server;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jdocker.common.Request;
+import com.jdocker.common.Response;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+
+/**
+ * Routes a decoded {@link Request} to the shared {@link DockerService}, through the actions
+ * registered in its {@link CommandRegistry}.
+ * Independent of the transport, so both the classic and the NIO server use it.
+ */
+public class RequestDispatcher {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final DockerService dockerService;
+    private final LogStreamManager logStreams;
+    private final PullJobManager pullJobs;
+    private final StatsStreamManager statsStreams;
+    private final WatchStreamManager watchStreams;
+    private final ExecSessionManager execSessions;
+    private final Metrics metrics;
+    private final Executor executor;
+    private final CommandRegistry commands = new CommandRegistry();
+    private final int maxBulkConcurrency = Integer.getInteger("jdocker.bulk.maxConcurrency", 16);
+
+    public RequestDispatcher(DockerService dockerService, Executor streamExecutor) {
+        this.dockerService = dockerService;
+        this.logStreams = new LogStreamManager(streamExecutor);
+        this.pullJobs = new PullJobManager(dockerService, Integer.getInteger("jdocker.pull.maxConcurrent", 4));
+        this.executor = streamExecutor;
+        this.statsStreams = new StatsStreamManager(dockerService.getStatsHub(), streamExecutor);
+        this.watchStreams = new WatchStreamManager(dockerService.getWatchHub(), streamExecutor);
+        this.execSessions = new ExecSessionManager(streamExecutor);
+        this.metrics = dockerService.getMetrics();
+        metrics.gauge("logs.subscriptions", logStreams::getActiveCount);
+        metrics.gauge("stats.subscriptions", statsStreams::getActiveCount);
+        metrics.gauge("watch.subscriptions", watchStreams::getActiveCount);
+        metrics.gauge("pulls.running", pullJobs::getRunningCount);
+        metrics.gauge("exec.sessions", execSessions::getActiveCount);
+        metrics.gauge("exec.buffers.allocated", execSessions.getBuffers()::getAllocated);
+        metrics.gauge("exec.buffers.pooled", execSessions.getBuffers()::getPooled);
+        registerCommands();
+    }
+
+    /** Called by the transport when a connection is closed, to release its subscriptions. */
+    public void connectionClosed(ResponseSink sink) {
+        logStreams.closeAll(sink);
+        pullJobs.unwatchAll(sink);
+        statsStreams.closeAll(sink);
+        watchStreams.closeAll(sink);
+        execSessions.closeAll(sink);
+    }
+
+    /** The actions of this dispatcher; more can be registered before the server starts. */
+    public CommandRegistry getCommands() {
+        return commands;
+    }
+
+    private void registerCommands() {
+        RequestScheduler.LaneKind slow = RequestScheduler.LaneKind.SLOW;
+        commands.register("LIST_IMAGES", ListQuery.class, (query, request, sink) ->
+                Response.of("OK", "Images list",
+                        dockerService.handleListImages(query, listChunks(request, sink, "images"))));
+        commands.register("LIST_CONTAINERS", ListQuery.class, (query, request, sink) ->
+                Response.of("OK", "Containers list",
+                        dockerService.handleListContainers(query, listChunks(request, sink, "containers"))));
+        commands.register("ENGINE_STATS", Void.class, (none, request, sink) ->
+                Response.of("OK", "Engine pool stats", dockerService.handlePoolStats()));
+        commands.register("LIST_ENGINES", Void.class, (none, request, sink) ->
+                Response.of("OK", "Engines list", dockerService.handleListEngines()));
+        commands.register("METRICS", Void.class, (none, request, sink) ->
+                Response.of("OK", "Metrics", metrics.toJson()));
+
+        commands.register("PULL_IMAGE", slow, Payloads.Pull.class, true, this::pullImage);
+        commands.register("JOB_STATUS", Payloads.JobRef.class, (ref, request, sink) -> {
+            PullJob job = pullJobs.get(ref.getJobId());
+            if (job == null) {
+                return new Response("ERROR", "Unknown job: " + ref.getJobId(), null);
+            }
+            return Response.of("OK", "Job status", job.snapshot());
+        });
+
+        commands.register("CREATE_CONTAINER", slow, Payloads.Create.class, true, (create, request, sink) ->
+                Response.of("OK", "Container created",
+                        dockerService.handleCreateContainer(create.getImage(), create.getName(), create.getHost())));
+        commands.register("RUN_CONTAINER", slow, Payloads.Run.class, true, (run, request, sink) ->
+                Response.of("OK", "Container created and started", dockerService.handleRunContainer(
+                        run.getImage(), run.getName(), run.getHost(), run.getTemplate())));
+        commands.register("START_CONTAINER", RequestScheduler.LaneKind.FAST, Payloads.Target.class, true,
+                (target, request, sink) -> Response.of("OK", "Container started",
+                        dockerService.handleStartContainer(target.getIdOrName())));
+        commands.register("STOP_CONTAINER", RequestScheduler.LaneKind.FAST, Payloads.Target.class, true,
+                (target, request, sink) -> Response.of("OK", "Container stopped",
+                        dockerService.handleStopContainer(target.getIdOrName())));
+        // toujours forcée : arrêt du conteneur compris
+        commands.register("REMOVE_CONTAINER", slow, Payloads.Target.class, true, (target, request, sink) ->
+                Response.of("OK", "Container removed", dockerService.handleRemoveContainer(target.getIdOrName())));
+
+        commands.register("START_CONTAINERS", slow, Payloads.Selection.class, true, (selection, request, sink) ->
+                bulk(selection, request, sink, BulkOperation.Kind.START, "Containers started"));
+        commands.register("STOP_CONTAINERS", slow, Payloads.Selection.class, true, (selection, request, sink) ->
+                bulk(selection, request, sink, BulkOperation.Kind.STOP, "Containers stopped"));
+        commands.register("REMOVE_CONTAINERS", slow, Payloads.Selection.class, true, (selection, request, sink) ->
+                bulk(selection, request, sink, BulkOperation.Kind.REMOVE, "Containers removed"));
+
+        commands.register("STREAM_STATS", RequestScheduler.LaneKind.FAST, Payloads.Stats.class, true, this::streamStats);
+        commands.register("STOP_STATS", Payloads.SubscriptionRef.class, (ref, request, sink) ->
+                statsStreams.stop(ref.getSubscriptionId(), sink) ? new Response("OK", "Stats streaming stopped", null)
+                        : new Response("ERROR", "Unknown stats subscription: " + ref.getSubscriptionId(), null));
+        commands.register("STREAM_LOGS", RequestScheduler.LaneKind.FAST, Payloads.Logs.class, true, this::streamLogs);
+        commands.register("STOP_LOGS", RequestScheduler.LaneKind.FAST, Payloads.SubscriptionRef.class, true,
+                (ref, request, sink) -> logStreams.stop(ref.getSubscriptionId(), sink)
+                        ? new Response("OK", "Log streaming stopped", null)
+                        : new Response("ERROR", "Unknown log subscription: " + ref.getSubscriptionId(), null));
+        commands.register("WATCH_CONTAINERS", Payloads.Watch.class, this::watchContainers);
+        commands.register("STOP_WATCH", Payloads.SubscriptionRef.class, (ref, request, sink) ->
+                watchStreams.stop(ref.getSubscriptionId(), sink) ? new Response("OK", "Watch stopped", null)
+                        : new Response("ERROR", "Unknown watch subscription: " + ref.getSubscriptionId(), null));
+
+        commands.register("EXEC", RequestScheduler.LaneKind.FAST, Payloads.Exec.class, true, this::exec);
+        // tampons en mémoire, jamais bloquants : hors files, une trame perdue corromprait la session
+        commands.registerInline("EXEC_INPUT", Payloads.ExecFrame.class, (frame, request, sink) ->
+                execFrame(frame, request, sink, session -> session.input(frame.getData(), frame.isEof())));
+        commands.registerInline("EXEC_WINDOW", Payloads.ExecFrame.class, (frame, request, sink) ->
+                execFrame(frame, request, sink, session -> session.grant(frame.getBytes())));
+        commands.register("STOP_EXEC", Payloads.SessionRef.class, (ref, request, sink) ->
+                execSessions.stop(ref.getSessionId(), sink) ? new Response("OK", "Exec stopped", null)
+                        : new Response("ERROR", "Unknown exec session: " + ref.getSessionId(), null));
+    }
+
+    private Response pullImage(Payloads.Pull pull, Request request, ResponseSink sink) throws Exception {
+        PullJob job = pullJobs.pull(pull.getImage(), pull.getTag(), pull.getHost());
+        if (pull.isAsync()) {
+            var ack = mapper.createObjectNode().put("jobId", job.getId())
+                    .put("status", job.getState().name().toLowerCase());
+            Response accepted = Response.of("OK", "Pull job started", ack);
+            accepted.setId(request.getId());
+            sink.send(accepted);
+            job.watch(sink, request.getId());
+            return null;
+        }
+        try {
+            return Response.of("OK", "Image pulled", job.getResult().get());
+        } catch (ExecutionException e) {
+            return new Response("ERROR", e.getCause().getMessage(), null);
+        }
+    }
+
+    private Response bulk(Payloads.Selection selection, Request request, ResponseSink sink, BulkOperation.Kind kind,
+                          String message) throws Exception {
+        Map<String, String> resolved = resolveTargets(selection);
+        List<String> targets = new ArrayList<>(resolved.keySet());
+
+        int concurrency = selection.getConcurrency() == null ? maxBulkConcurrency
+                : Math.min(maxBulkConcurrency, selection.getConcurrency());
+        ResponseSink progress = selection.isProgress() ? sink : null;
+        BulkOperation operation = new BulkOperation(dockerService, kind, executor, concurrency,
+                progress, request.getId());
+        return Response.of("OK", message, operation.run(targets, resolved));
+    }
+
+    /**
+     * Containers designated by a selection, as target -> id in request order: the explicit targets
+     * (unknown targets map to null), or the matches of the label/state/name/image selector.
+     */
+    private Map<String, String> resolveTargets(Payloads.Selection selection) {
+        Map<String, String> result = new LinkedHashMap<>();
+        if (selection.getTargets() != null) {
+            Map<String, String> resolved = dockerService.resolveContainerIds(selection.getTargets());
+            for (String target : selection.getTargets()) {
+                result.put(target, resolved.get(target));
+            }
+            return result;
+        }
+        for (String id : dockerService.selectContainerIds(selection.getSelector())) {
+            result.put(id, id);
+        }
+        return result;
+    }
+
+    private Response streamStats(Payloads.Stats stats, Request request, ResponseSink sink) throws IOException {
+        Map<String, String> resolved = resolveTargets(stats.getSelection());
+        for (Map.Entry<String, String> target : resolved.entrySet()) {
+            if (target.getValue() == null) {
+                return new Response("ERROR", "Container not found: " + target.getKey(), null);
+            }
+        }
+        List<String> ids = new ArrayList<>(new LinkedHashSet<>(resolved.values()));
+        StatsSubscription subscription = statsStreams.open(sink, request.getId(), ids, stats.getWindow(),
+                stats.getInterval());
+        var ack = mapper.createObjectNode().put("subscriptionId", subscription.getId());
+        ids.forEach(ack.putArray("containers")::add);
+        Response started = Response.of("OK", "Stats streaming started", ack);
+        started.setId(request.getId());
+        sink.send(started);
+        statsStreams.start(subscription);
+        return null;
+    }
+
+    private Response streamLogs(Payloads.Logs logs, Request request, ResponseSink sink) throws Exception {
+        LogSubscription subscription = logStreams.open(sink, request.getId(), logs.getOptions());
+        try {
+            subscription.attach(dockerService.streamLogs(logs.getIdOrName(), logs.getOptions(), subscription));
+        } catch (Exception e) {
+            subscription.cancel();
+            throw e;
+        }
+        // l'accusé de réception part avant la première ligne de log
+        var ack = mapper.createObjectNode().put("subscriptionId", subscription.getId());
+        Response started = Response.of("OK", "Log streaming started", ack);
+        started.setId(request.getId());
+        sink.send(started);
+        subscription.start();
+        return null;
+    }
+
+    private Response watchContainers(Payloads.Watch watch, Request request, ResponseSink sink) throws IOException {
+        WatchSubscription subscription = watchStreams.open(sink, request.getId(), watch.getSince(), watch.getEpoch());
+        var ack = mapper.createObjectNode()
+                .put("subscriptionId", subscription.getId())
+                .put("epoch", dockerService.getWatchHub().getEpoch())
+                .put("seq", subscription.getStartSeq())
+                .put("resumed", subscription.isResumed());
+        Response started = Response.of("OK", "Watch started", ack);
+        started.setId(request.getId());
+        sink.send(started);
+        subscription.start();
+        return null;
+    }
+
+    private Response exec(Payloads.Exec exec, Request request, ResponseSink sink) throws Exception {
+        ExecSession session = execSessions.open(sink, request.getId(), exec.getWindow());
+        try {
+            session.attach(dockerService.exec(exec.getIdOrName(), exec.getCmd(), exec.isTty(), session));
+        } catch (Exception e) {
+            session.cancel();
+            throw e;
+        }
+        var ack = mapper.createObjectNode()
+                .put("sessionId", session.getId())
+                .put("window", session.getWindow())
+                .put("stdinWindow", session.getInputWindow());
+        Response started = Response.of("OK", "Exec started", ack);
+        started.setId(request.getId());
+        sink.send(started);
+        session.start();
+        return null;
+    }
+
+    // envoyées sans id : traitées dans l'ordre de lecture, sans réponse ; un échec est signalé sur la session
+    private Response execFrame(Payloads.ExecFrame frame, Request request, ResponseSink sink,
+                               Consumer<ExecSession> apply) {
+        ExecSession session = execSessions.get(frame.getSessionId(), sink);
+        if (session == null) {
+            // session terminée : son EXEC_EXIT est déjà parti, la trame est sans objet
+            return request.getId() == null ? null
+                    : new Response("ERROR", "Unknown exec session: " + frame.getSessionId(), null);
+        }
+        try {
+            apply.accept(session);
+        } catch (RuntimeException e) {
+            session.fail(request.getAction() + " failed: " + e.getMessage());
+        }
+        return request.getId() == null ? null : new Response("OK", request.getAction(), null);
+    }
+
+    // stream=true listings: each chunk is sent as a LIST_CHUNK response before the final summary,
+    // once the client has read enough of the previous ones
+    private DockerService.ChunkSink listChunks(Request request, ResponseSink sink, String field) {
+        return chunk -> {
+            sink.awaitCapacity();
+            Response response = Response.of("OK", "LIST_CHUNK", mapper.createObjectNode().set(field, chunk));
+            response.setId(request.getId());
+            sink.send(response);
+        };
+    }
+
+    /** Structured parameters of a request: the framed body, or the parsed JSON payload string. */
+    public JsonNode params(Request request) throws IOException {
+        if (request.getBody() != null) {
+            return request.getBody();
+        }
+        if (request.getPayload() == null) {
+            return null;
+        }
+        return mapper.readTree(request.getPayload());
+    }
+
+    /**
+     * Decodes and checks the payload of a request, before it is scheduled: the lane comes from the
+     * command, and a request rejected here never takes a lane slot.
+     */
+    public CommandRegistry.Call prepare(Request request) {
+        return commands.decode(request);
+    }
+
+    /**
+     * Returns the response to send, or null when the handler already wrote its reply to the sink.
+     */
+    public Response handleRequest(Request request, ResponseSink sink) {
+        return execute(request, prepare(request), sink);
+    }
+
+    public Response execute(Request request, CommandRegistry.Call call, ResponseSink sink) {
+        ServerLog.request(request.getAction());
+        long start = System.nanoTime();
+        Response response;
+        if (call.getError() != null) {
+            response = new Response("ERROR", call.getError(), null);
+        } else {
+            try {
+                response = call.run(request, sink);
+            } catch (Exception e) {
+                response = new Response("ERROR", "Server error: " + e.getMessage(), null);
+            }
+        }
+        // pour les flux (logs, stats, pull async) : temps jusqu'à l'accusé de réception
+        String key = call.getAction();
+        metrics.recordRequest(key == null ? "UNKNOWN" : key, call.getDecodeNanos() + System.nanoTime() - start,
+                response != null && "ERROR".equals(response.getStatus()));
+        return response;
+    }
+}
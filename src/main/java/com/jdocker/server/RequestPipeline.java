@@ -0,0 +1,204 @@
+package com.jdocker.server;
+
+import com.jdocker.common.Request;
+import com.jdocker.common.Response;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Per-connection request execution.
+ * Requests carrying an id are run concurrently (up to the in-flight limit) and answered as they
+ * complete; requests without id keep the historical behaviour and are answered in order: they
+ * wait in a FIFO drained as each one completes, and the connection stops reading meanwhile
+ * (see {@link #isBlocked()}) rather than holding a thread.
+ * Both go through the {@link RequestScheduler} lanes, under the client's share, except the
+ * inline commands (exec stdin and window frames), applied at once by the reading thread.
+ */
+public class RequestPipeline {
+
+    private final RequestDispatcher dispatcher;
+    private final ResponseSink sink;
+    private final RequestScheduler scheduler;
+    private final String client;
+    private final Semaphore inFlight;
+    private final boolean blockWhenFull;
+    private final Runnable onResume;
+    private final ArrayDeque<Ordered> ordered = new ArrayDeque<>();
+
+    /**
+     * @param onResume called, from the thread that answered, when the requests without id are all
+     *                 answered and the connection may read again; may be null
+     */
+    public RequestPipeline(RequestDispatcher dispatcher, ResponseSink sink, RequestScheduler scheduler,
+                           String client, int maxInFlight, boolean blockWhenFull, Runnable onResume) {
+        this.dispatcher = dispatcher;
+        this.sink = sink;
+        this.scheduler = scheduler;
+        this.client = client;
+        this.inFlight = new Semaphore(maxInFlight);
+        this.blockWhenFull = blockWhenFull;
+        this.onResume = onResume;
+    }
+
+    public void submit(Request request) throws IOException {
+        // payload lu et vérifié avant l'ordonnanceur : une requête invalide ne prend pas de place
+        CommandRegistry.Call call = dispatcher.prepare(request);
+        if (call.getError() != null) {
+            send(dispatch(request, call));
+            return;
+        }
+        if (call.isInline()) {
+            // trames de flux (stdin, fenêtre) : appliquées tout de suite, sans passer par les files
+            send(dispatch(request, call));
+            return;
+        }
+        if (request.getId() == null) {
+            submitInOrder(request, call);
+            return;
+        }
+
+        if (blockWhenFull) {
+            // le lecteur attend : la contre-pression remonte jusqu'au client via TCP
+            inFlight.acquireUninterruptibly();
+        } else if (!inFlight.tryAcquire()) {
+            sendError(request, "Too many in-flight requests");
+            return;
+        }
+
+        try {
+            scheduler.submit(client, call.getLane(), new RequestScheduler.Task() {
+                @Override
+                public void run() {
+                    try {
+                        send(dispatch(request, call));
+                    } catch (IOException ignored) {
+                    } finally {
+                        inFlight.release();
+                    }
+                }
+
+                @Override
+                public void reject(String reason) {
+                    try {
+                        sendError(request, reason);
+                    } catch (IOException ignored) {
+                    } finally {
+                        inFlight.release();
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            inFlight.release();
+            sendError(request, e.getMessage());
+        }
+    }
+
+    // sans id : exécutées une à une, dans l'ordre d'arrivée ; la suivante part quand la précédente a répondu
+    private void submitInOrder(Request request, CommandRegistry.Call call) {
+        Ordered ordered = new Ordered(request, call);
+        boolean first;
+        synchronized (this.ordered) {
+            first = this.ordered.isEmpty();
+            this.ordered.add(ordered);
+        }
+        if (first) {
+            runOrdered(ordered);
+        }
+    }
+
+    private void runOrdered(Ordered ordered) {
+        try {
+            scheduler.submit(client, ordered.call.getLane(), new RequestScheduler.Task() {
+                @Override
+                public void run() {
+                    Response response;
+                    try {
+                        response = dispatch(ordered.request, ordered.call);
+                    } catch (RuntimeException e) {
+                        response = new Response("ERROR", "Server error: " + e.getMessage(), null);
+                    }
+                    completeOrdered(response);
+                }
+
+                @Override
+                public void reject(String reason) {
+                    completeOrdered(new Response("ERROR", reason, null));
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            completeOrdered(new Response("ERROR", e.getMessage(), null));
+        }
+    }
+
+    private void completeOrdered(Response response) {
+        try {
+            send(response);
+        } catch (IOException ignored) {
+        }
+        Ordered next;
+        synchronized (ordered) {
+            ordered.poll();
+            next = ordered.peek();
+            if (next == null) {
+                ordered.notifyAll();
+            }
+        }
+        if (next != null) {
+            runOrdered(next);
+        } else if (onResume != null) {
+            onResume.run();
+        }
+    }
+
+    /**
+     * True while a request without id is waiting for its response: the connection must not read
+     * further requests until then; {@code onResume} is called once the last one has answered.
+     */
+    public boolean isBlocked() {
+        synchronized (ordered) {
+            return !ordered.isEmpty();
+        }
+    }
+
+    /** For a thread dedicated to the connection: waits until {@link #isBlocked()} turns false. */
+    public void awaitInOrder() throws InterruptedException {
+        synchronized (ordered) {
+            while (!ordered.isEmpty()) {
+                ordered.wait();
+            }
+        }
+    }
+
+    private Response dispatch(Request request, CommandRegistry.Call call) {
+        Response response = dispatcher.execute(request, call, sink);
+        if (response != null) {
+            response.setId(request.getId());
+        }
+        return response;
+    }
+
+    private void send(Response response) throws IOException {
+        if (response != null) {
+            sink.send(response);
+        }
+    }
+
+    private void sendError(Request request, String message) throws IOException {
+        Response error = new Response("ERROR", message, null);
+        error.setId(request.getId());
+        sink.send(error);
+    }
+
+    private static final class Ordered {
+        final Request request;
+        final CommandRegistry.Call call;
+
+        Ordered(Request request, CommandRegistry.Call call) {
+            this.request = request;
+            this.call = call;
+        }
+    }
+}
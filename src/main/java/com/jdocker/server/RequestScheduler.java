@@ -0,0 +1,271 @@
+package com.jdocker.server;
+
+import java.io.Closeable;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Global execution policy between the connections and the {@link RequestDispatcher}.
+ * <p>
+ * Long engine operations (pull, create/run, forced remove, bulk operations) run on the SLOW lane,
+ * everything else on the FAST lane, each with its own threads: a few clients pulling images can
+ * no longer hold the threads that LIST and STOP calls need. Inside a lane, every client (remote
+ * address) has its own queue and the workers serve the clients round-robin, one request at a time.
+ * <p>
+ * Requests are refused with a "Server busy" error instead of waiting without bound: client or lane
+ * queue full, expected wait over {@code maxQueueMs} (queued requests x mean service time / threads),
+ * per-client rate limit exceeded, or, as a last resort, a request that actually waited too long.
+ */
+public class RequestScheduler implements Closeable {
+
+    public enum LaneKind { FAST, SLOW }
+
+    /** Work scheduled on a lane; exactly one of the two methods is called. */
+    public interface Task {
+        void run();
+
+        /** The request was refused after being queued (it waited too long, or the server is stopping). */
+        void reject(String reason);
+    }
+
+    private static final long IDLE_CLIENT_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    private final Lane fast;
+    private final Lane slow;
+    private final LongAdder rateLimited = new LongAdder();
+    private volatile boolean closed;
+
+    public RequestScheduler(ServerConfig config, Metrics metrics) {
+        ServerConfig.LaneConfig fastConfig = config.getFastLane();
+        this.fast = new Lane(LaneKind.FAST, fastConfig,
+                fastConfig.getThreads() > 0 ? fastConfig.getThreads() : config.getWorkerThreads());
+        this.slow = new Lane(LaneKind.SLOW, config.getSlowLane(), Math.max(1, config.getSlowLane().getThreads()));
+        for (Lane lane : new Lane[]{fast, slow}) {
+            String prefix = "lanes." + lane.kind.name().toLowerCase() + ".";
+            metrics.gauge(prefix + "queued", lane::getQueued);
+            metrics.gauge(prefix + "running", lane::getRunning);
+            metrics.gauge(prefix + "rejected", lane.rejected::sum);
+            metrics.gauge(prefix + "meanServiceMs", () -> lane.meanServiceNanos / 1e6);
+        }
+        metrics.gauge("lanes.rateLimited", rateLimited::sum);
+    }
+
+    /**
+     * Queues a task on {@code lane}, the one its command was registered with.
+     *
+     * @throws RejectedExecutionException with a "Server busy" / "Rate limit" message when refused up front
+     */
+    public void submit(String client, LaneKind lane, Task task) {
+        if (closed) {
+            throw new RejectedExecutionException("Server shutting down");
+        }
+        (lane == LaneKind.SLOW ? slow : fast).add(client, task);
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        fast.close();
+        slow.close();
+    }
+
+    // un client = une adresse distante ; ses connexions partagent file et quota
+    private static final class ClientQueue {
+        final String client;
+        final ArrayDeque<Entry> entries = new ArrayDeque<>();
+        boolean ready;              // présent dans le tourniquet
+
+        // seau à jetons
+        double tokens;
+        long lastRefill;
+        long lastUse;
+
+        ClientQueue(String client, double burst, long now) {
+            this.client = client;
+            this.tokens = burst;
+            this.lastRefill = now;
+            this.lastUse = now;
+        }
+    }
+
+    private static final class Entry {
+        final Task task;
+        final long enqueued;
+
+        Entry(Task task, long enqueued) {
+            this.task = task;
+            this.enqueued = enqueued;
+        }
+    }
+
+    private final class Lane {
+        final LaneKind kind;
+        final ServerConfig.LaneConfig config;
+        final int threads;
+        final double burst;
+        final long maxQueueNanos;
+        final Map<String, ClientQueue> clients = new HashMap<>();  // guarded by this
+        final ArrayDeque<ClientQueue> ready = new ArrayDeque<>();  // tourniquet des clients en attente
+        final LongAdder rejected = new LongAdder();
+        final Thread[] workers;
+        int queued;
+        int running;
+        long lastSweep;
+        // moyenne glissante du temps de service, pour estimer l'attente dès l'arrivée
+        volatile long meanServiceNanos;
+
+        Lane(LaneKind kind, ServerConfig.LaneConfig config, int threads) {
+            this.kind = kind;
+            this.config = config;
+            this.threads = threads;
+            this.burst = config.getRateBurst() > 0 ? config.getRateBurst() : Math.max(1, config.getRateLimit());
+            this.maxQueueNanos = TimeUnit.MILLISECONDS.toNanos(config.getMaxQueueMillis());
+            this.workers = new Thread[threads];
+            AtomicInteger counter = new AtomicInteger();
+            String name = "jdocker-" + kind.name().toLowerCase() + "-";
+            for (int i = 0; i < threads; i++) {
+                Thread t = new Thread(this::work, name + counter.incrementAndGet());
+                t.setDaemon(true);
+                workers[i] = t;
+                t.start();
+            }
+        }
+
+        synchronized int getQueued() {
+            return queued;
+        }
+
+        synchronized int getRunning() {
+            return running;
+        }
+
+        synchronized void add(String client, Task task) {
+            long now = System.nanoTime();
+            ClientQueue queue = clients.get(client);
+            if (queue == null) {
+                sweep(now);
+                queue = new ClientQueue(client, burst, now);
+                clients.put(client, queue);
+            }
+            queue.lastUse = now;
+            if (config.getRateLimit() > 0) {
+                queue.tokens = Math.min(burst, queue.tokens + (now - queue.lastRefill) * config.getRateLimit() / 1e9);
+                queue.lastRefill = now;
+                if (queue.tokens < 1) {
+                    rateLimited.increment();
+                    throw refuse("Rate limit exceeded: " + config.getRateLimit() + " " + kind + " requests/s per client");
+                }
+            }
+            if (queue.entries.size() >= config.getClientQueueCapacity()) {
+                throw refuse("Server busy: too many queued " + kind + " requests for this client");
+            }
+            if (queued >= config.getQueueCapacity()) {
+                throw refuse("Server busy: " + kind + " lane full");
+            }
+            // refus immédiat plutôt qu'une réponse hors délai
+            if (running >= threads && queued * meanServiceNanos / threads > maxQueueNanos) {
+                throw refuse("Server busy: expected wait over " + config.getMaxQueueMillis() + " ms on the " + kind + " lane");
+            }
+            if (config.getRateLimit() > 0) {
+                queue.tokens -= 1;
+            }
+            queue.entries.add(new Entry(task, now));
+            queued++;
+            if (!queue.ready) {
+                queue.ready = true;
+                ready.add(queue);
+            }
+            notify();
+        }
+
+        private RejectedExecutionException refuse(String message) {
+            rejected.increment();
+            return new RejectedExecutionException(message);
+        }
+
+        // un client par tour : celui qui a le plus de requêtes en attente ne passe pas devant les autres
+        private synchronized Entry take() throws InterruptedException {
+            while (ready.isEmpty()) {
+                if (closed) {
+                    return null;
+                }
+                wait();
+            }
+            ClientQueue queue = ready.poll();
+            Entry entry = queue.entries.poll();
+            if (queue.entries.isEmpty()) {
+                queue.ready = false;
+            } else {
+                ready.add(queue);
+            }
+            queued--;
+            running++;
+            return entry;
+        }
+
+        private void work() {
+            while (true) {
+                Entry entry;
+                try {
+                    entry = take();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                if (entry == null) {
+                    return;
+                }
+                long start = System.nanoTime();
+                try {
+                    if (start - entry.enqueued > maxQueueNanos) {
+                        rejected.increment();
+                        entry.task.reject("Server busy: waited over " + config.getMaxQueueMillis() + " ms on the "
+                                + kind + " lane");
+                    } else {
+                        entry.task.run();
+                        long spent = System.nanoTime() - start;
+                        long mean = meanServiceNanos;
+                        meanServiceNanos = mean == 0 ? spent : mean + (spent - mean) / 8;
+                    }
+                } catch (RuntimeException e) {
+                    ServerLog.warn("SERVER", kind + " lane task failed: " + e.getMessage());
+                } finally {
+                    synchronized (this) {
+                        running--;
+                    }
+                }
+            }
+        }
+
+        // oublie les clients partis (file vide, seau plein depuis longtemps)
+        private void sweep(long now) {
+            if (now - lastSweep < IDLE_CLIENT_NANOS) {
+                return;
+            }
+            lastSweep = now;
+            for (Iterator<ClientQueue> it = clients.values().iterator(); it.hasNext(); ) {
+                ClientQueue queue = it.next();
+                if (queue.entries.isEmpty() && now - queue.lastUse > IDLE_CLIENT_NANOS) {
+                    it.remove();
+                }
+            }
+        }
+
+        synchronized void close() {
+            for (ClientQueue queue : ready) {
+                for (Entry entry : queue.entries) {
+                    entry.task.reject("Server shutting down");
+                }
+                queue.entries.clear();
+            }
+            ready.clear();
+            queued = 0;
+            notifyAll();
+        }
+    }
+}
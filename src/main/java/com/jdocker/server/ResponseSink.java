@@ -0,0 +1,43 @@
+package com.jdocker.server;
+
+import com.jdocker.common.Response;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Where responses for one client connection are written. Implementations must be thread-safe:
+ * asynchronous producers (log streams) and the request loop share the same sink.
+ */
+public interface ResponseSink {
+
+    void send(Response response) throws IOException;
+
+    /** Writes several responses with a single flush; implementations should override to coalesce. */
+    default void sendAll(List<Response> responses) throws IOException {
+        for (Response response : responses) {
+            send(response);
+        }
+    }
+
+    /**
+     * Holds back a bulk producer (chunked listings) while too much output is queued for this
+     * client, so it is paced rather than dropped as a slow consumer. Sinks that write synchronously
+     * are already paced by {@link #send}.
+     */
+    default void awaitCapacity() throws IOException {
+    }
+
+    /**
+     * A stream (log, stats or watch subscription, exec session, pull progress) starts writing to this
+     * sink; each call is matched by one {@link #streamClosed}. A connection with open streams is not
+     * idle, however quiet.
+     */
+    default void streamOpened() {
+    }
+
+    default void streamClosed() {
+    }
+
+    boolean isOpen();
+}
@@ -0,0 +1,204 @@
+package com.jdocker.server;
+
+import java.time.Duration;
+
+/**
+ * Front-end (client facing) server settings.
+ * Values can be overridden with -Djdocker.server.* system properties.
+ */
+public class ServerConfig {
+
+    public enum Mode { CLASSIC, NIO }
+
+    private Mode mode = Mode.CLASSIC;
+    private int maxConnections = 10_000;
+    private Duration idleTimeout = Duration.ofMinutes(10); // 0 = never reap
+    private int workerThreads = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+    private int maxInFlightPerConnection = 32;
+    private int metricsPort; // 0 = no HTTP /metrics endpoint
+    private boolean compressionEnabled = true;  // accordée seulement si le client la demande
+    private int compressionThreshold = 512;     // octets ; en dessous, message envoyé tel quel
+    private int compressionLevel = 1;           // 1 = Deflater.BEST_SPEED ... 9
+    private final LaneConfig fastLane = new LaneConfig(0, 2000, 500, 2000); // 0 thread = workerThreads
+    private final LaneConfig slowLane = new LaneConfig(4, 200, 20, 30_000);
+
+    public static ServerConfig fromSystemProperties() {
+        ServerConfig config = new ServerConfig();
+        config.setMode(Mode.valueOf(System.getProperty("jdocker.server.mode", config.getMode().name())
+                .toUpperCase()));
+        config.setMaxConnections(Integer.getInteger("jdocker.server.maxConnections", config.getMaxConnections()));
+        config.setIdleTimeout(Duration.ofMillis(Long.getLong("jdocker.server.idleTimeoutMs",
+                config.getIdleTimeout().toMillis())));
+        config.setWorkerThreads(Integer.getInteger("jdocker.server.workerThreads", config.getWorkerThreads()));
+        config.setMaxInFlightPerConnection(Integer.getInteger("jdocker.server.maxInFlightPerConnection",
+                config.getMaxInFlightPerConnection()));
+        config.setMetricsPort(Integer.getInteger("jdocker.server.metricsPort", config.getMetricsPort()));
+        config.setCompressionEnabled(Boolean.parseBoolean(System.getProperty("jdocker.server.compression",
+                String.valueOf(config.isCompressionEnabled()))));
+        config.setCompressionThreshold(Integer.getInteger("jdocker.server.compressionThreshold",
+                config.getCompressionThreshold()));
+        config.setCompressionLevel(Integer.getInteger("jdocker.server.compressionLevel", config.getCompressionLevel()));
+        config.getFastLane().load("jdocker.server.lanes.fast.");
+        config.getSlowLane().load("jdocker.server.lanes.slow.");
+        return config;
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    public void setMode(Mode mode) {
+        this.mode = mode;
+    }
+
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    public void setMaxConnections(int maxConnections) {
+        this.maxConnections = maxConnections;
+    }
+
+    public Duration getIdleTimeout() {
+        return idleTimeout;
+    }
+
+    public void setIdleTimeout(Duration idleTimeout) {
+        this.idleTimeout = idleTimeout;
+    }
+
+    public int getWorkerThreads() {
+        return workerThreads;
+    }
+
+    public void setWorkerThreads(int workerThreads) {
+        this.workerThreads = workerThreads;
+    }
+
+    public int getMaxInFlightPerConnection() {
+        return maxInFlightPerConnection;
+    }
+
+    public void setMaxInFlightPerConnection(int maxInFlightPerConnection) {
+        this.maxInFlightPerConnection = maxInFlightPerConnection;
+    }
+
+    public int getMetricsPort() {
+        return metricsPort;
+    }
+
+    public void setMetricsPort(int metricsPort) {
+        this.metricsPort = metricsPort;
+    }
+
+    public boolean isCompressionEnabled() {
+        return compressionEnabled;
+    }
+
+    public void setCompressionEnabled(boolean compressionEnabled) {
+        this.compressionEnabled = compressionEnabled;
+    }
+
+    public int getCompressionThreshold() {
+        return compressionThreshold;
+    }
+
+    public void setCompressionThreshold(int compressionThreshold) {
+        this.compressionThreshold = compressionThreshold;
+    }
+
+    public int getCompressionLevel() {
+        return compressionLevel;
+    }
+
+    public void setCompressionLevel(int compressionLevel) {
+        this.compressionLevel = compressionLevel;
+    }
+
+    /** Lane of quick reads and state changes (lists, start/stop, streams...). */
+    public LaneConfig getFastLane() {
+        return fastLane;
+    }
+
+    /** Lane of long engine operations (pull, create/run, forced remove, bulk operations). */
+    public LaneConfig getSlowLane() {
+        return slowLane;
+    }
+
+    /**
+     * Sizing of one {@link RequestScheduler} lane, from -Djdocker.server.lanes.fast.* / slow.* properties.
+     */
+    public static class LaneConfig {
+
+        private int threads;
+        private int queueCapacity;        // requêtes en attente, tous clients confondus
+        private int clientQueueCapacity;  // requêtes en attente par client
+        private long maxQueueMillis;      // attente au-delà de laquelle la requête est refusée
+        private double rateLimit;         // requêtes/s par client, 0 = illimité
+        private int rateBurst;            // 0 = une seconde de débit
+
+        LaneConfig(int threads, int queueCapacity, int clientQueueCapacity, long maxQueueMillis) {
+            this.threads = threads;
+            this.queueCapacity = queueCapacity;
+            this.clientQueueCapacity = clientQueueCapacity;
+            this.maxQueueMillis = maxQueueMillis;
+        }
+
+        void load(String prefix) {
+            threads = Integer.getInteger(prefix + "threads", threads);
+            queueCapacity = Integer.getInteger(prefix + "queueCapacity", queueCapacity);
+            clientQueueCapacity = Integer.getInteger(prefix + "clientQueueCapacity", clientQueueCapacity);
+            maxQueueMillis = Long.getLong(prefix + "maxQueueMs", maxQueueMillis);
+            rateLimit = Double.parseDouble(System.getProperty(prefix + "rateLimit", String.valueOf(rateLimit)));
+            rateBurst = Integer.getInteger(prefix + "rateBurst", rateBurst);
+        }
+
+        public int getThreads() {
+            return threads;
+        }
+
+        public void setThreads(int threads) {
+            this.threads = threads;
+        }
+
+        public int getQueueCapacity() {
+            return queueCapacity;
+        }
+
+        public void setQueueCapacity(int queueCapacity) {
+            this.queueCapacity = queueCapacity;
+        }
+
+        public int getClientQueueCapacity() {
+            return clientQueueCapacity;
+        }
+
+        public void setClientQueueCapacity(int clientQueueCapacity) {
+            this.clientQueueCapacity = clientQueueCapacity;
+        }
+
+        public long getMaxQueueMillis() {
+            return maxQueueMillis;
+        }
+
+        public void setMaxQueueMillis(long maxQueueMillis) {
+            this.maxQueueMillis = maxQueueMillis;
+        }
+
+        public double getRateLimit() {
+            return rateLimit;
+        }
+
+        public void setRateLimit(double rateLimit) {
+            this.rateLimit = rateLimit;
+        }
+
+        public int getRateBurst() {
+            return rateBurst;
+        }
+
+        public void setRateBurst(int rateBurst) {
+            this.rateBurst = rateBurst;
+        }
+    }
+}
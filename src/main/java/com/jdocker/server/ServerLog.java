@@ -0,0 +1,51 @@
+package com.jdocker.server;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Console logging with a level (-Djdocker.log.level=DEBUG|INFO|WARN) and sampling of the
+ * per-request line (-Djdocker.log.requestSample=N logs one request out of N, 0 = none), so the
+ * request path does not contend on System.out under load.
+ */
+public final class ServerLog {
+
+    public enum Level { DEBUG, INFO, WARN }
+
+    private static final Level LEVEL = Level.valueOf(System.getProperty("jdocker.log.level", "INFO").toUpperCase());
+    private static final long REQUEST_SAMPLE = Long.getLong("jdocker.log.requestSample", 0);
+    private static final AtomicLong requestCounter = new AtomicLong();
+
+    private ServerLog() {
+    }
+
+    public static boolean isEnabled(Level level) {
+        return level.compareTo(LEVEL) >= 0;
+    }
+
+    public static void debug(String tag, String message) {
+        log(Level.DEBUG, tag, message);
+    }
+
+    public static void info(String tag, String message) {
+        log(Level.INFO, tag, message);
+    }
+
+    public static void warn(String tag, String message) {
+        log(Level.WARN, tag, message);
+    }
+
+    /** Per-request line: every request at DEBUG, otherwise one out of requestSample. */
+    public static void request(String action) {
+        if (LEVEL == Level.DEBUG) {
+            System.out.println("[SERVER] Received: " + action);
+        } else if (REQUEST_SAMPLE > 0 && requestCounter.incrementAndGet() % REQUEST_SAMPLE == 0) {
+            System.out.println("[SERVER] Received: " + action + " (1/" + REQUEST_SAMPLE + " sampled)");
+        }
+    }
+
+    private static void log(Level level, String tag, String message) {
+        if (isEnabled(level)) {
+            System.out.println("[" + tag + "] " + message);
+        }
+    }
+}
@@ -0,0 +1,652 @@
+package com.jdocker.server;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CopyOnWriteArraySet;
+
+/**
+ * Spooled log of one container, in its own directory.
+ * <p>
+ * Lines are appended to segment files of {@code [timestamp ms: 8][length: 4][UTF-8 line]} records
+ * named after the number of their first record. Next to each segment, a sparse index file holds
+ * one {@code [timestamp: 8][record: 8][offset: 4]} entry every {@link #INDEX_INTERVAL} bytes, so a
+ * replay seeks to a time or a record number and only scans the last few kilobytes.
+ * Writes go through a buffered FileChannel; reads map the committed part of a segment.
+ */
+class SpoolLog {
+
+    static final int INDEX_INTERVAL = 64 * 1024;
+
+    private static final int RECORD_HEADER = 12;
+    private static final int INDEX_ENTRY = 20;
+    private static final int WRITE_BUFFER = 64 * 1024;
+    private static final String META_FILE = "meta.properties";
+
+    private final String containerId;
+    private final Path dir;
+    private final long segmentBytes;
+    private final List<Segment> segments = new CopyOnWriteArrayList<>();
+    private final Set<LogListener> followers = new CopyOnWriteArraySet<>();
+    private final Properties meta = new Properties();
+
+    // writer state, guarded by this
+    private final ByteBuffer writeBuffer = ByteBuffer.allocate(WRITE_BUFFER);
+    private final ByteBuffer pendingIndex = ByteBuffer.allocate(INDEX_ENTRY * (WRITE_BUFFER / RECORD_HEADER + 1));
+    private Segment active;
+    private FileChannel activeChannel;
+    private FileChannel indexChannel;
+    private long lastIndexedOffset;
+    private long pendingRecords;
+    private long pendingLastTimestamp;
+    private long nextRecord;
+    private long lastTimestamp;
+
+    private volatile boolean capturing;
+
+    SpoolLog(String containerId, Path dir, long segmentBytes) {
+        this.containerId = containerId;
+        this.dir = dir;
+        this.segmentBytes = segmentBytes;
+    }
+
+    /** Re-opens a directory written by a previous run; the next append starts a new segment. */
+    static SpoolLog load(Path dir, long segmentBytes) throws IOException {
+        SpoolLog log = new SpoolLog(dir.getFileName().toString(), dir, segmentBytes);
+        Path metaFile = dir.resolve(META_FILE);
+        if (Files.exists(metaFile)) {
+            try (InputStream in = Files.newInputStream(metaFile)) {
+                log.meta.load(in);
+            }
+        }
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, "*.seg")) {
+            stream.forEach(files::add);
+        }
+        files.sort(null); // noms à largeur fixe : ordre lexical = ordre des enregistrements
+        for (Path file : files) {
+            Segment segment = Segment.recover(file);
+            if (segment.records == 0) {
+                segment.delete();
+                continue;
+            }
+            log.segments.add(segment);
+            log.nextRecord = segment.baseRecord + segment.records;
+            log.lastTimestamp = segment.lastTimestamp;
+        }
+        return log;
+    }
+
+    String getContainerId() {
+        return containerId;
+    }
+
+    String getName() {
+        return meta.getProperty("name", "");
+    }
+
+    String getHost() {
+        return meta.getProperty("host", "");
+    }
+
+    boolean isCapturing() {
+        return capturing;
+    }
+
+    void setCapturing(boolean capturing) {
+        this.capturing = capturing;
+    }
+
+    synchronized void describe(String name, String image, String host) {
+        meta.setProperty("id", containerId);
+        meta.setProperty("name", name == null ? "" : name);
+        meta.setProperty("image", image == null ? "" : image);
+        meta.setProperty("host", host == null ? "" : host);
+        try {
+            Files.createDirectories(dir);
+            try (OutputStream out = Files.newOutputStream(dir.resolve(META_FILE))) {
+                meta.store(out, null);
+            }
+        } catch (IOException e) {
+            ServerLog.warn("SPOOL", "Cannot write metadata of " + containerId + ": " + e.getMessage());
+        }
+    }
+
+    /** Timestamp of the last appended line, 0 if the log is empty. */
+    synchronized long getLastTimestamp() {
+        return lastTimestamp;
+    }
+
+    long getFirstTimestamp() {
+        for (Segment segment : segments) {
+            if (segment.records > 0) {
+                return segment.firstTimestamp;
+            }
+        }
+        return Long.MAX_VALUE;
+    }
+
+    /** Number of committed records, including those of segments already deleted by retention. */
+    long getEndRecord() {
+        long end = 0;
+        for (Segment segment : segments) {
+            end = segment.baseRecord + segment.records;
+        }
+        return end;
+    }
+
+    long getStartRecord() {
+        return segments.isEmpty() ? 0 : segments.get(0).baseRecord;
+    }
+
+    long getBytes() {
+        long total = 0;
+        for (Segment segment : segments) {
+            total += segment.committed;
+        }
+        return total;
+    }
+
+    List<Segment> getSegments() {
+        return segments;
+    }
+
+    boolean isEmpty() {
+        return segments.isEmpty();
+    }
+
+    // ---- écriture ----
+
+    /** Appends one line (engine callback thread), then pushes it to the live followers. */
+    synchronized void append(long timestamp, String line) {
+        long ts = Math.max(timestamp, lastTimestamp); // horodatage monotone : la recherche par date reste valide
+        byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+        int size = RECORD_HEADER + bytes.length;
+        try {
+            if (active == null || (segmentSize() > 0 && segmentSize() + size > segmentBytes)) {
+                roll();
+            }
+            if (writeBuffer.remaining() < size || pendingIndex.remaining() < INDEX_ENTRY) {
+                flushBuffer();
+            }
+            long offset = segmentSize();
+            if (offset == 0 || offset - lastIndexedOffset >= INDEX_INTERVAL) {
+                pendingIndex.putLong(ts).putLong(nextRecord).putInt((int) offset);
+                lastIndexedOffset = offset;
+            }
+            if (size > writeBuffer.capacity()) {
+                // ligne plus grande que le tampon : écrite directement
+                ByteBuffer record = ByteBuffer.allocate(size);
+                record.putLong(ts).putInt(bytes.length).put(bytes).flip();
+                while (record.hasRemaining()) {
+                    activeChannel.write(record);
+                }
+                pendingRecords++;
+                pendingLastTimestamp = ts;
+                commit(size);
+            } else {
+                writeBuffer.putLong(ts).putInt(bytes.length).put(bytes);
+                pendingRecords++;
+                pendingLastTimestamp = ts;
+            }
+            nextRecord++;
+            lastTimestamp = ts;
+        } catch (IOException e) {
+            ServerLog.warn("SPOOL", "Append to " + containerId + " failed: " + e.getMessage());
+            closeWriter();
+        }
+        for (LogListener follower : followers) {
+            follower.onLine(line);
+        }
+    }
+
+    /** Writes the buffered records and their index entries; readers only see committed data. */
+    synchronized void flush() {
+        try {
+            flushBuffer();
+        } catch (IOException e) {
+            ServerLog.warn("SPOOL", "Flush of " + containerId + " failed: " + e.getMessage());
+            closeWriter();
+        }
+    }
+
+    // caller holds this
+    private void flushBuffer() throws IOException {
+        if (active == null) {
+            return;
+        }
+        int bytes = writeBuffer.position();
+        writeBuffer.flip();
+        while (writeBuffer.hasRemaining()) {
+            activeChannel.write(writeBuffer);
+        }
+        writeBuffer.clear();
+        commit(bytes);
+    }
+
+    // caller holds this; the record bytes are already in the segment file
+    private void commit(int bytes) throws IOException {
+        pendingIndex.flip();
+        int entries = pendingIndex.remaining() / INDEX_ENTRY;
+        for (int i = 0; i < entries; i++) {
+            int at = i * INDEX_ENTRY;
+            active.addIndexEntry(pendingIndex.getLong(at), pendingIndex.getLong(at + 8), pendingIndex.getInt(at + 16));
+        }
+        while (pendingIndex.hasRemaining()) {
+            indexChannel.write(pendingIndex);
+        }
+        pendingIndex.clear();
+        if (pendingRecords > 0) {
+            active.commit(bytes, pendingRecords, pendingLastTimestamp);
+        }
+        pendingRecords = 0;
+    }
+
+    private long segmentSize() {
+        return active.committed + writeBuffer.position();
+    }
+
+    private void roll() throws IOException {
+        flushBuffer();
+        closeWriter();
+        Files.createDirectories(dir);
+        Segment segment = new Segment(nextRecord, dir.resolve(String.format("%020d.seg", nextRecord)));
+        activeChannel = FileChannel.open(segment.file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        indexChannel = FileChannel.open(segment.indexFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        active = segment;
+        lastIndexedOffset = 0;
+        segments.add(segment);
+    }
+
+    private void closeWriter() {
+        for (FileChannel channel : new FileChannel[]{activeChannel, indexChannel}) {
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+        activeChannel = null;
+        indexChannel = null;
+        active = null;
+        writeBuffer.clear();
+        pendingIndex.clear();
+        pendingRecords = 0;
+    }
+
+    /** End of the capture: flushes, closes the files and ends the live followers. */
+    synchronized void endCapture(Throwable error) {
+        capturing = false;
+        flush();
+        closeWriter();
+        for (LogListener follower : followers) {
+            follower.onEnd(error);
+        }
+        followers.clear();
+    }
+
+    /** Removes a segment (retention); the active one is closed first. */
+    synchronized void delete(Segment segment) {
+        if (segment == active) {
+            closeWriter();
+        }
+        segments.remove(segment);
+        segment.delete();
+    }
+
+    synchronized void deleteAll() {
+        closeWriter();
+        for (Segment segment : segments) {
+            segment.delete();
+        }
+        segments.clear();
+        try {
+            Files.deleteIfExists(dir.resolve(META_FILE));
+            Files.deleteIfExists(dir);
+        } catch (IOException ignored) {
+        }
+    }
+
+    // ---- lecture ----
+
+    /** Position of a reader: next record to read, and where it is. */
+    static final class Cursor {
+        Segment segment;
+        long offset;
+        long record;
+        ByteBuffer view;               // mapping of segment kept across reads, up to its limit
+    }
+
+    // la vue n'est reprise (et le segment re-mappé) qu'une fois la lecture arrivée au bout de la précédente
+    private static ByteBuffer viewOf(Cursor cursor) {
+        ByteBuffer view = cursor.view;
+        if (view == null || (cursor.offset >= view.limit() && cursor.segment.committed > view.limit())) {
+            view = cursor.segment.view();
+            cursor.view = view;
+        }
+        return view;
+    }
+
+    /** Number of the first record stamped at or after {@code timeMs}. */
+    long recordAt(long timeMs) {
+        for (Segment segment : segments) {
+            if (segment.records == 0 || segment.lastTimestamp < timeMs) {
+                continue;
+            }
+            Cursor cursor = new Cursor();
+            cursor.segment = segment;
+            segment.seekBeforeTime(timeMs, cursor);
+            ByteBuffer view = segment.view();
+            while (cursor.offset < view.limit()) {
+                if (view.getLong((int) cursor.offset) >= timeMs) {
+                    return cursor.record;
+                }
+                cursor.offset += RECORD_HEADER + view.getInt((int) cursor.offset + 8);
+                cursor.record++;
+            }
+        }
+        return getEndRecord();
+    }
+
+    /** Cursor on a record number (clamped to the oldest record still on disk). */
+    Cursor seek(long record) {
+        Cursor cursor = new Cursor();
+        Segment found = null;
+        for (Segment segment : segments) {
+            if (segment.baseRecord <= record || found == null) {
+                found = segment;
+            }
+        }
+        if (found == null) {
+            cursor.record = record;
+            return cursor;
+        }
+        record = Math.max(record, found.baseRecord);
+        cursor.segment = found;
+        found.seekBeforeRecord(record, cursor);
+        ByteBuffer view = viewOf(cursor);
+        while (cursor.record < record && cursor.offset < view.limit()) {
+            cursor.offset += RECORD_HEADER + view.getInt((int) cursor.offset + 8);
+            cursor.record++;
+        }
+        return cursor;
+    }
+
+    /** Reads up to {@code max} committed lines from the cursor; empty when caught up. */
+    List<String> read(Cursor cursor, int max) {
+        List<String> lines = new ArrayList<>(Math.min(max, 256));
+        while (lines.size() < max) {
+            Segment segment = cursor.segment;
+            if (segment == null) {
+                segment = segmentAfter(cursor.record - 1);
+                if (segment == null) {
+                    break;
+                }
+                cursor.segment = segment;
+                cursor.offset = 0;
+                cursor.record = segment.baseRecord;
+                cursor.view = null;
+            }
+            ByteBuffer view = viewOf(cursor);
+            if (cursor.offset >= view.limit()) {
+                Segment next = segmentAfter(segment.baseRecord);
+                if (next == null) {
+                    break;
+                }
+                cursor.segment = next;
+                cursor.offset = 0;
+                cursor.record = next.baseRecord;
+                cursor.view = null;
+                continue;
+            }
+            int at = (int) cursor.offset;
+            int length = view.getInt(at + 8);
+            byte[] bytes = new byte[length];
+            view.get(at + RECORD_HEADER, bytes);
+            lines.add(new String(bytes, StandardCharsets.UTF_8));
+            cursor.offset += RECORD_HEADER + length;
+            cursor.record++;
+        }
+        return lines;
+    }
+
+    /**
+     * Last step of a replay, under the writer lock: delivers what is left after a flush and, if
+     * asked and the capture is running, registers the listener for the following lines, with
+     * no gap and no duplicate. Returns true when the listener now follows.
+     */
+    synchronized boolean catchUp(Cursor cursor, LogListener listener, boolean follow) {
+        flush();
+        List<String> rest;
+        while (!(rest = read(cursor, 512)).isEmpty()) {
+            for (String line : rest) {
+                listener.onLine(line);
+            }
+        }
+        if (follow && capturing) {
+            followers.add(listener);
+            return true;
+        }
+        return false;
+    }
+
+    void unfollow(LogListener listener) {
+        followers.remove(listener);
+    }
+
+    private Segment segmentAfter(long baseRecord) {
+        for (Segment segment : segments) {
+            if (segment.baseRecord > baseRecord) {
+                return segment;
+            }
+        }
+        return null;
+    }
+
+    /** One segment file and its sparse index. */
+    static final class Segment {
+        final long baseRecord;
+        final Path file;
+        final Path indexFile;
+
+        volatile long committed;       // bytes readable in the file
+        volatile long records;
+        volatile long firstTimestamp;
+        volatile long lastTimestamp;
+
+        // index clairsemé, guarded by this
+        private long[] indexTimestamps = new long[16];
+        private long[] indexRecords = new long[16];
+        private int[] indexOffsets = new int[16];
+        private int indexSize;
+
+        private MappedByteBuffer mapped;
+        private long mappedSize;
+
+        Segment(long baseRecord, Path file) {
+            this.baseRecord = baseRecord;
+            this.file = file;
+            String name = file.getFileName().toString();
+            this.indexFile = file.resolveSibling(name.substring(0, name.length() - 4) + ".idx");
+        }
+
+        // crash recovery: index entries are trusted, the tail after the last one is re-scanned
+        static Segment recover(Path file) throws IOException {
+            String name = file.getFileName().toString();
+            Segment segment = new Segment(Long.parseLong(name.substring(0, name.length() - 4)), file);
+            if (Files.exists(segment.indexFile)) {
+                ByteBuffer index = ByteBuffer.wrap(Files.readAllBytes(segment.indexFile));
+                while (index.remaining() >= INDEX_ENTRY) {
+                    segment.addIndexEntry(index.getLong(), index.getLong(), index.getInt());
+                }
+            }
+            long size = Files.size(file);
+            long offset = 0;
+            long record = segment.baseRecord;
+            synchronized (segment) {
+                while (segment.indexSize > 0 && segment.indexOffsets[segment.indexSize - 1] >= size) {
+                    segment.indexSize--; // entrée écrite, données perdues
+                }
+                if (segment.indexSize > 0) {
+                    offset = segment.indexOffsets[segment.indexSize - 1];
+                    record = segment.indexRecords[segment.indexSize - 1];
+                }
+            }
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                MappedByteBuffer view = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+                long lastIndexed = offset;
+                long last = 0;
+                while (offset + RECORD_HEADER <= size) {
+                    long ts = view.getLong((int) offset);
+                    int length = view.getInt((int) offset + 8);
+                    if (length < 0 || offset + RECORD_HEADER + length > size) {
+                        break; // enregistrement tronqué par un arrêt brutal
+                    }
+                    if (record == segment.baseRecord && segment.indexSize == 0) {
+                        segment.addIndexEntry(ts, record, (int) offset);
+                    } else if (offset - lastIndexed >= INDEX_INTERVAL) {
+                        segment.addIndexEntry(ts, record, (int) offset);
+                        lastIndexed = offset;
+                    }
+                    last = ts;
+                    offset += RECORD_HEADER + length;
+                    record++;
+                }
+                if (offset < size) {
+                    channel.truncate(offset);
+                }
+                synchronized (segment) {
+                    while (segment.indexSize > 0 && segment.indexOffsets[segment.indexSize - 1] >= offset) {
+                        segment.indexSize--;
+                    }
+                }
+                segment.committed = offset;
+                segment.records = record - segment.baseRecord;
+                segment.lastTimestamp = last;
+            }
+            synchronized (segment) {
+                segment.firstTimestamp = segment.indexSize > 0 ? segment.indexTimestamps[0] : 0;
+                if (segment.records > 0 && segment.lastTimestamp == 0) {
+                    segment.lastTimestamp = segment.indexTimestamps[segment.indexSize - 1];
+                }
+                ByteBuffer index = ByteBuffer.allocate(segment.indexSize * INDEX_ENTRY);
+                for (int i = 0; i < segment.indexSize; i++) {
+                    index.putLong(segment.indexTimestamps[i]).putLong(segment.indexRecords[i]).putInt(segment.indexOffsets[i]);
+                }
+                Files.write(segment.indexFile, index.array());
+            }
+            return segment;
+        }
+
+        synchronized void addIndexEntry(long timestamp, long record, int offset) {
+            if (indexSize == indexOffsets.length) {
+                indexTimestamps = Arrays.copyOf(indexTimestamps, indexSize * 2);
+                indexRecords = Arrays.copyOf(indexRecords, indexSize * 2);
+                indexOffsets = Arrays.copyOf(indexOffsets, indexSize * 2);
+            }
+            indexTimestamps[indexSize] = timestamp;
+            indexRecords[indexSize] = record;
+            indexOffsets[indexSize] = offset;
+            indexSize++;
+        }
+
+        void commit(int bytes, long newRecords, long lastTs) {
+            if (records == 0) {
+                synchronized (this) {
+                    firstTimestamp = indexSize > 0 ? indexTimestamps[0] : lastTs;
+                }
+            }
+            lastTimestamp = lastTs;
+            records += newRecords;
+            committed += bytes;
+        }
+
+        /** Positions the cursor on the last indexed record stamped strictly before {@code timeMs}. */
+        synchronized void seekBeforeTime(long timeMs, Cursor cursor) {
+            int lo = 0;
+            int hi = indexSize - 1;
+            int found = -1;
+            while (lo <= hi) {
+                int mid = (lo + hi) >>> 1;
+                if (indexTimestamps[mid] < timeMs) {
+                    found = mid;
+                    lo = mid + 1;
+                } else {
+                    hi = mid - 1;
+                }
+            }
+            position(found, cursor);
+        }
+
+        /** Positions the cursor on the last indexed record at or before {@code record}. */
+        synchronized void seekBeforeRecord(long record, Cursor cursor) {
+            int lo = 0;
+            int hi = indexSize - 1;
+            int found = -1;
+            while (lo <= hi) {
+                int mid = (lo + hi) >>> 1;
+                if (indexRecords[mid] <= record) {
+                    found = mid;
+                    lo = mid + 1;
+                } else {
+                    hi = mid - 1;
+                }
+            }
+            position(found, cursor);
+        }
+
+        private void position(int entry, Cursor cursor) {
+            if (entry < 0 || indexOffsets[entry] >= committed) {
+                cursor.offset = 0;
+                cursor.record = baseRecord;
+            } else {
+                cursor.offset = indexOffsets[entry];
+                cursor.record = indexRecords[entry];
+            }
+        }
+
+        /** Read-only view of the committed bytes; re-mapped when the segment has grown. */
+        synchronized ByteBuffer view() {
+            long size = committed;
+            if (mapped == null || mappedSize != size) {
+                try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                    mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+                    mappedSize = size;
+                } catch (IOException e) {
+                    ServerLog.warn("SPOOL", "Cannot map " + file + ": " + e.getMessage());
+                    return ByteBuffer.allocate(0);
+                }
+            }
+            return mapped.duplicate();
+        }
+
+        void delete() {
+            synchronized (this) {
+                mapped = null; // le mapping est libéré par le GC ; sous Linux le fichier peut être supprimé avant
+            }
+            try {
+                Files.deleteIfExists(file);
+                Files.deleteIfExists(indexFile);
+            } catch (IOException e) {
+                ServerLog.warn("SPOOL", "Cannot delete " + file + ": " + e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package com.jdocker.server;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * One engine stats stream per watched container, shared by all STREAM_STATS subscribers,
+ * feeding that container's {@link StatsSeries}.
+ */
+public class StatsHub implements Closeable {
+
+    private final DockerService dockerService;
+    private final int ringSize;
+    private final Map<String, Entry> entries = new HashMap<>();   // guarded by this
+
+    public StatsHub(DockerService dockerService, int ringSize) {
+        this.dockerService = dockerService;
+        this.ringSize = ringSize;
+    }
+
+    /** Starts (or joins) the stats stream of a container; each call must be paired with {@link #release}. */
+    public StatsSeries acquire(String containerId) {
+        Entry entry;
+        synchronized (this) {
+            entry = entries.get(containerId);
+            if (entry != null) {
+                entry.refs++;
+                return entry.series;
+            }
+            entry = new Entry(new StatsSeries(ringSize));
+            entries.put(containerId, entry);
+        }
+        StatsSeries series = entry.series;
+        try {
+            Closeable upstream = dockerService.openStatsStream(containerId,
+                    stats -> series.record(stats, System.currentTimeMillis()),
+                    error -> ended(containerId, series));
+            synchronized (this) {
+                if (entries.get(containerId) == entry) {
+                    entry.upstream = upstream;
+                    return series;
+                }
+            }
+            // libéré pendant l'ouverture
+            closeQuietly(upstream);
+        } catch (RuntimeException e) {
+            ended(containerId, series);
+        }
+        return series;
+    }
+
+    public void release(String containerId, StatsSeries series) {
+        Entry removed = null;
+        synchronized (this) {
+            Entry entry = entries.get(containerId);
+            // une série terminée a déjà été retirée : rien à libérer
+            if (entry != null && entry.series == series && --entry.refs == 0) {
+                removed = entries.remove(containerId);
+            }
+        }
+        if (removed != null) {
+            closeQuietly(removed.upstream);
+        }
+    }
+
+    public synchronized int getStreamCount() {
+        return entries.size();
+    }
+
+    private void ended(String containerId, StatsSeries series) {
+        series.markEnded();
+        Entry removed = null;
+        synchronized (this) {
+            Entry entry = entries.get(containerId);
+            if (entry != null && entry.series == series) {
+                removed = entries.remove(containerId);
+            }
+        }
+        if (removed != null) {
+            closeQuietly(removed.upstream);
+        }
+    }
+
+    @Override
+    public void close() {
+        Entry[] all;
+        synchronized (this) {
+            all = entries.values().toArray(new Entry[0]);
+            entries.clear();
+        }
+        for (Entry entry : all) {
+            closeQuietly(entry.upstream);
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    private static final class Entry {
+        final StatsSeries series;
+        Closeable upstream;
+        int refs = 1;
+
+        Entry(StatsSeries series) {
+            this.series = series;
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.jdocker.server;
+
+/**
+ * One resource usage sample of a container. Network and block I/O values are the
+ * cumulative counters reported by the engine; {@link StatsSeries} turns them into rates.
+ */
+public final class StatsSample {
+
+    private final double cpuPercent;
+    private final long memoryUsage;
+    private final long netRx;
+    private final long netTx;
+    private final long blkRead;
+    private final long blkWrite;
+
+    public StatsSample(double cpuPercent, long memoryUsage, long netRx, long netTx, long blkRead, long blkWrite) {
+        this.cpuPercent = cpuPercent;
+        this.memoryUsage = memoryUsage;
+        this.netRx = netRx;
+        this.netTx = netTx;
+        this.blkRead = blkRead;
+        this.blkWrite = blkWrite;
+    }
+
+    public double getCpuPercent() {
+        return cpuPercent;
+    }
+
+    public long getMemoryUsage() {
+        return memoryUsage;
+    }
+
+    public long getNetRx() {
+        return netRx;
+    }
+
+    public long getNetTx() {
+        return netTx;
+    }
+
+    public long getBlkRead() {
+        return blkRead;
+    }
+
+    public long getBlkWrite() {
+        return blkWrite;
+    }
+}
@@ -0,0 +1,105 @@
+package com.jdocker.server;
+
+import java.util.Arrays;
+
+/**
+ * Fixed-size time series of one container's resource usage, kept in primitive arrays
+ * (one slot per engine sample, about one per second).
+ */
+public class StatsSeries {
+
+    public static final String[] METRICS = { "cpu", "mem", "netRx", "netTx", "blkRead", "blkWrite" };
+    static final int CPU = 0, MEM = 1, NET_RX = 2, NET_TX = 3, BLK_READ = 4, BLK_WRITE = 5;
+
+    private final long[] times;
+    private final double[][] values;
+    private int next;
+    private int size;
+
+    // compteurs cumulés du dernier échantillon, pour calculer des débits
+    private long lastTime;
+    private long lastNetRx, lastNetTx, lastBlkRead, lastBlkWrite;
+    private volatile boolean ended;
+
+    public StatsSeries(int capacity) {
+        this.times = new long[capacity];
+        this.values = new double[METRICS.length][capacity];
+    }
+
+    public synchronized void record(StatsSample sample, long now) {
+        long netRx = sample.getNetRx();
+        long netTx = sample.getNetTx();
+        long blkRead = sample.getBlkRead();
+        long blkWrite = sample.getBlkWrite();
+
+        double seconds = lastTime == 0 ? 0 : (now - lastTime) / 1000.0;
+        times[next] = now;
+        values[CPU][next] = sample.getCpuPercent();
+        values[MEM][next] = sample.getMemoryUsage();
+        values[NET_RX][next] = rate(netRx, lastNetRx, seconds);
+        values[NET_TX][next] = rate(netTx, lastNetTx, seconds);
+        values[BLK_READ][next] = rate(blkRead, lastBlkRead, seconds);
+        values[BLK_WRITE][next] = rate(blkWrite, lastBlkWrite, seconds);
+        next = (next + 1) % times.length;
+        size = Math.min(size + 1, times.length);
+
+        lastTime = now;
+        lastNetRx = netRx;
+        lastNetTx = netTx;
+        lastBlkRead = blkRead;
+        lastBlkWrite = blkWrite;
+    }
+
+    /**
+     * min / avg / max / p95 of every metric over the samples of the last {@code windowMs},
+     * as {@code result[metric][0..3]}; null when the window holds no sample.
+     */
+    public synchronized double[][] aggregate(long windowMs, long now) {
+        double[] window = new double[size];
+        int[] slots = new int[size];
+        int n = 0;
+        for (int i = 1; i <= size; i++) {
+            int slot = Math.floorMod(next - i, times.length);
+            if (times[slot] < now - windowMs) {
+                break; // plus ancien que la fenêtre : les suivants aussi
+            }
+            slots[n++] = slot;
+        }
+        if (n == 0) {
+            return null;
+        }
+        double[][] result = new double[METRICS.length][4];
+        for (int m = 0; m < METRICS.length; m++) {
+            double min = Double.MAX_VALUE, max = -Double.MAX_VALUE, sum = 0;
+            for (int i = 0; i < n; i++) {
+                double v = values[m][slots[i]];
+                window[i] = v;
+                min = Math.min(min, v);
+                max = Math.max(max, v);
+                sum += v;
+            }
+            Arrays.sort(window, 0, n);
+            result[m][0] = min;
+            result[m][1] = sum / n;
+            result[m][2] = max;
+            result[m][3] = window[(int) Math.ceil(0.95 * n) - 1];
+        }
+        return result;
+    }
+
+    public boolean isEnded() {
+        return ended;
+    }
+
+    void markEnded() {
+        ended = true;
+    }
+
+    private static double rate(long current, long previous, double seconds) {
+        // premier échantillon, ou compteur remis à zéro (redémarrage)
+        if (seconds <= 0 || current < previous) {
+            return 0;
+        }
+        return (current - previous) / seconds;
+    }
+}
@@ -0,0 +1,95 @@
+package com.jdocker.server;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Registry of STREAM_STATS subscriptions and the timer that drives their updates.
+ */
+public class StatsStreamManager {
+
+    private final StatsHub hub;
+    private final Executor executor;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "jdocker-stats");
+        t.setDaemon(true);
+        return t;
+    });
+    private final AtomicLong nextId = new AtomicLong();
+    private final Map<String, StatsSubscription> subscriptions = new ConcurrentHashMap<>();
+
+    public StatsStreamManager(StatsHub hub, Executor executor) {
+        this.hub = hub;
+        this.executor = executor;
+    }
+
+    public StatsSubscription open(ResponseSink sink, String requestId, List<String> containerIds,
+                                  long windowMs, long intervalMs) {
+        String id = "stats-" + nextId.incrementAndGet();
+        StatsSubscription subscription = new StatsSubscription(id, requestId, sink, hub, containerIds,
+                windowMs, intervalMs, () -> closed(id, sink));
+        sink.streamOpened();
+        subscriptions.put(id, subscription);
+        return subscription;
+    }
+
+    /** Starts the periodic updates, once the acknowledgement has been sent. */
+    public void start(StatsSubscription subscription) {
+        subscription.start(scheduler, executor);
+    }
+
+    /** Only the connection that opened a subscription may stop it. */
+    public boolean stop(String subscriptionId, ResponseSink sink) {
+        StatsSubscription subscription = subscriptions.get(subscriptionId);
+        if (subscription == null || subscription.getSink() != sink) {
+            return false;
+        }
+        subscription.cancel();
+        return true;
+    }
+
+    public void closeAll(ResponseSink sink) {
+        for (StatsSubscription subscription : subscriptions.values()) {
+            if (subscription.getSink() == sink) {
+                subscription.cancel();
+            }
+        }
+    }
+
+    private void closed(String id, ResponseSink sink) {
+        if (subscriptions.remove(id) != null) {
+            sink.streamClosed();
+        }
+    }
+
+    public int getActiveCount() {
+        return subscriptions.size();
+    }
+
+    /** "1s", "10s", "1m", "500ms" or a number of milliseconds. */
+    public static long parseDuration(String text) {
+        String value = text.trim().toLowerCase();
+        try {
+            if (value.endsWith("ms")) {
+                return Long.parseLong(value.substring(0, value.length() - 2));
+            }
+            if (value.endsWith("s")) {
+                return Long.parseLong(value.substring(0, value.length() - 1)) * 1000;
+            }
+            if (value.endsWith("m")) {
+                return Long.parseLong(value.substring(0, value.length() - 1)) * 60_000;
+            }
+            if (value.endsWith("h")) {
+                return Long.parseLong(value.substring(0, value.length() - 1)) * 3_600_000;
+            }
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid duration: " + text);
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package com.jdocker.server;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.jdocker.common.Response;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * One client's STREAM_STATS subscription. Every interval it aggregates the watched series over
+ * the requested window and sends a single STATS message holding only the values that changed.
+ */
+public class StatsSubscription {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final String id;
+    private final String requestId;
+    private final ResponseSink sink;
+    private final StatsHub hub;
+    private final long windowMs;
+    private final long intervalMs;
+    private final Runnable onClose;
+
+    private final Map<String, StatsSeries> series = new LinkedHashMap<>();   // container id -> series
+    private final Map<String, double[][]> lastSent = new HashMap<>();
+    private final AtomicBoolean sending = new AtomicBoolean();
+    private volatile boolean closed;
+    private ScheduledFuture<?> ticker;
+
+    StatsSubscription(String id, String requestId, ResponseSink sink, StatsHub hub, List<String> containerIds,
+                      long windowMs, long intervalMs, Runnable onClose) {
+        this.id = id;
+        this.requestId = requestId;
+        this.sink = sink;
+        this.hub = hub;
+        this.windowMs = windowMs;
+        this.intervalMs = intervalMs;
+        this.onClose = onClose;
+        for (String containerId : containerIds) {
+            series.put(containerId, hub.acquire(containerId));
+        }
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public ResponseSink getSink() {
+        return sink;
+    }
+
+    synchronized void start(ScheduledExecutorService scheduler, Executor executor) {
+        if (closed) {
+            return;
+        }
+        // un client lent saute des ticks au lieu d'accumuler des envois
+        ticker = scheduler.scheduleAtFixedRate(() -> {
+            if (!closed && sending.compareAndSet(false, true)) {
+                executor.execute(() -> {
+                    try {
+                        tick();
+                    } finally {
+                        sending.set(false);
+                    }
+                });
+            }
+        }, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    private void tick() {
+        long now = System.currentTimeMillis();
+        ObjectNode containers = MAPPER.createObjectNode();
+        boolean allEnded;
+        synchronized (this) {
+            Iterator<Map.Entry<String, StatsSeries>> it = series.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<String, StatsSeries> entry = it.next();
+                String key = shortId(entry.getKey());
+                if (entry.getValue().isEnded()) {
+                    containers.putObject(key).put("ended", true);
+                    lastSent.remove(entry.getKey());
+                    it.remove();
+                    continue;
+                }
+                double[][] agg = entry.getValue().aggregate(windowMs, now);
+                if (agg == null) {
+                    continue;
+                }
+                round(agg);
+                double[][] previous = lastSent.put(entry.getKey(), agg);
+                ObjectNode delta = null;
+                for (int m = 0; m < StatsSeries.METRICS.length; m++) {
+                    if (previous == null || !Arrays.equals(previous[m], agg[m])) {
+                        if (delta == null) {
+                            delta = containers.putObject(key);
+                        }
+                        delta.putArray(StatsSeries.METRICS[m]).add(agg[m][0]).add(agg[m][1]).add(agg[m][2]).add(agg[m][3]);
+                    }
+                }
+            }
+            allEnded = series.isEmpty();
+        }
+
+        try {
+            if (containers.size() > 0) {
+                ObjectNode body = MAPPER.createObjectNode();
+                body.put("subscriptionId", id);
+                body.put("t", now);
+                body.set("containers", containers);
+                send(Response.of("OK", "STATS", body));
+            }
+            if (allEnded) {
+                send(Response.of("OK", "STATS_END", MAPPER.createObjectNode().put("subscriptionId", id)));
+                cancel();
+            }
+        } catch (IOException e) {
+            cancel();
+        }
+    }
+
+    public void cancel() {
+        Map<String, StatsSeries> toRelease;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (ticker != null) {
+                ticker.cancel(false);
+            }
+            toRelease = new HashMap<>(series);
+            series.clear();
+        }
+        toRelease.forEach(hub::release);
+        onClose.run();
+    }
+
+    private void send(Response response) throws IOException {
+        response.setId(requestId);
+        sink.send(response);
+    }
+
+    // valeurs arrondies : pas de delta pour un bruit de quelques octets
+    private static void round(double[][] agg) {
+        for (int m = 0; m < agg.length; m++) {
+            for (int i = 0; i < agg[m].length; i++) {
+                agg[m][i] = m == StatsSeries.CPU ? Math.round(agg[m][i] * 100) / 100.0 : Math.round(agg[m][i]);
+            }
+        }
+    }
+
+    private static String shortId(String containerId) {
+        return containerId.length() > 12 ? containerId.substring(0, 12) : containerId;
+    }
+}
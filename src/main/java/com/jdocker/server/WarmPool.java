@@ -0,0 +1,322 @@
+package com.jdocker.server;
+
+import java.io.Closeable;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Opt-in pool of pre-created containers for RUN_CONTAINER ({@code -Djdocker.pool.templates=runner=alpine:3.19}).
+ * <p>
+ * For every template and engine host, a background thread keeps between {@code low} and
+ * {@code high} containers created (or started then paused) under a reserved name. RUN_CONTAINER
+ * for the template image claims one, renames it and starts (or unpauses) it: the create call, and
+ * with {@code paused} the process start too, are paid before the request arrives. Without a ready
+ * container the request falls back to create + start and the pool refills.
+ * <p>
+ * Pool containers survive a server restart and are adopted again on the next start.
+ */
+public class WarmPool implements Closeable {
+
+    public static final String NAME_PREFIX = "jdocker-pool-";
+
+    private static final long REFILL_INTERVAL_MS = 1000;
+
+    /** One configured template: containers of {@code image}, kept between the two watermarks. */
+    public static final class Template {
+        private final String name;
+        private final String image;
+        private final int low;
+        private final int high;
+        private final boolean paused;
+
+        public Template(String name, String image, int low, int high, boolean paused) {
+            if (low < 0 || high < Math.max(1, low)) {
+                throw new IllegalArgumentException("Invalid pool watermarks for " + name + ": low=" + low + ", high=" + high);
+            }
+            this.name = name;
+            this.image = image;
+            this.low = low;
+            this.high = high;
+            this.paused = paused;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getImage() {
+            return image;
+        }
+
+        public int getLow() {
+            return low;
+        }
+
+        public int getHigh() {
+            return high;
+        }
+
+        public boolean isPaused() {
+            return paused;
+        }
+    }
+
+    private final Collection<EngineHost> hosts;
+    private final Metrics metrics;
+    private final Map<String, Template> templates;                        // par nom
+    private final Map<String, ConcurrentLinkedDeque<String>> ready = new ConcurrentHashMap<>(); // template@hôte -> ids
+    private final Set<String> adopted = ConcurrentHashMap.newKeySet();     // hôtes déjà inspectés
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final AtomicBoolean refillScheduled = new AtomicBoolean();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "jdocker-pool");
+        t.setDaemon(true);
+        return t;
+    });
+    private volatile boolean closed;
+
+    public WarmPool(Collection<EngineHost> hosts, Metrics metrics, Collection<Template> templates) {
+        this.hosts = hosts;
+        this.metrics = metrics;
+        Map<String, Template> byName = new LinkedHashMap<>();
+        for (Template template : templates) {
+            byName.put(template.getName(), template);
+        }
+        this.templates = Collections.unmodifiableMap(byName);
+    }
+
+    /**
+     * {@code jdocker.pool.templates=name=image,...}; watermarks from {@code jdocker.pool.low} / {@code high}
+     * / {@code paused}, overridable per template ({@code jdocker.pool.<name>.low}...). Null when unset.
+     */
+    public static WarmPool fromSystemProperties(Collection<EngineHost> hosts, Metrics metrics) {
+        String list = System.getProperty("jdocker.pool.templates");
+        if (list == null || list.isBlank()) {
+            return null;
+        }
+        int low = Integer.getInteger("jdocker.pool.low", 2);
+        int high = Integer.getInteger("jdocker.pool.high", 4);
+        boolean paused = Boolean.getBoolean("jdocker.pool.paused");
+        Map<String, Template> templates = new LinkedHashMap<>();
+        for (String entry : list.split(",")) {
+            int eq = entry.indexOf('=');
+            if (eq <= 0) {
+                throw new IllegalArgumentException("Invalid pool template (expected name=image): " + entry);
+            }
+            String name = entry.substring(0, eq).trim();
+            String prefix = "jdocker.pool." + name + ".";
+            templates.put(name, new Template(name, entry.substring(eq + 1).trim(),
+                    Integer.getInteger(prefix + "low", low),
+                    Integer.getInteger(prefix + "high", high),
+                    Boolean.parseBoolean(System.getProperty(prefix + "paused", String.valueOf(paused)))));
+        }
+        return new WarmPool(hosts, metrics, templates.values());
+    }
+
+    public void start() {
+        for (Template template : templates.values()) {
+            metrics.gauge("pool.ready", "template", template.getName(), () -> readyCount(template));
+            ServerLog.info("POOL", "Template " + template.getName() + ": " + template.getImage()
+                    + " (low=" + template.getLow() + ", high=" + template.getHigh()
+                    + (template.isPaused() ? ", paused" : "") + ")");
+        }
+        metrics.gauge("pool.hits", hits::sum);
+        metrics.gauge("pool.misses", misses::sum);
+        scheduler.scheduleWithFixedDelay(this::refill, 0, REFILL_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /** Ready containers are internal: hidden from listings, selectors and WATCH_CONTAINERS. */
+    public static boolean isPoolContainer(ContainerInfo c) {
+        return c.getShortName().startsWith(NAME_PREFIX);
+    }
+
+    /** The template named in the request, else the first one for {@code image}; null if none applies. */
+    public Template templateFor(String template, String image) {
+        if (template != null) {
+            Template t = templates.get(template);
+            if (t == null) {
+                throw new IllegalArgumentException("Unknown pool template: " + template);
+            }
+            return t;
+        }
+        for (Template t : templates.values()) {
+            if (t.getImage().equals(image)) {
+                return t;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Renames a ready container of {@code template} on {@code host} to {@code name} and starts it.
+     * Returns its id, or null on a miss (the caller creates one as usual).
+     */
+    public String claim(Template template, EngineHost host, String name) {
+        long start = System.nanoTime();
+        ConcurrentLinkedDeque<String> queue = ready.get(key(template, host));
+        String id;
+        while (queue != null && (id = queue.pollFirst()) != null) {
+            DockerEngine engine = host.getEngine();
+            try {
+                engine.renameContainer(id, name);
+            } catch (RuntimeException e) {
+                if (host.getStateCache().get(id) == null) {
+                    continue; // supprimé entre-temps : on passe au suivant
+                }
+                queue.addFirst(id); // nom déjà pris : le conteneur reste disponible
+                throw e;
+            }
+            try {
+                if (template.isPaused()) {
+                    engine.unpauseContainer(id);
+                } else {
+                    engine.startContainer(id);
+                }
+            } catch (RuntimeException e) {
+                removeQuietly(host, id);
+                throw e;
+            }
+            hits.increment();
+            metrics.recordTimer("pool.claim.hit", System.nanoTime() - start, false);
+            scheduleRefill();
+            return id;
+        }
+        misses.increment();
+        scheduleRefill();
+        return null;
+    }
+
+    /** Time of the create + start done instead, after a miss. */
+    public void recordMiss(long nanos, boolean error) {
+        metrics.recordTimer("pool.claim.miss", nanos, error);
+    }
+
+    public int readyCount(Template template) {
+        int count = 0;
+        for (EngineHost host : hosts) {
+            ConcurrentLinkedDeque<String> queue = ready.get(key(template, host));
+            count += queue == null ? 0 : queue.size();
+        }
+        return count;
+    }
+
+    private void scheduleRefill() {
+        if (!closed && refillScheduled.compareAndSet(false, true)) {
+            scheduler.execute(this::refill);
+        }
+    }
+
+    // un seul thread : les créations du pool ne concurrencent pas les requêtes au-delà d'un appel à la fois
+    private void refill() {
+        refillScheduled.set(false);
+        for (EngineHost host : hosts) {
+            if (closed || !host.isUp() || !host.getStateCache().isSynced()) {
+                continue;
+            }
+            if (adopted.add(host.getName())) {
+                adopt(host);
+            }
+            for (Template template : templates.values()) {
+                ConcurrentLinkedDeque<String> queue = ready.computeIfAbsent(key(template, host),
+                        k -> new ConcurrentLinkedDeque<>());
+                // supprimés ou renommés hors du pool depuis : ils ne comptent plus
+                ContainerStateCache cache = host.getStateCache();
+                queue.removeIf(id -> {
+                    ContainerInfo c = cache.get(id);
+                    return c == null || !isPoolContainer(c);
+                });
+                if (queue.size() >= template.getLow()) {
+                    continue;
+                }
+                // sous la marque basse : on remonte jusqu'à la marque haute
+                while (!closed && queue.size() < template.getHigh()) {
+                    try {
+                        queue.addLast(provision(template, host));
+                    } catch (RuntimeException e) {
+                        ServerLog.warn("POOL", "Cannot provision " + template.getName() + " on " + host.getName()
+                                + ": " + e.getMessage());
+                        break;
+                    }
+                }
+            }
+        }
+    }
+
+    private String provision(Template template, EngineHost host) {
+        DockerEngine engine = host.getEngine();
+        String name = NAME_PREFIX + template.getName() + "-" + Long.toHexString(ThreadLocalRandom.current().nextLong() >>> 16);
+        long since = host.getStateCache().eventSequence();
+        String id = engine.createContainer(template.getImage(), name);
+        if (template.isPaused()) {
+            try {
+                engine.startContainer(id);
+                engine.pauseContainer(id);
+            } catch (RuntimeException e) {
+                removeQuietly(host, id);
+                throw e;
+            }
+        }
+        // connu du cache tout de suite : le prochain refill ne le prend pas pour un conteneur disparu
+        host.getStateCache().putOptimistic(new ContainerInfo(id, "/" + name, template.getImage(),
+                template.isPaused() ? "paused" : "created", null, System.currentTimeMillis() / 1000), since);
+        return id;
+    }
+
+    // conteneurs du pool laissés par une exécution précédente : repris s'ils sont encore prêts
+    private void adopt(EngineHost host) {
+        int count = 0;
+        for (ContainerInfo c : host.getStateCache().getContainers()) {
+            String name = c.getShortName();
+            if (!name.startsWith(NAME_PREFIX)) {
+                continue;
+            }
+            for (Template template : templates.values()) {
+                if (!name.startsWith(NAME_PREFIX + template.getName() + "-")) {
+                    continue;
+                }
+                String expected = template.isPaused() ? "paused" : "created";
+                if (expected.equals(c.getState()) && template.getImage().equals(c.getImage())) {
+                    ready.computeIfAbsent(key(template, host), k -> new ConcurrentLinkedDeque<>()).addLast(c.getId());
+                    count++;
+                } else {
+                    removeQuietly(host, c.getId());
+                }
+                break;
+            }
+        }
+        if (count > 0) {
+            ServerLog.info("POOL", "Adopted " + count + " ready containers on " + host.getName());
+        }
+    }
+
+    private static void removeQuietly(EngineHost host, String id) {
+        try {
+            host.getEngine().removeContainer(id);
+        } catch (RuntimeException e) {
+            ServerLog.warn("POOL", "Cannot remove " + id + ": " + e.getMessage());
+        }
+    }
+
+    private static String key(Template template, EngineHost host) {
+        return template.getName() + "@" + host.getName();
+    }
+
+    /** Ready containers are kept for the next start. */
+    @Override
+    public void close() {
+        closed = true;
+        scheduler.shutdownNow();
+    }
+}
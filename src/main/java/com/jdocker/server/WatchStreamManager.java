@@ -0,0 +1,63 @@
+package com.jdocker.server;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Registry of WATCH_CONTAINERS subscriptions, so they can be stopped by id (STOP_WATCH)
+ * or all at once when their connection goes away.
+ */
+public class WatchStreamManager {
+
+    private final ContainerWatchHub hub;
+    private final Executor executor;
+    private final int queueCapacity = Integer.getInteger("jdocker.watch.queueCapacity", 10_000);
+    private final AtomicLong nextId = new AtomicLong();
+    private final Map<String, WatchSubscription> subscriptions = new ConcurrentHashMap<>();
+
+    public WatchStreamManager(ContainerWatchHub hub, Executor executor) {
+        this.hub = hub;
+        this.executor = executor;
+    }
+
+    /** Opens a subscription resuming after {@code since} of {@code epoch} (null = from a snapshot). */
+    public WatchSubscription open(ResponseSink sink, String requestId, Long since, String epoch) {
+        String id = "watch-" + nextId.incrementAndGet();
+        WatchSubscription subscription = new WatchSubscription(id, requestId, sink, hub, executor, queueCapacity,
+                () -> closed(id, sink));
+        sink.streamOpened();
+        subscriptions.put(id, subscription);
+        subscription.begin(hub.watch(subscription, since, epoch), since);
+        return subscription;
+    }
+
+    /** Only the connection that opened a subscription may stop it. */
+    public boolean stop(String subscriptionId, ResponseSink sink) {
+        WatchSubscription subscription = subscriptions.get(subscriptionId);
+        if (subscription == null || subscription.getSink() != sink) {
+            return false;
+        }
+        subscription.cancel();
+        return true;
+    }
+
+    public void closeAll(ResponseSink sink) {
+        for (WatchSubscription subscription : subscriptions.values()) {
+            if (subscription.getSink() == sink) {
+                subscription.cancel();
+            }
+        }
+    }
+
+    private void closed(String id, ResponseSink sink) {
+        if (subscriptions.remove(id) != null) {
+            sink.streamClosed();
+        }
+    }
+
+    public int getActiveCount() {
+        return subscriptions.size();
+    }
+}
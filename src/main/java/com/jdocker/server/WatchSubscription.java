@@ -0,0 +1,231 @@
+package com.jdocker.server;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.jdocker.common.Response;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * One client's WATCH_CONTAINERS subscription: a WATCH_SNAPSHOT (unless resumed), then
+ * WATCH_CHANGES batches. A client too slow to keep up loses its queued deltas and gets a fresh
+ * snapshot instead of an ever-growing backlog.
+ */
+public class WatchSubscription implements ContainerWatchHub.Watcher {
+
+    private static final int MAX_BATCH = 512;
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final String id;
+    private final String requestId;
+    private final ResponseSink sink;
+    private final ContainerWatchHub hub;
+    private final Executor executor;
+    private final int queueCapacity;
+    private final Runnable onClose;
+
+    private final ArrayDeque<ContainerWatchHub.Change> queue = new ArrayDeque<>();  // guarded by this
+    private final AtomicBoolean draining = new AtomicBoolean();
+    private ContainerWatchHub.Start pendingSnapshot;   // guarded by this
+    private long overflows;                            // guarded by this
+    private long lastSeq;                              // dernier numéro transmis, guarded by this
+    private long startSeq;
+    private boolean resumed;
+
+    private volatile boolean started;
+    private volatile boolean closed;
+
+    WatchSubscription(String id, String requestId, ResponseSink sink, ContainerWatchHub hub, Executor executor,
+                      int queueCapacity, Runnable onClose) {
+        this.id = id;
+        this.requestId = requestId;
+        this.sink = sink;
+        this.hub = hub;
+        this.executor = executor;
+        this.queueCapacity = queueCapacity;
+        this.onClose = onClose;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public ResponseSink getSink() {
+        return sink;
+    }
+
+    /** Point de départ rendu par le hub ; les changements reçus entre-temps sont déjà en file. */
+    synchronized void begin(ContainerWatchHub.Start start, Long since) {
+        startSeq = start.seq;
+        resumed = start.snapshot == null;
+        if (start.snapshot != null) {
+            pendingSnapshot = start;
+            lastSeq = start.seq;
+        } else {
+            for (int i = start.backlog.size() - 1; i >= 0; i--) {
+                queue.addFirst(start.backlog.get(i));
+            }
+            lastSeq = since;
+        }
+    }
+
+    /** Sequence number of the state the subscription starts from. */
+    synchronized long getStartSeq() {
+        return startSeq;
+    }
+
+    /** True when the client resumed from its sequence number, without a snapshot. */
+    synchronized boolean isResumed() {
+        return resumed;
+    }
+
+    /** Lets the snapshot and the deltas flow once the acknowledgement has been written. */
+    void start() {
+        started = true;
+        scheduleDrain();
+    }
+
+    @Override
+    public void onChange(ContainerWatchHub.Change change) {
+        if (closed) {
+            return;
+        }
+        synchronized (this) {
+            if (queue.size() >= queueCapacity) {
+                // client trop lent : un instantané coûte moins qu'un arriéré sans fin
+                queue.clear();
+                overflows++;
+            } else {
+                queue.addLast(change);
+            }
+        }
+        scheduleDrain();
+    }
+
+    public void cancel() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        hub.unwatch(this);
+        synchronized (this) {
+            queue.clear();
+        }
+        onClose.run();
+    }
+
+    private void scheduleDrain() {
+        if (started && !closed && draining.compareAndSet(false, true)) {
+            executor.execute(this::drain);
+        }
+    }
+
+    private void drain() {
+        try {
+            while (!closed) {
+                long overflowsSeen;
+                synchronized (this) {
+                    overflowsSeen = overflows;
+                }
+                // hors de notre verrou : le hub nous appelle sous le sien
+                ContainerWatchHub.Start snapshot = overflowsSeen > 0 ? hub.snapshot() : null;
+                List<ContainerWatchHub.Change> batch = new ArrayList<>();
+                synchronized (this) {
+                    if (snapshot != null) {
+                        if (overflows == overflowsSeen) {
+                            overflows = 0;
+                        }
+                        pendingSnapshot = snapshot;
+                        lastSeq = snapshot.seq;
+                    }
+                    snapshot = pendingSnapshot;
+                    pendingSnapshot = null;
+                    while (batch.size() < MAX_BATCH && !queue.isEmpty()) {
+                        ContainerWatchHub.Change change = queue.pollFirst();
+                        if (change.seq > lastSeq) {
+                            batch.add(change);
+                            lastSeq = change.seq;
+                        }
+                    }
+                }
+                if (snapshot == null && batch.isEmpty()) {
+                    break;
+                }
+                List<Response> responses = new ArrayList<>(2);
+                if (snapshot != null) {
+                    responses.add(snapshotResponse(snapshot));
+                }
+                if (!batch.isEmpty()) {
+                    responses.add(changesResponse(batch));
+                }
+                sink.sendAll(responses);
+            }
+        } catch (IOException e) {
+            cancel();
+        } finally {
+            draining.set(false);
+        }
+        boolean pending;
+        synchronized (this) {
+            pending = !queue.isEmpty() || overflows > 0;
+        }
+        if (pending) {
+            scheduleDrain();
+        }
+    }
+
+    private Response snapshotResponse(ContainerWatchHub.Start snapshot) {
+        ObjectNode body = MAPPER.createObjectNode()
+                .put("subscriptionId", id)
+                .put("epoch", hub.getEpoch())
+                .put("seq", snapshot.seq);
+        ArrayNode containers = body.putArray("containers");
+        for (ContainerWatchHub.Change change : snapshot.snapshot) {
+            containers.add(render(change));
+        }
+        return withRequestId(Response.of("OK", "WATCH_SNAPSHOT", body));
+    }
+
+    private Response changesResponse(List<ContainerWatchHub.Change> batch) {
+        ObjectNode body = MAPPER.createObjectNode().put("subscriptionId", id);
+        ArrayNode changes = body.putArray("changes");
+        for (ContainerWatchHub.Change change : batch) {
+            ObjectNode node = changes.addObject()
+                    .put("seq", change.seq)
+                    .put("type", change.type)
+                    .put("id", change.id);
+            if (change.container != null) {
+                node.set("container", render(change));
+            } else if (change.host != null) {
+                node.put("host", change.host);
+            }
+        }
+        return withRequestId(Response.of("OK", "WATCH_CHANGES", body));
+    }
+
+    // mêmes champs que LIST_CONTAINERS
+    private static ObjectNode render(ContainerWatchHub.Change change) {
+        ContainerInfo c = change.container;
+        ObjectNode node = MAPPER.createObjectNode()
+                .put("id", c.getId())
+                .put("name", c.getName())
+                .put("image", c.getImage())
+                .put("state", c.getState());
+        if (change.host != null) {
+            node.put("host", change.host);
+        }
+        return node;
+    }
+
+    private Response withRequestId(Response response) {
+        response.setId(requestId);
+        return response;
+    }
+}